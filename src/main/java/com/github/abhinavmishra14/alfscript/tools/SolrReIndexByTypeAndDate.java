@@ -32,7 +32,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.methods.CloseableHttpResponse;
 
 import com.github.abhinavmishra14.exception.AlfScriptException;
 import com.github.abhinavmishra14.http.utils.HTTPUtils;
@@ -88,7 +87,7 @@ public class SolrReIndexByTypeAndDate {
 		final String query = URLEncoder.encode(String.format(QUERY, objectType, startDateTime, endDateTime), HTTPUtils.UTF8);
 		final String reindexURL = String.format(REINDEX_BY_CREATEED_DATE, host, query);
 		LOG.info("REINDEX URL: " + reindexURL);
-		try (final CloseableHttpResponse httpResp = HTTPUtils.httpGet(reindexURL)) {
+		HTTPUtils.httpGet(reindexURL, httpResp -> {
 			final StatusLine status = httpResp.getStatusLine();
 			final int statusCode = status.getStatusCode();
 			final String statusMsg = status.getReasonPhrase();
@@ -99,6 +98,7 @@ public class SolrReIndexByTypeAndDate {
 			} else {
 				throw new AlfScriptException("Failed to start reindexing due to:  "+statusMsg);
 			}
-		}
+			return statusCode;
+		});
 	}
 }
@@ -18,24 +18,29 @@
 package com.github.abhinavmishra14.alfscript.utils;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.temporal.TemporalAmount;
 import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -45,8 +50,7 @@ import org.joda.time.DateTime;
 import org.joda.time.Days;
 import org.json.JSONException;
 
-import com.github.abhinavmishra14.auth.service.AuthenticationService;
-import com.github.abhinavmishra14.auth.service.impl.AuthenticationServiceImpl;
+import com.github.abhinavmishra14.auth.utils.TicketManager;
 import com.github.abhinavmishra14.download.pojo.BasicSearchPayload;
 import com.github.abhinavmishra14.download.pojo.Paging;
 import com.github.abhinavmishra14.download.pojo.Query;
@@ -61,6 +65,15 @@ public final class AlfScriptUtils {
 	/** The Constant LOG. */
 	private final static Log LOG = LogFactory.getLog(AlfScriptUtils.class);
 	
+	/** The Constant PART_EXTN. Suffix of files being written. */
+	public static final String PART_EXTN = ".part";
+	
+	/** The Constant COPY_BUFFER_SIZE. */
+	private static final int COPY_BUFFER_SIZE = 1024 * 1024;
+	
+	/** The Constant COPY_BUFFER. Reused by each downloading thread. */
+	private static final ThreadLocal<byte[]> COPY_BUFFER = ThreadLocal.withInitial(() -> new byte[COPY_BUFFER_SIZE]);
+	
 	/**
 	 * Gets the search payload.
 	 *
@@ -83,6 +96,19 @@ public final class AlfScriptUtils {
 			  }
 			}
 		 */
+		return JSONUtils.convertFromJsonObjectToString(createSearchPayload(searchQ, maxItems, skipCount));
+	}
+	
+	/**
+	 * Creates the search payload, sort and include can be set on it before it is sent.
+	 *
+	 * @param searchQ the search Q
+	 * @param maxItems the max items
+	 * @param skipCount the skip count
+	 * @return the basic search payload
+	 */
+	public static BasicSearchPayload createSearchPayload(final String searchQ, final String maxItems,
+			final String skipCount) {
 		final BasicSearchPayload searchPayload = new BasicSearchPayload();
 		final Query query = new Query();
 		query.setQuery(searchQ);
@@ -93,12 +119,14 @@ public final class AlfScriptUtils {
 		paging.setMaxItems(maxItems);
 		paging.setSkipCount(skipCount);
 		searchPayload.setPaging(paging);
-		return JSONUtils.convertFromJsonObjectToString(searchPayload);
+		return searchPayload;
 	}
 	
 	/**
 	 * Copy input stream to file.<br>
-	 * After copy it will flush the output stream and closes it. It will also close the source inputStream after copy
+	 * The content is written to a temporary file next to the destination, which is renamed to the
+	 * destination once complete, see {@link #writeToFile(InputStream, long, File)}. It will also
+	 * close the source inputStream after copy
 	 *
 	 * @param source the source
 	 * @param destination the destination
@@ -107,17 +135,7 @@ public final class AlfScriptUtils {
 	public static void copyInputStreamToFile(final InputStream source,
 			final File destination) throws IOException {
 		try {
-			try (final FileOutputStream output = FileUtils.openOutputStream(destination);) {
-				IOUtils.copy(source, output);
-				try {
-					if (output != null) {
-						output.flush();
-						output.close();
-					}
-				} catch (IOException ioexIgnore) {
-					LOG.warn("[Ignore] Failed to close the output stream", ioexIgnore);
-				}
-			}
+			writeToFile(source, -1, destination);
 		} finally {
 			try {
 				if (source != null) {
@@ -129,6 +147,116 @@ public final class AlfScriptUtils {
 		}
 	}
 	
+	/**
+	 * Write the stream to the file through a file channel.<br>
+	 * The content goes to <code>destination.part</code> first, which is renamed atomically to the
+	 * destination once the expected length is written, so the destination never holds a half
+	 * written file. When the length is known, free space is checked and the file is sized upfront.
+	 * File sources are transferred channel to channel, other streams (e.g. http entities) are read
+	 * in large chunks to cut the number of read and write calls per byte.<br>
+	 * Source stream is not closed.
+	 *
+	 * @param source the source
+	 * @param contentLength the content length, negative if unknown
+	 * @param destination the destination
+	 * @return the number of bytes written
+	 * @throws IOException Signals that an I/O exception has occurred, the destination is left untouched.
+	 */
+	public static long writeToFile(final InputStream source, final long contentLength,
+			final File destination) throws IOException {
+		final Path target = destination.toPath().toAbsolutePath();
+		Files.createDirectories(target.getParent());
+		if (contentLength > 0 && target.getParent().toFile().getUsableSpace() < contentLength) {
+			throw new IOException("Not enough space to write " + contentLength + " bytes at: " + target);
+		}
+		final Path partFile = target.resolveSibling(target.getFileName() + PART_EXTN);
+		long written = 0;
+		try {
+			try (final RandomAccessFile output = new RandomAccessFile(partFile.toFile(), "rw");
+					final FileChannel channel = output.getChannel()) {
+				output.setLength(Math.max(0, contentLength));
+				if (source instanceof FileInputStream) {
+					final FileChannel sourceChannel = ((FileInputStream) source).getChannel();
+					final long size = sourceChannel.size() - sourceChannel.position();
+					while (written < size) {
+						written += channel.transferFrom(sourceChannel, written, size - written);
+					}
+				} else {
+					written = transfer(source, channel, 0);
+				}
+				if (contentLength >= 0 && written != contentLength) {
+					throw new IOException("Expected " + contentLength + " bytes but received " + written + " for: " + target);
+				}
+				channel.truncate(written);
+			}
+			moveAtomically(partFile, target);
+			return written;
+		} catch (IOException | RuntimeException excp) {
+			Files.deleteIfExists(partFile);
+			throw excp;
+		}
+	}
+	
+	/**
+	 * Write the stream to the channel starting at the given position, in large chunks.<br>
+	 * Bytes are written as they are read, so a failure leaves the bytes received so far in place.
+	 * Source stream is not closed.
+	 *
+	 * @param source the source
+	 * @param channel the channel
+	 * @param position the position of the first byte
+	 * @return the number of bytes written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static long transfer(final InputStream source, final FileChannel channel, final long position)
+			throws IOException {
+		return transfer(source, channel, position, new AtomicLong());
+	}
+	
+	/**
+	 * Write the stream to the channel starting at the given position, in large chunks.<br>
+	 * The progress is raised as bytes are written, so that it tells how many bytes are in place if
+	 * the transfer fails. Source stream is not closed.
+	 *
+	 * @param source the source
+	 * @param channel the channel
+	 * @param position the position of the first byte
+	 * @param progress the number of bytes written so far
+	 * @return the number of bytes written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static long transfer(final InputStream source, final FileChannel channel, final long position,
+			final AtomicLong progress) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(COPY_BUFFER.get());
+		long written = 0;
+		int read;
+		while ((read = source.read(buffer.array())) != -1) {
+			buffer.limit(read);
+			while (buffer.hasRemaining()) {
+				final int count = channel.write(buffer, position + written);
+				written += count;
+				progress.addAndGet(count);
+			}
+			buffer.clear();
+		}
+		return written;
+	}
+	
+	/**
+	 * Move the file over the target, atomically where the file system supports it.
+	 *
+	 * @param source the source
+	 * @param target the target
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void moveAtomically(final Path source, final Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException excp) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
 	/**
 	 * Gets the file name.
 	 *
@@ -158,7 +286,7 @@ public final class AlfScriptUtils {
 	}
 	
 	/**
-	 * Gets the ticket.
+	 * Gets the ticket, cached and renewed by {@link TicketManager}.
 	 *
 	 * @param host the host
 	 * @param userName the user name
@@ -171,8 +299,7 @@ public final class AlfScriptUtils {
 	public static String getTicket(final String host, final String userName,
 			final String password) throws JSONException,
 			ClientProtocolException, IOException, AlfScriptException {
-		final AuthenticationService authServ = new AuthenticationServiceImpl(host);
-		return authServ.getAuthTicket(userName, password);
+		return TicketManager.getTicket(host, userName, password);
 	}
 	
 	/**
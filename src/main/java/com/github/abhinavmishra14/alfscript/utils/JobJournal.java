@@ -0,0 +1,423 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2023. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.alfscript.utils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The Class JobJournal.<br>
+ * Append only journal of a bulk job, one line per item: <code>DONE|FAILED &lt;tab&gt; key [&lt;tab&gt; reason]</code>.
+ * Jobs check {@link #skip(String)} before processing an item, so a job restarted after a crash
+ * only processes the items not completed by the previous runs. Failed items are processed again.<br>
+ * Records are buffered and forced to disk every <code>alfscript.journal.syncIntervalMillis</code>
+ * or <code>alfscript.journal.syncBatchSize</code> records, whichever comes first. Records not yet
+ * forced are lost on a crash and their items are processed again, so items must be safe to repeat.<br>
+ * Journal is kept at <code>&lt;alfscript.journal.dir&gt;/&lt;jobName&gt;.journal</code>, when
+ * <code>alfscript.journal.dir</code> is not set the journal only counts the items. Delete the
+ * journal file to process all the items again.
+ */
+public class JobJournal implements Closeable {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(JobJournal.class);
+
+	/** The Constant PROP_DIR. */
+	public static final String PROP_DIR = "alfscript.journal.dir";
+
+	/** The Constant PROP_SYNC_INTERVAL_MILLIS. */
+	public static final String PROP_SYNC_INTERVAL_MILLIS = "alfscript.journal.syncIntervalMillis";
+
+	/** The Constant PROP_SYNC_BATCH_SIZE. */
+	public static final String PROP_SYNC_BATCH_SIZE = "alfscript.journal.syncBatchSize";
+
+	/** The Constant JOURNAL_EXTN. */
+	public static final String JOURNAL_EXTN = ".journal";
+
+	/** The Constant DEFAULT_SYNC_INTERVAL_MILLIS. */
+	private static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+
+	/** The Constant DEFAULT_SYNC_BATCH_SIZE. */
+	private static final int DEFAULT_SYNC_BATCH_SIZE = 1000;
+
+	/** The Constant SEPARATOR. */
+	private static final String SEPARATOR = "\t";
+
+	/** The Constant LINE_END. */
+	private static final char LINE_END = '\n';
+
+	/**
+	 * The Enum Status of an item.
+	 */
+	public enum Status {
+
+		/** The done. */
+		DONE,
+
+		/** The failed. */
+		FAILED
+	}
+
+	/** The journal file, null when journal is disabled. */
+	private final Path file;
+
+	/** The channel, null when journal is disabled. */
+	private final FileChannel channel;
+
+	/** The syncer. */
+	private final ScheduledExecutorService syncer;
+
+	/** The keys of the items done. */
+	private final Set<String> doneKeys = ConcurrentHashMap.newKeySet();
+
+	/** The records not yet written, guarded by this. */
+	private final StringBuilder pending = new StringBuilder();
+
+	/** The number of records not yet written, guarded by this. */
+	private int pendingRecords;
+
+	/** The sync batch size. */
+	private final int syncBatchSize;
+
+	/** The write lock, held while the pending records are written and forced. */
+	private final Object writeLock = new Object();
+
+	/** The items done in this run. */
+	private final AtomicLong done = new AtomicLong();
+
+	/** The items failed in this run. */
+	private final AtomicLong failed = new AtomicLong();
+
+	/** The items skipped in this run, done by a previous run. */
+	private final AtomicLong skipped = new AtomicLong();
+
+	/**
+	 * Open the journal of the given job, in the directory set via <code>alfscript.journal.dir</code>.
+	 *
+	 * @param jobName the job name
+	 * @return the job journal, which only counts the items if no directory is set
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static JobJournal open(final String jobName) throws IOException {
+		final String dir = System.getProperty(PROP_DIR);
+		return new JobJournal(StringUtils.isBlank(dir) ? null : Paths.get(dir.trim(), jobName + JOURNAL_EXTN));
+	}
+
+	/**
+	 * The Constructor.<br>
+	 * Items recorded in an existing journal are loaded, a record torn by a crash is dropped.
+	 *
+	 * @param file the journal file, null to only count the items
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public JobJournal(final Path file) throws IOException {
+		super();
+		this.file = file;
+		this.syncBatchSize = Math.max(1, Integer.getInteger(PROP_SYNC_BATCH_SIZE, DEFAULT_SYNC_BATCH_SIZE));
+		if (file == null) {
+			this.channel = null;
+			this.syncer = null;
+			return;
+		}
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			load();
+		} catch (IOException | RuntimeException excp) {
+			channel.close();
+			throw excp;
+		}
+		final long interval = Long.getLong(PROP_SYNC_INTERVAL_MILLIS, DEFAULT_SYNC_INTERVAL_MILLIS);
+		this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "journal-sync");
+			thread.setDaemon(true);
+			return thread;
+		});
+		syncer.scheduleWithFixedDelay(() -> {
+			try {
+				sync();
+			} catch (IOException excp) {
+				LOG.error("Failed to sync the journal: " + file, excp);
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Load the items recorded in the journal and position the channel after the last complete record.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void load() throws IOException {
+		long size = channel.size();
+		// Drop the last record if it was torn by a crash, it is processed again
+		final ByteBuffer oneByte = ByteBuffer.allocate(1);
+		while (size > 0) {
+			oneByte.clear();
+			channel.read(oneByte, size - 1);
+			if (oneByte.get(0) == LINE_END) {
+				break;
+			}
+			size--;
+		}
+		if (size < channel.size()) {
+			LOG.warn("Dropping the incomplete last record of the journal: " + file);
+			channel.truncate(size);
+		}
+		long records = 0;
+		try (final BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] fields = line.split(SEPARATOR, 3);
+				if (fields.length < 2) {
+					continue;
+				}
+				records++;
+				if (Status.DONE.name().equals(fields[0])) {
+					doneKeys.add(fields[1]);
+				} else {
+					doneKeys.remove(fields[1]);
+				}
+			}
+		}
+		channel.position(size);
+		LOG.info("Journal " + file + " loaded, records: " + records + ", items done: " + doneKeys.size());
+	}
+
+	/**
+	 * Checks if the journal is kept on disk.
+	 *
+	 * @return true, if is enabled
+	 */
+	public boolean isEnabled() {
+		return channel != null;
+	}
+
+	/**
+	 * Checks if the item is done, by this or a previous run.
+	 *
+	 * @param key the key
+	 * @return true, if is done
+	 */
+	public boolean isDone(final String key) {
+		return doneKeys.contains(clean(key));
+	}
+
+	/**
+	 * Checks if the item should be skipped since it is done, and counts it as skipped if so.
+	 *
+	 * @param key the key
+	 * @return true, if the item is done
+	 */
+	public boolean skip(final String key) {
+		if (isDone(key)) {
+			skipped.incrementAndGet();
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Skipping the item done by a previous run: " + key);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Record the item as done.
+	 *
+	 * @param key the key
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void markDone(final String key) throws IOException {
+		done.incrementAndGet();
+		record(Status.DONE, key, null);
+	}
+
+	/**
+	 * Record the item as failed, it is processed again by the next run.
+	 *
+	 * @param key the key
+	 * @param reason the reason, can be null
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void markFailed(final String key, final String reason) throws IOException {
+		failed.incrementAndGet();
+		record(Status.FAILED, key, reason);
+	}
+
+	/**
+	 * Record the item as done or failed, failure to write the journal is logged rather than thrown
+	 * so that it can be used from callbacks. The item is processed again by the next run in that case.
+	 *
+	 * @param key the key
+	 * @param isDone whether the item is done
+	 * @param reason the reason of failure, can be null
+	 */
+	public void mark(final String key, final boolean isDone, final String reason) {
+		try {
+			if (isDone) {
+				markDone(key);
+			} else {
+				markFailed(key, reason);
+			}
+		} catch (IOException excp) {
+			LOG.error("Failed to record the item in the journal: " + key, excp);
+		}
+	}
+
+	/**
+	 * Record the status of the item.
+	 *
+	 * @param status the status
+	 * @param key the key
+	 * @param reason the reason, can be null
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void record(final Status status, final String key, final String reason) throws IOException {
+		final String cleanKey = clean(key);
+		if (status == Status.DONE) {
+			doneKeys.add(cleanKey);
+		} else {
+			doneKeys.remove(cleanKey);
+		}
+		if (channel == null) {
+			return;
+		}
+		final boolean batchFull;
+		synchronized (this) {
+			pending.append(status.name()).append(SEPARATOR).append(cleanKey);
+			if (reason != null) {
+				pending.append(SEPARATOR).append(clean(reason));
+			}
+			pending.append(LINE_END);
+			batchFull = ++pendingRecords >= syncBatchSize;
+		}
+		if (batchFull) {
+			sync();
+		}
+	}
+
+	/**
+	 * Write the pending records and force them to disk.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void sync() throws IOException {
+		if (channel == null) {
+			return;
+		}
+		synchronized (writeLock) {
+			final ByteBuffer records;
+			synchronized (this) {
+				if (pendingRecords == 0) {
+					return;
+				}
+				records = ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.UTF_8));
+				pending.setLength(0);
+				pendingRecords = 0;
+			}
+			while (records.hasRemaining()) {
+				channel.write(records);
+			}
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Gets the number of items done in this run.
+	 *
+	 * @return the done count
+	 */
+	public long getDoneCount() {
+		return done.get();
+	}
+
+	/**
+	 * Gets the number of items failed in this run.
+	 *
+	 * @return the failed count
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * Gets the number of items skipped in this run, since they were done by a previous run.
+	 *
+	 * @return the skipped count
+	 */
+	public long getSkippedCount() {
+		return skipped.get();
+	}
+
+	/**
+	 * Sync the pending records and close the journal.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel == null) {
+			return;
+		}
+		syncer.shutdown();
+		try {
+			sync();
+		} finally {
+			channel.close();
+			LOG.info("Journal closed: " + this);
+		}
+	}
+
+	/**
+	 * Replace the characters which would break the record.
+	 *
+	 * @param value the value
+	 * @return the clean value
+	 */
+	private static String clean(final String value) {
+		return StringUtils.replaceChars(value, "\t\r\n", "   ");
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "done: " + done + ", failed: " + failed + ", skipped: " + skipped
+				+ (file == null ? StringUtils.EMPTY : ", journal: " + file);
+	}
+}
@@ -42,4 +42,15 @@ public interface AuthenticationService {
 	 */
 	String getAuthTicket(final String userName, final String password)
 			throws JSONException, ClientProtocolException, IOException, AlfScriptException;
+	
+	/**
+	 * Checks if the ticket is still valid, without creating a new one.
+	 *
+	 * @param ticket the ticket
+	 * @return true, if valid
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws AlfScriptException if validation fails for another reason than an invalid ticket
+	 */
+	boolean validateTicket(final String ticket) throws ClientProtocolException, IOException, AlfScriptException;
 }
@@ -23,10 +23,8 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.json.JSONException;
@@ -49,6 +47,9 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 	/** The Constant AUTH_URI. */
 	private static final String AUTH_URI = "/alfresco/service/api/login";
 	
+	/** The Constant TICKET_URI. */
+	private static final String TICKET_URI = AUTH_URI + "/ticket/%s?alf_ticket=%s";
+	
 	/** The Constant LOG. */
 	private final static Log LOG = LogFactory.getLog(AuthenticationServiceImpl.class);
 
@@ -77,25 +78,50 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 	public String getAuthTicket(final String userName, final String password)
 			throws ClientProtocolException, JSONException, IOException, AlfScriptException {
 		LOG.info("Getting auth ticket for user: "+userName);
-		String alfTicket = StringUtils.EMPTY;
 		final Map<String,String> authPayload = new ConcurrentHashMap<String,String>();
 		authPayload.put(AlfScriptConstants.PARAM_USER, userName);
 		authPayload.put(AlfScriptConstants.PARAM_PASSWORD, password);
 		final String mapAsJson = JSONUtils.getJsonObjectMapper().writeValueAsString(authPayload);	
-		final HttpResponse httpResp = HTTPUtils.httpPost(serverEndpoint+AUTH_URI, mapAsJson);
-		final StatusLine status = httpResp.getStatusLine();
-		final int statusCode = status.getStatusCode();
-		final String statusMsg = status.getReasonPhrase();
-		LOG.info("Status: "+statusCode +" | "+ statusMsg);
-		if (statusCode == HTTPUtils.HTTP_CODE_200) {
-			final String resonseStr = IOUtils.toString(httpResp.getEntity().getContent(),
-					StandardCharsets.UTF_8);
-			final JSONObject jsonObj = new JSONObject(resonseStr);
-			final JSONObject data = (JSONObject) jsonObj.get(AlfScriptConstants.DATA);
-			alfTicket = data.getString(AlfScriptConstants.TICKET);
-		} else {
-			throw new AlfScriptException(statusMsg);
-		}
-		return alfTicket;
+		return HTTPUtils.httpPost(serverEndpoint+AUTH_URI, mapAsJson, httpResp -> {
+			final StatusLine status = httpResp.getStatusLine();
+			final int statusCode = status.getStatusCode();
+			final String statusMsg = status.getReasonPhrase();
+			LOG.info("Status: "+statusCode +" | "+ statusMsg);
+			if (statusCode == HTTPUtils.HTTP_CODE_200) {
+				final String resonseStr = IOUtils.toString(httpResp.getEntity().getContent(),
+						StandardCharsets.UTF_8);
+				final JSONObject jsonObj = new JSONObject(resonseStr);
+				final JSONObject data = (JSONObject) jsonObj.get(AlfScriptConstants.DATA);
+				return data.getString(AlfScriptConstants.TICKET);
+			} else {
+				throw new AlfScriptException(statusMsg);
+			}
+		});
+	}
+
+	/**
+	 * Validate ticket.
+	 *
+	 * @param ticket the ticket
+	 * @return true, if valid
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws AlfScriptException the alf script exception
+	 */
+	@Override
+	public boolean validateTicket(final String ticket)
+			throws ClientProtocolException, IOException, AlfScriptException {
+		return HTTPUtils.httpGet(serverEndpoint + String.format(TICKET_URI, ticket, ticket), httpResp -> {
+			final StatusLine status = httpResp.getStatusLine();
+			final int statusCode = status.getStatusCode();
+			if (statusCode == HTTPUtils.HTTP_CODE_200) {
+				return true;
+			} else if (statusCode == HTTPUtils.HTTP_CODE_401 || statusCode == HTTPUtils.HTTP_CODE_404) {
+				LOG.info("Ticket is no longer valid, status: "+statusCode);
+				return false;
+			} else {
+				throw new AlfScriptException(status.getReasonPhrase());
+			}
+		});
 	}
 }
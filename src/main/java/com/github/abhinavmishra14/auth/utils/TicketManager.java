@@ -0,0 +1,294 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.auth.utils;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.ClientProtocolException;
+import org.json.JSONException;
+
+import com.github.abhinavmishra14.auth.service.AuthenticationService;
+import com.github.abhinavmishra14.auth.service.impl.AuthenticationServiceImpl;
+import com.github.abhinavmishra14.exception.AlfScriptException;
+
+/**
+ * The Class TicketManager.<br>
+ * Caches one ticket per host and user, shared by all the workers of a script. Tickets are renewed
+ * in the background shortly before they are due to expire, so workers never wait for a login,
+ * and a ticket not used for a while is validated before it is handed out again. Only one login
+ * per host and user is ever in flight, concurrent callers share its result.<br>
+ * Requests carry the current ticket even if they were created with an older one, see
+ * {@link #getCurrentTicket(String)}. Requests rejected with 401 are replayed once with a renewed ticket
+ * by {@link com.github.abhinavmishra14.http.utils.HTTPUtils}, see {@link #renewTicket(String)}. Timings can be tuned using system properties, e.g.
+ * <code>-Dalfscript.auth.ticketTtlSeconds=3600 -Dalfscript.auth.renewBeforeSeconds=600</code>
+ */
+public final class TicketManager {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(TicketManager.class);
+
+	/** The Constant PROP_TICKET_TTL_SECONDS. */
+	public static final String PROP_TICKET_TTL_SECONDS = "alfscript.auth.ticketTtlSeconds";
+
+	/** The Constant PROP_RENEW_BEFORE_SECONDS. */
+	public static final String PROP_RENEW_BEFORE_SECONDS = "alfscript.auth.renewBeforeSeconds";
+
+	/** The Constant PROP_VALIDATE_AFTER_IDLE_SECONDS. */
+	public static final String PROP_VALIDATE_AFTER_IDLE_SECONDS = "alfscript.auth.validateAfterIdleSeconds";
+
+	/** The Constant DEFAULT_TICKET_TTL_SECONDS. Matches the repository default of one hour. */
+	private static final long DEFAULT_TICKET_TTL_SECONDS = 3600;
+
+	/** The Constant DEFAULT_RENEW_BEFORE_SECONDS. */
+	private static final long DEFAULT_RENEW_BEFORE_SECONDS = 600;
+
+	/** The Constant DEFAULT_VALIDATE_AFTER_IDLE_SECONDS. */
+	private static final long DEFAULT_VALIDATE_AFTER_IDLE_SECONDS = 300;
+
+	/** The Constant TTL_NANOS. */
+	private static final long TTL_NANOS = TimeUnit.SECONDS
+			.toNanos(Long.getLong(PROP_TICKET_TTL_SECONDS, DEFAULT_TICKET_TTL_SECONDS));
+
+	/** The Constant RENEW_AFTER_NANOS. */
+	private static final long RENEW_AFTER_NANOS = Math.max(0, TTL_NANOS
+			- TimeUnit.SECONDS.toNanos(Long.getLong(PROP_RENEW_BEFORE_SECONDS, DEFAULT_RENEW_BEFORE_SECONDS)));
+
+	/** The Constant VALIDATE_AFTER_IDLE_NANOS. */
+	private static final long VALIDATE_AFTER_IDLE_NANOS = TimeUnit.SECONDS
+			.toNanos(Long.getLong(PROP_VALIDATE_AFTER_IDLE_SECONDS, DEFAULT_VALIDATE_AFTER_IDLE_SECONDS));
+
+	/** The Constant ENTRIES. Keyed by host and user. */
+	private static final Map<String, TicketEntry> ENTRIES = new ConcurrentHashMap<String, TicketEntry>();
+
+	/** The Constant ISSUED. Every ticket issued so far and the entry it belongs to. */
+	private static final Map<String, TicketEntry> ISSUED = new ConcurrentHashMap<String, TicketEntry>();
+
+	/** The Constant RENEWER. Runs the logins, so callers can share or skip waiting for them. */
+	private static final ExecutorService RENEWER = Executors.newCachedThreadPool(runnable -> {
+		final Thread thread = new Thread(runnable, "ticket-renewer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * The Constructor.
+	 */
+	private TicketManager() {
+		super();
+	}
+
+	/**
+	 * Gets a valid ticket for the user, logging in only when there is no usable cached ticket.
+	 *
+	 * @param host the host
+	 * @param userName the user name
+	 * @param password the password
+	 * @return the ticket
+	 * @throws JSONException the JSON exception
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws AlfScriptException the alf script exception
+	 */
+	public static String getTicket(final String host, final String userName, final String password)
+			throws JSONException, ClientProtocolException, IOException, AlfScriptException {
+		final TicketEntry entry = ENTRIES.compute(host + "|" + userName, (key, existing) ->
+				existing == null || !existing.password.equals(password)
+						? new TicketEntry(host, userName, password) : existing);
+		final String ticket = entry.ticket;
+		final long now = System.nanoTime();
+		if (ticket == null || now - entry.issuedAt >= TTL_NANOS) {
+			return await(entry.refresh(ticket));
+		}
+		if (now - entry.lastUsed >= VALIDATE_AFTER_IDLE_NANOS && !entry.authService.validateTicket(ticket)) {
+			return await(entry.refresh(ticket));
+		}
+		entry.lastUsed = now;
+		if (now - entry.issuedAt >= RENEW_AFTER_NANOS) {
+			// Renewed in the background, the current ticket is still good meanwhile
+			entry.refresh(ticket);
+		}
+		return ticket;
+	}
+
+	/**
+	 * Gets the ticket to send in place of the given one. Workers keep the ticket they were started
+	 * with, so a ticket issued by this manager is swapped for the current ticket of its user before
+	 * each request, and renewed in the background once it is due, without waiting for the login.
+	 *
+	 * @param ticket the ticket the request was created with
+	 * @return the current ticket, the given ticket if it was not issued by this manager
+	 */
+	public static String getCurrentTicket(final String ticket) {
+		final TicketEntry entry = ticket == null ? null : ISSUED.get(ticket);
+		if (entry == null) {
+			return ticket;
+		}
+		final String current = entry.ticket;
+		final long now = System.nanoTime();
+		entry.lastUsed = now;
+		if (now - entry.issuedAt >= RENEW_AFTER_NANOS) {
+			// Renewed in the background, a request rejected meanwhile is replayed once the login is done
+			entry.refresh(current);
+		}
+		return current == null ? ticket : current;
+	}
+
+	/**
+	 * Renew the ticket after the repository rejected it. Concurrent callers with the same stale
+	 * ticket share one login, callers which already got a newer ticket get it right away.
+	 *
+	 * @param staleTicket the stale ticket
+	 * @return the new ticket, null if the ticket was not issued by this manager
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static String renewTicket(final String staleTicket) throws IOException {
+		final TicketEntry entry = staleTicket == null ? null : ISSUED.get(staleTicket);
+		if (entry == null) {
+			return null;
+		}
+		LOG.info("Ticket of user " + entry.userName + " was rejected, renewing it");
+		return await(entry.refresh(staleTicket));
+	}
+
+	/**
+	 * Forget the cached ticket of the user, the next call logs in again.
+	 *
+	 * @param host the host
+	 * @param userName the user name
+	 */
+	public static void invalidate(final String host, final String userName) {
+		ENTRIES.remove(host + "|" + userName);
+	}
+
+	/**
+	 * Wait for the login to complete.
+	 *
+	 * @param login the login
+	 * @return the ticket
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static String await(final CompletableFuture<String> login) throws IOException {
+		try {
+			return login.get();
+		} catch (InterruptedException excp) {
+			Thread.currentThread().interrupt();
+			throw new AlfScriptException("Interrupted while waiting for login", excp);
+		} catch (ExecutionException excp) {
+			final Throwable cause = excp.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new AlfScriptException("Login failed", cause);
+		}
+	}
+
+	/**
+	 * The Class TicketEntry.
+	 */
+	private static class TicketEntry {
+
+		/** The user name. */
+		private final String userName;
+
+		/** The password. */
+		private final String password;
+
+		/** The auth service. */
+		private final AuthenticationService authService;
+
+		/** The current ticket. */
+		private volatile String ticket;
+
+		/** The issued at nanos. */
+		private volatile long issuedAt;
+
+		/** The last used or validated nanos. */
+		private volatile long lastUsed;
+
+		/** The login in flight, null when none. */
+		private CompletableFuture<String> login;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param host the host
+		 * @param userName the user name
+		 * @param password the password
+		 */
+		TicketEntry(final String host, final String userName, final String password) {
+			this.userName = userName;
+			this.password = password;
+			this.authService = new AuthenticationServiceImpl(host);
+		}
+
+		/**
+		 * Replace the given ticket, unless it is already replaced or being replaced.
+		 *
+		 * @param staleTicket the ticket to replace, null if there is none yet
+		 * @return the login, completed right away if the ticket was already replaced
+		 */
+		synchronized CompletableFuture<String> refresh(final String staleTicket) {
+			if (ticket != null && !ticket.equals(staleTicket)) {
+				return CompletableFuture.completedFuture(ticket);
+			}
+			if (login == null) {
+				final CompletableFuture<String> newLogin = new CompletableFuture<String>();
+				login = newLogin;
+				RENEWER.execute(() -> login(newLogin));
+			}
+			return login;
+		}
+
+		/**
+		 * Login and publish the new ticket.
+		 *
+		 * @param newLogin the new login
+		 */
+		private void login(final CompletableFuture<String> newLogin) {
+			try {
+				final String newTicket = authService.getAuthTicket(userName, password);
+				ISSUED.put(newTicket, this);
+				synchronized (this) {
+					ticket = newTicket;
+					issuedAt = System.nanoTime();
+					lastUsed = issuedAt;
+					login = null;
+				}
+				newLogin.complete(newTicket);
+			} catch (IOException | RuntimeException excp) {
+				synchronized (this) {
+					login = null;
+				}
+				LOG.error("Failed to login as " + userName, excp);
+				newLogin.completeExceptionally(excp);
+			}
+		}
+	}
+}
@@ -32,6 +32,8 @@ import org.apache.http.client.ClientProtocolException;
 import org.json.JSONException;
 
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.alfscript.utils.JobJournal;
+import com.github.abhinavmishra14.download.service.DownloadPipeline;
 import com.github.abhinavmishra14.download.service.SNDService;
 import com.github.abhinavmishra14.download.service.impl.SNDServiceImpl;
 import com.github.abhinavmishra14.exception.AlfScriptException;
@@ -45,6 +47,9 @@ public class DownloadTest {
 	/** The Constant LOG. */
 	private final static Log LOG = LogFactory.getLog(DownloadTest.class);
 	
+	/** The Constant JOB_NAME. */
+	private static final String JOB_NAME = "DownloadTest";
+	
 	/**
 	 * The main method.
 	 *
@@ -108,7 +113,8 @@ public class DownloadTest {
 				&& StringUtils.isNotBlank(downloadLocation)) {
 			LOG.info("Downloading files using input json: "+inputJsonMappingPath +" from host: "+host+" at: "+downloadLocation);
 			final SNDService downloadServ = new SNDServiceImpl(host);
-			try (final FileInputStream fis = new FileInputStream(new File(inputJsonMappingPath));) {
+			try (final FileInputStream fis = new FileInputStream(new File(inputJsonMappingPath));
+					final JobJournal journal = JobJournal.open(JOB_NAME)) {
 				final Map<String, Object> jsonMap = JSONUtils.getMapFromJsonInputStream(fis);
 				final String authTicket = AlfScriptUtils.getTicket(host, userName, password);
 				for (final Iterator<Entry<String, Object>> iterator = jsonMap.entrySet().iterator(); iterator
@@ -116,8 +122,15 @@ public class DownloadTest {
 					final Entry<String, Object> eachEntry = iterator.next();
 					final String fileName = eachEntry.getKey();
 					final String nodeRef = (String) eachEntry.getValue();
-					downloadServ.processDownloadRequest(downloadLocation, authTicket, fileName, nodeRef);
+					// Files downloaded by a previous run are skipped when the journal is kept
+					final String journalKey = DownloadPipeline.getJournalKey(fileName, downloadLocation, nodeRef);
+					if (journal.skip(journalKey)) {
+						continue;
+					}
+					journal.mark(journalKey,
+							downloadServ.processDownloadRequest(downloadLocation, authTicket, fileName, nodeRef), null);
 				}
+				LOG.info("Downloads completed: " + journal);
 			}		
 		} else {
 			throw new IllegalArgumentException(
@@ -0,0 +1,125 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2023. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.download;
+
+import java.io.IOException;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.download.service.IncrementalSync;
+import com.github.abhinavmishra14.download.service.SNDService;
+import com.github.abhinavmishra14.download.service.SearchCursor;
+import com.github.abhinavmishra14.download.service.impl.SNDServiceImpl;
+import com.github.abhinavmishra14.exception.AlfScriptException;
+
+/**
+ * The Class IncrementalSyncTest.<br>
+ * Mirror the content of the nodes matching a search query to the given download path. Run it
+ * again (e.g. nightly) to download only the nodes changed since the previous run, see {@link IncrementalSync}.
+ */
+public class IncrementalSyncTest {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(IncrementalSyncTest.class);
+	
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws AlfScriptException the alf script exception
+	 */
+	public static void main(String[] args) throws AlfScriptException, IOException {
+		String host = StringUtils.EMPTY;
+		// Get the host
+		if (args.length >= 1 && StringUtils.isNotBlank(args[0])) {
+			host = args[0].trim();
+			if (StringUtils.isEmpty(host) || !host.contains("://")) {
+				throw new IllegalArgumentException("Please provide a valid host");
+			}
+		}
+
+		String userName = StringUtils.EMPTY;
+		// Get userName
+		if (args.length >= 2 && StringUtils.isNotBlank(args[1])) {
+			userName = args[1].trim();
+			if (StringUtils.isEmpty(userName)) {
+				throw new IllegalArgumentException("Please provide a valid userName");
+			}
+		}
+
+		String password = StringUtils.EMPTY;
+		// Get password
+		if (args.length >= 3 && StringUtils.isNotBlank(args[2])) {
+			password = args[2].trim();
+			if (StringUtils.isEmpty(password)) {
+				throw new IllegalArgumentException("Please provide a valid password");
+			}
+		}
+		
+		String downloadLocation = StringUtils.EMPTY;
+		if (args.length >= 4 && StringUtils.isNotBlank(args[3])) {
+			downloadLocation = args[3].trim();
+			if (StringUtils.isEmpty(downloadLocation)) {
+				throw new IllegalArgumentException("Please provide a valid downloadLocation");
+			}
+			downloadLocation = FilenameUtils.separatorsToSystem(downloadLocation);
+		}
+		
+		String searchQuery = StringUtils.EMPTY;
+		//Example: "PATH:'/app:company_home/st:sites/cm:test-site/cm:documentLibrary//*' AND TYPE:'cm:content'"
+		if (args.length >= 5 && StringUtils.isNotBlank(args[4])) {
+			searchQuery = args[4].trim();
+			if (StringUtils.isEmpty(searchQuery)) {
+				throw new IllegalArgumentException("Please provide a valid searchQuery");
+			}
+		}
+		
+		String maxItems = AlfScriptConstants.MAX_ITEMS;
+		if (args.length >= 6 && StringUtils.isNotBlank(args[5])) {
+			maxItems = args[5].trim();
+		}
+		
+		// CREATED, pages by the created date instead of skip count for large results
+		SearchCursor.Keyset pageBy = null;
+		if (args.length >= 7 && StringUtils.isNotBlank(args[6])) {
+			pageBy = SearchCursor.Keyset.valueOf(args[6].trim().toUpperCase());
+		}
+		
+		if (StringUtils.isNotBlank(host) && StringUtils.isNotBlank(userName)
+				&& StringUtils.isNotBlank(password)
+				&& StringUtils.isNotBlank(downloadLocation)
+				&& StringUtils.isNotBlank(searchQuery)) {
+			LOG.info("Syncing content using searchQuery: "+searchQuery +" from host: "+host+" at: "+downloadLocation);
+			final String alfTicket = AlfScriptUtils.getTicket(host, userName, password);
+			final SNDService sndServ = new SNDServiceImpl(host);
+			final boolean isSynced = new IncrementalSync(sndServ, alfTicket, downloadLocation)
+					.sync(searchQuery, Integer.parseInt(maxItems), pageBy);
+			LOG.info("Has content synced?: " + isSynced);
+		} else {
+			throw new IllegalArgumentException(
+					"Please check if you have provided the parameters required for the IncrementalSyncTest. \n IncrementalSyncTest invocation command: java com.github.abhinavmishra14.download.IncrementalSyncTest <host> <user> <password> <downloadLocation> <searchQuery>");
+		}
+	}
+
+}
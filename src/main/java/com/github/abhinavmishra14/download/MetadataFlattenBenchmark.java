@@ -0,0 +1,284 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2023. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.download;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
+import com.github.abhinavmishra14.download.service.MetadataFlattener;
+import com.github.abhinavmishra14.json.utils.JSONReportWriter;
+import com.github.abhinavmishra14.json.utils.JSONUtils;
+
+/**
+ * The Class MetadataFlattenBenchmark.<br>
+ * Compares the ways of flattening node metadata on generated node responses with the given number
+ * of properties, a third of them multi valued, and reports the time and the bytes allocated per node:
+ * <ul>
+ * <li><code>jsonObject</code>: the response is parsed into a json object, flattened in place and
+ * written to an NDJSON report.</li>
+ * <li><code>streaming</code>: the response is transformed token by token from the parser to the
+ * NDJSON report, see {@link MetadataFlattener#flatten(JsonParser, com.fasterxml.jackson.core.JsonGenerator)}.</li>
+ * <li><code>jsonObjectRead</code> and <code>streamingRead</code>: the response is read as a flattened
+ * json object, as by getMetadata before and after the streaming flattener.</li>
+ * </ul>
+ * Each mode is warmed up first, run it with a fixed heap (e.g. -Xms1g -Xmx1g) for stable numbers.<br>
+ * e.g. java com.github.abhinavmishra14.download.MetadataFlattenBenchmark 150 20000 10000
+ */
+public class MetadataFlattenBenchmark {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(MetadataFlattenBenchmark.class);
+
+	/** The Constant DEFAULT_PROPERTIES. */
+	private static final int DEFAULT_PROPERTIES = 150;
+
+	/** The Constant DEFAULT_ITERATIONS. */
+	private static final int DEFAULT_ITERATIONS = 20000;
+
+	/** The Constant DEFAULT_WARMUP. */
+	private static final int DEFAULT_WARMUP = 10000;
+
+	/** The Constant NODES. Distinct node responses cycled through. */
+	private static final int NODES = 64;
+
+	/**
+	 * The Interface Mode. One way of flattening a node response.
+	 */
+	@FunctionalInterface
+	private interface Mode {
+
+		/**
+		 * Flatten the node response.
+		 *
+		 * @param response the response
+		 * @param reportWriter the report writer
+		 * @return a value depending on the output, so it is not optimized away
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		long run(final byte[] response, final JSONReportWriter reportWriter) throws IOException;
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the args
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void main(final String[] args) throws IOException {
+		int properties = DEFAULT_PROPERTIES;
+		if (args.length >= 1 && StringUtils.isNotBlank(args[0])) {
+			properties = Integer.parseInt(args[0].trim());
+		}
+		int iterations = DEFAULT_ITERATIONS;
+		if (args.length >= 2 && StringUtils.isNotBlank(args[1])) {
+			iterations = Integer.parseInt(args[1].trim());
+		}
+		int warmup = DEFAULT_WARMUP;
+		if (args.length >= 3 && StringUtils.isNotBlank(args[2])) {
+			warmup = Integer.parseInt(args[2].trim());
+		}
+		final Random random = new Random(properties);
+		final byte[][] responses = new byte[NODES][];
+		for (int index = 0; index < NODES; index++) {
+			responses[index] = createNodeResponse(random, index, properties).getBytes(StandardCharsets.UTF_8);
+		}
+		LOG.info("Node responses: " + NODES + " | properties: " + properties + " | bytes: " + responses[0].length
+				+ " | iterations: " + iterations + " | warmup: " + warmup);
+
+		final MetadataFlattener flattener = new MetadataFlattener();
+		run("jsonObject", responses, iterations, warmup, (response, reportWriter) -> {
+			final JSONObject metadata = flattener.flatten(
+					readJSONObject(response).getJSONObject(AlfScriptConstants.ENTRY));
+			reportWriter.visit(metadata);
+			return metadata.length();
+		});
+		run("streaming", responses, iterations, warmup, (response, reportWriter) -> {
+			try (final JsonParser parser = createParser(response)) {
+				reportWriter.write(generator -> flattener.flatten(parser, generator));
+				return parser.getCurrentLocation().getByteOffset();
+			}
+		});
+		run("jsonObjectRead", responses, iterations, warmup, (response, reportWriter) ->
+				flattener.flatten(readJSONObject(response).getJSONObject(AlfScriptConstants.ENTRY)).length());
+		run("streamingRead", responses, iterations, warmup, (response, reportWriter) -> {
+			try (final JsonParser parser = createParser(response)) {
+				return flattener.flatten(parser).length();
+			}
+		});
+	}
+
+	/**
+	 * Read the response as a json object.
+	 *
+	 * @param response the response
+	 * @return the JSON object
+	 */
+	private static JSONObject readJSONObject(final byte[] response) {
+		return JSONUtils.readJSONObject(new ByteArrayInputStream(response));
+	}
+
+	/**
+	 * Create a parser at the start of the node entry of the response.
+	 *
+	 * @param response the response
+	 * @return the parser
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static JsonParser createParser(final byte[] response) throws IOException {
+		final InputStream inStream = new ByteArrayInputStream(response);
+		final JsonParser parser = JSONUtils.createParser(inStream);
+		if (!JSONUtils.moveToObject(parser, AlfScriptConstants.ENTRY)) {
+			parser.close();
+			throw new IOException("No node entry in the response");
+		}
+		return parser;
+	}
+
+	/**
+	 * Warm up and then measure the mode, writing to a temporary NDJSON report.
+	 *
+	 * @param name the name
+	 * @param responses the responses
+	 * @param iterations the iterations
+	 * @param warmup the warmup iterations
+	 * @param mode the mode
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void run(final String name, final byte[][] responses, final int iterations, final int warmup,
+			final Mode mode) throws IOException {
+		final File reportFile = File.createTempFile("metadataFlatten-" + name + "-", JSONReportWriter.NDJSON_EXTN);
+		long blackhole = 0;
+		try (final JSONReportWriter reportWriter = new JSONReportWriter(reportFile)) {
+			for (int each = 0; each < warmup; each++) {
+				blackhole += mode.run(responses[each % NODES], reportWriter);
+			}
+			System.gc();
+			final long allocatedBefore = getAllocatedBytes();
+			final long started = System.nanoTime();
+			for (int each = 0; each < iterations; each++) {
+				blackhole += mode.run(responses[each % NODES], reportWriter);
+			}
+			final long elapsed = System.nanoTime() - started;
+			final long allocated = getAllocatedBytes() - allocatedBefore;
+			reportWriter.finish();
+			LOG.info(String.format("Mode: %-14s | %,8.0f ns/node | %,8d bytes allocated/node | nodes/s: %,.0f | report: %s (%d)",
+					name, elapsed / (double) iterations, allocated / iterations, iterations * 1e9 / elapsed,
+					FileUtils.byteCountToDisplaySize(reportFile.length()), blackhole));
+		} finally {
+			FileUtils.deleteQuietly(reportFile);
+		}
+	}
+
+	/**
+	 * Gets the bytes allocated by the current thread so far, -1 when the JVM does not tell.
+	 *
+	 * @return the allocated bytes
+	 */
+	private static long getAllocatedBytes() {
+		final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * Create a node response in the shape of the v1 node API, with a mix of single and multi valued
+	 * text, date, number and boolean properties.
+	 *
+	 * @param random the random
+	 * @param index the index of the node
+	 * @param properties the number of properties
+	 * @return the node response
+	 */
+	private static String createNodeResponse(final Random random, final int index, final int properties) {
+		final JSONObject props = new JSONObject();
+		props.put("cm:title", "Quarterly report " + index);
+		props.put("cm:description", "Financial results and forecasts of the business unit for the quarter " + index);
+		props.put("cm:versionLabel", "1." + random.nextInt(10));
+		props.put("cm:taggable", new JSONArray().put("workspace://SpacesStore/" + UUID.randomUUID())
+				.put("workspace://SpacesStore/" + UUID.randomUUID()));
+		for (int each = props.length(); each < properties; each++) {
+			final String name = "acme:property" + each;
+			switch (each % 9) {
+			case 0:
+			case 1:
+				props.put(name, "Value " + random.nextInt(100000) + " of " + name);
+				break;
+			case 2:
+				props.put(name, String.format("2023-%02d-%02dT%02d:%02d:00.000+0000", 1 + random.nextInt(12),
+						1 + random.nextInt(28), random.nextInt(24), random.nextInt(60)));
+				break;
+			case 3:
+				props.put(name, random.nextInt(1000000));
+				break;
+			case 4:
+				props.put(name, random.nextDouble() * 1000);
+				break;
+			case 5:
+				props.put(name, random.nextBoolean());
+				break;
+			default:
+				final JSONArray values = new JSONArray();
+				final int count = 2 + random.nextInt(6);
+				for (int value = 0; value < count; value++) {
+					values.put(each % 9 == 8 ? (Object) random.nextInt(1000) : "item-" + random.nextInt(10000));
+				}
+				props.put(name, values);
+			}
+		}
+		final JSONArray aspects = new JSONArray();
+		for (final String eachAspect : new String[] { "cm:titled", "cm:auditable", "sys:referenceable",
+				"sys:localized", "cm:author", "cm:versionable", "cm:taggable", "rn:renditioned", "exif:exif",
+				"cm:generalclassifiable", "acme:document", "acme:retention" }) {
+			aspects.put(eachAspect);
+		}
+		final JSONObject user = new JSONObject().put("id", "user" + index).put("displayName", "First Last");
+		final JSONObject entry = new JSONObject()
+				.put("id", UUID.randomUUID().toString())
+				.put("name", "report-" + index + ".pdf")
+				.put("nodeType", "acme:document")
+				.put("isFolder", false)
+				.put("isFile", true)
+				.put("createdAt", "2023-01-01T10:00:00.000+0000")
+				.put("modifiedAt", "2023-06-01T10:00:00.000+0000")
+				.put("createdByUser", user)
+				.put("modifiedByUser", user)
+				.put("parentId", UUID.randomUUID().toString())
+				.put("content", new JSONObject().put("mimeType", "application/pdf").put("mimeTypeName", "Adobe PDF Document")
+						.put("sizeInBytes", random.nextInt(10000000)).put("encoding", "UTF-8"))
+				.put(AlfScriptConstants.ASPECTS, aspects)
+				.put(AlfScriptConstants.PROPS, props);
+		return new JSONObject().put(AlfScriptConstants.ENTRY, entry).toString();
+	}
+}
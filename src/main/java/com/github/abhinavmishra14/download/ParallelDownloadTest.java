@@ -20,13 +20,7 @@ package com.github.abhinavmishra14.download;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
@@ -37,19 +31,25 @@ import org.json.JSONException;
 
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
 import com.github.abhinavmishra14.alfscript.utils.DirectoryTraverser;
+import com.github.abhinavmishra14.alfscript.utils.JobJournal;
+import com.github.abhinavmishra14.download.service.DownloadPipeline;
 import com.github.abhinavmishra14.download.service.SNDService;
 import com.github.abhinavmishra14.download.service.impl.SNDServiceImpl;
 import com.github.abhinavmishra14.exception.AlfScriptException;
 import com.github.abhinavmishra14.json.utils.JSONUtils;
 
 /**
- * The Class ParallelDownloadTest.
+ * The Class ParallelDownloadTest.<br>
+ * Downloads the files of the input json mapping (file name to node ref) concurrently, see {@link DownloadPipeline}.
  */
 public class ParallelDownloadTest {
 		
 	/** The Constant LOG. */
 	private final static Log LOG = LogFactory.getLog(ParallelDownloadTest.class);
 	
+	/** The Constant JOB_NAME. */
+	private static final String JOB_NAME = "ParallelDownloadTest";
+	
 	/**
 	 * The main method.
 	 *
@@ -129,7 +129,9 @@ public class ParallelDownloadTest {
 	}
 	
 	/**
-	 * Process download.
+	 * Process download.<br>
+	 * Input json is streamed into a {@link DownloadPipeline}, so only the queued entries are held in memory.
+	 * Files downloaded by a previous run are skipped when a {@link JobJournal} is kept.
 	 *
 	 * @param inputJson the input json
 	 * @param host the host
@@ -142,37 +144,15 @@ public class ParallelDownloadTest {
 			final String downloadPath) {
 		LOG.info("Downloading files using input: "+inputJson.getAbsolutePath() +" from host: "+host+" at: "+downloadPath);
 		try (final FileInputStream fis = new FileInputStream(inputJson);) {
-			final Map<String, Object> jsonMap = JSONUtils.getMapFromJsonInputStream(fis);
-			if (jsonMap != null && !jsonMap.isEmpty()) {
-				final String authTicket = AlfScriptUtils.getTicket(host, userName, password);
-				final int loadSize = jsonMap.size();
-				LOG.info("Starting downloads for : ("+loadSize+") files..");
-				final ExecutorService exec = Executors.newFixedThreadPool(loadSize+1);
-				//creating a local final variable to pass it into submit method.
-				final String localHost = host; 
-				final String localDownloadPath = downloadPath;
-				final SNDService downloadServ = new SNDServiceImpl(localHost);
-				for (final Iterator<Entry<String, Object>> iterator = jsonMap.entrySet().iterator(); iterator.hasNext();) {
-					exec.submit(new Runnable() {
-						public void run() {
-							final Entry<String, Object> eachEntry = iterator.next();
-							final String fileName = eachEntry.getKey();
-							final String nodeRef = (String) eachEntry.getValue();
-							final boolean isDownloaded =
-									downloadServ.processDownloadRequest(localDownloadPath, authTicket, fileName, nodeRef);
-							if (isDownloaded) {
-								LOG.info(Thread.currentThread().getName()+"- File: "+fileName+" has been downloaded at: "+localDownloadPath);
-							}
-						}
-					});     					
-				}
-
-				exec.shutdown();
-				try {
-					exec.awaitTermination(1, TimeUnit.HOURS);
-				} catch (InterruptedException excp) {
-					LOG.debug("Thread interrupted: "+excp.getMessage());
-				}
+			final String authTicket = AlfScriptUtils.getTicket(host, userName, password);
+			final SNDService downloadServ = new SNDServiceImpl(host);
+			try (final JobJournal journal = JobJournal.open(JOB_NAME);
+					final DownloadPipeline pipeline = new DownloadPipeline(downloadServ, authTicket, downloadPath)) {
+				pipeline.setJournal(journal);
+				final long loadSize = JSONUtils.streamFields(fis, String.class,
+						eachEntry -> pipeline.submit(eachEntry.getKey(), eachEntry.getValue()));
+				LOG.info("Queued downloads for : ("+loadSize+") files..");
+				pipeline.awaitCompletion();
 			}
 		} catch (Exception excp) {
 			LOG.error("Unexpected error due to: "+excp.getMessage(), excp);
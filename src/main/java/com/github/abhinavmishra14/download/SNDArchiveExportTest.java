@@ -0,0 +1,146 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2023. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.download;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.ClientProtocolException;
+import org.json.JSONException;
+
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.download.service.ArchiveExport;
+import com.github.abhinavmishra14.download.service.SNDService;
+import com.github.abhinavmishra14.download.service.SearchCursor;
+import com.github.abhinavmishra14.download.service.impl.SNDServiceImpl;
+import com.github.abhinavmishra14.exception.AlfScriptException;
+
+/**
+ * The Class SNDArchiveExportTest.<br>
+ * Search the content based on query and then export the content and the metadata json of
+ * each hit into a single ZIP or TAR.GZ archive, see {@link ArchiveExport}.
+ */
+public class SNDArchiveExportTest {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(SNDArchiveExportTest.class);
+	
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments
+	 * @throws IOException 
+	 * @throws AlfScriptException 
+	 * @throws ClientProtocolException 
+	 * @throws JSONException 
+	 */
+	public static void main(String[] args)
+			throws JSONException, ClientProtocolException, AlfScriptException, IOException {
+		String host = StringUtils.EMPTY;
+		// Get the host
+		if (args.length >= 1 && StringUtils.isNotBlank(args[0])) {
+			host = args[0].trim();
+			if (StringUtils.isEmpty(host) || !host.contains("://")) {
+				throw new IllegalArgumentException("Please provide a valid host");
+			}
+		}
+
+		String userName = StringUtils.EMPTY;
+		// Get userName
+		if (args.length >= 2 && StringUtils.isNotBlank(args[1])) {
+			userName = args[1].trim();
+			if (StringUtils.isEmpty(userName)) {
+				throw new IllegalArgumentException("Please provide a valid userName");
+			}
+		}
+
+		String password = StringUtils.EMPTY;
+		// Get password
+		if (args.length >= 3 && StringUtils.isNotBlank(args[2])) {
+			password = args[2].trim();
+			if (StringUtils.isEmpty(password)) {
+				throw new IllegalArgumentException("Please provide a valid password");
+			}
+		}
+		
+		// e.g. /data/exports/legal-hold.zip or /data/exports/legal-hold.tar.gz
+		String archiveFile = StringUtils.EMPTY;
+		if (args.length >= 4 && StringUtils.isNotBlank(args[3])) {
+			archiveFile = args[3].trim();
+			if (StringUtils.isEmpty(archiveFile)) {
+				throw new IllegalArgumentException("Please provide a valid archiveFile");
+			}
+			archiveFile = FilenameUtils.separatorsToSystem(archiveFile);
+		}
+		
+		String searchQuery = StringUtils.EMPTY;
+		//Example: "PATH:'/app:company_home/st:sites/cm:test-site/cm:documentLibrary//*' AND TYPE:'cm:content'"
+		//Make sure to pass the query in "" in case there are spaces between AND/OR queries when passing from command line as shown in above example.
+		if (args.length >= 5 && StringUtils.isNotBlank(args[4])) {
+			searchQuery = args[4].trim();
+			if (StringUtils.isEmpty(searchQuery)) {
+				throw new IllegalArgumentException("Please provide a valid searchQuery");
+			}
+		}
+		
+		String maxItems = AlfScriptConstants.MAX_ITEMS;
+		if (args.length >= 6 && StringUtils.isNotBlank(args[5])) {
+			maxItems = args[5].trim();
+		}
+		
+		String skipCount = AlfScriptConstants.DEFAULT_SKIP_COUNT;
+		if (args.length >= 7 && StringUtils.isNotBlank(args[6])) {
+			skipCount = args[6].trim();
+		}
+		
+		// CREATED, pages by the created date instead of skip count for large results
+		SearchCursor.Keyset pageBy = null;
+		if (args.length >= 8 && StringUtils.isNotBlank(args[7])) {
+			pageBy = SearchCursor.Keyset.valueOf(args[7].trim().toUpperCase());
+		}
+		
+		if (StringUtils.isNotBlank(host) && StringUtils.isNotBlank(userName)
+				&& StringUtils.isNotBlank(password)
+				&& StringUtils.isNotBlank(archiveFile)
+				&& StringUtils.isNotBlank(searchQuery)) {
+			LOG.info("Searching and exporting metadata and content using searchQuery: "+searchQuery +" from host: "+host+" to: "+archiveFile);
+			final String alfTicket = AlfScriptUtils.getTicket(host, userName, password);
+			final SNDService sndServ = new SNDServiceImpl(host);
+			// Hits are fetched ahead while the archive is written in search order
+			try (final SearchCursor cursor = pageBy == null
+					? sndServ.openSearchCursor(alfTicket, searchQuery, Integer.parseInt(maxItems), Long.parseLong(skipCount))
+					: sndServ.openSearchCursor(alfTicket, searchQuery, Integer.parseInt(maxItems), pageBy);
+					final ArchiveExport export = new ArchiveExport(sndServ, alfTicket, new File(archiveFile))) {
+				while (cursor.hasNext()) {
+					export.add(cursor.next());
+				}
+				export.finish();
+				LOG.info("Search result entries: "+ cursor.getEntriesReturned());
+			}
+		} else {
+			throw new IllegalArgumentException(
+					"Please check if you have provided the parameters required for the SNDArchiveExportTest. \n SNDArchiveExportTest invocation command: java com.github.abhinavmishra14.download.SNDArchiveExportTest <host> <user> <password> <archiveFile> <searchQuery>");
+		}
+	}
+
+}
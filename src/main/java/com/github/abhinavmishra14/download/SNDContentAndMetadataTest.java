@@ -17,20 +17,23 @@
  */
 package com.github.abhinavmishra14.download;
 
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.client.ClientProtocolException;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.download.service.ContentCache;
 import com.github.abhinavmishra14.download.service.SNDService;
+import com.github.abhinavmishra14.download.service.SearchCursor;
 import com.github.abhinavmishra14.download.service.impl.SNDServiceImpl;
 import com.github.abhinavmishra14.exception.AlfScriptException;
 import com.github.abhinavmishra14.json.utils.JSONUtils;
@@ -112,6 +115,12 @@ public class SNDContentAndMetadataTest {
 			skipCount = args[6].trim();
 		}
 		
+		// CREATED, pages by the created date instead of skip count for large results
+		SearchCursor.Keyset pageBy = null;
+		if (args.length >= 8 && StringUtils.isNotBlank(args[7])) {
+			pageBy = SearchCursor.Keyset.valueOf(args[7].trim().toUpperCase());
+		}
+		
 		if (StringUtils.isNotBlank(host) && StringUtils.isNotBlank(userName)
 				&& StringUtils.isNotBlank(password)
 				&& StringUtils.isNotBlank(downloadLocation)
@@ -119,23 +128,28 @@ public class SNDContentAndMetadataTest {
 			LOG.info("Searching and downloading metadata and content using searchQuery: "+searchQuery +" from host: "+host+" at: "+downloadLocation);
 			final String alfTicket = AlfScriptUtils.getTicket(host, userName, password);
 			final SNDService sndServ = new SNDServiceImpl(host);
-			final JSONObject searchResult = sndServ.getSearchResult(alfTicket, searchQuery, maxItems, skipCount);
-			
-			final JSONObject listResult = searchResult.getJSONObject(AlfScriptConstants.LIST);
-			final JSONObject page = listResult.getJSONObject(AlfScriptConstants.PAGINATION);
-			LOG.info("Search result details: "+ page);
-			final JSONArray entries = listResult.getJSONArray(AlfScriptConstants.ENTRIES);
-			for (final Object eachEntry : entries) {
-				final JSONObject entryJson = (JSONObject) eachEntry;
-				final JSONObject entry = entryJson.getJSONObject(AlfScriptConstants.ENTRY);
-				final String nodeId = entry.getString(AlfScriptConstants.ID_NODE);
-				final String fileName = entry.getString(AlfScriptConstants.NAME);
-				final boolean isMetaDownloaded = sndServ.downloadMetadata(nodeId, downloadLocation,
-						StringUtils.substringBeforeLast(fileName, AlfScriptConstants.DOT) + JSONUtils.JSON_EXTN,
-						alfTicket);
-				LOG.info("Has metadata downloaded?: " + isMetaDownloaded);
-				final boolean isContentDownloaded = sndServ.processDownloadRequest(downloadLocation, alfTicket, fileName, nodeId);
-				LOG.info("Has content downloaded?: "+isContentDownloaded);
+			// All the pages are walked, the next page is fetched while the current one is downloaded
+			try (final SearchCursor cursor = pageBy == null
+					? sndServ.openSearchCursor(alfTicket, searchQuery, Integer.parseInt(maxItems), Long.parseLong(skipCount))
+					: sndServ.openSearchCursor(alfTicket, searchQuery, Integer.parseInt(maxItems), pageBy)) {
+				while (cursor.hasNext()) {
+					final JSONObject entry = cursor.next().getJSONObject(AlfScriptConstants.ENTRY);
+					final String nodeId = entry.getString(AlfScriptConstants.ID_NODE);
+					final String fileName = entry.getString(AlfScriptConstants.NAME);
+					final String metadataFileName = StringUtils.substringBeforeLast(fileName, AlfScriptConstants.DOT)
+							+ JSONUtils.JSON_EXTN;
+					final boolean isMetaDownloaded = sndServ.downloadMetadata(nodeId, downloadLocation,
+							metadataFileName, alfTicket);
+					LOG.info("Has metadata downloaded?: " + isMetaDownloaded);
+					// The content url to look the content up in the cache is read from the metadata just downloaded
+					final String contentUrl = isMetaDownloaded && ContentCache.getDefault() != null
+							? readContentUrl(AlfScriptUtils.getFileName(metadataFileName, downloadLocation))
+							: null;
+					final boolean isContentDownloaded = sndServ.processDownloadRequest(downloadLocation, alfTicket,
+							fileName, nodeId, contentUrl);
+					LOG.info("Has content downloaded?: "+isContentDownloaded);
+				}
+				LOG.info("Search result entries: "+ cursor.getEntriesReturned());
 			}
 		} else {
 			throw new IllegalArgumentException(
@@ -143,4 +157,16 @@ public class SNDContentAndMetadataTest {
 		}
 	}
 
+	/**
+	 * Read the content url from the metadata file.
+	 *
+	 * @param metadataFilePath the metadata file path
+	 * @return the content url, null if not found
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static String readContentUrl(final String metadataFilePath) throws IOException {
+		try (final InputStream inStream = new FileInputStream(metadataFilePath)) {
+			return ContentCache.getContentUrl(JSONUtils.readJSONObject(inStream).optJSONObject(AlfScriptConstants.PROPS));
+		}
+	}
 }
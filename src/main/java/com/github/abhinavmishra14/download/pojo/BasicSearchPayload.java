@@ -18,6 +18,7 @@
 package com.github.abhinavmishra14.download.pojo;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
@@ -33,7 +34,9 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonPropertyOrder({
     "query",
-    "paging"
+    "paging",
+    "sort",
+    "include"
 })
 public class BasicSearchPayload {
 
@@ -45,6 +48,14 @@ public class BasicSearchPayload {
     @JsonProperty("paging")
     private Paging paging;
     
+    /** The sort. */
+    @JsonProperty("sort")
+    private List<Sort> sort;
+    
+    /** The include. */
+    @JsonProperty("include")
+    private List<String> include;
+    
     /** The additional properties. */
     @JsonIgnore
     private Map<String, Object> additionalProperties = new LinkedHashMap<String, Object>();
@@ -89,6 +100,46 @@ public class BasicSearchPayload {
         this.paging = paging;
     }
 
+    /**
+     * Gets the sort.
+     *
+     * @return the sort
+     */
+    @JsonProperty("sort")
+    public List<Sort> getSort() {
+        return sort;
+    }
+
+    /**
+     * Sets the sort.
+     *
+     * @param sort the new sort
+     */
+    @JsonProperty("sort")
+    public void setSort(List<Sort> sort) {
+        this.sort = sort;
+    }
+
+    /**
+     * Gets the include.
+     *
+     * @return the include
+     */
+    @JsonProperty("include")
+    public List<String> getInclude() {
+        return include;
+    }
+
+    /**
+     * Sets the include.
+     *
+     * @param include the new include
+     */
+    @JsonProperty("include")
+    public void setInclude(List<String> include) {
+        this.include = include;
+    }
+
     /**
      * Gets the additional properties.
      *
@@ -127,6 +178,14 @@ public class BasicSearchPayload {
         sb.append('=');
         sb.append(((this.paging == null)?"<null>":this.paging));
         sb.append(',');
+        sb.append("sort");
+        sb.append('=');
+        sb.append(((this.sort == null)?"<null>":this.sort));
+        sb.append(',');
+        sb.append("include");
+        sb.append('=');
+        sb.append(((this.include == null)?"<null>":this.include));
+        sb.append(',');
         sb.append("additionalProperties");
         sb.append('=');
         sb.append(((this.additionalProperties == null)?"<null>":this.additionalProperties));
@@ -150,6 +209,8 @@ public class BasicSearchPayload {
         result = ((result* 31)+((this.paging == null)? 0 :this.paging.hashCode()));
         result = ((result* 31)+((this.additionalProperties == null)? 0 :this.additionalProperties.hashCode()));
         result = ((result* 31)+((this.query == null)? 0 :this.query.hashCode()));
+        result = ((result* 31)+((this.sort == null)? 0 :this.sort.hashCode()));
+        result = ((result* 31)+((this.include == null)? 0 :this.include.hashCode()));
         return result;
     }
 
@@ -168,7 +229,7 @@ public class BasicSearchPayload {
             return false;
         }
         BasicSearchPayload rhs = ((BasicSearchPayload) other);
-        return ((((this.paging == rhs.paging)||((this.paging!= null)&&this.paging.equals(rhs.paging)))&&((this.additionalProperties == rhs.additionalProperties)||((this.additionalProperties!= null)&&this.additionalProperties.equals(rhs.additionalProperties))))&&((this.query == rhs.query)||((this.query!= null)&&this.query.equals(rhs.query))));
+        return ((((((this.paging == rhs.paging)||((this.paging!= null)&&this.paging.equals(rhs.paging)))&&((this.additionalProperties == rhs.additionalProperties)||((this.additionalProperties!= null)&&this.additionalProperties.equals(rhs.additionalProperties))))&&((this.query == rhs.query)||((this.query!= null)&&this.query.equals(rhs.query))))&&((this.sort == rhs.sort)||((this.sort!= null)&&this.sort.equals(rhs.sort))))&&((this.include == rhs.include)||((this.include!= null)&&this.include.equals(rhs.include))));
     }
 
 }
@@ -0,0 +1,204 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.download.pojo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * The Class Sort.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({
+    "type",
+    "field",
+    "ascending"
+})
+public class Sort {
+
+    /** The type. */
+    @JsonProperty("type")
+    private String type;
+    
+    /** The field. */
+    @JsonProperty("field")
+    private String field;
+    
+    /** The ascending. */
+    @JsonProperty("ascending")
+    private Boolean ascending;
+    
+    /** The additional properties. */
+    @JsonIgnore
+    private Map<String, Object> additionalProperties = new LinkedHashMap<String, Object>();
+
+    /**
+     * Gets the type.
+     *
+     * @return the type
+     */
+    @JsonProperty("type")
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Sets the type.
+     *
+     * @param type the new type
+     */
+    @JsonProperty("type")
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * Gets the field.
+     *
+     * @return the field
+     */
+    @JsonProperty("field")
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * Sets the field.
+     *
+     * @param field the new field
+     */
+    @JsonProperty("field")
+    public void setField(String field) {
+        this.field = field;
+    }
+
+    /**
+     * Gets the ascending.
+     *
+     * @return the ascending
+     */
+    @JsonProperty("ascending")
+    public Boolean getAscending() {
+        return ascending;
+    }
+
+    /**
+     * Sets the ascending.
+     *
+     * @param ascending the new ascending
+     */
+    @JsonProperty("ascending")
+    public void setAscending(Boolean ascending) {
+        this.ascending = ascending;
+    }
+
+    /**
+     * Gets the additional properties.
+     *
+     * @return the additional properties
+     */
+    @JsonAnyGetter
+    public Map<String, Object> getAdditionalProperties() {
+        return this.additionalProperties;
+    }
+
+    /**
+     * Sets the additional property.
+     *
+     * @param name the name
+     * @param value the value
+     */
+    @JsonAnySetter
+    public void setAdditionalProperty(String name, Object value) {
+        this.additionalProperties.put(name, value);
+    }
+
+    /**
+     * To string.
+     *
+     * @return the string
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Sort.class.getName()).append('@').append(Integer.toHexString(System.identityHashCode(this))).append('[');
+        sb.append("type");
+        sb.append('=');
+        sb.append(((this.type == null)?"<null>":this.type));
+        sb.append(',');
+        sb.append("field");
+        sb.append('=');
+        sb.append(((this.field == null)?"<null>":this.field));
+        sb.append(',');
+        sb.append("ascending");
+        sb.append('=');
+        sb.append(((this.ascending == null)?"<null>":this.ascending));
+        sb.append(',');
+        sb.append("additionalProperties");
+        sb.append('=');
+        sb.append(((this.additionalProperties == null)?"<null>":this.additionalProperties));
+        sb.append(',');
+        if (sb.charAt((sb.length()- 1)) == ',') {
+            sb.setCharAt((sb.length()- 1), ']');
+        } else {
+            sb.append(']');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Hash code.
+     *
+     * @return the int
+     */
+    @Override
+    public int hashCode() {
+        int result = 1;
+        result = ((result* 31)+((this.type == null)? 0 :this.type.hashCode()));
+        result = ((result* 31)+((this.field == null)? 0 :this.field.hashCode()));
+        result = ((result* 31)+((this.ascending == null)? 0 :this.ascending.hashCode()));
+        result = ((result* 31)+((this.additionalProperties == null)? 0 :this.additionalProperties.hashCode()));
+        return result;
+    }
+
+    /**
+     * Equals.
+     *
+     * @param other the other
+     * @return true, if successful
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+        if ((other instanceof Sort) == false) {
+            return false;
+        }
+        Sort rhs = ((Sort) other);
+        return (((((this.type == rhs.type)||((this.type!= null)&&this.type.equals(rhs.type)))&&((this.field == rhs.field)||((this.field!= null)&&this.field.equals(rhs.field))))&&((this.ascending == rhs.ascending)||((this.ascending!= null)&&this.ascending.equals(rhs.ascending))))&&((this.additionalProperties == rhs.additionalProperties)||((this.additionalProperties!= null)&&this.additionalProperties.equals(rhs.additionalProperties))));
+    }
+
+}
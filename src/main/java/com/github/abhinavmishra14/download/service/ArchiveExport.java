@@ -0,0 +1,537 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2023. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.download.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONObject;
+
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.exception.AlfScriptException;
+import com.github.abhinavmishra14.json.utils.JSONUtils;
+
+/**
+ * The Class ArchiveExport.<br>
+ * Exports the content and the metadata json of search hits into a single ZIP or TAR.GZ archive,
+ * instead of a file and a json sidecar per node. The content of up to <code>alfscript.export.window</code>
+ * hits is fetched ahead by <code>alfscript.export.threads</code> threads into memory, while the
+ * caller writes the hits into the archive in search order. Content larger than
+ * <code>alfscript.export.bufferBytes</code> is not fetched ahead, it is streamed straight into the
+ * archive by the writer once its turn comes. Nothing is staged on disk but the archive itself,
+ * written as <code>&lt;archive&gt;.part</code> and renamed once complete.<br>
+ * Hits whose content can not be read are skipped and counted as failed. A content broken midway
+ * while streamed into the archive fails the export, as the entry can not be taken back.
+ */
+public class ArchiveExport implements Closeable {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(ArchiveExport.class);
+
+	/** The Constant PROP_THREADS. */
+	public static final String PROP_THREADS = "alfscript.export.threads";
+
+	/** The Constant PROP_WINDOW. */
+	public static final String PROP_WINDOW = "alfscript.export.window";
+
+	/** The Constant PROP_BUFFER_BYTES. */
+	public static final String PROP_BUFFER_BYTES = "alfscript.export.bufferBytes";
+
+	/** The Constant DEFAULT_THREADS. */
+	private static final int DEFAULT_THREADS = 4;
+
+	/** The Constant DEFAULT_WINDOW. */
+	private static final int DEFAULT_WINDOW = 64;
+
+	/** The Constant DEFAULT_BUFFER_BYTES. */
+	private static final long DEFAULT_BUFFER_BYTES = FileUtils.ONE_MB;
+
+	/** The Constant WRITE_BUFFER_SIZE. */
+	private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+
+	/** The Constant MODIFIED_AT. */
+	private static final String MODIFIED_AT = "modifiedAt";
+
+	/** The Constant CONTENT. */
+	private static final String CONTENT = "content";
+
+	/** The Constant SIZE_IN_BYTES. */
+	private static final String SIZE_IN_BYTES = "sizeInBytes";
+
+	/**
+	 * The Enum Format.
+	 */
+	public enum Format {
+
+		/** The zip. */
+		ZIP,
+
+		/** The tar gz. */
+		TAR_GZ;
+
+		/**
+		 * Gets the format of the archive file by its extension, .zip or .tar.gz/.tgz.
+		 *
+		 * @param archiveFile the archive file
+		 * @return the format
+		 * @throws AlfScriptException if the extension is not supported
+		 */
+		public static Format of(final File archiveFile) {
+			final String name = archiveFile.getName().toLowerCase();
+			if (name.endsWith(".zip")) {
+				return ZIP;
+			}
+			if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+				return TAR_GZ;
+			}
+			throw new AlfScriptException("Unsupported archive: " + archiveFile + ", use .zip, .tar.gz or .tgz");
+		}
+	}
+
+	/** The service. */
+	private final SNDService service;
+
+	/** The auth ticket. */
+	private final String authTicket;
+
+	/** The archive file. */
+	private final Path archiveFile;
+
+	/** The part file, the archive while being written. */
+	private final Path partFile;
+
+	/** The format. */
+	private final Format format;
+
+	/** The zip stream, null unless ZIP. */
+	private final ZipArchiveOutputStream zipStream;
+
+	/** The tar stream, null unless TAR_GZ. */
+	private final TarArchiveOutputStream tarStream;
+
+	/** The fetcher. */
+	private final ExecutorService fetcher;
+
+	/** The window size. */
+	private final int window;
+
+	/** The buffer bytes. */
+	private final long bufferBytes;
+
+	/** The hits fetched or being fetched, in search order. */
+	private final ArrayDeque<CompletableFuture<Hit>> pending = new ArrayDeque<CompletableFuture<Hit>>();
+
+	/** The entry names written. */
+	private final Set<String> entryNames = new HashSet<String>();
+
+	/** The hits exported. */
+	private long exported;
+
+	/** The hits failed. */
+	private long failed;
+
+	/** The content bytes written. */
+	private long bytes;
+
+	/** The completed. */
+	private boolean completed;
+
+	/** The started nanos. */
+	private final long started = System.nanoTime();
+
+	/**
+	 * The Constructor, using the configured threads, window and buffer size.
+	 *
+	 * @param service the service
+	 * @param authTicket the auth ticket
+	 * @param archiveFile the archive file, .zip, .tar.gz or .tgz
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public ArchiveExport(final SNDService service, final String authTicket, final File archiveFile) throws IOException {
+		super();
+		this.service = service;
+		this.authTicket = authTicket;
+		this.format = Format.of(archiveFile);
+		this.archiveFile = archiveFile.toPath().toAbsolutePath();
+		this.partFile = this.archiveFile.resolveSibling(this.archiveFile.getFileName() + AlfScriptUtils.PART_EXTN);
+		this.window = Math.max(1, Integer.getInteger(PROP_WINDOW, DEFAULT_WINDOW));
+		this.bufferBytes = Long.getLong(PROP_BUFFER_BYTES, DEFAULT_BUFFER_BYTES);
+		Files.createDirectories(this.partFile.getParent());
+		if (format == Format.ZIP) {
+			// Seekable, so entry sizes and crc are written in the local headers
+			this.zipStream = new ZipArchiveOutputStream(partFile.toFile());
+			this.tarStream = null;
+		} else {
+			this.zipStream = null;
+			this.tarStream = new TarArchiveOutputStream(new GzipCompressorOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(partFile), WRITE_BUFFER_SIZE)),
+					StandardCharsets.UTF_8.name());
+			tarStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+			tarStream.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+		}
+		final int threads = Math.max(1, Integer.getInteger(PROP_THREADS, DEFAULT_THREADS));
+		final AtomicInteger threadCount = new AtomicInteger();
+		this.fetcher = Executors.newFixedThreadPool(threads, runnable -> {
+			final Thread thread = new Thread(runnable, "export-fetch-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		LOG.info("Exporting to: " + this.archiveFile + ", threads: " + threads + ", window: " + window);
+	}
+
+	/**
+	 * Add the search hit to the export, blocks while the window is full, writing the oldest hit meanwhile.
+	 *
+	 * @param entryJson the search result entry, i.e. <code>{"entry": {...}}</code>
+	 * @throws IOException if the archive could not be written
+	 */
+	public void add(final JSONObject entryJson) throws IOException {
+		final JSONObject entry = entryJson.getJSONObject(AlfScriptConstants.ENTRY);
+		final JSONObject content = entry.optJSONObject(CONTENT);
+		if (content == null) {
+			// Folders and other nodes without content
+			return;
+		}
+		final Hit hit = new Hit(entry.getString(AlfScriptConstants.ID_NODE), entry.getString(AlfScriptConstants.NAME),
+				content.optLong(SIZE_IN_BYTES, -1),
+				entry.has(MODIFIED_AT) ? SearchCursor.parseDate(entry.getString(MODIFIED_AT)) : System.currentTimeMillis());
+		if (hit.size < 0) {
+			// Entries are sized upfront
+			LOG.warn("Skipping: " + hit + ", content size is not returned by the search");
+			failed++;
+			return;
+		}
+		pending.add(CompletableFuture.supplyAsync(() -> hit.fetch(hit.size > bufferBytes), fetcher));
+		while (pending.size() > window) {
+			write(join(pending.poll()));
+		}
+	}
+
+	/**
+	 * Write the hits still pending and finish the archive, renaming it in place.
+	 *
+	 * @throws IOException if the archive could not be written
+	 */
+	public void finish() throws IOException {
+		while (!pending.isEmpty()) {
+			write(join(pending.poll()));
+		}
+		if (zipStream != null) {
+			zipStream.close();
+		} else {
+			tarStream.close();
+		}
+		AlfScriptUtils.moveAtomically(partFile, archiveFile);
+		completed = true;
+		LOG.info("Export completed: " + this);
+	}
+
+	/**
+	 * Wait for the hit to be fetched.
+	 *
+	 * @param future the future
+	 * @return the hit
+	 */
+	private static Hit join(final CompletableFuture<Hit> future) {
+		try {
+			return future.join();
+		} catch (CompletionException excp) {
+			throw excp.getCause() instanceof RuntimeException ? (RuntimeException) excp.getCause() : excp;
+		}
+	}
+
+	/**
+	 * Write the hit into the archive, the metadata json after the content.
+	 *
+	 * @param hit the hit
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void write(final Hit hit) throws IOException {
+		if (hit.content == null && !hit.isStreamed) {
+			failed++;
+			return;
+		}
+		final String name = getEntryName(hit.nodeId, hit.fileName);
+		if (hit.isStreamed) {
+			if (!writeStreamed(hit, name)) {
+				entryNames.remove(name);
+				failed++;
+				return;
+			}
+		} else {
+			putEntry(name, hit.content.size(), hit.modifiedAt);
+			hit.content.writeTo(getEntryStream());
+			closeEntry();
+			bytes += hit.content.size();
+		}
+		if (hit.metadata != null) {
+			putEntry(getEntryName(hit.nodeId, StringUtils.substringBeforeLast(name, AlfScriptConstants.DOT)
+					+ JSONUtils.JSON_EXTN), hit.metadata.size(), hit.modifiedAt);
+			hit.metadata.writeTo(getEntryStream());
+			closeEntry();
+		}
+		exported++;
+	}
+
+	/**
+	 * Stream the content of the hit into the archive. The entry is started with the first byte of
+	 * the content, so a hit deleted or no longer readable since the search is skipped.
+	 *
+	 * @param hit the hit
+	 * @param name the entry name
+	 * @return true, if written; false if the content was not returned
+	 * @throws IOException if the content broke midway, the archive can not be completed then
+	 */
+	private boolean writeStreamed(final Hit hit, final String name) throws IOException {
+		LOG.debug("Streaming " + FileUtils.byteCountToDisplaySize(hit.size) + " into the archive: " + name);
+		// Not closed, the archive stays open for the next entries
+		final CountingOutputStream counter = new CountingOutputStream(getEntryStream()) {
+			@Override
+			protected synchronized void beforeWrite(final int length) {
+				if (getByteCount() == 0 && length > 0) {
+					try {
+						putEntry(name, hit.size, hit.modifiedAt);
+					} catch (IOException excp) {
+						throw new AlfScriptException("Failed to start the archive entry: " + name, excp);
+					}
+				}
+				super.beforeWrite(length);
+			}
+		};
+		final boolean isWritten;
+		try {
+			isWritten = service.writeContent(hit.nodeId, hit.fileName, authTicket, counter);
+		} catch (IOException excp) {
+			if (counter.getByteCount() == 0) {
+				LOG.warn("Skipping: " + hit + ", content could not be read due to: " + excp);
+				return false;
+			}
+			throw new AlfScriptException("Failed to stream the content of: " + hit + " after "
+					+ counter.getByteCount() + " bytes, the archive can not be completed", excp);
+		}
+		if (counter.getByteCount() == 0) {
+			LOG.warn("Skipping: " + hit + ", content was " + (isWritten ? "empty" : "not returned"));
+			return false;
+		}
+		if (!isWritten || counter.getByteCount() != hit.size) {
+			throw new AlfScriptException("Content of: " + hit + " was " + counter.getByteCount() + " bytes instead of "
+					+ hit.size + " while streamed into the archive, the archive can not be completed");
+		}
+		closeEntry();
+		bytes += counter.getByteCount();
+		return true;
+	}
+
+	/**
+	 * Gets the entry name, the given name unless another entry had the same name, in which case it
+	 * is put in a directory named by the node id.
+	 *
+	 * @param nodeId the node id
+	 * @param name the name
+	 * @return the entry name
+	 */
+	private String getEntryName(final String nodeId, final String name) {
+		String uniqueName = name;
+		while (!entryNames.add(uniqueName)) {
+			uniqueName = nodeId + "/" + uniqueName;
+		}
+		return uniqueName;
+	}
+
+	/**
+	 * Start an archive entry.
+	 *
+	 * @param name the name
+	 * @param size the size
+	 * @param modifiedAt the modified date in epoch millis
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void putEntry(final String name, final long size, final long modifiedAt) throws IOException {
+		if (zipStream != null) {
+			final ZipArchiveEntry entry = new ZipArchiveEntry(name);
+			entry.setSize(size);
+			entry.setTime(modifiedAt);
+			zipStream.putArchiveEntry(entry);
+		} else {
+			final TarArchiveEntry entry = new TarArchiveEntry(name);
+			entry.setSize(size);
+			entry.setModTime(new Date(modifiedAt));
+			tarStream.putArchiveEntry(entry);
+		}
+	}
+
+	/**
+	 * Gets the stream the current entry is written to.
+	 *
+	 * @return the entry stream
+	 */
+	private OutputStream getEntryStream() {
+		return zipStream != null ? zipStream : tarStream;
+	}
+
+	/**
+	 * Close the current entry.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void closeEntry() throws IOException {
+		if (zipStream != null) {
+			zipStream.closeArchiveEntry();
+		} else {
+			tarStream.closeArchiveEntry();
+		}
+	}
+
+	/**
+	 * Stop the fetches, an archive not finished is deleted.
+	 */
+	@Override
+	public void close() {
+		fetcher.shutdownNow();
+		if (!completed) {
+			try {
+				if (zipStream != null) {
+					zipStream.close();
+				} else {
+					tarStream.close();
+				}
+			} catch (IOException | RuntimeException excp) {
+				LOG.debug("Failed to close the incomplete archive: " + partFile, excp);
+			}
+			FileUtils.deleteQuietly(partFile.toFile());
+			LOG.warn("Export did not complete, deleted: " + partFile + ", " + this);
+		}
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		final double seconds = Math.max(1, System.nanoTime() - started) / 1e9;
+		return "format: " + format + ", exported: " + exported + ", failed: " + failed + ", bytes: "
+				+ FileUtils.byteCountToDisplaySize(bytes) + ", time: "
+				+ String.format("%.1fs, throughput: %.2f MB/s", seconds, bytes / (double) FileUtils.ONE_MB / seconds);
+	}
+
+	/**
+	 * The Class Hit. A search hit and what was fetched of it.
+	 */
+	private class Hit {
+
+		/** The node id. */
+		private final String nodeId;
+
+		/** The file name. */
+		private final String fileName;
+
+		/** The content size from the search entry, -1 if unknown. */
+		private final long size;
+
+		/** The modified date in epoch millis. */
+		private final long modifiedAt;
+
+		/** The content, null if not fetched. */
+		private ByteArrayOutputStream content;
+
+		/** The metadata, null if not fetched. */
+		private ByteArrayOutputStream metadata;
+
+		/** True if the content is streamed into the archive by the writer instead of fetched ahead. */
+		private boolean isStreamed;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param nodeId the node id
+		 * @param fileName the file name
+		 * @param size the size
+		 * @param modifiedAt the modified at
+		 */
+		Hit(final String nodeId, final String fileName, final long size, final long modifiedAt) {
+			this.nodeId = nodeId;
+			this.fileName = fileName;
+			this.size = size;
+			this.modifiedAt = modifiedAt;
+		}
+
+		/**
+		 * Fetch the metadata, and the content unless it is to be streamed by the writer.
+		 *
+		 * @param toStream true to leave the content to the writer
+		 * @return this hit
+		 */
+		Hit fetch(final boolean toStream) {
+			try {
+				final ByteArrayOutputStream metadataBuffer = new ByteArrayOutputStream();
+				metadata = service.writeMetadata(nodeId, authTicket, metadataBuffer) ? metadataBuffer : null;
+				if (toStream) {
+					isStreamed = true;
+					return this;
+				}
+				final ByteArrayOutputStream contentBuffer = new ByteArrayOutputStream((int) Math.max(32, size));
+				content = service.writeContent(nodeId, fileName, authTicket, contentBuffer) ? contentBuffer : null;
+			} catch (IOException | RuntimeException excp) {
+				LOG.error("Failed to fetch: " + this, excp);
+			}
+			if (content == null) {
+				LOG.warn("Skipping: " + this + ", content could not be fetched");
+			}
+			return this;
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 */
+		@Override
+		public String toString() {
+			return fileName + " (" + nodeId + ")";
+		}
+	}
+}
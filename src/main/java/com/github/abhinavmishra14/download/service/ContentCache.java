@@ -0,0 +1,403 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2023. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.download.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONObject;
+
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.exception.AlfScriptException;
+import com.google.common.hash.Hashing;
+
+/**
+ * The Class ContentCache.<br>
+ * Local content-addressable cache of downloaded content, keyed by the content url of the node
+ * (e.g. <code>store://2020/1/1/0/0/uuid.bin</code>). Versions, copies and archived nodes share the
+ * content url of the content they were created from, and a content url is never rewritten by the
+ * repository, so content downloaded once for a url is served from the cache for all the other
+ * nodes referencing it. Concurrent downloads of the same url are coalesced, the first one fetches
+ * and the others wait for it.<br>
+ * Files are hard linked from and into the cache (copied where the file system does not support
+ * links, or with <code>-Dalfscript.cache.hardLinks=false</code>). The cache is capped at
+ * <code>alfscript.cache.maxBytes</code>, the least recently used content is evicted first (after
+ * a restart, the content cached first). Enabled
+ * with <code>-Dalfscript.cache.dir=/data/content-cache</code>.
+ */
+public final class ContentCache {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(ContentCache.class);
+
+	/** The Constant PROP_DIR. */
+	public static final String PROP_DIR = "alfscript.cache.dir";
+
+	/** The Constant PROP_MAX_BYTES. */
+	public static final String PROP_MAX_BYTES = "alfscript.cache.maxBytes";
+
+	/** The Constant PROP_HARD_LINKS. */
+	public static final String PROP_HARD_LINKS = "alfscript.cache.hardLinks";
+
+	/** The Constant DEFAULT_MAX_BYTES. */
+	private static final long DEFAULT_MAX_BYTES = 10 * FileUtils.ONE_GB;
+
+	/** The Constant CONTENT_PROPS. Content property as returned by the metadata web script, with short or full qnames. */
+	private static final String[] CONTENT_PROPS = { "cm:content", "{http://www.alfresco.org/model/content/1.0}content" };
+
+	/** The Constant CONTENT_URL. Content url within the content property, e.g. contentUrl=store://...|mimetype=... */
+	private static final Pattern CONTENT_URL = Pattern.compile("contentUrl=([^|]+)");
+
+	/** The Constant CONTENT_EXTN. */
+	private static final String CONTENT_EXTN = ".bin";
+
+	/** The cache directory. */
+	private final Path dir;
+
+	/** The max bytes. */
+	private final long maxBytes;
+
+	/** The hard links. */
+	private final boolean hardLinks;
+
+	/** The cached content sizes by key, in least recently used order, guarded by this. */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+	/** The bytes cached, guarded by this. */
+	private long cachedBytes;
+
+	/** The downloads in flight by key, completed once the content is cached or the download failed. */
+	private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<String, CompletableFuture<Void>>();
+
+	/** The hits. */
+	private final AtomicLong hits = new AtomicLong();
+
+	/** The misses. */
+	private final AtomicLong misses = new AtomicLong();
+
+	/** The bytes served from the cache. */
+	private final AtomicLong bytesSaved = new AtomicLong();
+
+	/** The evictions. */
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * The Interface Fetcher. Downloads the content to the given file.
+	 */
+	@FunctionalInterface
+	public interface Fetcher {
+
+		/**
+		 * Download the content to the file.
+		 *
+		 * @param target the target
+		 * @return the size of the content
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		long fetch(File target) throws IOException;
+	}
+
+	/**
+	 * The Class Holder. Opens the cache configured via system properties on first use.
+	 */
+	private static final class Holder {
+
+		/** The Constant INSTANCE. Null if no cache directory is set. */
+		private static final ContentCache INSTANCE = open();
+
+		/**
+		 * Open the configured cache.
+		 *
+		 * @return the content cache, null if no cache directory is set
+		 */
+		private static ContentCache open() {
+			final String dir = System.getProperty(PROP_DIR);
+			if (StringUtils.isBlank(dir)) {
+				return null;
+			}
+			try {
+				return new ContentCache(Paths.get(dir.trim()), Long.getLong(PROP_MAX_BYTES, DEFAULT_MAX_BYTES),
+						Boolean.parseBoolean(System.getProperty(PROP_HARD_LINKS, Boolean.TRUE.toString())));
+			} catch (IOException excp) {
+				throw new AlfScriptException("Failed to open the content cache: " + dir, excp);
+			}
+		}
+	}
+
+	/**
+	 * Gets the cache configured via <code>alfscript.cache.dir</code>, shared by all the downloads of the JVM.
+	 *
+	 * @return the content cache, null if not enabled
+	 */
+	public static ContentCache getDefault() {
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * Gets the content url from the properties of a node, e.g. those of a search hit or of the
+	 * metadata already downloaded, so the cache key is known without a request.
+	 *
+	 * @param properties the properties of the node, can be null
+	 * @return the content url, null if the properties do not include the content property
+	 */
+	public static String getContentUrl(final JSONObject properties) {
+		if (properties != null) {
+			for (final String eachContentProp : CONTENT_PROPS) {
+				final Matcher matcher = CONTENT_URL.matcher(properties.optString(eachContentProp));
+				if (matcher.find()) {
+					return matcher.group(1);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The Constructor.<br>
+	 * Content cached by previous runs is loaded, oldest first.
+	 *
+	 * @param dir the cache directory
+	 * @param maxBytes the max bytes
+	 * @param hardLinks true to hard link the files, false to copy them
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public ContentCache(final Path dir, final long maxBytes, final boolean hardLinks) throws IOException {
+		super();
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		this.hardLinks = hardLinks;
+		Files.createDirectories(dir);
+		final List<Path> cached;
+		try (final Stream<Path> files = Files.walk(dir, 2)) {
+			cached = files.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+		cached.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+		for (final Path eachFile : cached) {
+			if (!eachFile.getFileName().toString().endsWith(CONTENT_EXTN)) {
+				// Left over by a crash while caching
+				Files.delete(eachFile);
+				continue;
+			}
+			final long size = Files.readAttributes(eachFile, BasicFileAttributes.class).size();
+			entries.put(StringUtils.removeEnd(eachFile.getFileName().toString(), CONTENT_EXTN), size);
+			cachedBytes += size;
+		}
+		evict();
+		LOG.info("Content cache opened: " + this);
+	}
+
+	/**
+	 * Get the content of the url into the target file, from the cache if it was downloaded before,
+	 * otherwise via the fetcher and then cached.
+	 *
+	 * @param contentUrl the content url
+	 * @param target the target
+	 * @param fetcher the fetcher, downloads the content to the file it is given
+	 * @return the size of the content
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public long get(final String contentUrl, final File target, final Fetcher fetcher) throws IOException {
+		final String key = Hashing.sha256().hashString(contentUrl, StandardCharsets.UTF_8).toString();
+		while (true) {
+			final long size = copyFromCache(key, target.toPath());
+			if (size >= 0) {
+				hits.incrementAndGet();
+				bytesSaved.addAndGet(size);
+				LOG.debug("Content cache hit: " + contentUrl + " -> " + target);
+				return size;
+			}
+			final CompletableFuture<Void> download = new CompletableFuture<Void>();
+			final CompletableFuture<Void> running = inFlight.putIfAbsent(key, download);
+			if (running != null) {
+				// Same content is being downloaded for another node, look again once it is done
+				running.handle((result, excp) -> null).join();
+				continue;
+			}
+			try {
+				misses.incrementAndGet();
+				final long fetched = fetcher.fetch(target);
+				addToCache(key, target.toPath(), fetched);
+				return fetched;
+			} finally {
+				inFlight.remove(key);
+				download.complete(null);
+			}
+		}
+	}
+
+	/**
+	 * Copy the cached content to the target.
+	 *
+	 * @param key the key
+	 * @param target the target
+	 * @return the size, -1 if the content is not cached
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private long copyFromCache(final String key, final Path target) throws IOException {
+		final Long size;
+		synchronized (this) {
+			size = entries.get(key);
+		}
+		if (size == null) {
+			return -1;
+		}
+		final Path partFile = target.toAbsolutePath().resolveSibling(target.getFileName() + AlfScriptUtils.PART_EXTN);
+		Files.createDirectories(partFile.getParent());
+		try {
+			link(getFile(key), partFile);
+		} catch (NoSuchFileException excp) {
+			// Evicted meanwhile
+			Files.deleteIfExists(partFile);
+			return -1;
+		}
+		AlfScriptUtils.moveAtomically(partFile, target);
+		return size;
+	}
+
+	/**
+	 * Add the downloaded content to the cache, evicting the least recently used content beyond the max bytes.
+	 *
+	 * @param key the key
+	 * @param source the downloaded file
+	 * @param size the size
+	 */
+	private void addToCache(final String key, final Path source, final long size) {
+		if (size > maxBytes) {
+			return;
+		}
+		final Path file = getFile(key);
+		final Path partFile = file.resolveSibling(file.getFileName() + AlfScriptUtils.PART_EXTN);
+		try {
+			Files.createDirectories(file.getParent());
+			link(source, partFile);
+			AlfScriptUtils.moveAtomically(partFile, file);
+		} catch (IOException excp) {
+			// Cache is an optimization, the download itself succeeded
+			LOG.warn("Failed to cache the content of: " + source + " due to: " + excp.getMessage());
+			FileUtils.deleteQuietly(partFile.toFile());
+			return;
+		}
+		synchronized (this) {
+			final Long replaced = entries.put(key, size);
+			cachedBytes += size - (replaced == null ? 0 : replaced);
+			evict();
+		}
+	}
+
+	/**
+	 * Evict the least recently used content until the cached bytes fit the max bytes.
+	 */
+	private synchronized void evict() {
+		final Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+		while (cachedBytes > maxBytes && eldest.hasNext()) {
+			final Map.Entry<String, Long> entry = eldest.next();
+			eldest.remove();
+			cachedBytes -= entry.getValue();
+			evictions.incrementAndGet();
+			FileUtils.deleteQuietly(getFile(entry.getKey()).toFile());
+		}
+	}
+
+	/**
+	 * Hard link (or copy) the source to the target, replacing the target.
+	 *
+	 * @param source the source
+	 * @param target the target
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void link(final Path source, final Path target) throws IOException {
+		Files.deleteIfExists(target);
+		if (hardLinks) {
+			try {
+				Files.createLink(target, source);
+				return;
+			} catch (NoSuchFileException excp) {
+				throw excp;
+			} catch (UnsupportedOperationException | IOException excp) {
+				// e.g. cache and download path on different file systems
+				LOG.debug("Failed to link: " + source + ", copying instead due to: " + excp.getMessage());
+			}
+		}
+		Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Gets the cache file of the key, spread over sub directories named by the first two characters of the key.
+	 *
+	 * @param key the key
+	 * @return the file
+	 */
+	private Path getFile(final String key) {
+		return dir.resolve(key.substring(0, 2)).resolve(key + CONTENT_EXTN);
+	}
+
+	/**
+	 * Gets the number of downloads served from the cache.
+	 *
+	 * @return the hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of downloads fetched from the repository into the cache.
+	 *
+	 * @return the misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		synchronized (this) {
+			return "dir: " + dir + ", entries: " + entries.size() + ", size: " + FileUtils.byteCountToDisplaySize(cachedBytes)
+					+ " of " + FileUtils.byteCountToDisplaySize(maxBytes) + ", hits: " + hits.get() + ", misses: " + misses.get()
+					+ ", saved: " + FileUtils.byteCountToDisplaySize(bytesSaved.get()) + ", evictions: " + evictions.get();
+		}
+	}
+}
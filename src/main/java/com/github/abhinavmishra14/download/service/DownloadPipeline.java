@@ -0,0 +1,386 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.download.service;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.alfscript.utils.JobJournal;
+import com.github.abhinavmishra14.exception.AlfScriptException;
+
+/**
+ * The Class DownloadPipeline.<br>
+ * Downloads files with a fixed number of worker threads fed from a bounded queue. When the queue
+ * is full, {@link #submit(String, String)} blocks until a download completes, so the producer
+ * (e.g. a streamed input json with 100k entries) never runs ahead of the downloads by more than
+ * the queue size.<br>
+ * Tuned via <code>-Dalfscript.download.threads=8 -Dalfscript.download.queueSize=1000</code>.
+ * Progress is logged every <code>alfscript.download.progressIntervalSeconds</code> and a summary
+ * (files, bytes, throughput, failures) once all downloads complete.<br>
+ * With a {@link JobJournal} set, files downloaded by a previous run are skipped and each outcome is
+ * recorded in the journal.
+ */
+public class DownloadPipeline implements Closeable {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(DownloadPipeline.class);
+
+	/** The Constant PROP_THREADS. */
+	public static final String PROP_THREADS = "alfscript.download.threads";
+
+	/** The Constant PROP_QUEUE_SIZE. */
+	public static final String PROP_QUEUE_SIZE = "alfscript.download.queueSize";
+
+	/** The Constant PROP_PROGRESS_INTERVAL_SECONDS. */
+	public static final String PROP_PROGRESS_INTERVAL_SECONDS = "alfscript.download.progressIntervalSeconds";
+
+	/** The Constant DEFAULT_THREADS. */
+	private static final int DEFAULT_THREADS = 8;
+
+	/** The Constant DEFAULT_QUEUE_SIZE. */
+	private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+	/** The Constant DEFAULT_PROGRESS_INTERVAL_SECONDS. */
+	private static final long DEFAULT_PROGRESS_INTERVAL_SECONDS = 30;
+
+	/** The Constant MAX_LOGGED_FAILURES. */
+	private static final int MAX_LOGGED_FAILURES = 100;
+
+	/** The download service. */
+	private final SNDService downloadServ;
+
+	/** The auth ticket. */
+	private final String authTicket;
+
+	/** The download path. */
+	private final String downloadPath;
+
+	/** The executor. */
+	private final ExecutorService executor;
+
+	/** The permits, one for each download queued or running. */
+	private final Semaphore permits;
+
+	/** The submitted. */
+	private final AtomicLong submitted = new AtomicLong();
+
+	/** The downloaded. */
+	private final AtomicLong downloaded = new AtomicLong();
+
+	/** The failed. */
+	private final AtomicLong failed = new AtomicLong();
+
+	/** The bytes. */
+	private final AtomicLong bytes = new AtomicLong();
+
+	/** The failures, file name and node ref of each failed download. */
+	private final Queue<String> failures = new ConcurrentLinkedQueue<String>();
+
+	/** The journal, null if none. */
+	private volatile JobJournal journal;
+
+	/** The started nanos. */
+	private final long started = System.nanoTime();
+
+	/**
+	 * The Constructor, using the configured threads and queue size.
+	 *
+	 * @param downloadServ the download service
+	 * @param authTicket the auth ticket
+	 * @param downloadPath the download path
+	 */
+	public DownloadPipeline(final SNDService downloadServ, final String authTicket, final String downloadPath) {
+		this(downloadServ, authTicket, downloadPath, Integer.getInteger(PROP_THREADS, DEFAULT_THREADS),
+				Integer.getInteger(PROP_QUEUE_SIZE, DEFAULT_QUEUE_SIZE));
+	}
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param downloadServ the download service
+	 * @param authTicket the auth ticket
+	 * @param downloadPath the download path
+	 * @param threads the number of concurrent downloads
+	 * @param queueSize the number of downloads queued before submit blocks
+	 */
+	public DownloadPipeline(final SNDService downloadServ, final String authTicket, final String downloadPath,
+			final int threads, final int queueSize) {
+		super();
+		this.downloadServ = downloadServ;
+		this.authTicket = authTicket;
+		this.downloadPath = downloadPath;
+		this.permits = new Semaphore(threads + queueSize);
+		final AtomicInteger threadCount = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), runnable -> {
+					final Thread thread = new Thread(runnable, "download-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		LOG.info("Download pipeline started with threads: " + threads + ", queueSize: " + queueSize);
+	}
+
+	/**
+	 * Sets the journal, used to skip the files downloaded by a previous run and record the outcome of each download.
+	 *
+	 * @param journal the journal
+	 */
+	public void setJournal(final JobJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Gets the journal key of a download.
+	 *
+	 * @param fileName the file name
+	 * @param downloadPath the download path
+	 * @param nodeRef the node ref
+	 * @return the journal key
+	 */
+	public static String getJournalKey(final String fileName, final String downloadPath, final String nodeRef) {
+		return AlfScriptUtils.getFileName(fileName, downloadPath) + "=" + nodeRef;
+	}
+
+	/**
+	 * Queue the download, blocks while the queue is full.<br>
+	 * Download is skipped if the journal records it as done.
+	 *
+	 * @param fileName the file name
+	 * @param nodeRef the node ref
+	 * @throws AlfScriptException if interrupted while waiting
+	 */
+	public void submit(final String fileName, final String nodeRef) {
+		submit(fileName, nodeRef, null);
+	}
+
+	/**
+	 * Queue the download, blocks while the queue is full.<br>
+	 * Download is skipped if the journal records it as done. The callback is invoked by the download
+	 * thread with the downloaded file, only if the download succeeded.
+	 *
+	 * @param fileName the file name
+	 * @param nodeRef the node ref
+	 * @param onDownloaded the callback, null if none
+	 * @throws AlfScriptException if interrupted while waiting
+	 */
+	public void submit(final String fileName, final String nodeRef, final Consumer<File> onDownloaded) {
+		final JobJournal jobJournal = journal;
+		if (jobJournal != null && jobJournal.skip(getJournalKey(fileName, downloadPath, nodeRef))) {
+			return;
+		}
+		try {
+			permits.acquire();
+		} catch (InterruptedException excp) {
+			Thread.currentThread().interrupt();
+			throw new AlfScriptException("Interrupted while queueing the download of: " + fileName, excp);
+		}
+		submitted.incrementAndGet();
+		try {
+			executor.execute(new DownloadTask(fileName, nodeRef, onDownloaded));
+		} catch (RuntimeException excp) {
+			permits.release();
+			throw excp;
+		}
+	}
+
+	/**
+	 * Wait for all the queued downloads to complete and log the summary.
+	 *
+	 * @return true, if all the downloads succeeded
+	 * @throws AlfScriptException if interrupted while waiting
+	 */
+	public boolean awaitCompletion() {
+		executor.shutdown();
+		final long interval = Long.getLong(PROP_PROGRESS_INTERVAL_SECONDS, DEFAULT_PROGRESS_INTERVAL_SECONDS);
+		try {
+			while (!executor.awaitTermination(interval, TimeUnit.SECONDS)) {
+				LOG.info("Download progress: " + this);
+			}
+		} catch (InterruptedException excp) {
+			Thread.currentThread().interrupt();
+			throw new AlfScriptException("Interrupted while waiting for downloads, progress: " + this, excp);
+		}
+		LOG.info("Downloads completed: " + this);
+		final ContentCache contentCache = ContentCache.getDefault();
+		if (contentCache != null) {
+			LOG.info("Content cache: " + contentCache);
+		}
+		if (!failures.isEmpty()) {
+			final List<String> logged = new ArrayList<String>(MAX_LOGGED_FAILURES);
+			for (final String eachFailure : failures) {
+				if (logged.size() == MAX_LOGGED_FAILURES) {
+					break;
+				}
+				logged.add(eachFailure);
+			}
+			LOG.warn("Failed downloads (" + failed.get() + "): " + logged + (failed.get() > logged.size() ? " ..." : ""));
+		}
+		return failed.get() == 0;
+	}
+
+	/**
+	 * Gets the number of files downloaded.
+	 *
+	 * @return the downloaded count
+	 */
+	public long getDownloadedCount() {
+		return downloaded.get();
+	}
+
+	/**
+	 * Gets the number of failed downloads.
+	 *
+	 * @return the failed count
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * Gets the bytes downloaded.
+	 *
+	 * @return the bytes
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * Stop the downloads still queued, running ones complete.
+	 */
+	@Override
+	public void close() {
+		if (!executor.isTerminated()) {
+			LOG.warn("Download pipeline closed with " + executor.shutdownNow().size() + " downloads not started");
+		}
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		final double seconds = Math.max(1, System.nanoTime() - started) / 1e9;
+		final double megaBytes = bytes.get() / (double) FileUtils.ONE_MB;
+		final JobJournal jobJournal = journal;
+		return "files: " + submitted.get() + (jobJournal == null ? "" : ", skipped: " + jobJournal.getSkippedCount())
+				+ ", downloaded: " + downloaded.get() + ", failed: " + failed.get()
+				+ ", bytes: " + FileUtils.byteCountToDisplaySize(bytes.get()) + ", time: "
+				+ String.format("%.1fs, throughput: %.2f MB/s, %.1f files/s", seconds, megaBytes / seconds,
+						(downloaded.get() + failed.get()) / seconds);
+	}
+
+	/**
+	 * The Class DownloadTask. Download of one file.
+	 */
+	private class DownloadTask implements Runnable {
+
+		/** The file name. */
+		private final String fileName;
+
+		/** The node ref. */
+		private final String nodeRef;
+
+		/** The callback, null if none. */
+		private final Consumer<File> onDownloaded;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param fileName the file name
+		 * @param nodeRef the node ref
+		 * @param onDownloaded the callback, null if none
+		 */
+		DownloadTask(final String fileName, final String nodeRef, final Consumer<File> onDownloaded) {
+			this.fileName = fileName;
+			this.nodeRef = nodeRef;
+			this.onDownloaded = onDownloaded;
+		}
+
+		/**
+		 * Run.
+		 */
+		@Override
+		public void run() {
+			boolean isDownloaded = false;
+			try {
+				isDownloaded = downloadServ.processDownloadRequest(downloadPath, authTicket, fileName, nodeRef);
+			} catch (RuntimeException excp) {
+				LOG.error("Failed to download: " + fileName + " (" + nodeRef + ")", excp);
+			} finally {
+				if (isDownloaded) {
+					final File file = new File(AlfScriptUtils.getFileName(fileName, downloadPath));
+					downloaded.incrementAndGet();
+					bytes.addAndGet(file.length());
+					handOver(file);
+				} else {
+					failed.incrementAndGet();
+					failures.add(fileName + "=" + nodeRef);
+				}
+				record(isDownloaded);
+				permits.release();
+			}
+		}
+
+		/**
+		 * Pass the downloaded file to the callback, if any.
+		 *
+		 * @param file the file
+		 */
+		private void handOver(final File file) {
+			if (onDownloaded != null) {
+				try {
+					onDownloaded.accept(file);
+				} catch (RuntimeException excp) {
+					LOG.error("Failed to process the download of: " + fileName + " (" + nodeRef + ")", excp);
+				}
+			}
+		}
+
+		/**
+		 * Record the outcome in the journal, if any.
+		 *
+		 * @param isDownloaded the is downloaded
+		 */
+		private void record(final boolean isDownloaded) {
+			final JobJournal jobJournal = journal;
+			if (jobJournal != null) {
+				jobJournal.mark(getJournalKey(fileName, downloadPath, nodeRef), isDownloaded, null);
+			}
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2023. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.download.service;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
+
+/**
+ * The Class MetadataFlattener.<br>
+ * Flattens the metadata of a node entry: multi valued properties and aspect names are joined by
+ * comma, the search details and location of a search hit are dropped. An entry already parsed can
+ * be flattened in place, or the entry can be transformed token by token from a parser straight to
+ * a generator, without building a json tree or intermediate lists. The joined values are built in
+ * buffers reused from one value to the next, so an instance is not thread safe; use one per thread.
+ */
+public final class MetadataFlattener {
+
+	/** The Constant SEARCH_DETAILS. */
+	private static final String SEARCH_DETAILS = "search";
+
+	/** The Constant SEARCH_LOCATION. */
+	private static final String SEARCH_LOCATION = "location";
+
+	/** The Constant INITIAL_CAPACITY. */
+	private static final int INITIAL_CAPACITY = 256;
+
+	/** The joined value. */
+	private final StringBuilder joined = new StringBuilder(INITIAL_CAPACITY);
+
+	/** The chars of the joined value, handed to the generator. */
+	private char[] joinedChars = new char[INITIAL_CAPACITY];
+
+	/**
+	 * Flatten the entry in place.
+	 *
+	 * @param entry the node entry
+	 * @return the entry
+	 */
+	public JSONObject flatten(final JSONObject entry) {
+		entry.remove(SEARCH_DETAILS);
+		entry.remove(SEARCH_LOCATION);
+		final JSONObject props = entry.optJSONObject(AlfScriptConstants.PROPS);
+		if (props != null) {
+			for (final String eachPropKey : props.keySet()) {
+				final Object propJson = props.get(eachPropKey);
+				if (propJson instanceof JSONArray) {
+					// Replacing the value of an existing key does not change the key set
+					props.put(eachPropKey, join((JSONArray) propJson));
+				}
+			}
+		}
+		final Object aspects = entry.opt(AlfScriptConstants.ASPECTS);
+		if (aspects instanceof JSONArray) {
+			entry.put(AlfScriptConstants.ASPECTS, join((JSONArray) aspects));
+		}
+		return entry;
+	}
+
+	/**
+	 * Join the values of the array by comma, nulls are joined as empty strings.
+	 *
+	 * @param values the values
+	 * @return the joined values
+	 */
+	private String join(final JSONArray values) {
+		joined.setLength(0);
+		for (int index = 0; index < values.length(); index++) {
+			if (index > 0) {
+				joined.append(AlfScriptConstants.COMMA);
+			}
+			final Object value = values.opt(index);
+			if (value != null && !JSONObject.NULL.equals(value)) {
+				joined.append(value);
+			}
+		}
+		return joined.toString();
+	}
+
+	/**
+	 * Transform the entry the parser is positioned at (its START_OBJECT token) to the generator,
+	 * flattened. The parser is left at the END_OBJECT token of the entry.
+	 *
+	 * @param parser the parser
+	 * @param generator the generator
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void flatten(final JsonParser parser, final JsonGenerator generator) throws IOException {
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			throw new IOException("Expected the start of the node entry, found: " + parser.currentToken());
+		}
+		generator.writeStartObject();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			// Field names are canonicalized by the parser, reading them does not allocate
+			final String fieldName = parser.getCurrentName();
+			final JsonToken token = parser.nextToken();
+			if (SEARCH_DETAILS.equals(fieldName) || SEARCH_LOCATION.equals(fieldName)) {
+				parser.skipChildren();
+			} else if (AlfScriptConstants.PROPS.equals(fieldName) && token == JsonToken.START_OBJECT) {
+				generator.writeFieldName(fieldName);
+				writeProperties(parser, generator);
+			} else if (AlfScriptConstants.ASPECTS.equals(fieldName) && token == JsonToken.START_ARRAY) {
+				generator.writeFieldName(fieldName);
+				writeJoined(parser, generator);
+			} else {
+				generator.writeFieldName(fieldName);
+				generator.copyCurrentStructure(parser);
+			}
+		}
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Read the entry the parser is positioned at (its START_OBJECT token) as a flattened json object.
+	 * The entry is transformed into a token buffer and read from it, so the unflattened entry is
+	 * never built as a json tree. The parser must have a codec, see
+	 * {@link com.github.abhinavmishra14.json.utils.JSONUtils#createParser(java.io.InputStream)}.
+	 *
+	 * @param parser the parser
+	 * @return the flattened entry
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public JSONObject flatten(final JsonParser parser) throws IOException {
+		final TokenBuffer flattened = new TokenBuffer(parser);
+		flatten(parser, flattened);
+		try (final JsonParser flattenedParser = flattened.asParser()) {
+			return new JSONObject(flattenedParser.readValueAs(Map.class));
+		}
+	}
+
+	/**
+	 * Write the properties object the parser is positioned at, joining multi valued properties.
+	 *
+	 * @param parser the parser
+	 * @param generator the generator
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeProperties(final JsonParser parser, final JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			generator.writeFieldName(parser.getCurrentName());
+			if (parser.nextToken() == JsonToken.START_ARRAY) {
+				writeJoined(parser, generator);
+			} else {
+				generator.copyCurrentStructure(parser);
+			}
+		}
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Write the values of the array the parser is positioned at as one string joined by comma.
+	 * Scalars are joined by their text as read, nulls as empty strings and nested values by their json.
+	 *
+	 * @param parser the parser
+	 * @param generator the generator
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeJoined(final JsonParser parser, final JsonGenerator generator) throws IOException {
+		joined.setLength(0);
+		boolean first = true;
+		JsonToken token;
+		while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+			if (!first) {
+				joined.append(AlfScriptConstants.COMMA);
+			}
+			first = false;
+			if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+				joined.append(parser.readValueAsTree().toString());
+			} else if (token != JsonToken.VALUE_NULL) {
+				joined.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+			}
+		}
+		final int length = joined.length();
+		if (joinedChars.length < length) {
+			joinedChars = new char[Math.max(length, joinedChars.length * 2)];
+		}
+		joined.getChars(0, length, joinedChars, 0);
+		generator.writeString(joinedChars, 0, length);
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.download.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.alfscript.utils.TaskTimer;
+import com.github.abhinavmishra14.download.pojo.BasicSearchPayload;
+import com.github.abhinavmishra14.exception.AlfScriptException;
+import com.github.abhinavmishra14.json.utils.JSONVisitor;
+
+/**
+ * The Class PartitionedSearch.<br>
+ * Splits a search into disjoint ranges of a {@link SearchCursor.Keyset} key (the created date)
+ * and walks the ranges concurrently, each one with its own keyset {@link SearchCursor}. The key
+ * range of the whole result is split evenly into the given number of shards, and a shard holding
+ * more than <code>-Dalfscript.search.maxHitsPerShard=100000</code> hits is halved until it does
+ * not, so that a skewed distribution (e.g. a bulk import on a single day) doesn't leave one
+ * shard doing most of the work.<br>
+ * Entries are visited on the shard threads in no particular order, so the visitor must be thread safe.
+ */
+public class PartitionedSearch {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(PartitionedSearch.class);
+
+	/** The Constant PROP_MAX_HITS_PER_SHARD. */
+	public static final String PROP_MAX_HITS_PER_SHARD = "alfscript.search.maxHitsPerShard";
+
+	/** The Constant DEFAULT_MAX_HITS_PER_SHARD. */
+	private static final long DEFAULT_MAX_HITS_PER_SHARD = 100000;
+
+	/** The Constant DEFAULT_PAGE_SIZE. */
+	private static final int DEFAULT_PAGE_SIZE = 1000;
+
+	/** The service. */
+	private final SNDService service;
+
+	/** The auth ticket. */
+	private final String authTicket;
+
+	/** The query. */
+	private final String query;
+
+	/** The keyset. */
+	private final SearchCursor.Keyset keyset;
+
+	/** The shards, also the number of shards walked concurrently. */
+	private final int shards;
+
+	/** The page size. */
+	private int pageSize = DEFAULT_PAGE_SIZE;
+
+	/** The extra details to include in the entries. */
+	private List<String> include = Collections.emptyList();
+
+	/** The max hits per shard. */
+	private long maxHitsPerShard = Long.getLong(PROP_MAX_HITS_PER_SHARD, DEFAULT_MAX_HITS_PER_SHARD);
+
+	/** The shards walked. */
+	private final AtomicInteger shardsWalked = new AtomicInteger();
+
+	/** The shards split. */
+	private final AtomicInteger shardsSplit = new AtomicInteger();
+
+	/** The entries visited. */
+	private final AtomicLong entriesVisited = new AtomicLong();
+
+	/** The executor. */
+	private ExecutorService executor;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param service the service
+	 * @param authTicket the auth ticket
+	 * @param query the query
+	 * @param keyset the key to partition by
+	 * @param shards the number of shards
+	 */
+	public PartitionedSearch(final SNDService service, final String authTicket, final String query,
+			final SearchCursor.Keyset keyset, final int shards) {
+		super();
+		if (shards <= 0) {
+			throw new IllegalArgumentException("Number of shards must be positive: " + shards);
+		}
+		this.service = service;
+		this.authTicket = authTicket;
+		this.query = query;
+		this.keyset = keyset;
+		this.shards = shards;
+	}
+
+	/**
+	 * Sets the page size of the shard cursors.
+	 *
+	 * @param pageSize the page size
+	 */
+	public void setPageSize(final int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Sets the extra details to include in the entries, e.g. properties and aspectNames.
+	 *
+	 * @param include the include
+	 */
+	public void setInclude(final List<String> include) {
+		this.include = include;
+	}
+
+	/**
+	 * Sets the max hits per shard, bigger shards are split.
+	 *
+	 * @param maxHitsPerShard the max hits per shard
+	 */
+	public void setMaxHitsPerShard(final long maxHitsPerShard) {
+		this.maxHitsPerShard = maxHitsPerShard;
+	}
+
+	/**
+	 * Walk all the shards and visit their entries.
+	 *
+	 * @param entryVisitor the entry visitor, invoked concurrently from the shard threads
+	 * @return the number of entries visited
+	 * @throws AlfScriptException if the search or the visitor fails
+	 */
+	public long execute(final JSONVisitor<JSONObject> entryVisitor) {
+		final TaskTimer timer = new TaskTimer();
+		timer.startTimer();
+		final Long first = findKey(true);
+		if (first == null) {
+			LOG.info("No hits for query: " + query);
+			return 0;
+		}
+		// The hits may be deleted between the two lookups, a single open ended shard from the first key is searched then
+		final Long lastKey = findKey(false);
+		final long last = lastKey == null ? first : lastKey;
+		final long step = Math.max(1, (last - first) / shards + 1);
+		final AtomicInteger threadCount = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(shards, runnable -> {
+			final Thread thread = new Thread(runnable, "search-shard-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			final List<CompletableFuture<Long>> results = new ArrayList<CompletableFuture<Long>>(shards);
+			for (long from = first; from <= last; from += step) {
+				// Last shard is open ended, so entries added while searching are not lost
+				final long to = last - from < step ? Long.MAX_VALUE : from + step;
+				results.add(search(from, to, last, entryVisitor));
+				if (to == Long.MAX_VALUE) {
+					break;
+				}
+			}
+			long total = 0;
+			for (final CompletableFuture<Long> eachResult : results) {
+				total += eachResult.join();
+			}
+			return total;
+		} catch (CompletionException excp) {
+			if (excp.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) excp.getCause();
+			}
+			throw new AlfScriptException("Partitioned search failed for query: " + query, excp.getCause());
+		} finally {
+			executor.shutdownNow();
+			timer.endTimer();
+			LOG.info("Partitioned search by " + keyset + " completed in " + timer.getFormattedTotalTime() + ": " + this);
+		}
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		return "shards walked: " + shardsWalked.get() + ", shards split: " + shardsSplit.get() + ", entries: "
+				+ entriesVisited.get();
+	}
+
+	/**
+	 * Search the shard, splitting it first if it has too many hits.
+	 *
+	 * @param from the from key, inclusive
+	 * @param to the to key, exclusive
+	 * @param last the last key of the whole result
+	 * @param entryVisitor the entry visitor
+	 * @return the number of entries visited
+	 */
+	private CompletableFuture<Long> search(final long from, final long to, final long last,
+			final JSONVisitor<JSONObject> entryVisitor) {
+		return CompletableFuture.supplyAsync(() -> countHits(from, to), executor).thenCompose(hits -> {
+			final long end = Math.min(to, last + 1);
+			if (hits > maxHitsPerShard && end - from > 1) {
+				final long middle = from + (end - from) / 2;
+				shardsSplit.incrementAndGet();
+				LOG.debug("Splitting shard [" + from + ", " + to + ") with " + hits + " hits at " + middle);
+				return search(from, middle, last, entryVisitor)
+						.thenCombine(search(middle, to, last, entryVisitor), Long::sum);
+			}
+			if (hits == 0 && to != Long.MAX_VALUE) {
+				return CompletableFuture.completedFuture(0L);
+			}
+			return CompletableFuture.supplyAsync(() -> walk(from, to, entryVisitor), executor);
+		});
+	}
+
+	/**
+	 * Walk the shard with a keyset cursor.
+	 *
+	 * @param from the from key, inclusive
+	 * @param to the to key, exclusive
+	 * @param entryVisitor the entry visitor
+	 * @return the number of entries visited
+	 */
+	private long walk(final long from, final long to, final JSONVisitor<JSONObject> entryVisitor) {
+		long visited = 0;
+		try (final SearchCursor cursor = new SearchCursor(service, authTicket, keyset.rangeQuery(query, from, to),
+				pageSize, 0, keyset, include)) {
+			while (cursor.hasNext()) {
+				entryVisitor.visit(cursor.next());
+				visited++;
+			}
+		} catch (IOException excp) {
+			throw new AlfScriptException("Failed to visit the entries of shard [" + keyset.formatBound(from) + ", "
+					+ (to == Long.MAX_VALUE ? "MAX" : keyset.formatBound(to)) + ")", excp);
+		}
+		shardsWalked.incrementAndGet();
+		entriesVisited.addAndGet(visited);
+		return visited;
+	}
+
+	/**
+	 * Count the hits of the shard.
+	 *
+	 * @param from the from key, inclusive
+	 * @param to the to key, exclusive
+	 * @return the hits
+	 */
+	private long countHits(final long from, final long to) {
+		final BasicSearchPayload payload = AlfScriptUtils.createSearchPayload(keyset.rangeQuery(query, from, to),
+				"1", AlfScriptConstants.DEFAULT_SKIP_COUNT);
+		final JSONObject list = service.getSearchResult(authTicket, payload).getJSONObject(AlfScriptConstants.LIST);
+		final JSONObject pagination = list.optJSONObject(AlfScriptConstants.PAGINATION);
+		return pagination == null ? list.getJSONArray(AlfScriptConstants.ENTRIES).length()
+				: pagination.optLong("totalItems", 0);
+	}
+
+	/**
+	 * Find the lowest or highest key of the whole result.
+	 *
+	 * @param lowest true for the lowest key
+	 * @return the key value, null if there are no hits
+	 */
+	private Long findKey(final boolean lowest) {
+		final BasicSearchPayload payload = AlfScriptUtils.createSearchPayload(query, "1",
+				AlfScriptConstants.DEFAULT_SKIP_COUNT);
+		keyset.applyTo(payload, lowest);
+		final JSONArray entries = service.getSearchResult(authTicket, payload)
+				.getJSONObject(AlfScriptConstants.LIST).getJSONArray(AlfScriptConstants.ENTRIES);
+		return entries.length() == 0 ? null : keyset.readValue(entries.getJSONObject(0));
+	}
+}
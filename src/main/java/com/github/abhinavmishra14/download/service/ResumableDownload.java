@@ -0,0 +1,572 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2023. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.download.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.http.utils.HTTPUtils;
+import com.github.abhinavmishra14.http.utils.RetryPolicy;
+
+/**
+ * The Class ResumableDownload.<br>
+ * Downloads content into <code>destination.part</code> and renames it to the destination once
+ * complete. When the connection breaks midway, the bytes received so far are kept along with the
+ * ETag (or Last-Modified) of the content in <code>destination.part.validator</code>, and the
+ * download resumes from where it stopped with <code>Range: bytes=offset-</code> and
+ * <code>If-Range: validator</code>. If the content changed in the meantime, or the server does not
+ * support ranges, the server sends the whole content (200) and the download starts over.<br>
+ * A broken download is resumed up to <code>alfscript.download.resumeAttempts</code> times, a
+ * download left unfinished (e.g. process killed) is resumed the next time it is requested.<br>
+ * Content larger than <code>alfscript.download.segmentThresholdBytes</code> is fetched over
+ * <code>alfscript.download.segments</code> connections: the first request asks for the first
+ * threshold bytes, and if the Content-Range shows more, the rest is split in byte ranges fetched
+ * concurrently and written at their position in the pre-allocated part file. If a segment fails,
+ * the part file is cut back to the bytes received without gaps, from where the next attempt resumes.
+ * When the server honours the range but sends neither a strong ETag nor Last-Modified (or no total
+ * size), the segments could mix two versions of the content, so the first response is aborted and
+ * the content is fetched whole with a request without the capped range instead.
+ */
+public final class ResumableDownload {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(ResumableDownload.class);
+
+	/** The Constant PROP_RESUME_ATTEMPTS. */
+	public static final String PROP_RESUME_ATTEMPTS = "alfscript.download.resumeAttempts";
+
+	/** The Constant PROP_SEGMENTS. */
+	public static final String PROP_SEGMENTS = "alfscript.download.segments";
+
+	/** The Constant PROP_SEGMENT_THRESHOLD_BYTES. */
+	public static final String PROP_SEGMENT_THRESHOLD_BYTES = "alfscript.download.segmentThresholdBytes";
+
+	/** The Constant VALIDATOR_EXTN. */
+	public static final String VALIDATOR_EXTN = ".validator";
+
+	/** The Constant HTTP_CODE_206. */
+	public static final int HTTP_CODE_206 = 206;
+
+	/** The Constant HTTP_CODE_416. */
+	public static final int HTTP_CODE_416 = 416;
+
+	/** The Constant DEFAULT_RESUME_ATTEMPTS. */
+	private static final int DEFAULT_RESUME_ATTEMPTS = 5;
+
+	/** The Constant DEFAULT_SEGMENTS. */
+	private static final int DEFAULT_SEGMENTS = 4;
+
+	/** The Constant DEFAULT_SEGMENT_THRESHOLD_BYTES. */
+	private static final long DEFAULT_SEGMENT_THRESHOLD_BYTES = 64L * 1024 * 1024;
+
+	/** The Constant SEGMENT_FETCHER. Fetches the segments after the first one, which the caller fetches. */
+	private static final ExecutorService SEGMENT_FETCHER = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "download-segment-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/** The Constant UNSEGMENTED. Returned by a segmented fetch to be made again without segments. */
+	private static final long UNSEGMENTED = -1;
+
+	/** The Constant IDENTITY. Ranges apply to the encoded content, so it must not be compressed. */
+	private static final String IDENTITY = "identity";
+
+	/** The Constant WEAK_ETAG. Weak validators can't be used with If-Range. */
+	private static final String WEAK_ETAG = "W/";
+
+	/** The Constant CONTENT_RANGE. bytes first-last/total or bytes &#42;/total. */
+	private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(?:(\\d+)-(\\d+)|\\*)/(\\d+|\\*)");
+
+	/**
+	 * Download the content of the url to the destination, resuming a previously broken download
+	 * of the same destination.
+	 *
+	 * @param url the url
+	 * @param destination the destination
+	 * @return the size of the content
+	 * @throws HttpResponseException if the server rejected the request, e.g. 404
+	 * @throws IOException Signals that an I/O exception has occurred after all the attempts.
+	 */
+	public static long download(final String url, final File destination) throws IOException {
+		final Path target = destination.toPath().toAbsolutePath();
+		Files.createDirectories(target.getParent());
+		final Path partFile = target.resolveSibling(target.getFileName() + AlfScriptUtils.PART_EXTN);
+		final Path validatorFile = partFile.resolveSibling(partFile.getFileName() + VALIDATOR_EXTN);
+		final int attempts = Integer.getInteger(PROP_RESUME_ATTEMPTS, DEFAULT_RESUME_ATTEMPTS);
+		int attempt = 0;
+		while (true) {
+			attempt++;
+			try {
+				long size = fetch(url, partFile, validatorFile, true);
+				if (size == UNSEGMENTED) {
+					size = fetch(url, partFile, validatorFile, false);
+				}
+				AlfScriptUtils.moveAtomically(partFile, target);
+				Files.deleteIfExists(validatorFile);
+				return size;
+			} catch (HttpResponseException excp) {
+				discard(partFile, validatorFile);
+				throw excp;
+			} catch (IOException excp) {
+				if (!Files.exists(validatorFile)) {
+					// Nothing to validate the received bytes against, next attempt starts over
+					Files.deleteIfExists(partFile);
+				}
+				if (attempt >= attempts) {
+					throw excp;
+				}
+				final long delay = RetryPolicy.getBackoffMillis(attempt, null);
+				LOG.warn("Download of " + target.getFileName() + " broke at " + size(partFile) + " bytes due to: "
+						+ excp + ", resuming in " + delay + "ms");
+				sleep(delay);
+			}
+		}
+	}
+
+	/**
+	 * Fetch the content, or the remainder of it, into the part file.
+	 *
+	 * @param url the url
+	 * @param partFile the part file
+	 * @param validatorFile the validator file
+	 * @param segmented whether to ask for the first segment only when the content may be fetched in segments
+	 * @return the size of the content, {@link #UNSEGMENTED} if the content has to be fetched again unsegmented
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static long fetch(final String url, final Path partFile, final Path validatorFile, final boolean segmented)
+			throws IOException {
+		final String storedValidator = Files.exists(validatorFile) && Files.exists(partFile)
+				? StringUtils.trimToNull(new String(Files.readAllBytes(validatorFile), StandardCharsets.UTF_8))
+				: null;
+		final long offset = storedValidator == null ? 0 : Files.size(partFile);
+		final int segments = Integer.getInteger(PROP_SEGMENTS, DEFAULT_SEGMENTS);
+		final long threshold = Long.getLong(PROP_SEGMENT_THRESHOLD_BYTES, DEFAULT_SEGMENT_THRESHOLD_BYTES);
+		final HttpGet request = new HttpGet(url);
+		request.setHeader(HttpHeaders.ACCEPT_ENCODING, IDENTITY);
+		final boolean capped = segmented && segments > 1 && threshold > 0;
+		if (capped) {
+			request.setHeader(HttpHeaders.RANGE, "bytes=" + offset + "-" + (offset + threshold - 1));
+		} else if (offset > 0) {
+			request.setHeader(HttpHeaders.RANGE, "bytes=" + offset + "-");
+		}
+		if (offset > 0) {
+			request.setHeader(HttpHeaders.IF_RANGE, storedValidator);
+			LOG.info("Resuming download of " + partFile.getFileName() + " from " + offset + " bytes");
+		}
+		return HTTPUtils.execute(request, httpResp -> {
+			final int statusCode = httpResp.getStatusLine().getStatusCode();
+			final HttpEntity entity = httpResp.getEntity();
+			if (statusCode == HTTP_CODE_206) {
+				final long[] range = getContentRange(httpResp);
+				if (range == null || range[0] != offset) {
+					discard(partFile, validatorFile);
+					throw new IOException("Unexpected Content-Range " + httpResp.getFirstHeader(HttpHeaders.CONTENT_RANGE)
+							+ " for the range from " + offset);
+				}
+				final String validator = offset > 0 ? storedValidator : saveValidator(httpResp, validatorFile);
+				// More content follows the first segment, or may follow it when the total is not told
+				final boolean partial = range[2] < 0 ? capped && range[1] + 1 - offset >= threshold : range[2] > range[1] + 1;
+				if (partial && (validator == null || range[2] < 0)) {
+					// The segments could not be checked to be of the same content, nor could the rest be resumed
+					LOG.info("No validator or total size for " + partFile.getFileName() + ", fetching it again without segments");
+					request.abort();
+					return UNSEGMENTED;
+				}
+				if (partial) {
+					return writeSegments(url, validator, entity, partFile, validatorFile, offset, range[1] + 1, range[2],
+							segments - 1);
+				}
+				return write(entity, partFile, offset, range[2] >= 0 ? range[2] : range[1] + 1);
+			} else if (statusCode == HTTPUtils.HTTP_CODE_200) {
+				if (offset > 0) {
+					LOG.info("Content of " + partFile.getFileName() + " changed or ranges are not supported, starting over");
+				}
+				saveValidator(httpResp, validatorFile);
+				return write(entity, partFile, 0, entity == null ? 0 : entity.getContentLength());
+			} else if (statusCode == HTTP_CODE_416 && offset > 0) {
+				final long[] range = getContentRange(httpResp);
+				if (range != null && range[2] == offset) {
+					// All the bytes were received before the previous attempt broke
+					return offset;
+				}
+				discard(partFile, validatorFile);
+				throw new IOException("Range from " + offset + " is not satisfiable, starting over");
+			}
+			throw new HttpResponseException(statusCode, httpResp.getStatusLine().getReasonPhrase());
+		});
+	}
+
+	/**
+	 * Write the entity to the part file from the given offset.
+	 *
+	 * @param entity the entity
+	 * @param partFile the part file
+	 * @param offset the offset
+	 * @param total the total size of the content, negative if unknown
+	 * @return the size of the content
+	 * @throws IOException Signals that an I/O exception has occurred, bytes received so far are kept.
+	 */
+	private static long write(final HttpEntity entity, final Path partFile, final long offset, final long total)
+			throws IOException {
+		try (final FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE)) {
+			channel.truncate(offset);
+			long size = offset;
+			if (entity != null) {
+				try (final InputStream content = entity.getContent()) {
+					size += AlfScriptUtils.transfer(content, channel, offset);
+				}
+			}
+			if (total >= 0 && size != total) {
+				throw new IOException("Expected " + total + " bytes but received " + size + " for: " + partFile);
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Write the entity, which holds the first segment, and fetch the rest of the content in
+	 * segments concurrently, each written at its position in the part file.<br>
+	 * The validator is removed while the part file has gaps, so a download killed midway starts
+	 * over, if a segment fails the part file is cut back to the bytes received without gaps.
+	 *
+	 * @param url the url
+	 * @param validator the validator
+	 * @param entity the entity, holding the bytes from offset up to rest
+	 * @param partFile the part file
+	 * @param validatorFile the validator file
+	 * @param offset the offset
+	 * @param rest the position of the first byte not in the entity
+	 * @param total the total size of the content
+	 * @param count the number of segments to split the rest in
+	 * @return the size of the content
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static long writeSegments(final String url, final String validator, final HttpEntity entity,
+			final Path partFile, final Path validatorFile, final long offset, final long rest, final long total,
+			final int count) throws IOException {
+		if (partFile.toAbsolutePath().getParent().toFile().getUsableSpace() < total - offset) {
+			throw new IOException("Not enough space to write " + total + " bytes at: " + partFile);
+		}
+		final long segmentSize = (total - rest + count - 1) / count;
+		final List<Segment> segmentList = new ArrayList<Segment>();
+		segmentList.add(new Segment(url, validator, offset, rest - 1));
+		for (long start = rest; start < total; start += segmentSize) {
+			segmentList.add(new Segment(url, validator, start, Math.min(total, start + segmentSize) - 1));
+		}
+		LOG.info("Downloading " + total + " bytes of " + partFile.getFileName() + " in " + segmentList.size()
+				+ " segments");
+		Files.deleteIfExists(validatorFile);
+		try (final RandomAccessFile output = new RandomAccessFile(partFile.toFile(), "rw");
+				final FileChannel channel = output.getChannel()) {
+			output.setLength(offset);
+			output.setLength(total);
+			final List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (final Segment eachSegment : segmentList.subList(1, segmentList.size())) {
+				futures.add(SEGMENT_FETCHER.submit(() -> eachSegment.fetch(channel)));
+			}
+			IOException failure = null;
+			try {
+				segmentList.get(0).write(entity, channel);
+			} catch (IOException excp) {
+				failure = excp;
+			}
+			for (int index = 0; index < futures.size(); index++) {
+				if (failure != null) {
+					// Stop the other segments early, a failed download is resumed from the first gap
+					segmentList.forEach(Segment::abort);
+				}
+				try {
+					futures.get(index).get();
+				} catch (ExecutionException excp) {
+					if (failure == null) {
+						failure = excp.getCause() instanceof IOException ? (IOException) excp.getCause()
+								: new IOException("Failed to download segment " + segmentList.get(index + 1), excp.getCause());
+					}
+				} catch (InterruptedException excp) {
+					Thread.currentThread().interrupt();
+					segmentList.forEach(Segment::abort);
+					failure = new InterruptedIOException("Interrupted while downloading " + partFile.getFileName());
+				}
+			}
+			if (failure != null) {
+				long received = offset;
+				for (final Segment eachSegment : segmentList) {
+					received = eachSegment.start + eachSegment.progress.get();
+					if (!eachSegment.isComplete()) {
+						break;
+					}
+				}
+				channel.truncate(received);
+				Files.write(validatorFile, validator.getBytes(StandardCharsets.UTF_8));
+				throw failure;
+			}
+			Files.write(validatorFile, validator.getBytes(StandardCharsets.UTF_8));
+			return total;
+		}
+	}
+
+	/**
+	 * Save the validator of the response, or remove the saved one if the response has none.
+	 *
+	 * @param httpResp the http resp
+	 * @param validatorFile the validator file
+	 * @return the validator, null if the content can't be validated
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static String saveValidator(final HttpResponse httpResp, final Path validatorFile) throws IOException {
+		final String validator = getValidator(httpResp);
+		if (validator == null) {
+			Files.deleteIfExists(validatorFile);
+		} else {
+			Files.write(validatorFile, validator.getBytes(StandardCharsets.UTF_8));
+		}
+		return validator;
+	}
+
+	/**
+	 * Gets the strong validator of the content, ETag or else Last-Modified.
+	 *
+	 * @param httpResp the http resp
+	 * @return the validator, null if the content can't be validated
+	 */
+	private static String getValidator(final HttpResponse httpResp) {
+		final Header etag = httpResp.getFirstHeader(HttpHeaders.ETAG);
+		if (etag != null && !etag.getValue().startsWith(WEAK_ETAG)) {
+			return etag.getValue();
+		}
+		final Header lastModified = httpResp.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+		return lastModified == null ? null : lastModified.getValue();
+	}
+
+	/**
+	 * Gets the content range.
+	 *
+	 * @param httpResp the http resp
+	 * @return first byte, last byte and total size, -1 where absent. Null if header is absent or malformed
+	 */
+	private static long[] getContentRange(final HttpResponse httpResp) {
+		final Header header = httpResp.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+		if (header == null) {
+			return null;
+		}
+		final Matcher matcher = CONTENT_RANGE.matcher(header.getValue().trim());
+		if (!matcher.matches()) {
+			return null;
+		}
+		return new long[] { matcher.group(1) == null ? -1 : Long.parseLong(matcher.group(1)),
+				matcher.group(2) == null ? -1 : Long.parseLong(matcher.group(2)),
+				"*".equals(matcher.group(3)) ? -1 : Long.parseLong(matcher.group(3)) };
+	}
+
+	/**
+	 * Discard the part and validator files.
+	 *
+	 * @param partFile the part file
+	 * @param validatorFile the validator file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void discard(final Path partFile, final Path validatorFile) throws IOException {
+		Files.deleteIfExists(partFile);
+		Files.deleteIfExists(validatorFile);
+	}
+
+	/**
+	 * Gets the size of the file.
+	 *
+	 * @param file the file
+	 * @return the size, 0 if the file doesn't exist
+	 */
+	private static long size(final Path file) {
+		return file.toFile().length();
+	}
+
+	/**
+	 * Sleep.
+	 *
+	 * @param millis the millis
+	 * @throws InterruptedIOException if interrupted while waiting
+	 */
+	private static void sleep(final long millis) throws InterruptedIOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException excp) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to resume the download");
+		}
+	}
+
+	/**
+	 * The Class Segment, a byte range of the content.
+	 */
+	private static class Segment {
+
+		/** The url. */
+		private final String url;
+
+		/** The validator. */
+		private final String validator;
+
+		/** The start. */
+		private final long start;
+
+		/** The end, inclusive. */
+		private final long end;
+
+		/** The bytes written so far. */
+		private final AtomicLong progress = new AtomicLong();
+
+		/** The request, set once sent. */
+		private volatile HttpGet request;
+
+		/** The aborted. */
+		private volatile boolean aborted;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param url the url
+		 * @param validator the validator
+		 * @param start the start
+		 * @param end the end, inclusive
+		 */
+		Segment(final String url, final String validator, final long start, final long end) {
+			super();
+			this.url = url;
+			this.validator = validator;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * Fetch the range and write it to the channel.
+		 *
+		 * @param channel the channel
+		 * @return null
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		Void fetch(final FileChannel channel) throws IOException {
+			final HttpGet rangeRequest = new HttpGet(url);
+			rangeRequest.setHeader(HttpHeaders.ACCEPT_ENCODING, IDENTITY);
+			rangeRequest.setHeader(HttpHeaders.RANGE, "bytes=" + start + "-" + end);
+			rangeRequest.setHeader(HttpHeaders.IF_RANGE, validator);
+			this.request = rangeRequest;
+			if (aborted) {
+				throw new InterruptedIOException("Segment " + this + " aborted");
+			}
+			return HTTPUtils.execute(rangeRequest, httpResp -> {
+				final long[] range = getContentRange(httpResp);
+				if (httpResp.getStatusLine().getStatusCode() != HTTP_CODE_206 || range == null || range[0] != start
+						|| range[1] != end) {
+					throw new IOException("Content changed while downloading segment " + this + ", got: "
+							+ httpResp.getStatusLine() + " " + httpResp.getFirstHeader(HttpHeaders.CONTENT_RANGE));
+				}
+				write(httpResp.getEntity(), channel);
+				return null;
+			});
+		}
+
+		/**
+		 * Write the entity holding the range to the channel.
+		 *
+		 * @param entity the entity
+		 * @param channel the channel
+		 * @throws IOException Signals that an I/O exception has occurred.
+		 */
+		void write(final HttpEntity entity, final FileChannel channel) throws IOException {
+			try (final InputStream content = entity.getContent()) {
+				AlfScriptUtils.transfer(content, channel, start, progress);
+			}
+			if (!isComplete()) {
+				throw new IOException("Expected " + (end - start + 1) + " bytes but received " + progress.get()
+						+ " for segment " + this);
+			}
+		}
+
+		/**
+		 * Checks if all the bytes of the range are written.
+		 *
+		 * @return true, if is complete
+		 */
+		boolean isComplete() {
+			return progress.get() == end - start + 1;
+		}
+
+		/**
+		 * Abort the request of the segment, if it is not complete.
+		 */
+		void abort() {
+			aborted = true;
+			final HttpGet rangeRequest = request;
+			if (rangeRequest != null && !isComplete()) {
+				rangeRequest.abort();
+			}
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return start + "-" + end;
+		}
+	}
+
+	/**
+	 * The Constructor.
+	 */
+	private ResumableDownload() {
+		super();
+	}
+}
@@ -17,15 +17,24 @@
  */
 package com.github.abhinavmishra14.download.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 import org.json.JSONObject;
 
+import com.github.abhinavmishra14.download.pojo.BasicSearchPayload;
+import com.github.abhinavmishra14.exception.AlfScriptException;
+import com.github.abhinavmishra14.json.utils.JSONVisitor;
+
 /**
  * The Interface DownloadService.
  */
 public interface SNDService {
 	
 	/**
-	 * Process download request.
+	 * Process download request.<br>
+	 * When the {@link ContentCache} is enabled, the content url of the node is read from its
+	 * metadata to look the content up in the cache, see {@link #getContentUrl(String, String)}.
 	 *
 	 * @param downloadPath the download path
 	 * @param authTicket the auth ticket
@@ -36,6 +45,21 @@ public interface SNDService {
 	boolean processDownloadRequest(final String downloadPath, final String authTicket,
 			final String fileName, final String nodeRef);
 	
+	/**
+	 * Process download request of a node whose content url is already known, e.g. from the search
+	 * hit or the metadata downloaded along, so no request is made for it.
+	 *
+	 * @param downloadPath the download path
+	 * @param authTicket the auth ticket
+	 * @param fileName the file name
+	 * @param nodeRef the node ref
+	 * @param contentUrl the content url to look the content up in the {@link ContentCache}, null
+	 *        to download without the cache
+	 * @return true, if successful
+	 */
+	boolean processDownloadRequest(final String downloadPath, final String authTicket,
+			final String fileName, final String nodeRef, final String contentUrl);
+	
 	/**
 	 * Gets the search result.
 	 *
@@ -44,10 +68,94 @@ public interface SNDService {
 	 * @param maxItems the max items
 	 * @param skipCount the skip count
 	 * @return the search result
+	 * @throws AlfScriptException if search fails even after retries
 	 */
 	JSONObject getSearchResult(final String authTicket, final String query, final String maxItems,
 			final String skipCount);
 	
+	/**
+	 * Gets the search result of a payload built via {@link com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils#createSearchPayload(String, String, String)},
+	 * e.g. with sort and include set.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param searchPayload the search payload
+	 * @return the search result
+	 * @throws AlfScriptException if search fails even after retries
+	 */
+	JSONObject getSearchResult(final String authTicket, final BasicSearchPayload searchPayload);
+	
+	/**
+	 * Visit the search result entries one by one while the response is streamed, without holding
+	 * the whole result in memory.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param query the query
+	 * @param maxItems the max items
+	 * @param skipCount the skip count
+	 * @param entryVisitor the visitor, invoked with each element of list.entries
+	 * @return the number of entries visited
+	 * @throws AlfScriptException if search fails even after retries
+	 */
+	long visitSearchResult(final String authTicket, final String query, final String maxItems,
+			final String skipCount, final JSONVisitor<JSONObject> entryVisitor);
+	
+	/**
+	 * Visit all the search result entries, searching disjoint ranges of the key concurrently.
+	 * See {@link PartitionedSearch}.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param query the query
+	 * @param keyset the key to partition by
+	 * @param shards the number of shards searched concurrently
+	 * @param entryVisitor the visitor, invoked concurrently with each element of list.entries
+	 * @return the number of entries visited
+	 * @throws AlfScriptException if search fails even after retries
+	 */
+	long visitSearchResult(final String authTicket, final String query, final SearchCursor.Keyset keyset,
+			final int shards, final JSONVisitor<JSONObject> entryVisitor);
+	
+	/**
+	 * Open a cursor over all the pages of the search result, the next page is prefetched while
+	 * the current one is consumed.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param query the query
+	 * @param pageSize the page size
+	 * @param skipCount the skip count of the first page
+	 * @return the search cursor, to be closed once done
+	 */
+	SearchCursor openSearchCursor(final String authTicket, final String query, final int pageSize,
+			final long skipCount);
+	
+	/**
+	 * Open a cursor which pages by the given key instead of skip count, so that every page costs
+	 * the same however deep into the result it is.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param query the query
+	 * @param pageSize the page size
+	 * @param keyset the key to sort and page by
+	 * @return the search cursor, to be closed once done
+	 */
+	SearchCursor openSearchCursor(final String authTicket, final String query, final int pageSize,
+			final SearchCursor.Keyset keyset);
+	
+	/**
+	 * Visit the metadata of all the search hits, in the shape returned by {@link #getMetadata(String, String)}.
+	 * Properties and aspect names are included in the search result itself, so there is no request per hit.
+	 * @param authTicket the auth ticket
+	 * @param query the query
+	 * @param pageSize the page size
+	 * @param skipCount the skip count of the first page, ignored when paging by a key
+	 * @param keyset the key to page by, null to page by skip count
+	 * @param shards the number of shards searched concurrently by the key (CREATED if none), 1 for a single cursor
+	 * @param metadataVisitor the visitor, invoked concurrently when there is more than one shard
+	 * @return the number of hits visited
+	 * @throws AlfScriptException if search fails even after retries
+	 */
+	long visitMetadata(final String authTicket, final String query, final int pageSize, final long skipCount,
+			final SearchCursor.Keyset keyset, final int shards, final JSONVisitor<JSONObject> metadataVisitor);
+	
 	/**
 	 * Download metadata.
 	 *
@@ -60,6 +168,31 @@ public interface SNDService {
 	boolean downloadMetadata(final String nodeId, final String downloadPath, final String fileName,
 			final String alfTicket);
 
+	/**
+	 * Write the content of the node to the given stream, e.g. an archive entry.
+	 *
+	 * @param nodeId the node id
+	 * @param fileName the file name
+	 * @param alfTicket the alf ticket
+	 * @param outStream the out stream, not closed
+	 * @return true, if written; false if the repository did not return the content
+	 * @throws IOException if the content could not be read or written, the stream may then hold part of it
+	 */
+	boolean writeContent(final String nodeId, final String fileName, final String alfTicket,
+			final OutputStream outStream) throws IOException;
+
+	/**
+	 * Write the metadata of the node, as returned by the metadata web script, to the given stream.
+	 *
+	 * @param nodeId the node id
+	 * @param alfTicket the alf ticket
+	 * @param outStream the out stream, not closed
+	 * @return true, if written; false if the repository did not return the metadata
+	 * @throws IOException if the metadata could not be read or written, the stream may then hold part of it
+	 */
+	boolean writeMetadata(final String nodeId, final String alfTicket, final OutputStream outStream)
+			throws IOException;
+
 	/**
 	 * Gets the metadata.
 	 *
@@ -68,4 +201,13 @@ public interface SNDService {
 	 * @return the metadata
 	 */
 	JSONObject getMetadata(final String nodeId,	final String alfTicket);
+
+	/**
+	 * Gets the content url of the node, e.g. store://2020/1/1/0/0/uuid.bin.
+	 *
+	 * @param nodeId the node id
+	 * @param alfTicket the alf ticket
+	 * @return the content url, null if the node has no content or the metadata could not be read
+	 */
+	String getContentUrl(final String nodeId, final String alfTicket);
 }
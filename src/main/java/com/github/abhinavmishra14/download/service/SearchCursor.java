@@ -0,0 +1,520 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.download.service;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.download.pojo.BasicSearchPayload;
+import com.github.abhinavmishra14.download.pojo.Sort;
+import com.github.abhinavmishra14.exception.AlfScriptException;
+
+/**
+ * The Class SearchCursor.<br>
+ * Lazily walks all the pages of a search, one page of entries held in memory at a time. While the
+ * entries of a page are consumed, the next page is already being fetched in the background, so the
+ * consumer waits for the repository only when it is faster than the search.<br>
+ * Entries are the elements of <code>list.entries</code>, i.e. <code>{"entry": {...}}</code>.
+ * Close the cursor (or the stream) when done, to stop the prefetch of a search not walked to the end.<br>
+ * Paging by skip count gets slower with every page, as the index has to collect and skip all the
+ * preceding hits. With a {@link Keyset} the result is sorted by that key and each page is requested
+ * with a range predicate starting at the last key seen, so every page costs the same.
+ */
+public class SearchCursor implements Iterator<JSONObject>, Closeable {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(SearchCursor.class);
+
+	/** The Constant HAS_MORE_ITEMS. */
+	private static final String HAS_MORE_ITEMS = "hasMoreItems";
+
+	/** The Constant TOTAL_ITEMS. */
+	private static final String TOTAL_ITEMS = "totalItems";
+
+	/** The Constant CREATED_AT. Accepts both +0000 and Z offsets. */
+	private static final DateTimeFormatter CREATED_AT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss[.SSS][XXX][XX]");
+
+	/** The service. */
+	private final SNDService service;
+
+	/** The auth ticket. */
+	private final String authTicket;
+
+	/** The query. */
+	private final String query;
+
+	/** The page size. */
+	private final int pageSize;
+
+	/** The keyset, null when paging by skip count. */
+	private final Keyset keyset;
+
+	/** The extra details to include in the entries, e.g. properties and aspectNames. */
+	private final List<String> include;
+
+	/** The prefetcher. */
+	private final ExecutorService prefetcher;
+
+	/** The skip count of the next page to fetch. */
+	private long nextSkipCount;
+
+	/** The key of the last entry fetched, null before the first page. */
+	private String lastKey;
+
+	/** The next page, null when there are no more pages. */
+	private CompletableFuture<Page> nextPage;
+
+	/** The entries of the current page. */
+	private JSONArray entries = new JSONArray();
+
+	/** The index of the next entry in the current page. */
+	private int index;
+
+	/** The pages fetched. */
+	private int pagesFetched;
+
+	/** The entries returned. */
+	private long entriesReturned;
+
+	/** The total items reported by the repository, -1 if unknown. */
+	private volatile long totalItems = -1;
+
+	/** The time spent fetching pages, in nanos. */
+	private volatile long fetchNanos;
+
+	/** The time the consumer waited for pages, in nanos. */
+	private long waitNanos;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param service the service
+	 * @param authTicket the auth ticket
+	 * @param query the query
+	 * @param pageSize the page size
+	 * @param skipCount the skip count of the first page
+	 * @param keyset the key to page by, null to page by skip count
+	 */
+	public SearchCursor(final SNDService service, final String authTicket, final String query,
+			final int pageSize, final long skipCount, final Keyset keyset) {
+		this(service, authTicket, query, pageSize, skipCount, keyset, Collections.<String>emptyList());
+	}
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param service the service
+	 * @param authTicket the auth ticket
+	 * @param query the query
+	 * @param pageSize the page size
+	 * @param skipCount the skip count of the first page
+	 * @param keyset the key to page by, null to page by skip count
+	 * @param include the extra details to include in the entries, e.g. properties and aspectNames
+	 */
+	public SearchCursor(final SNDService service, final String authTicket, final String query,
+			final int pageSize, final long skipCount, final Keyset keyset, final List<String> include) {
+		super();
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+		}
+		this.service = service;
+		this.authTicket = authTicket;
+		this.query = query;
+		this.pageSize = pageSize;
+		this.nextSkipCount = skipCount;
+		this.keyset = keyset;
+		this.include = include;
+		this.prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "search-prefetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.nextPage = fetchNext();
+	}
+
+	/**
+	 * Checks for next.
+	 *
+	 * @return true, if successful
+	 */
+	@Override
+	public boolean hasNext() {
+		while (index >= entries.length()) {
+			if (nextPage == null) {
+				return false;
+			}
+			final Page page = awaitNextPage();
+			entries = page.entries;
+			index = 0;
+			advance(page.entries);
+			// Prefetch the following page while this one is consumed
+			nextPage = page.hasMoreItems && page.entries.length() > 0 ? fetchNext() : null;
+		}
+		return true;
+	}
+
+	/**
+	 * Next.
+	 *
+	 * @return the JSON object
+	 */
+	@Override
+	public JSONObject next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		entriesReturned++;
+		final JSONObject entry = entries.getJSONObject(index);
+		// Drop the reference, so consumed entries can be collected before the page ends
+		entries.put(index++, JSONObject.NULL);
+		return entry;
+	}
+
+	/**
+	 * Stream of the remaining entries, closing the stream closes the cursor.
+	 *
+	 * @return the stream
+	 */
+	public Stream<JSONObject> stream() {
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+	/**
+	 * Gets the number of pages fetched so far.
+	 *
+	 * @return the pages fetched
+	 */
+	public int getPagesFetched() {
+		return pagesFetched;
+	}
+
+	/**
+	 * Gets the number of entries returned so far.
+	 *
+	 * @return the entries returned
+	 */
+	public long getEntriesReturned() {
+		return entriesReturned;
+	}
+
+	/**
+	 * Gets the total number of hits reported by the repository.
+	 *
+	 * @return the total items, -1 if not known yet
+	 */
+	public long getTotalItems() {
+		return totalItems;
+	}
+
+	/**
+	 * Gets the time spent fetching pages.
+	 *
+	 * @return the fetch millis
+	 */
+	public long getFetchMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(fetchNanos);
+	}
+
+	/**
+	 * Gets the time the consumer was blocked waiting for a page. Close to zero when the search
+	 * keeps up with the consumer.
+	 *
+	 * @return the wait millis
+	 */
+	public long getWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+	}
+
+	/**
+	 * Gets the key of the last entry fetched, a keyset search can be resumed from it.
+	 *
+	 * @return the last key, null when paging by skip count
+	 */
+	public String getLastKey() {
+		return lastKey;
+	}
+
+	/**
+	 * Close.
+	 */
+	@Override
+	public void close() {
+		if (nextPage != null) {
+			nextPage.cancel(false);
+			nextPage = null;
+		}
+		entries = new JSONArray();
+		prefetcher.shutdownNow();
+		LOG.info("Search cursor closed: " + this);
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		return "pages: " + pagesFetched + ", entries: " + entriesReturned + ", totalItems: " + totalItems
+				+ ", fetch: " + getFetchMillis() + "ms, waited: " + getWaitMillis() + "ms"
+				+ (keyset == null ? StringUtils.EMPTY : ", " + keyset + ": " + lastKey);
+	}
+
+	/**
+	 * Move past the entries of the page just fetched.<br>
+	 * The key is not unique, so the next page starts at the last key inclusive and skips the entries
+	 * already seen with that key.
+	 *
+	 * @param pageEntries the page entries
+	 */
+	private void advance(final JSONArray pageEntries) {
+		final int length = pageEntries.length();
+		if (keyset == null) {
+			nextSkipCount += length;
+			return;
+		}
+		if (length == 0) {
+			return;
+		}
+		final String pageLastKey = keyset.readKey(pageEntries.getJSONObject(length - 1));
+		int trailing = 1;
+		while (trailing < length && pageLastKey.equals(keyset.readKey(pageEntries.getJSONObject(length - 1 - trailing)))) {
+			trailing++;
+		}
+		if (pageLastKey.equals(lastKey) && trailing == length) {
+			nextSkipCount += length;
+		} else {
+			nextSkipCount = trailing;
+		}
+		lastKey = pageLastKey;
+	}
+
+	/**
+	 * Fetch the next page in the background.
+	 *
+	 * @return the page
+	 */
+	private CompletableFuture<Page> fetchNext() {
+		final BasicSearchPayload payload = AlfScriptUtils.createSearchPayload(
+				keyset == null || lastKey == null ? query : keyset.rangeQuery(query, lastKey),
+				String.valueOf(pageSize), String.valueOf(nextSkipCount));
+		if (keyset != null) {
+			keyset.applyTo(payload, true);
+		}
+		if (!include.isEmpty()) {
+			final Set<String> details = new LinkedHashSet<String>(include);
+			if (payload.getInclude() != null) {
+				details.addAll(payload.getInclude());
+			}
+			payload.setInclude(new ArrayList<String>(details));
+		}
+		final boolean firstPage = lastKey == null;
+		return CompletableFuture.supplyAsync(() -> {
+			final long started = System.nanoTime();
+			final JSONObject result = service.getSearchResult(authTicket, payload);
+			fetchNanos += System.nanoTime() - started;
+			final JSONObject list = result.getJSONObject(AlfScriptConstants.LIST);
+			final JSONObject pagination = list.optJSONObject(AlfScriptConstants.PAGINATION);
+			// Range queries report what is left after the key, so only the first page has the total
+			if (pagination != null && pagination.has(TOTAL_ITEMS) && (keyset == null || firstPage)) {
+				totalItems = pagination.getLong(TOTAL_ITEMS);
+			}
+			final JSONArray pageEntries = list.getJSONArray(AlfScriptConstants.ENTRIES);
+			final boolean hasMoreItems = pagination == null ? pageEntries.length() >= pageSize
+					: pagination.optBoolean(HAS_MORE_ITEMS, false);
+			return new Page(pageEntries, hasMoreItems);
+		}, prefetcher);
+	}
+
+	/**
+	 * Wait for the next page.
+	 *
+	 * @return the page
+	 */
+	private Page awaitNextPage() {
+		final long started = System.nanoTime();
+		try {
+			final Page page = nextPage.join();
+			pagesFetched++;
+			return page;
+		} catch (CompletionException excp) {
+			nextPage = null;
+			if (excp.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) excp.getCause();
+			}
+			throw new AlfScriptException("Failed to fetch search page at skipCount: " + nextSkipCount, excp.getCause());
+		} catch (CancellationException excp) {
+			nextPage = null;
+			throw new AlfScriptException("Search cursor is closed", excp);
+		} finally {
+			waitNanos += System.nanoTime() - started;
+		}
+	}
+
+	/**
+	 * Parse a date as returned by the v1 API, e.g. 2020-01-01T00:00:00.000+0000.
+	 *
+	 * @param date the date
+	 * @return the epoch millis
+	 */
+	static long parseDate(final String date) {
+		return OffsetDateTime.parse(date, CREATED_AT).toInstant().toEpochMilli();
+	}
+
+	/**
+	 * The Enum Keyset. Keys a search can be sorted and paged by, read from fields the v1 search
+	 * returns in every entry. The v1 API strips sys: properties, so sys:node-dbid can't be used.
+	 */
+	public enum Keyset {
+
+		/** The created date, read from createdAt of the entry. Not unique, ties are skipped by count. */
+		CREATED("cm:created");
+
+		/** The field. */
+		private final String field;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param field the field
+		 */
+		Keyset(final String field) {
+			this.field = field;
+		}
+
+		/**
+		 * Sort the search by this key.
+		 *
+		 * @param payload the payload
+		 * @param ascending the ascending
+		 */
+		void applyTo(final BasicSearchPayload payload, final boolean ascending) {
+			final Sort sort = new Sort();
+			sort.setType("FIELD");
+			sort.setField(field);
+			sort.setAscending(ascending);
+			payload.setSort(Collections.singletonList(sort));
+		}
+
+		/**
+		 * Restrict the query to the entries from the given key on, inclusive.
+		 *
+		 * @param query the query
+		 * @param fromKey the from key
+		 * @return the range query
+		 */
+		String rangeQuery(final String query, final String fromKey) {
+			return "(" + query + ") AND " + field + ":[" + fromKey + " TO MAX]";
+		}
+
+		/**
+		 * Restrict the query to the entries with key from (inclusive) to (exclusive).
+		 *
+		 * @param query the query
+		 * @param from the from key value
+		 * @param to the to key value, {@link Long#MAX_VALUE} for no upper bound
+		 * @return the range query
+		 */
+		String rangeQuery(final String query, final long from, final long to) {
+			return "(" + query + ") AND " + field + ":[" + formatBound(from) + " TO "
+					+ (to == Long.MAX_VALUE ? "MAX]" : formatBound(to) + ">");
+		}
+
+		/**
+		 * Read the key of the search result entry, formatted as an AFTS range bound.
+		 *
+		 * @param entryJson the entry json, i.e. <code>{"entry": {...}}</code>
+		 * @return the key
+		 */
+		String readKey(final JSONObject entryJson) {
+			return formatBound(readValue(entryJson));
+		}
+
+		/**
+		 * Read the key of the search result entry as epoch millis.
+		 *
+		 * @param entryJson the entry json, i.e. <code>{"entry": {...}}</code>
+		 * @return the key value
+		 */
+		long readValue(final JSONObject entryJson) {
+			return parseDate(entryJson.getJSONObject(AlfScriptConstants.ENTRY).getString("createdAt"));
+		}
+
+		/**
+		 * Format the key value as an AFTS range bound, quoted in UTC.
+		 *
+		 * @param value the value
+		 * @return the bound
+		 */
+		String formatBound(final long value) {
+			return "\"" + Instant.ofEpochMilli(value) + "\"";
+		}
+	}
+
+	/**
+	 * The Class Page.
+	 */
+	private static class Page {
+
+		/** The entries. */
+		private final JSONArray entries;
+
+		/** The has more items. */
+		private final boolean hasMoreItems;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param entries the entries
+		 * @param hasMoreItems the has more items
+		 */
+		Page(final JSONArray entries, final boolean hasMoreItems) {
+			this.entries = entries;
+			this.hasMoreItems = hasMoreItems;
+		}
+	}
+}
@@ -0,0 +1,392 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2023. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.download.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.exception.AlfScriptException;
+
+/**
+ * The Class SyncIndex.<br>
+ * Local index of the nodes mirrored to a download path by {@link IncrementalSync}: modified date,
+ * content size and checksum of each node, plus the query and the high-water mark of the last
+ * completed sync. Kept as <code>.alfscript-sync.json</code> in the download path and written to a
+ * temp file which is then renamed over it, so a crash never leaves a torn index. Read and written
+ * with the streaming parser, the index of millions of nodes is never held as a json tree.
+ */
+public final class SyncIndex {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(SyncIndex.class);
+
+	/** The Constant INDEX_FILE. */
+	public static final String INDEX_FILE = ".alfscript-sync.json";
+
+	/** The Constant QUERY. */
+	private static final String QUERY = "query";
+
+	/** The Constant HIGH_WATER_MARK. */
+	private static final String HIGH_WATER_MARK = "highWaterMark";
+
+	/** The Constant NODES. */
+	private static final String NODES = "nodes";
+
+	/** The Constant NAME. */
+	private static final String NAME = "name";
+
+	/** The Constant MODIFIED_AT. */
+	private static final String MODIFIED_AT = "modifiedAt";
+
+	/** The Constant SIZE. */
+	private static final String SIZE = "size";
+
+	/** The Constant CHECKSUM. */
+	private static final String CHECKSUM = "sha256";
+
+	/** The Constant JSON_FACTORY. */
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	/** The index file. */
+	private final Path indexFile;
+
+	/** The nodes, by node id. */
+	private final Map<String, Entry> nodes = new ConcurrentHashMap<String, Entry>();
+
+	/** The query of the last completed sync, null if none. */
+	private String query;
+
+	/** The high-water mark, max modified date in epoch millis seen by the last completed sync, 0 if none. */
+	private long highWaterMark;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param indexFile the index file
+	 */
+	private SyncIndex(final Path indexFile) {
+		super();
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Load the index of the download path, empty if there is none yet.
+	 *
+	 * @param downloadPath the download path
+	 * @return the sync index
+	 * @throws AlfScriptException if the index can not be read
+	 */
+	public static SyncIndex load(final String downloadPath) {
+		final SyncIndex index = new SyncIndex(new File(downloadPath, INDEX_FILE).toPath());
+		if (Files.isRegularFile(index.indexFile)) {
+			try (final JsonParser parser = JSON_FACTORY.createParser(index.indexFile.toFile())) {
+				index.read(parser);
+			} catch (IOException excp) {
+				throw new AlfScriptException("Failed to read the sync index: " + index.indexFile, excp);
+			}
+		}
+		LOG.info("Loaded " + index);
+		return index;
+	}
+
+	/**
+	 * Read the index.
+	 *
+	 * @param parser the parser
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void read(final JsonParser parser) throws IOException {
+		expect(parser.nextToken(), JsonToken.START_OBJECT);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String field = parser.getCurrentName();
+			parser.nextToken();
+			if (QUERY.equals(field)) {
+				query = parser.getValueAsString();
+			} else if (HIGH_WATER_MARK.equals(field)) {
+				highWaterMark = Instant.parse(parser.getText()).toEpochMilli();
+			} else if (NODES.equals(field)) {
+				expect(parser.currentToken(), JsonToken.START_OBJECT);
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					final String nodeId = parser.getCurrentName();
+					expect(parser.nextToken(), JsonToken.START_OBJECT);
+					nodes.put(nodeId, readEntry(parser));
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * Read the entry of a node, the parser is at the start of the entry object.
+	 *
+	 * @param parser the parser
+	 * @return the entry
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static Entry readEntry(final JsonParser parser) throws IOException {
+		String name = null;
+		long modifiedAt = 0;
+		long size = -1;
+		String checksum = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String field = parser.getCurrentName();
+			parser.nextToken();
+			if (NAME.equals(field)) {
+				name = parser.getValueAsString();
+			} else if (MODIFIED_AT.equals(field)) {
+				modifiedAt = Instant.parse(parser.getText()).toEpochMilli();
+			} else if (SIZE.equals(field)) {
+				size = parser.getValueAsLong(-1);
+			} else if (CHECKSUM.equals(field)) {
+				checksum = parser.getValueAsString();
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return new Entry(name, modifiedAt, size, checksum);
+	}
+
+	/**
+	 * Fail unless the token is the expected one.
+	 *
+	 * @param token the token
+	 * @param expected the expected
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void expect(final JsonToken token, final JsonToken expected) throws IOException {
+		if (token != expected) {
+			throw new IOException("Expected " + expected + " but found " + token);
+		}
+	}
+
+	/**
+	 * Write the index to a temp file and rename it over the index file.
+	 *
+	 * @throws AlfScriptException if the index can not be written
+	 */
+	public void save() {
+		final Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + AlfScriptUtils.PART_EXTN);
+		try {
+			try (final JsonGenerator generator = JSON_FACTORY.createGenerator(tempFile.toFile(),
+					JsonEncoding.UTF8)) {
+				generator.useDefaultPrettyPrinter();
+				write(generator);
+			}
+			AlfScriptUtils.moveAtomically(tempFile, indexFile);
+		} catch (IOException excp) {
+			throw new AlfScriptException("Failed to write the sync index: " + indexFile, excp);
+		}
+		LOG.info("Saved " + this);
+	}
+
+	/**
+	 * Write the index.
+	 *
+	 * @param generator the generator
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void write(final JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		if (query != null) {
+			generator.writeStringField(QUERY, query);
+		}
+		if (highWaterMark > 0) {
+			generator.writeStringField(HIGH_WATER_MARK, Instant.ofEpochMilli(highWaterMark).toString());
+		}
+		generator.writeObjectFieldStart(NODES);
+		for (final Map.Entry<String, Entry> eachNode : nodes.entrySet()) {
+			final Entry entry = eachNode.getValue();
+			generator.writeObjectFieldStart(eachNode.getKey());
+			generator.writeStringField(NAME, entry.getName());
+			generator.writeStringField(MODIFIED_AT, Instant.ofEpochMilli(entry.getModifiedAt()).toString());
+			generator.writeNumberField(SIZE, entry.getSize());
+			if (entry.getChecksum() != null) {
+				generator.writeStringField(CHECKSUM, entry.getChecksum());
+			}
+			generator.writeEndObject();
+		}
+		generator.writeEndObject();
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Gets the entry of the node.
+	 *
+	 * @param nodeId the node id
+	 * @return the entry, null if the node is not indexed
+	 */
+	public Entry get(final String nodeId) {
+		return nodes.get(nodeId);
+	}
+
+	/**
+	 * Index the node, safe to call from the download threads.
+	 *
+	 * @param nodeId the node id
+	 * @param entry the entry
+	 */
+	public void put(final String nodeId, final Entry entry) {
+		nodes.put(nodeId, entry);
+	}
+
+	/**
+	 * Gets the number of nodes indexed.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Gets the query of the last completed sync.
+	 *
+	 * @return the query, null if none
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * Gets the high-water mark of the last completed sync.
+	 *
+	 * @return the high-water mark in epoch millis, 0 if none
+	 */
+	public long getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	/**
+	 * Record a completed sync of the query, the next one only has to look at nodes modified since the high-water mark.
+	 *
+	 * @param query the query
+	 * @param highWaterMark the high-water mark in epoch millis
+	 */
+	public void setCompleted(final String query, final long highWaterMark) {
+		this.query = query;
+		this.highWaterMark = highWaterMark;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		return "sync index: " + indexFile + ", nodes: " + nodes.size() + ", highWaterMark: "
+				+ (highWaterMark > 0 ? Instant.ofEpochMilli(highWaterMark).toString() : "none");
+	}
+
+	/**
+	 * The Class Entry. Indexed state of one node.
+	 */
+	public static final class Entry {
+
+		/** The name. */
+		private final String name;
+
+		/** The modified date in epoch millis. */
+		private final long modifiedAt;
+
+		/** The content size. */
+		private final long size;
+
+		/** The SHA-256 checksum of the content, hex, null if not known. */
+		private final String checksum;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param name the name
+		 * @param modifiedAt the modified date in epoch millis
+		 * @param size the content size
+		 * @param checksum the checksum, null if not known
+		 */
+		public Entry(final String name, final long modifiedAt, final long size, final String checksum) {
+			super();
+			this.name = name;
+			this.modifiedAt = modifiedAt;
+			this.size = size;
+			this.checksum = checksum;
+		}
+
+		/**
+		 * Gets the name.
+		 *
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the modified date.
+		 *
+		 * @return the modified date in epoch millis
+		 */
+		public long getModifiedAt() {
+			return modifiedAt;
+		}
+
+		/**
+		 * Gets the content size.
+		 *
+		 * @return the size
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Gets the checksum.
+		 *
+		 * @return the SHA-256 checksum, hex, null if not known
+		 */
+		public String getChecksum() {
+			return checksum;
+		}
+
+		/**
+		 * Checks if the node is unchanged, i.e. same name, modified date and size.
+		 *
+		 * @param nodeName the node name
+		 * @param nodeModifiedAt the node modified date in epoch millis
+		 * @param nodeSize the node content size
+		 * @return true, if unchanged
+		 */
+		public boolean isUnchanged(final String nodeName, final long nodeModifiedAt, final long nodeSize) {
+			return modifiedAt == nodeModifiedAt && size == nodeSize && name != null && name.equals(nodeName);
+		}
+	}
+}
@@ -20,25 +20,35 @@ package com.github.abhinavmishra14.download.service.impl;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
 import java.text.MessageFormat;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.HttpResponse;
+import org.apache.http.HttpEntity;
 import org.apache.http.StatusLine;
-import org.json.JSONArray;
+import org.apache.http.client.HttpResponseException;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.download.pojo.BasicSearchPayload;
+import com.github.abhinavmishra14.download.service.ContentCache;
+import com.github.abhinavmishra14.download.service.MetadataFlattener;
+import com.github.abhinavmishra14.download.service.PartitionedSearch;
+import com.github.abhinavmishra14.download.service.ResumableDownload;
 import com.github.abhinavmishra14.download.service.SNDService;
+import com.github.abhinavmishra14.download.service.SearchCursor;
 import com.github.abhinavmishra14.exception.AlfScriptException;
 import com.github.abhinavmishra14.http.utils.HTTPUtils;
+import com.github.abhinavmishra14.json.utils.JSONUtils;
+import com.github.abhinavmishra14.json.utils.JSONVisitor;
 import com.google.common.net.UrlEscapers;
 
 /**
@@ -61,6 +71,13 @@ public class SNDServiceImpl implements SNDService {
 	/** The Constant DOWNLOAD_API_URI. */
 	private static final String DOWNLOAD_API_URI = "{0}/alfresco/service/api/node/workspace/SpacesStore/{1}/content/{2}?c=force&alf_ticket={3}";
 	
+	/** The Constant METADATA_INCLUDE. Details included in the search entries to get the node metadata without a request per node. */
+	private static final List<String> METADATA_INCLUDE = Collections.unmodifiableList(
+			Arrays.asList(AlfScriptConstants.PROPS, AlfScriptConstants.ASPECTS));
+	
+	/** The Constant FLATTENER. The flattener reuses its buffers, so one per thread. */
+	private static final ThreadLocal<MetadataFlattener> FLATTENER = ThreadLocal.withInitial(MetadataFlattener::new);
+	
 	/** The server endpoint. */
 	private final String serverEndpoint;
 	
@@ -86,11 +103,27 @@ public class SNDServiceImpl implements SNDService {
 	@Override
 	public boolean processDownloadRequest(final String downloadPath, final String authTicket,
 			final String fileName, final String nodeRef) {
-		final String nodeId = nodeRef.contains(AlfScriptConstants.WORKSPACE_PROTOCOL)
-				? StringUtils.substringAfter(nodeRef, AlfScriptConstants.WORKSPACE_PROTOCOL)
-				: nodeRef;
-		final String downloadURL = prepareDownloadUrl(serverEndpoint, nodeId, fileName, authTicket);
-		final boolean isDownloaded = download(downloadURL, downloadPath, fileName);
+		// Content shared with nodes downloaded before is served from the cache, if enabled
+		final String contentUrl = ContentCache.getDefault() == null ? null
+				: getContentUrl(getNodeId(nodeRef), authTicket);
+		return processDownloadRequest(downloadPath, authTicket, fileName, nodeRef, contentUrl);
+	}
+	
+	/**
+	 * Process download request of a node whose content url is already known.
+	 *
+	 * @param downloadPath the download path
+	 * @param authTicket the auth ticket
+	 * @param fileName the file name
+	 * @param nodeRef the node ref
+	 * @param contentUrl the content url, null to download without the cache
+	 * @return true, if successful
+	 */
+	@Override
+	public boolean processDownloadRequest(final String downloadPath, final String authTicket,
+			final String fileName, final String nodeRef, final String contentUrl) {
+		final String downloadURL = prepareDownloadUrl(serverEndpoint, getNodeId(nodeRef), fileName, authTicket);
+		final boolean isDownloaded = download(downloadURL, downloadPath, fileName, ContentCache.getDefault(), contentUrl);
 		if (isDownloaded) {
 			LOG.info("File: "+fileName+" has been downloaded at: "+downloadPath);
 		}
@@ -98,30 +131,42 @@ public class SNDServiceImpl implements SNDService {
 	}
 	
 	/**
-	 * Download.
+	 * Gets the node id of the node ref.
+	 *
+	 * @param nodeRef the node ref, or the node id
+	 * @return the node id
+	 */
+	private static String getNodeId(final String nodeRef) {
+		return nodeRef.contains(AlfScriptConstants.WORKSPACE_PROTOCOL)
+				? StringUtils.substringAfter(nodeRef, AlfScriptConstants.WORKSPACE_PROTOCOL)
+				: nodeRef;
+	}
+	
+	/**
+	 * Download.<br>
+	 * A download broken midway is resumed from the bytes already received, see {@link ResumableDownload}.
 	 *
 	 * @param downloadURL the download url
 	 * @param downloadPath the download path
 	 * @param fileName the file name
+	 * @param contentCache the content cache, null if not enabled
+	 * @param contentUrl the content url, null if not known
 	 * @return true, if download
 	 */
-	private boolean download(final String downloadURL,
-			final String downloadPath, final String fileName) {
+	private boolean download(final String downloadURL, final String downloadPath, final String fileName,
+			final ContentCache contentCache, final String contentUrl) {
 		boolean isDownloaded = false;
+		final String downloadFilePath = AlfScriptUtils.getFileName(fileName, downloadPath);
+		LOG.info("DownloadFilePath: "+downloadFilePath);
+		final File outputFile = new File(downloadFilePath);
 		try {
-			final HttpResponse httpResp = HTTPUtils.httpGet(downloadURL);
-			final StatusLine status = httpResp.getStatusLine();
-			final int statusCode = status.getStatusCode();
-			final String statusMsg = status.getReasonPhrase();
-			LOG.info("Status: "+statusCode +" | "+ statusMsg);
-			if (statusCode == HTTPUtils.HTTP_CODE_200) {
-				final InputStream content = httpResp.getEntity().getContent();
-				final String downloadFilePath = AlfScriptUtils.getFileName(fileName, downloadPath);
-				LOG.info("DownloadFilePath: "+downloadFilePath);
-				final File outputFile = new File(downloadFilePath);
-				AlfScriptUtils.copyInputStreamToFile(content, outputFile);
-				isDownloaded = outputFile.exists();
-			}
+			final long size = contentCache == null || contentUrl == null
+					? ResumableDownload.download(downloadURL, outputFile)
+					: contentCache.get(contentUrl, outputFile, target -> ResumableDownload.download(downloadURL, target));
+			LOG.info("Downloaded " + size + " bytes to: " + downloadFilePath);
+			isDownloaded = outputFile.exists();
+		} catch (HttpResponseException excp) {
+			LOG.info("Status: " + excp.getStatusCode() + " | " + excp.getReasonPhrase());
 		} catch (IOException excp) {
 			LOG.error("Failed to download the file: "+downloadURL, excp);
 		}
@@ -153,31 +198,128 @@ public class SNDServiceImpl implements SNDService {
 	 * @param maxItems the max items
 	 * @param skipCount the skip count
 	 * @return the search result
+	 * @throws AlfScriptException if search fails even after retries
 	 */
 	@Override
 	public JSONObject getSearchResult(final String authTicket, final String query, final String maxItems,
 			final String skipCount) {
-		JSONObject searchResult = null;
+		return getSearchResult(authTicket, AlfScriptUtils.createSearchPayload(query, maxItems, skipCount));
+	}
+
+	/**
+	 * Gets the search result.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param basicSearchPayload the search payload
+	 * @return the search result
+	 * @throws AlfScriptException if search fails even after retries
+	 */
+	@Override
+	public JSONObject getSearchResult(final String authTicket, final BasicSearchPayload basicSearchPayload) {
 		final String searchUrl = String.format(SEARCH_URI, serverEndpoint, authTicket);
-		final String searchPayload = AlfScriptUtils.getSearchPayload(query, maxItems, skipCount);
+		final String searchPayload = JSONUtils.convertFromJsonObjectToString(basicSearchPayload);
 		LOG.info("Searching at: "+searchUrl+ "| payLoad: "+searchPayload);
 		try {
-			final HttpResponse httpResp = HTTPUtils.httpPost(searchUrl, searchPayload);
-			final StatusLine status = httpResp.getStatusLine();
-			final int statusCode = status.getStatusCode();
-			final String statusMsg = status.getReasonPhrase();
-			LOG.info("Status: "+statusCode +" | "+ statusMsg);
-			if (statusCode == HTTPUtils.HTTP_CODE_200) {
-				final String resonseStr = IOUtils.toString(httpResp.getEntity().getContent(),
-						StandardCharsets.UTF_8);
-				searchResult = new JSONObject(resonseStr);
-			} else {
-				throw new AlfScriptException(statusMsg);
-			}
+			return HTTPUtils.httpPostReadOnly(searchUrl, searchPayload, httpResp -> {
+				final StatusLine status = httpResp.getStatusLine();
+				final int statusCode = status.getStatusCode();
+				final String statusMsg = status.getReasonPhrase();
+				LOG.info("Status: "+statusCode +" | "+ statusMsg);
+				if (statusCode == HTTPUtils.HTTP_CODE_200) {
+					return JSONUtils.readJSONObject(httpResp.getEntity().getContent());
+				} else {
+					throw new AlfScriptException(statusMsg);
+				}
+			});
+		} catch (IOException | JSONException excp) {
+			throw new AlfScriptException("Failed to perform search via: " + searchUrl + " | jsonPayload: " + searchPayload, excp);
+		}
+	}
+
+	/**
+	 * Visit search result.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param query the query
+	 * @param maxItems the max items
+	 * @param skipCount the skip count
+	 * @param entryVisitor the entry visitor
+	 * @return the number of entries visited
+	 * @throws AlfScriptException if search fails even after retries
+	 */
+	@Override
+	public long visitSearchResult(final String authTicket, final String query, final String maxItems,
+			final String skipCount, final JSONVisitor<JSONObject> entryVisitor) {
+		final String searchUrl = String.format(SEARCH_URI, serverEndpoint, authTicket);
+		final String searchPayload = AlfScriptUtils.getSearchPayload(query, maxItems, skipCount);
+		LOG.info("Streaming search result from: "+searchUrl+ "| payLoad: "+searchPayload);
+		try {
+			return HTTPUtils.httpPostReadOnly(searchUrl, searchPayload, httpResp -> {
+				final StatusLine status = httpResp.getStatusLine();
+				final int statusCode = status.getStatusCode();
+				final String statusMsg = status.getReasonPhrase();
+				LOG.info("Status: "+statusCode +" | "+ statusMsg);
+				if (statusCode == HTTPUtils.HTTP_CODE_200) {
+					return JSONUtils.streamArray(httpResp.getEntity().getContent(),
+							AlfScriptConstants.LIST + AlfScriptConstants.DOT + AlfScriptConstants.ENTRIES,
+							JSONObject.class, entryVisitor);
+				} else {
+					throw new AlfScriptException(statusMsg);
+				}
+			});
 		} catch (IOException | JSONException excp) {
-			LOG.error("Failed to perform search via: " + searchUrl + " | jsonPayload: " + searchPayload, excp);
+			throw new AlfScriptException("Failed to perform search via: " + searchUrl + " | jsonPayload: " + searchPayload, excp);
 		}
-		return searchResult;
+	}
+
+	/**
+	 * Visit search result, partitioned.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param query the query
+	 * @param keyset the keyset
+	 * @param shards the shards
+	 * @param entryVisitor the entry visitor
+	 * @return the number of entries visited
+	 * @throws AlfScriptException if search fails even after retries
+	 */
+	@Override
+	public long visitSearchResult(final String authTicket, final String query, final SearchCursor.Keyset keyset,
+			final int shards, final JSONVisitor<JSONObject> entryVisitor) {
+		LOG.info("Searching " + shards + " shards by: " + keyset + " for query: " + query);
+		return new PartitionedSearch(this, authTicket, query, keyset, shards).execute(entryVisitor);
+	}
+
+	/**
+	 * Open search cursor.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param query the query
+	 * @param pageSize the page size
+	 * @param skipCount the skip count of the first page
+	 * @return the search cursor
+	 */
+	@Override
+	public SearchCursor openSearchCursor(final String authTicket, final String query, final int pageSize,
+			final long skipCount) {
+		LOG.info("Opening search cursor with pageSize: " + pageSize + " for query: " + query);
+		return new SearchCursor(this, authTicket, query, pageSize, skipCount, null);
+	}
+
+	/**
+	 * Open keyset search cursor.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param query the query
+	 * @param pageSize the page size
+	 * @param keyset the keyset
+	 * @return the search cursor
+	 */
+	@Override
+	public SearchCursor openSearchCursor(final String authTicket, final String query, final int pageSize,
+			final SearchCursor.Keyset keyset) {
+		LOG.info("Opening search cursor with pageSize: " + pageSize + " paged by: " + keyset + " for query: " + query);
+		return new SearchCursor(this, authTicket, query, pageSize, 0, keyset);
 	}
 
 	/**
@@ -195,25 +337,82 @@ public class SNDServiceImpl implements SNDService {
 		boolean isMetaDownloaded = false;
 		final String metaDownUrl = String.format(METADATA_URI, serverEndpoint, nodeId, alfTicket);
 		try {
-			final HttpResponse httpResp = HTTPUtils.httpGet(metaDownUrl);
-			final StatusLine status = httpResp.getStatusLine();
-			final int statusCode = status.getStatusCode();
-			final String statusMsg = status.getReasonPhrase();
-			LOG.info("Status: "+statusCode +" | "+ statusMsg);
-			if (statusCode == HTTPUtils.HTTP_CODE_200) {
-				final InputStream content = httpResp.getEntity().getContent();
-				final String downloadFilePath = AlfScriptUtils.getFileName(fileName, downloadPath);
-				LOG.info("DownloadMetadataFilePath: "+downloadFilePath);
-				final File outputFile = new File(downloadFilePath);
-				AlfScriptUtils.copyInputStreamToFile(content, outputFile);
-				isMetaDownloaded = outputFile.exists();
-			}
+			isMetaDownloaded = HTTPUtils.httpGet(metaDownUrl, httpResp -> {
+				final StatusLine status = httpResp.getStatusLine();
+				final int statusCode = status.getStatusCode();
+				final String statusMsg = status.getReasonPhrase();
+				LOG.info("Status: "+statusCode +" | "+ statusMsg);
+				if (statusCode == HTTPUtils.HTTP_CODE_200) {
+					final HttpEntity entity = httpResp.getEntity();
+					final String downloadFilePath = AlfScriptUtils.getFileName(fileName, downloadPath);
+					LOG.info("DownloadMetadataFilePath: "+downloadFilePath);
+					final File outputFile = new File(downloadFilePath);
+					// Written to a temp file and renamed, short reads fail instead of leaving partial files
+					try (final InputStream content = entity.getContent()) {
+						AlfScriptUtils.writeToFile(content, entity.getContentLength(), outputFile);
+					}
+					return outputFile.exists();
+				}
+				return false;
+			});
 		} catch (IOException excp) {
 			LOG.error("Failed to download the metadata from: "+metaDownUrl, excp);
 		}
 		return isMetaDownloaded;
 	}
 	
+	/**
+	 * Write the content of the node to the given stream.
+	 *
+	 * @param nodeId the node id
+	 * @param fileName the file name
+	 * @param alfTicket the alf ticket
+	 * @param outStream the out stream, not closed
+	 * @return true, if written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public boolean writeContent(final String nodeId, final String fileName, final String alfTicket,
+			final OutputStream outStream) throws IOException {
+		return copyTo(prepareDownloadUrl(serverEndpoint, nodeId, fileName, alfTicket), outStream);
+	}
+	
+	/**
+	 * Write the metadata of the node to the given stream.
+	 *
+	 * @param nodeId the node id
+	 * @param alfTicket the alf ticket
+	 * @param outStream the out stream, not closed
+	 * @return true, if written
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public boolean writeMetadata(final String nodeId, final String alfTicket, final OutputStream outStream)
+			throws IOException {
+		return copyTo(String.format(METADATA_URI, serverEndpoint, nodeId, alfTicket), outStream);
+	}
+	
+	/**
+	 * Copy the response body of the url to the given stream.<br>
+	 * Requests are retried only until the response arrives, so a body broken midway is never written twice.
+	 *
+	 * @param url the url
+	 * @param outStream the out stream
+	 * @return true, if copied; false if the status is not 200
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private boolean copyTo(final String url, final OutputStream outStream) throws IOException {
+		return HTTPUtils.httpGet(url, httpResp -> {
+			final StatusLine status = httpResp.getStatusLine();
+			if (status.getStatusCode() != HTTPUtils.HTTP_CODE_200) {
+				LOG.info("Status: " + status.getStatusCode() + " | " + status.getReasonPhrase());
+				return false;
+			}
+			httpResp.getEntity().writeTo(outStream);
+			return true;
+		});
+	}
+	
 	/**
 	 * Gets the metadata.
 	 *
@@ -226,38 +425,105 @@ public class SNDServiceImpl implements SNDService {
 		JSONObject desiredMetadata = null;
 		final String metaDownUrl = String.format(METADATA_V1_URI, serverEndpoint, nodeId, alfTicket);
 		try {
-			final HttpResponse httpResp = HTTPUtils.httpGet(metaDownUrl);
-			final StatusLine status = httpResp.getStatusLine();
-			final int statusCode = status.getStatusCode();
-			final String statusMsg = status.getReasonPhrase();
-			LOG.info("Status: " + statusCode + " | " + statusMsg);
-			if (statusCode == HTTPUtils.HTTP_CODE_200) {
-				final String resonseStr = IOUtils.toString(httpResp.getEntity().getContent(), StandardCharsets.UTF_8);
-				final JSONObject metadata = new JSONObject(resonseStr);
-				desiredMetadata = metadata.getJSONObject(AlfScriptConstants.ENTRY);
-				final JSONObject props = desiredMetadata.getJSONObject(AlfScriptConstants.PROPS);
-				final Set<String> propsKeys = props.keySet();
-				for (final String eachPropKey : propsKeys) {
-					final Object propJson = props.get(eachPropKey);
-					if (propJson instanceof JSONArray) {
-						final JSONArray propJsonArry = (JSONArray) propJson;
-						props.put(eachPropKey, StringUtils.join(propJsonArry.toList(), AlfScriptConstants.COMMA));
-					} else {
-						continue;
-					}
+			desiredMetadata = HTTPUtils.httpGet(metaDownUrl, httpResp -> {
+				final StatusLine status = httpResp.getStatusLine();
+				final int statusCode = status.getStatusCode();
+				final String statusMsg = status.getReasonPhrase();
+				LOG.info("Status: " + statusCode + " | " + statusMsg);
+				if (statusCode == HTTPUtils.HTTP_CODE_200) {
+					return readMetadata(httpResp.getEntity().getContent());
+				} else {
+					throw new AlfScriptException(statusMsg);
 				}
-				if (desiredMetadata.has(AlfScriptConstants.ASPECTS)
-						&& desiredMetadata.get(AlfScriptConstants.ASPECTS) instanceof JSONArray) {
-					desiredMetadata.put(AlfScriptConstants.ASPECTS,
-							StringUtils.join(desiredMetadata.getJSONArray(AlfScriptConstants.ASPECTS).toList(),
-									AlfScriptConstants.COMMA));
-				}
-			} else {
-				throw new AlfScriptException(statusMsg);
-			}
+			});
 		} catch (IOException excp) {
 			LOG.error("Failed to download the metadata from: " + metaDownUrl, excp);
 		}
 		return desiredMetadata;
 	}
+	
+	/**
+	 * Read the flattened metadata from the node response, transformed token by token so the
+	 * unflattened entry is never built as a json tree.
+	 *
+	 * @param inStream the node response
+	 * @return the metadata
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static JSONObject readMetadata(final InputStream inStream) throws IOException {
+		try (final JsonParser parser = JSONUtils.createParser(inStream)) {
+			if (!JSONUtils.moveToObject(parser, AlfScriptConstants.ENTRY)) {
+				throw new AlfScriptException("No node entry in the metadata response");
+			}
+			return FLATTENER.get().flatten(parser);
+		}
+	}
+	
+	/**
+	 * Visit the metadata of all the search hits, read from the search result entries which include
+	 * the properties and aspect names.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param query the query
+	 * @param pageSize the page size
+	 * @param skipCount the skip count of the first page
+	 * @param keyset the keyset, null to page by skip count
+	 * @param shards the shards
+	 * @param metadataVisitor the metadata visitor
+	 * @return the number of hits visited
+	 */
+	@Override
+	public long visitMetadata(final String authTicket, final String query, final int pageSize, final long skipCount,
+			final SearchCursor.Keyset keyset, final int shards, final JSONVisitor<JSONObject> metadataVisitor) {
+		final JSONVisitor<JSONObject> entryVisitor = entryJson -> {
+			// Search details (score, highlight) and location are dropped, not part of the node metadata
+			metadataVisitor.visit(FLATTENER.get().flatten(entryJson.getJSONObject(AlfScriptConstants.ENTRY)));
+		};
+		if (shards > 1) {
+			final SearchCursor.Keyset shardBy = keyset == null ? SearchCursor.Keyset.CREATED : keyset;
+			LOG.info("Searching metadata in " + shards + " shards by: " + shardBy + " for query: " + query);
+			final PartitionedSearch search = new PartitionedSearch(this, authTicket, query, shardBy, shards);
+			search.setPageSize(pageSize);
+			search.setInclude(METADATA_INCLUDE);
+			return search.execute(entryVisitor);
+		}
+		LOG.info("Searching metadata with pageSize: " + pageSize + " for query: " + query);
+		try (final SearchCursor cursor = new SearchCursor(this, authTicket, query, pageSize, keyset == null ? skipCount : 0,
+				keyset, METADATA_INCLUDE)) {
+			while (cursor.hasNext()) {
+				entryVisitor.visit(cursor.next());
+			}
+			LOG.info("Search result details: " + cursor);
+			return cursor.getEntriesReturned();
+		} catch (IOException excp) {
+			throw new AlfScriptException("Failed to visit the metadata of the search hits for query: " + query, excp);
+		}
+	}
+	
+	/**
+	 * Gets the content url of the node from its metadata.
+	 *
+	 * @param nodeId the node id
+	 * @param alfTicket the alf ticket
+	 * @return the content url, null if the node has no content or the metadata could not be read
+	 */
+	@Override
+	public String getContentUrl(final String nodeId, final String alfTicket) {
+		String contentUrl = null;
+		final String metaDownUrl = String.format(METADATA_URI, serverEndpoint, nodeId, alfTicket);
+		try {
+			contentUrl = HTTPUtils.httpGet(metaDownUrl, httpResp -> {
+				final int statusCode = httpResp.getStatusLine().getStatusCode();
+				if (statusCode != HTTPUtils.HTTP_CODE_200) {
+					LOG.info("Status: " + statusCode + " | " + httpResp.getStatusLine().getReasonPhrase());
+					return null;
+				}
+				return ContentCache.getContentUrl(JSONUtils.readJSONObject(httpResp.getEntity().getContent())
+						.optJSONObject(AlfScriptConstants.PROPS));
+			});
+		} catch (IOException excp) {
+			LOG.error("Failed to get the content url from: " + metaDownUrl, excp);
+		}
+		return contentUrl;
+	}
 }
@@ -0,0 +1,1152 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The Class StubAlfrescoServer.<br>
+ * In-process http server emulating the Alfresco endpoints called by the scripts (login and ticket
+ * validation, v1 search, v1 nodes and children, v0 content download and metadata, archive, sites,
+ * memberships, people, tags and the solr REINDEX action) over a deterministic {@link StubDataset},
+ * so services can be load tested and benchmarked without a repository.<br>
+ * Latency follows a log-normal distribution given by its median and 99th percentile, and a share
+ * of the requests can be failed with a configurable status to exercise retries. Tickets expire
+ * after a configurable time and requests with an unknown ticket get 401.<br>
+ * e.g. java com.github.abhinavmishra14.http.test.StubAlfrescoServer 8080 100000 20 200 0.01
+ */
+public class StubAlfrescoServer {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(StubAlfrescoServer.class);
+
+	/** The Constant Z_99. Standard normal quantile of the 99th percentile. */
+	private static final double Z_99 = 2.326;
+
+	/** The Constant JSON_TYPE. */
+	private static final String JSON_TYPE = "application/json;charset=UTF-8";
+
+	/** The Constant V1_NODES. */
+	private static final String V1_NODES = "/alfresco/api/-default-/public/alfresco/versions/1/nodes/";
+
+	/** The Constant SERVICE. */
+	private static final String SERVICE = "/alfresco/(?:service|s|wcservice)/api/";
+
+	/** The Constant LOGIN. */
+	private static final Pattern LOGIN = Pattern.compile(SERVICE + "login");
+
+	/** The Constant LOGIN_TICKET. */
+	private static final Pattern LOGIN_TICKET = Pattern.compile(SERVICE + "login/ticket/([^/]+)");
+
+	/** The Constant SEARCH. */
+	private static final Pattern SEARCH = Pattern.compile("/alfresco/api/-default-/public/search/versions/1/search");
+
+	/** The Constant KEY_RANGE. Range predicates appended by keyset paging and partitioned search. */
+	private static final Pattern KEY_RANGE = Pattern
+			.compile("cm:created:([\\[<])\"?([^\"\\s]+)\"? TO \"?([^\"\\s\\]>]+)\"?([\\]>])");
+
+	/** The Constant MODIFIED_FROM. Lower bound on the modified date appended by incremental sync. */
+	private static final Pattern MODIFIED_FROM = Pattern.compile("cm:modified:([\\[<])\"?([^\"\\s]+)\"? TO");
+
+	/** The Constant NODE. */
+	private static final Pattern NODE = Pattern.compile(Pattern.quote(V1_NODES) + "([^/]+)");
+
+	/** The Constant NODE_CHILDREN. */
+	private static final Pattern NODE_CHILDREN = Pattern.compile(Pattern.quote(V1_NODES) + "([^/]+)/children");
+
+	/** The Constant NODE_CONTENT. */
+	private static final Pattern NODE_CONTENT = Pattern.compile(Pattern.quote(V1_NODES) + "([^/]+)/content");
+
+	/** The Constant CONTENT. */
+	private static final Pattern CONTENT = Pattern.compile(SERVICE + "node/workspace/SpacesStore/([^/]+)/content(?:/.*)?");
+
+	/** The Constant RANGE. Single byte range, bytes=first-[last] or bytes=-suffixLength. */
+	private static final Pattern RANGE = Pattern.compile("bytes=(?:(\\d+)-(\\d*)|-(\\d+))");
+
+	/** The Constant METADATA. */
+	private static final Pattern METADATA = Pattern.compile(SERVICE + "metadata");
+
+	/** The Constant ARCHIVE. */
+	private static final Pattern ARCHIVE = Pattern.compile(SERVICE + "archive/workspace/SpacesStore");
+
+	/** The Constant ARCHIVED_NODE. */
+	private static final Pattern ARCHIVED_NODE = Pattern.compile(SERVICE + "archive/archive/SpacesStore/([^/]+)");
+
+	/** The Constant SITES. */
+	private static final Pattern SITES = Pattern.compile(SERVICE + "sites");
+
+	/** The Constant MEMBERSHIPS. */
+	private static final Pattern MEMBERSHIPS = Pattern.compile(SERVICE + "sites/([^/]+)/memberships");
+
+	/** The Constant PEOPLE. */
+	private static final Pattern PEOPLE = Pattern.compile(SERVICE + "people");
+
+	/** The Constant PERSON. */
+	private static final Pattern PERSON = Pattern.compile(SERVICE + "people/([^/]+)");
+
+	/** The Constant PERSON_SITES. */
+	private static final Pattern PERSON_SITES = Pattern.compile(SERVICE + "people/([^/]+)/sites");
+
+	/** The Constant TAGS. */
+	private static final Pattern TAGS = Pattern.compile(SERVICE + "tags/workspace/SpacesStore");
+
+	/** The Constant TAG. */
+	private static final Pattern TAG = Pattern.compile(SERVICE + "tags/workspace/SpacesStore/(.+)");
+
+	/** The Constant SOLR_CORES. */
+	private static final Pattern SOLR_CORES = Pattern.compile("/solr4?/admin/cores");
+
+	/** The Constant DEFAULT_THREADS. */
+	private static final int DEFAULT_THREADS = 200;
+
+	static {
+		// Without it small chunked responses wait on delayed acks, adding ~40ms to each request
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	/** The mapper. */
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	/** The dataset. */
+	private final StubDataset dataset;
+
+	/** The server. */
+	private final HttpServer server;
+
+	/** The executor. */
+	private final ExecutorService executor;
+
+	/** The tickets and their expiry in millis. */
+	private final Map<String, Long> tickets = new ConcurrentHashMap<String, Long>();
+
+	/** The requests. */
+	private final AtomicLong requests = new AtomicLong();
+
+	/** The injected errors. */
+	private final AtomicLong injectedErrors = new AtomicLong();
+
+	/** The password accepted for every user. */
+	private volatile String password = AlfScriptConstants.DEFAULT_PASSWORD;
+
+	/** The latency median millis. */
+	private volatile double latencyMedianMillis;
+
+	/** The latency sigma of the log-normal distribution. */
+	private volatile double latencySigma;
+
+	/** The error rate. */
+	private volatile double errorRate;
+
+	/** The error status. */
+	private volatile int errorStatus = 503;
+
+	/** The ticket ttl millis. */
+	private volatile long ticketTtlMillis = TimeUnit.HOURS.toMillis(1);
+
+	/** The compression. */
+	private volatile boolean compression = true;
+
+	/** The search cost of each hit skipped by skip count, in micros. */
+	private volatile long deepPagingMicros;
+
+	/** The range requests. */
+	private volatile boolean rangeRequests = true;
+
+	/** The validators, whether the content is sent with an ETag. */
+	private volatile boolean validators = true;
+
+	/** The bytes of content sent before the connection is dropped, 0 to never drop. */
+	private volatile long contentDropAfterBytes;
+
+	/** The content bytes per second of each response, 0 for no limit. */
+	private volatile long contentBytesPerSecond;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param port the port, 0 to pick a free one
+	 * @param dataset the dataset
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public StubAlfrescoServer(final int port, final StubDataset dataset) throws IOException {
+		this(port, dataset, DEFAULT_THREADS);
+	}
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param port the port, 0 to pick a free one
+	 * @param dataset the dataset
+	 * @param threads the number of requests served concurrently, like the tomcat connector maxThreads
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public StubAlfrescoServer(final int port, final StubDataset dataset, final int threads) throws IOException {
+		super();
+		this.dataset = dataset;
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			final Thread thread = new Thread(runnable, "stub-alfresco");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+	}
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the arguments
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public static void main(final String[] args) throws IOException, InterruptedException {
+		LOG.info("USAGE: java com.github.abhinavmishra14.http.test.StubAlfrescoServer [port=8080] [nodes=10000] [latencyMedianMillis=0] [latencyP99Millis=0] [errorRate=0] [contentSize=4096]");
+		int port = 8080;
+		if (args.length >= 1 && StringUtils.isNotBlank(args[0])) {
+			port = Integer.parseInt(args[0].trim());
+		}
+		int nodes = 10000;
+		if (args.length >= 2 && StringUtils.isNotBlank(args[1])) {
+			nodes = Integer.parseInt(args[1].trim());
+		}
+		double median = 0;
+		if (args.length >= 3 && StringUtils.isNotBlank(args[2])) {
+			median = Double.parseDouble(args[2].trim());
+		}
+		double p99 = median;
+		if (args.length >= 4 && StringUtils.isNotBlank(args[3])) {
+			p99 = Double.parseDouble(args[3].trim());
+		}
+		double errorRate = 0;
+		if (args.length >= 5 && StringUtils.isNotBlank(args[4])) {
+			errorRate = Double.parseDouble(args[4].trim());
+		}
+		long contentSize = 4096;
+		if (args.length >= 6 && StringUtils.isNotBlank(args[5])) {
+			contentSize = Long.parseLong(args[5].trim());
+		}
+		final StubAlfrescoServer stub = new StubAlfrescoServer(port, new StubDataset(nodes, contentSize));
+		stub.setLatency(median, p99);
+		stub.setErrorRate(errorRate);
+		stub.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(stub::stop, "stub-alfresco-shutdown"));
+		Thread.currentThread().join();
+	}
+
+	/**
+	 * Start.
+	 */
+	public void start() {
+		server.start();
+		LOG.info("Stub alfresco started at: " + getBaseUrl() + " | nodes: " + dataset.getNodeCount() + ", people: "
+				+ dataset.getPeopleCount() + ", sites: " + dataset.getSiteCount() + ", tags: " + dataset.getTagCount()
+				+ ", archived: " + dataset.getArchivedCount());
+	}
+
+	/**
+	 * Stop.
+	 */
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+		LOG.info("Stub alfresco stopped, requests served: " + requests.get() + ", errors injected: "
+				+ injectedErrors.get());
+	}
+
+	/**
+	 * Gets the base url, e.g. http://127.0.0.1:8080
+	 *
+	 * @return the base url
+	 */
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Gets the dataset.
+	 *
+	 * @return the dataset
+	 */
+	public StubDataset getDataset() {
+		return dataset;
+	}
+
+	/**
+	 * Gets the number of requests received.
+	 *
+	 * @return the request count
+	 */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * Gets the number of requests failed on purpose.
+	 *
+	 * @return the injected error count
+	 */
+	public long getInjectedErrorCount() {
+		return injectedErrors.get();
+	}
+
+	/**
+	 * Sets the latency added to every request, log-normally distributed.
+	 *
+	 * @param medianMillis the median millis, 0 for no latency
+	 * @param p99Millis the 99th percentile millis, same as median for a fixed latency
+	 */
+	public void setLatency(final double medianMillis, final double p99Millis) {
+		this.latencyMedianMillis = medianMillis;
+		this.latencySigma = medianMillis > 0 && p99Millis > medianMillis ? Math.log(p99Millis / medianMillis) / Z_99 : 0;
+	}
+
+	/**
+	 * Sets the share of requests, other than login, failed with the error status.
+	 *
+	 * @param errorRate the error rate between 0 and 1
+	 */
+	public void setErrorRate(final double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Sets the status of injected errors, defaults to 503 which is sent with Retry-After: 1.
+	 *
+	 * @param errorStatus the error status
+	 */
+	public void setErrorStatus(final int errorStatus) {
+		this.errorStatus = errorStatus;
+	}
+
+	/**
+	 * Sets the ticket ttl.
+	 *
+	 * @param ticketTtlMillis the ticket ttl millis
+	 */
+	public void setTicketTtlMillis(final long ticketTtlMillis) {
+		this.ticketTtlMillis = ticketTtlMillis;
+	}
+
+	/**
+	 * Sets the password accepted for all users.
+	 *
+	 * @param password the password
+	 */
+	public void setPassword(final String password) {
+		this.password = password;
+	}
+
+	/**
+	 * Sets whether json responses are gzipped for clients accepting it.
+	 *
+	 * @param compression the compression
+	 */
+	public void setCompression(final boolean compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Sets the cost of deep paging, each hit skipped by the skip count of a search adds this much
+	 * latency, the way the index has to collect and drop the preceding hits.
+	 *
+	 * @param microsPerSkippedHit the micros per skipped hit, 0 for none
+	 */
+	public void setDeepPagingCost(final long microsPerSkippedHit) {
+		this.deepPagingMicros = microsPerSkippedHit;
+	}
+
+	/**
+	 * Sets whether Range requests on content are honoured, else the whole content is always sent.
+	 *
+	 * @param rangeRequests the range requests
+	 */
+	public void setRangeRequests(final boolean rangeRequests) {
+		this.rangeRequests = rangeRequests;
+	}
+
+	/**
+	 * Sets whether the content is sent with an ETag, some servers honour ranges without any validator.
+	 *
+	 * @param validators the validators
+	 */
+	public void setValidators(final boolean validators) {
+		this.validators = validators;
+	}
+
+	/**
+	 * Sets the bytes of content sent in each response before the connection is dropped, as a flaky
+	 * network would.
+	 *
+	 * @param contentDropAfterBytes the bytes, 0 to never drop
+	 */
+	public void setContentDropAfterBytes(final long contentDropAfterBytes) {
+		this.contentDropAfterBytes = contentDropAfterBytes;
+	}
+
+	/**
+	 * Sets the bandwidth of each content response, as a single tcp connection over a high latency
+	 * link would be capped by its window.
+	 *
+	 * @param contentBytesPerSecond the bytes per second, 0 for no limit
+	 */
+	public void setContentBytesPerSecond(final long contentBytesPerSecond) {
+		this.contentBytesPerSecond = contentBytesPerSecond;
+	}
+
+	/**
+	 * Invalidate all the tickets, as a repository restart would.
+	 */
+	public void invalidateTickets() {
+		tickets.clear();
+	}
+
+	/**
+	 * Handle.
+	 *
+	 * @param exchange the exchange
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void handle(final HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		try {
+			final String method = exchange.getRequestMethod();
+			final String path = exchange.getRequestURI().getRawPath();
+			final Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+			delay();
+			if (LOGIN.matcher(path).matches() && "POST".equals(method)) {
+				login(exchange);
+				return;
+			}
+			if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+				injectedErrors.incrementAndGet();
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				sendStatus(exchange, errorStatus);
+				return;
+			}
+			if (!SOLR_CORES.matcher(path).matches() && !isValidTicket(params.get(AlfScriptConstants.PARAM_AUTH_TICKET))) {
+				sendStatus(exchange, 401);
+				return;
+			}
+			route(exchange, method, path, params);
+		} catch (IOException | RuntimeException excp) {
+			LOG.debug("Failed to serve " + exchange.getRequestURI(), excp);
+			sendStatus(exchange, 500);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Route the request to its endpoint.
+	 *
+	 * @param exchange the exchange
+	 * @param method the method
+	 * @param path the path
+	 * @param params the params
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void route(final HttpExchange exchange, final String method, final String path,
+			final Map<String, String> params) throws IOException {
+		Matcher matcher;
+		if ((matcher = LOGIN_TICKET.matcher(path)).matches()) {
+			validateTicket(exchange, method, decode(matcher.group(1)));
+		} else if (SEARCH.matcher(path).matches() && "POST".equals(method)) {
+			search(exchange);
+		} else if ((matcher = NODE_CHILDREN.matcher(path)).matches() && "POST".equals(method)) {
+			createChild(exchange, matcher.group(1));
+		} else if ((matcher = NODE_CONTENT.matcher(path)).matches() && "GET".equals(method)) {
+			content(exchange, matcher.group(1));
+		} else if ((matcher = NODE.matcher(path)).matches()) {
+			node(exchange, method, matcher.group(1));
+		} else if ((matcher = CONTENT.matcher(path)).matches() && "GET".equals(method)) {
+			content(exchange, matcher.group(1));
+		} else if (METADATA.matcher(path).matches()) {
+			metadata(exchange, StringUtils.substringAfterLast(params.get(AlfScriptConstants.NODE_REF), "/"));
+		} else if (ARCHIVE.matcher(path).matches()) {
+			archive(exchange, params);
+		} else if ((matcher = ARCHIVED_NODE.matcher(path)).matches() && "DELETE".equals(method)) {
+			purge(exchange, matcher.group(1));
+		} else if (SITES.matcher(path).matches()) {
+			sites(exchange, -1);
+		} else if ((matcher = MEMBERSHIPS.matcher(path)).matches()) {
+			memberships(exchange, decode(matcher.group(1)));
+		} else if (PEOPLE.matcher(path).matches()) {
+			people(exchange);
+		} else if ((matcher = PERSON_SITES.matcher(path)).matches()) {
+			final int userIndex = dataset.getUserIndex(decode(matcher.group(1)));
+			if (userIndex < 0) {
+				sendStatus(exchange, 404);
+			} else {
+				sites(exchange, userIndex);
+			}
+		} else if ((matcher = PERSON.matcher(path)).matches()) {
+			person(exchange, decode(matcher.group(1)), Boolean.parseBoolean(params.get("groups")));
+		} else if (TAGS.matcher(path).matches()) {
+			tags(exchange, params);
+		} else if ((matcher = TAG.matcher(path)).matches() && "DELETE".equals(method)) {
+			sendStatus(exchange, dataset.deleteTag(decode(matcher.group(1))) ? 200 : 404);
+		} else if (SOLR_CORES.matcher(path).matches()) {
+			solr(exchange, params);
+		} else {
+			sendStatus(exchange, 404);
+		}
+	}
+
+	/**
+	 * Login, returns a new ticket for any user using the configured password.
+	 *
+	 * @param exchange the exchange
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@SuppressWarnings("unchecked")
+	private void login(final HttpExchange exchange) throws IOException {
+		final Map<String, Object> credentials = mapper.readValue(exchange.getRequestBody(), Map.class);
+		if (!password.equals(credentials.get(AlfScriptConstants.PARAM_PASSWORD))) {
+			sendStatus(exchange, 403);
+			return;
+		}
+		final String ticket = "TICKET_" + UUID.randomUUID().toString().replace("-", "");
+		tickets.put(ticket, System.currentTimeMillis() + ticketTtlMillis);
+		sendJson(exchange, 200, Collections.singletonMap(AlfScriptConstants.DATA,
+				Collections.singletonMap(AlfScriptConstants.TICKET, ticket)));
+	}
+
+	/**
+	 * Validate (GET) or invalidate (DELETE) the ticket.
+	 *
+	 * @param exchange the exchange
+	 * @param method the method
+	 * @param ticket the ticket
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void validateTicket(final HttpExchange exchange, final String method, final String ticket)
+			throws IOException {
+		if (!isValidTicket(ticket)) {
+			sendStatus(exchange, 404);
+		} else if ("DELETE".equals(method)) {
+			tickets.remove(ticket);
+			sendStatus(exchange, 200);
+		} else {
+			sendJson(exchange, 200, Collections.singletonMap(AlfScriptConstants.DATA,
+					Collections.singletonMap(AlfScriptConstants.TICKET, ticket)));
+		}
+	}
+
+	/**
+	 * Search, pages over all the live nodes in creation order. The query itself is not evaluated
+	 * except for cm:created ranges and a cm:modified lower bound, descending sort and
+	 * include=properties are honored.
+	 *
+	 * @param exchange the exchange
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@SuppressWarnings("unchecked")
+	private void search(final HttpExchange exchange) throws IOException {
+		final Map<String, Object> payload = mapper.readValue(exchange.getRequestBody(), Map.class);
+		final Map<String, Object> paging = payload.get("paging") instanceof Map
+				? (Map<String, Object>) payload.get("paging") : Collections.emptyMap();
+		final Map<String, Object> query = payload.get("query") instanceof Map
+				? (Map<String, Object>) payload.get("query") : Collections.emptyMap();
+		final boolean withProperties = payload.get("include") instanceof List
+				&& ((List<Object>) payload.get("include")).contains(AlfScriptConstants.PROPS);
+		final int maxItems = toInt(paging.get(AlfScriptConstants.PARAM_MAX_ITEMS), 100);
+		final int skipCount = toInt(paging.get(AlfScriptConstants.PARAM_SKIP_COUNT), 0);
+		final int[] range = getRange(String.valueOf(query.get("query")));
+		final Matcher modifiedFrom = MODIFIED_FROM.matcher(String.valueOf(query.get("query")));
+		final Instant modifiedAfter = modifiedFrom.find() && !"MIN".equals(modifiedFrom.group(2))
+				? Instant.parse(modifiedFrom.group(2)).minusMillis("[".equals(modifiedFrom.group(1)) ? 1 : 0) : null;
+		final boolean descending = payload.get("sort") instanceof List && ((List<Object>) payload.get("sort")).stream()
+				.anyMatch(sort -> sort instanceof Map && Boolean.FALSE.equals(((Map<String, Object>) sort).get("ascending")));
+		if (deepPagingMicros > 0 && skipCount > 0) {
+			try {
+				TimeUnit.MICROSECONDS.sleep(deepPagingMicros * skipCount);
+			} catch (InterruptedException excp) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		try (final JsonGenerator generator = startJson(exchange, 200)) {
+			generator.writeStartObject();
+			generator.writeObjectFieldStart(AlfScriptConstants.LIST);
+			int count = 0;
+			int skipped = 0;
+			int index = descending ? range[1] - 1 : range[0];
+			generator.writeArrayFieldStart(AlfScriptConstants.ENTRIES);
+			for (; index >= range[0] && index < range[1] && count < maxItems; index += descending ? -1 : 1) {
+				if (dataset.getNodeIndex(dataset.getNodeId(index)) >= 0
+						&& (modifiedAfter == null || dataset.getModified(index).isAfter(modifiedAfter)) && skipped++ >= skipCount) {
+					final Map<String, Object> entry = dataset.getNodeEntry(index, withProperties);
+					generator.writeStartObject();
+					generator.writeObjectField(AlfScriptConstants.ENTRY, entry);
+					generator.writeEndObject();
+					count++;
+				}
+			}
+			generator.writeEndArray();
+			final Map<String, Object> pagination = new LinkedHashMap<String, Object>();
+			pagination.put("count", count);
+			pagination.put("hasMoreItems", index >= range[0] && index < range[1]);
+			pagination.put("totalItems", Math.max(0, range[1] - range[0]));
+			pagination.put(AlfScriptConstants.PARAM_SKIP_COUNT, skipCount);
+			pagination.put(AlfScriptConstants.PARAM_MAX_ITEMS, maxItems);
+			generator.writeObjectField(AlfScriptConstants.PAGINATION, pagination);
+			generator.writeEndObject();
+			generator.writeEndObject();
+		}
+	}
+
+	/**
+	 * Gets the nodes matching the key ranges of the query.
+	 *
+	 * @param query the query
+	 * @return the first index and the index after the last one
+	 */
+	private int[] getRange(final String query) {
+		final int[] range = { 0, dataset.getNodeCount() };
+		final Matcher matcher = KEY_RANGE.matcher(query);
+		while (matcher.find()) {
+			if (!"MIN".equals(matcher.group(2))) {
+				final double from = toIndex(matcher.group(2));
+				range[0] = Math.max(range[0], (int) ("<".equals(matcher.group(1)) ? Math.floor(from) + 1 : Math.ceil(from)));
+			}
+			if (!"MAX".equals(matcher.group(3))) {
+				final double to = toIndex(matcher.group(3));
+				range[1] = Math.min(range[1], (int) (">".equals(matcher.group(4)) ? Math.ceil(to) : Math.floor(to) + 1));
+			}
+		}
+		range[1] = Math.max(range[0], range[1]);
+		return range;
+	}
+
+	/**
+	 * Convert the created date key to a node index, fractional when the key falls between two nodes.
+	 *
+	 * @param key the key
+	 * @return the index
+	 */
+	private double toIndex(final String key) {
+		return Duration.between(dataset.getCreated(0), Instant.parse(key)).toMillis() / 60000.0;
+	}
+
+	/**
+	 * Get or delete the node.
+	 *
+	 * @param exchange the exchange
+	 * @param method the method
+	 * @param nodeId the node id
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void node(final HttpExchange exchange, final String method, final String nodeId) throws IOException {
+		final int index = dataset.getNodeIndex(nodeId);
+		if (index < 0) {
+			sendStatus(exchange, 404);
+		} else if ("DELETE".equals(method)) {
+			dataset.deleteNode(index);
+			sendStatus(exchange, 204);
+		} else {
+			sendJson(exchange, 200, Collections.singletonMap(AlfScriptConstants.ENTRY, dataset.getNodeEntry(index, true)));
+		}
+	}
+
+	/**
+	 * Create a child, the uploaded content is read and discarded.
+	 *
+	 * @param exchange the exchange
+	 * @param parentId the parent id
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void createChild(final HttpExchange exchange, final String parentId) throws IOException {
+		final long received = IOUtils.consume(exchange.getRequestBody());
+		final Map<String, Object> entry = new LinkedHashMap<String, Object>();
+		entry.put(AlfScriptConstants.ID_NODE, UUID.randomUUID().toString());
+		entry.put("parentId", parentId);
+		entry.put("nodeType", AlfScriptConstants.DEFAULT_TYPE);
+		entry.put("isFile", true);
+		entry.put("content", Collections.singletonMap("sizeInBytes", received));
+		sendJson(exchange, 201, Collections.singletonMap(AlfScriptConstants.ENTRY, entry));
+	}
+
+	/**
+	 * Send the content of the node.
+	 *
+	 * @param exchange the exchange
+	 * @param nodeId the node id
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void content(final HttpExchange exchange, final String nodeId) throws IOException {
+		final int index = dataset.getNodeIndex(nodeId);
+		if (index < 0) {
+			sendStatus(exchange, 404);
+			return;
+		}
+		final long size = dataset.getContentSize();
+		final String etag = "\"" + nodeId + "-" + size + "-" + dataset.getModified(index).toEpochMilli() + "\"";
+		exchange.getResponseHeaders().set("Content-Type", "text/plain;charset=UTF-8");
+		exchange.getResponseHeaders().set("Content-Disposition",
+				"attachment; filename=\"" + dataset.getNodeName(index) + "\"");
+		if (validators) {
+			exchange.getResponseHeaders().set("ETag", etag);
+		}
+		long first = 0;
+		long last = size - 1;
+		int status = 200;
+		final String range = exchange.getRequestHeaders().getFirst("Range");
+		final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		final Matcher matcher = range == null ? null : RANGE.matcher(range.trim());
+		if (rangeRequests) {
+			exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+			if (matcher != null && matcher.matches() && (ifRange == null || ifRange.equals(etag))) {
+				if (matcher.group(1) == null) {
+					first = Math.max(0, size - Long.parseLong(matcher.group(3)));
+				} else {
+					first = Long.parseLong(matcher.group(1));
+					last = matcher.group(2).isEmpty() ? last : Math.min(last, Long.parseLong(matcher.group(2)));
+				}
+				if (first >= size || first > last) {
+					exchange.getResponseHeaders().set("Content-Range", "bytes */" + size);
+					sendStatus(exchange, 416);
+					return;
+				}
+				exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + last + "/" + size);
+				status = 206;
+			}
+		}
+		final long length = last - first + 1;
+		exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+		final long dropAfter = contentDropAfterBytes;
+		final OutputStream outStream = exchange.getResponseBody();
+		if (dropAfter > 0 && dropAfter < length) {
+			// Closing the exchange short of the content length drops the connection
+			writeContent(index, first, dropAfter, outStream);
+			outStream.flush();
+			return;
+		}
+		try {
+			writeContent(index, first, length, outStream);
+		} finally {
+			outStream.close();
+		}
+	}
+
+	/**
+	 * Write the content of the node, paced to the configured bandwidth.
+	 *
+	 * @param index the index
+	 * @param from the offset of the first byte
+	 * @param length the length
+	 * @param outStream the out stream
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeContent(final int index, final long from, final long length, final OutputStream outStream)
+			throws IOException {
+		final long bytesPerSecond = contentBytesPerSecond;
+		if (bytesPerSecond <= 0) {
+			dataset.writeContent(index, from, length, outStream);
+			return;
+		}
+		final long chunkSize = Math.max(1, bytesPerSecond / 20);
+		final long started = System.nanoTime();
+		for (long written = 0; written < length;) {
+			final long chunk = Math.min(chunkSize, length - written);
+			dataset.writeContent(index, from + written, chunk, outStream);
+			written += chunk;
+			final long dueNanos = written * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond - (System.nanoTime() - started);
+			if (dueNanos > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(dueNanos);
+				} catch (InterruptedException excp) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while sending content");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Send the v0 metadata of the node.
+	 *
+	 * @param exchange the exchange
+	 * @param nodeId the node id
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void metadata(final HttpExchange exchange, final String nodeId) throws IOException {
+		final int index = dataset.getNodeIndex(nodeId);
+		if (index < 0) {
+			sendStatus(exchange, 404);
+		} else {
+			sendJson(exchange, 200, dataset.getNodeMetadata(index));
+		}
+	}
+
+	/**
+	 * List archived nodes which are not purged yet.
+	 *
+	 * @param exchange the exchange
+	 * @param params the params
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void archive(final HttpExchange exchange, final Map<String, String> params) throws IOException {
+		final int maxItems = toInt(params.get(AlfScriptConstants.PARAM_MAX_ITEMS), Integer.MAX_VALUE);
+		final int skipCount = toInt(params.get(AlfScriptConstants.PARAM_SKIP_COUNT), 0);
+		try (final JsonGenerator generator = startJson(exchange, 200)) {
+			generator.writeStartObject();
+			generator.writeObjectFieldStart(AlfScriptConstants.DATA);
+			generator.writeArrayFieldStart(AlfScriptConstants.DELETED_NODES);
+			int skipped = 0;
+			int count = 0;
+			for (int index = 0; index < dataset.getArchivedCount() && count < maxItems; index++) {
+				if (dataset.isPurged(index)) {
+					continue;
+				}
+				if (skipped++ < skipCount) {
+					continue;
+				}
+				generator.writeObject(dataset.getArchivedNode(index));
+				count++;
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+			generator.writeEndObject();
+		}
+	}
+
+	/**
+	 * Purge the archived node.
+	 *
+	 * @param exchange the exchange
+	 * @param nodeId the node id
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void purge(final HttpExchange exchange, final String nodeId) throws IOException {
+		final int index = dataset.getArchivedIndex(nodeId);
+		if (index < 0 || !dataset.purgeArchivedNode(index)) {
+			sendStatus(exchange, 404);
+			return;
+		}
+		sendJson(exchange, 200, Collections.singletonMap(AlfScriptConstants.DATA, Collections.singletonMap("purgedNodes",
+				Collections.singletonList(Collections.singletonMap(AlfScriptConstants.NODE_REF,
+						AlfScriptConstants.ARCHIVE_STOREREF + nodeId)))));
+	}
+
+	/**
+	 * List all the sites or the sites of a user.
+	 *
+	 * @param exchange the exchange
+	 * @param userIndex the user index, -1 for all the sites
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void sites(final HttpExchange exchange, final int userIndex) throws IOException {
+		try (final JsonGenerator generator = startJson(exchange, 200)) {
+			generator.writeStartArray();
+			if (userIndex < 0) {
+				for (int index = 0; index < dataset.getSiteCount(); index++) {
+					generator.writeObject(dataset.getSite(index));
+				}
+			} else {
+				for (final int eachSite : dataset.getSitesOfUser(userIndex)) {
+					generator.writeObject(dataset.getSite(eachSite));
+				}
+			}
+			generator.writeEndArray();
+		}
+	}
+
+	/**
+	 * List the members of the site, admin and every user assigned to it.
+	 *
+	 * @param exchange the exchange
+	 * @param siteName the site name
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void memberships(final HttpExchange exchange, final String siteName) throws IOException {
+		final int siteIndex = dataset.getSiteIndex(siteName);
+		if (siteIndex < 0) {
+			sendStatus(exchange, 404);
+			return;
+		}
+		try (final JsonGenerator generator = startJson(exchange, 200)) {
+			generator.writeStartArray();
+			generator.writeObject(dataset.getMembership(siteIndex, 0));
+			for (int userIndex = siteIndex == 0 ? dataset.getSiteCount() : siteIndex; userIndex < dataset
+					.getPeopleCount(); userIndex += dataset.getSiteCount()) {
+				generator.writeObject(dataset.getMembership(siteIndex, userIndex));
+			}
+			generator.writeEndArray();
+		}
+	}
+
+	/**
+	 * List all the people.
+	 *
+	 * @param exchange the exchange
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void people(final HttpExchange exchange) throws IOException {
+		try (final JsonGenerator generator = startJson(exchange, 200)) {
+			generator.writeStartObject();
+			generator.writeArrayFieldStart("people");
+			for (int index = 0; index < dataset.getPeopleCount(); index++) {
+				generator.writeObject(dataset.getPerson(index, false));
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+	}
+
+	/**
+	 * Send the person.
+	 *
+	 * @param exchange the exchange
+	 * @param userName the user name
+	 * @param withGroups the with groups
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void person(final HttpExchange exchange, final String userName, final boolean withGroups)
+			throws IOException {
+		final int index = dataset.getUserIndex(userName);
+		if (index < 0) {
+			sendStatus(exchange, 404);
+		} else {
+			sendJson(exchange, 200, dataset.getPerson(index, withGroups));
+		}
+	}
+
+	/**
+	 * List the tags which are not deleted yet.
+	 *
+	 * @param exchange the exchange
+	 * @param params the params
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void tags(final HttpExchange exchange, final Map<String, String> params) throws IOException {
+		final int from = toInt(params.get("from"), 0);
+		final int size = toInt(params.get("size"), Integer.MAX_VALUE);
+		try (final JsonGenerator generator = startJson(exchange, 200)) {
+			generator.writeStartObject();
+			generator.writeObjectFieldStart(AlfScriptConstants.DATA);
+			generator.writeArrayFieldStart("items");
+			int skipped = 0;
+			int count = 0;
+			for (int index = 0; index < dataset.getTagCount() && count < size; index++) {
+				if (dataset.isTagDeleted(index) || skipped++ < from) {
+					continue;
+				}
+				generator.writeStartObject();
+				generator.writeStringField(AlfScriptConstants.NAME, dataset.getTagName(index));
+				generator.writeNumberField("count", dataset.getNodeCount() / Math.max(1, dataset.getTagCount()) * 2);
+				generator.writeEndObject();
+				count++;
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+			generator.writeEndObject();
+		}
+	}
+
+	/**
+	 * Solr core admin, only the REINDEX action is supported.
+	 *
+	 * @param exchange the exchange
+	 * @param params the params
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void solr(final HttpExchange exchange, final Map<String, String> params) throws IOException {
+		if (!"REINDEX".equalsIgnoreCase(params.get("action"))) {
+			sendStatus(exchange, 400);
+			return;
+		}
+		final Map<String, Object> header = new LinkedHashMap<String, Object>();
+		header.put("status", 0);
+		header.put("QTime", 1);
+		final Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("responseHeader", header);
+		result.put("action", Collections.singletonMap("alfresco", Collections.singletonMap("status", "scheduled")));
+		result.put("query", params.get("query"));
+		sendJson(exchange, 200, result);
+	}
+
+	/**
+	 * Checks if the ticket is known and not expired.
+	 *
+	 * @param ticket the ticket
+	 * @return true, if is valid ticket
+	 */
+	private boolean isValidTicket(final String ticket) {
+		if (ticket == null) {
+			return false;
+		}
+		final Long expiry = tickets.get(ticket);
+		if (expiry == null) {
+			return false;
+		}
+		if (expiry < System.currentTimeMillis()) {
+			tickets.remove(ticket);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Sleep for a latency drawn from the configured distribution.
+	 */
+	private void delay() {
+		final double median = latencyMedianMillis;
+		if (median <= 0) {
+			return;
+		}
+		final double millis = median * Math.exp(latencySigma * ThreadLocalRandom.current().nextGaussian());
+		try {
+			TimeUnit.MICROSECONDS.sleep((long) (millis * 1000));
+		} catch (InterruptedException excp) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Send json.
+	 *
+	 * @param exchange the exchange
+	 * @param status the status
+	 * @param body the body
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void sendJson(final HttpExchange exchange, final int status, final Object body) throws IOException {
+		try (final JsonGenerator generator = startJson(exchange, status)) {
+			generator.writeObject(body);
+		}
+	}
+
+	/**
+	 * Send the response headers and open a generator over the (gzipped, if accepted) body.
+	 *
+	 * @param exchange the exchange
+	 * @param status the status
+	 * @return the json generator, closing it completes the response
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private JsonGenerator startJson(final HttpExchange exchange, final int status) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+		final boolean gzip = compression
+				&& StringUtils.contains(exchange.getRequestHeaders().getFirst("Accept-Encoding"), "gzip");
+		if (gzip) {
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		exchange.sendResponseHeaders(status, 0);
+		final OutputStream body = gzip ? new GZIPOutputStream(exchange.getResponseBody(), 8192)
+				: exchange.getResponseBody();
+		return mapper.getFactory().createGenerator(body);
+	}
+
+	/**
+	 * Send status without body.<br>
+	 * The request body is drained first, otherwise the server closes the connection instead of
+	 * keeping it alive, as it does not drain the request when there is no response body.
+	 *
+	 * @param exchange the exchange
+	 * @param status the status
+	 */
+	private static void sendStatus(final HttpExchange exchange, final int status) {
+		try {
+			exchange.getRequestBody().close();
+			exchange.sendResponseHeaders(status, -1);
+		} catch (IOException ioexIgnore) {
+			// Headers already sent, nothing more can be done for this exchange
+		}
+	}
+
+	/**
+	 * Parses the query string.
+	 *
+	 * @param rawQuery the raw query
+	 * @return the params
+	 */
+	private static Map<String, String> parseQuery(final String rawQuery) {
+		final Map<String, String> params = new LinkedHashMap<String, String>();
+		if (StringUtils.isNotBlank(rawQuery)) {
+			for (final String eachParam : StringUtils.split(rawQuery, '&')) {
+				params.put(decode(StringUtils.substringBefore(eachParam, AlfScriptConstants.EQUALS)),
+						decode(StringUtils.substringAfter(eachParam, AlfScriptConstants.EQUALS)));
+			}
+		}
+		return params;
+	}
+
+	/**
+	 * Decode the url encoded value.
+	 *
+	 * @param value the value
+	 * @return the decoded value
+	 */
+	private static String decode(final String value) {
+		try {
+			return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+		} catch (UnsupportedEncodingException uee) {
+			throw new IllegalStateException(uee);
+		}
+	}
+
+	/**
+	 * Convert the json or query value to int.
+	 *
+	 * @param value the value
+	 * @param defaultValue the default value
+	 * @return the int
+	 */
+	private static int toInt(final Object value, final int defaultValue) {
+		if (value instanceof Number) {
+			return ((Number) value).intValue();
+		}
+		return value == null || StringUtils.isBlank(value.toString()) ? defaultValue
+				: Integer.parseInt(value.toString().trim());
+	}
+}
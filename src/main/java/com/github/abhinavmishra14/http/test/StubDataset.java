@@ -0,0 +1,694 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
+
+/**
+ * The Class StubDataset.<br>
+ * Deterministic repository content served by {@link StubAlfrescoServer}. Nothing is generated up
+ * front: node ids encode the node index, and properties and content bytes are derived from it, so
+ * datasets of millions of nodes take no memory beyond the nodes deleted during a run.
+ */
+public class StubDataset {
+
+	/** The Constant NODE_ID_MSB. High bits shared by all the live node ids. */
+	private static final long NODE_ID_MSB = 0x5a1f0000_0000_4000L;
+
+	/** The Constant ARCHIVED_ID_MSB. High bits shared by all the archived node ids. */
+	private static final long ARCHIVED_ID_MSB = 0x5a1fa4c0_0000_4000L;
+
+	/** The Constant CREATED_BASE. Created date of the first node, others follow a minute apart. */
+	private static final Instant CREATED_BASE = Instant.parse("2020-01-01T00:00:00Z");
+
+	/** The Constant PATTERN_SIZE. */
+	private static final int PATTERN_SIZE = 64 * 1024;
+
+	/** The Constant PATTERN. Printable bytes from which node content is cut. */
+	private static final byte[] PATTERN = createPattern();
+
+	/** The Constant ROLES. */
+	private static final String[] ROLES = { "SiteManager", "SiteCollaborator", "SiteContributor", "SiteConsumer" };
+
+	/** The node count. */
+	private final int nodeCount;
+
+	/** The people count. */
+	private final int peopleCount;
+
+	/** The site count. */
+	private final int siteCount;
+
+	/** The tag count. */
+	private final int tagCount;
+
+	/** The archived count. */
+	private final int archivedCount;
+
+	/** The content size. */
+	private final long contentSize;
+
+	/** The deleted nodes. */
+	private final Set<Integer> deletedNodes = ConcurrentHashMap.newKeySet();
+
+	/** The purged archived nodes. */
+	private final Set<Integer> purgedNodes = ConcurrentHashMap.newKeySet();
+
+	/** The deleted tags. */
+	private final Set<Integer> deletedTags = ConcurrentHashMap.newKeySet();
+
+	/** The distinct contents, nodes share the content of the node at index modulo this count. */
+	private volatile int distinctContents;
+
+	/** The modified dates of the nodes touched since creation. */
+	private final Map<Integer, Instant> modifiedNodes = new ConcurrentHashMap<Integer, Instant>();
+
+	/**
+	 * The Constructor.<br>
+	 * People, sites, tags and archived nodes are sized relative to the node count.
+	 *
+	 * @param nodeCount the node count
+	 * @param contentSize the content size of each node in bytes
+	 */
+	public StubDataset(final int nodeCount, final long contentSize) {
+		this(nodeCount, Math.max(10, nodeCount / 100), Math.max(5, nodeCount / 1000), Math.max(10, nodeCount / 50),
+				Math.max(10, nodeCount / 10), contentSize);
+	}
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param nodeCount the node count
+	 * @param peopleCount the people count
+	 * @param siteCount the site count
+	 * @param tagCount the tag count
+	 * @param archivedCount the archived count
+	 * @param contentSize the content size of each node in bytes
+	 */
+	public StubDataset(final int nodeCount, final int peopleCount, final int siteCount, final int tagCount,
+			final int archivedCount, final long contentSize) {
+		super();
+		this.nodeCount = nodeCount;
+		this.peopleCount = peopleCount;
+		this.siteCount = siteCount;
+		this.tagCount = tagCount;
+		this.archivedCount = archivedCount;
+		this.contentSize = contentSize;
+		this.distinctContents = Math.max(1, nodeCount);
+	}
+
+	/**
+	 * Gets the node count.
+	 *
+	 * @return the node count
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Gets the people count.
+	 *
+	 * @return the people count
+	 */
+	public int getPeopleCount() {
+		return peopleCount;
+	}
+
+	/**
+	 * Gets the site count.
+	 *
+	 * @return the site count
+	 */
+	public int getSiteCount() {
+		return siteCount;
+	}
+
+	/**
+	 * Gets the tag count.
+	 *
+	 * @return the tag count
+	 */
+	public int getTagCount() {
+		return tagCount;
+	}
+
+	/**
+	 * Gets the archived count.
+	 *
+	 * @return the archived count
+	 */
+	public int getArchivedCount() {
+		return archivedCount;
+	}
+
+	/**
+	 * Gets the content size.
+	 *
+	 * @return the content size
+	 */
+	public long getContentSize() {
+		return contentSize;
+	}
+
+	/**
+	 * Sets the distinct contents, e.g. a tenth of the node count to have each content shared by
+	 * ten nodes like versions and copies do. Defaults to the node count, i.e. no sharing.
+	 *
+	 * @param distinctContents the distinct contents
+	 */
+	public void setDistinctContents(final int distinctContents) {
+		this.distinctContents = Math.max(1, distinctContents);
+	}
+
+	/**
+	 * Gets the content url of the node, the same for the nodes sharing a content.
+	 *
+	 * @param index the index
+	 * @return the content url
+	 */
+	public String getContentUrl(final int index) {
+		final int contentIndex = index % distinctContents;
+		return "store://2020/1/1/0/" + (contentIndex % 60) + "/" + new UUID(NODE_ID_MSB ^ 0xc0, contentIndex) + ".bin";
+	}
+
+	/**
+	 * Gets the node id.
+	 *
+	 * @param index the index
+	 * @return the node id
+	 */
+	public String getNodeId(final int index) {
+		return new UUID(NODE_ID_MSB, index).toString();
+	}
+
+	/**
+	 * Gets the node name.
+	 *
+	 * @param index the index
+	 * @return the node name
+	 */
+	public String getNodeName(final int index) {
+		return "doc-" + index + ".txt";
+	}
+
+	/**
+	 * Gets the node index of a live node.
+	 *
+	 * @param nodeId the node id
+	 * @return the index, -1 if there is no such node or it was deleted
+	 */
+	public int getNodeIndex(final String nodeId) {
+		final int index = indexOf(nodeId, NODE_ID_MSB, nodeCount);
+		return index < 0 || deletedNodes.contains(index) ? -1 : index;
+	}
+
+	/**
+	 * Delete node.
+	 *
+	 * @param index the index
+	 * @return true, if deleted now
+	 */
+	public boolean deleteNode(final int index) {
+		return deletedNodes.add(index);
+	}
+
+	/**
+	 * Gets the created date of the node.
+	 *
+	 * @param index the index
+	 * @return the created date
+	 */
+	public Instant getCreated(final int index) {
+		return CREATED_BASE.plus(index, ChronoUnit.MINUTES);
+	}
+
+	/**
+	 * Gets the modified date of the node, the created date unless the node was touched.
+	 *
+	 * @param index the index
+	 * @return the modified date
+	 */
+	public Instant getModified(final int index) {
+		return modifiedNodes.getOrDefault(index, getCreated(index));
+	}
+
+	/**
+	 * Touch the node, its modified date becomes now.
+	 *
+	 * @param index the index
+	 * @return the modified date
+	 */
+	public Instant touchNode(final int index) {
+		final Instant modified = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		modifiedNodes.put(index, modified);
+		return modified;
+	}
+
+	/**
+	 * Node entry as returned by the v1 REST API.
+	 *
+	 * @param index the index
+	 * @param withDetails true to include properties and aspect names
+	 * @return the entry
+	 */
+	public Map<String, Object> getNodeEntry(final int index, final boolean withDetails) {
+		final Map<String, Object> entry = new LinkedHashMap<String, Object>();
+		final String created = getCreated(index).toString();
+		entry.put(AlfScriptConstants.ID_NODE, getNodeId(index));
+		entry.put(AlfScriptConstants.NAME, getNodeName(index));
+		entry.put("nodeType", AlfScriptConstants.DEFAULT_TYPE);
+		entry.put("isFolder", false);
+		entry.put("isFile", true);
+		entry.put("createdAt", created);
+		entry.put("modifiedAt", getModified(index).toString());
+		entry.put("createdByUser", getUserRef(index % peopleCount));
+		entry.put("modifiedByUser", getUserRef(index % peopleCount));
+		entry.put("parentId", new UUID(NODE_ID_MSB, -1 - (index % siteCount)).toString());
+		final Map<String, Object> content = new LinkedHashMap<String, Object>();
+		content.put("mimeType", "text/plain");
+		content.put("mimeTypeName", "Plain Text");
+		content.put("sizeInBytes", contentSize);
+		content.put("encoding", "UTF-8");
+		entry.put("content", content);
+		if (withDetails) {
+			entry.put(AlfScriptConstants.ASPECTS, getAspects(index));
+			entry.put(AlfScriptConstants.PROPS, getProperties(index));
+		}
+		return entry;
+	}
+
+	/**
+	 * Node metadata as returned by the v0 metadata web script.
+	 *
+	 * @param index the index
+	 * @return the metadata
+	 */
+	public Map<String, Object> getNodeMetadata(final int index) {
+		final Map<String, Object> metadata = new LinkedHashMap<String, Object>();
+		metadata.put(AlfScriptConstants.NODE_REF, AlfScriptConstants.WORKSPACE_PROTOCOL + getNodeId(index));
+		metadata.put("type", AlfScriptConstants.DEFAULT_TYPE);
+		metadata.put("mimetype", "text/plain");
+		metadata.put("aspects", getAspects(index));
+		final Map<String, Object> properties = new LinkedHashMap<String, Object>(getProperties(index));
+		properties.put("cm:name", getNodeName(index));
+		properties.put("cm:created", getCreated(index).toString());
+		properties.put("cm:modified", getModified(index).toString());
+		properties.put("cm:content", "contentUrl=" + getContentUrl(index) + "|mimetype=text/plain|size=" + contentSize
+				+ "|encoding=UTF-8|locale=en_US_|id=" + (index % distinctContents + 1));
+		properties.put("sys:node-dbid", getNodeDbId(index));
+		metadata.put(AlfScriptConstants.PROPS, properties);
+		return metadata;
+	}
+
+	/**
+	 * Gets the node database id, ascending with the node index like in a real repository.
+	 *
+	 * @param index the index
+	 * @return the node db id
+	 */
+	public long getNodeDbId(final int index) {
+		return index + 1L;
+	}
+
+	/**
+	 * Write the content of the node.
+	 *
+	 * @param index the index
+	 * @param from the first byte to write
+	 * @param length the number of bytes to write
+	 * @param outStream the out stream
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void writeContent(final int index, final long from, final long length, final OutputStream outStream)
+			throws IOException {
+		long offset = (from + (index % distinctContents) * 31L) % PATTERN_SIZE;
+		long remaining = length;
+		while (remaining > 0) {
+			final int chunk = (int) Math.min(remaining, PATTERN_SIZE - offset);
+			outStream.write(PATTERN, (int) offset, chunk);
+			remaining -= chunk;
+			offset = 0;
+		}
+	}
+
+	/**
+	 * Gets the user name.
+	 *
+	 * @param index the index
+	 * @return the user name
+	 */
+	public String getUserName(final int index) {
+		return index == 0 ? AlfScriptConstants.DEFAULT_USER : "user" + index;
+	}
+
+	/**
+	 * Gets the user index.
+	 *
+	 * @param userName the user name
+	 * @return the index, -1 if there is no such user
+	 */
+	public int getUserIndex(final String userName) {
+		if (AlfScriptConstants.DEFAULT_USER.equals(userName)) {
+			return 0;
+		}
+		if (userName != null && userName.startsWith("user")) {
+			try {
+				final int index = Integer.parseInt(userName.substring(4));
+				return index > 0 && index < peopleCount ? index : -1;
+			} catch (NumberFormatException nfe) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Person as returned by the v0 people web script.
+	 *
+	 * @param index the index
+	 * @param withGroups true to include the groups
+	 * @return the person
+	 */
+	public Map<String, Object> getPerson(final int index, final boolean withGroups) {
+		final String userName = getUserName(index);
+		final Map<String, Object> person = new LinkedHashMap<String, Object>();
+		person.put("url", "/alfresco/service/api/people/" + userName);
+		person.put(AlfScriptConstants.USERNAME, userName);
+		person.put(AlfScriptConstants.NODE_REF, AlfScriptConstants.WORKSPACE_PROTOCOL
+				+ new UUID(NODE_ID_MSB ^ 0xffff_0000L, index).toString());
+		person.put("enabled", true);
+		person.put(AlfScriptConstants.FIRST_NAME, "First" + index);
+		person.put(AlfScriptConstants.LAST_NAME, "Last" + index);
+		person.put("jobtitle", null);
+		person.put("organization", "Stub Inc");
+		person.put("email", userName + "@example.com");
+		person.put("quota", -1);
+		person.put("sizeCurrent", (index + 1L) * contentSize);
+		person.put("emailFeedDisabled", false);
+		if (withGroups) {
+			final List<Map<String, Object>> groups = new ArrayList<Map<String, Object>>();
+			groups.add(getGroup("GROUP_EVERYONE", "EVERYONE"));
+			groups.add(getGroup("GROUP_site_" + getSiteName(index % siteCount), "site_" + getSiteName(index % siteCount)));
+			if (index == 0) {
+				groups.add(getGroup("GROUP_ALFRESCO_ADMINISTRATORS", "ALFRESCO_ADMINISTRATORS"));
+			}
+			person.put("groups", groups);
+		}
+		return person;
+	}
+
+	/**
+	 * Gets the site name.
+	 *
+	 * @param index the index
+	 * @return the site name
+	 */
+	public String getSiteName(final int index) {
+		return "site-" + index;
+	}
+
+	/**
+	 * Gets the site index.
+	 *
+	 * @param siteName the site name
+	 * @return the index, -1 if there is no such site
+	 */
+	public int getSiteIndex(final String siteName) {
+		if (siteName != null && siteName.startsWith("site-")) {
+			try {
+				final int index = Integer.parseInt(siteName.substring(5));
+				return index >= 0 && index < siteCount ? index : -1;
+			} catch (NumberFormatException nfe) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Site as returned by the v0 sites web script.
+	 *
+	 * @param index the index
+	 * @return the site
+	 */
+	public Map<String, Object> getSite(final int index) {
+		final String siteName = getSiteName(index);
+		final Map<String, Object> site = new LinkedHashMap<String, Object>();
+		site.put("url", "/alfresco/service/api/sites/" + siteName);
+		site.put("sitePreset", "site-dashboard");
+		site.put(AlfScriptConstants.SHORTNAME, siteName);
+		site.put("title", "Site " + index);
+		site.put("description", "Stub site " + index);
+		site.put("visibility", "PUBLIC");
+		return site;
+	}
+
+	/**
+	 * Gets the site indexes the user is a member of. Each user belongs to one site, admin to all.
+	 *
+	 * @param userIndex the user index
+	 * @return the site indexes
+	 */
+	public int[] getSitesOfUser(final int userIndex) {
+		if (userIndex == 0) {
+			final int[] all = new int[siteCount];
+			Arrays.setAll(all, each -> each);
+			return all;
+		}
+		return new int[] { userIndex % siteCount };
+	}
+
+	/**
+	 * Membership as returned by the v0 site memberships web script.
+	 *
+	 * @param siteIndex the site index
+	 * @param userIndex the user index
+	 * @return the membership
+	 */
+	public Map<String, Object> getMembership(final int siteIndex, final int userIndex) {
+		final String userName = getUserName(userIndex);
+		final Map<String, Object> authority = new LinkedHashMap<String, Object>();
+		authority.put("authorityType", "USER");
+		authority.put(AlfScriptConstants.FULL_NAME, userName);
+		authority.put(AlfScriptConstants.USERNAME, userName);
+		authority.put(AlfScriptConstants.FIRST_NAME, "First" + userIndex);
+		authority.put(AlfScriptConstants.LAST_NAME, "Last" + userIndex);
+		authority.put("url", "/alfresco/service/api/people/" + userName);
+		final Map<String, Object> membership = new LinkedHashMap<String, Object>();
+		membership.put("role", userIndex == 0 ? ROLES[0] : ROLES[userIndex % ROLES.length]);
+		membership.put(AlfScriptConstants.AUTHORITY, authority);
+		membership.put("url", "/alfresco/service/api/sites/" + getSiteName(siteIndex) + "/memberships/" + userName);
+		return membership;
+	}
+
+	/**
+	 * Gets the archived node id.
+	 *
+	 * @param index the index
+	 * @return the archived node id
+	 */
+	public String getArchivedNodeId(final int index) {
+		return new UUID(ARCHIVED_ID_MSB, index).toString();
+	}
+
+	/**
+	 * Gets the index of an archived node which is not purged yet.
+	 *
+	 * @param nodeId the node id
+	 * @return the index, -1 if there is no such node or it was purged
+	 */
+	public int getArchivedIndex(final String nodeId) {
+		final int index = indexOf(nodeId, ARCHIVED_ID_MSB, archivedCount);
+		return index < 0 || purgedNodes.contains(index) ? -1 : index;
+	}
+
+	/**
+	 * Checks if the archived node is purged.
+	 *
+	 * @param index the index
+	 * @return true, if is purged
+	 */
+	public boolean isPurged(final int index) {
+		return purgedNodes.contains(index);
+	}
+
+	/**
+	 * Purge archived node.
+	 *
+	 * @param index the index
+	 * @return true, if purged now
+	 */
+	public boolean purgeArchivedNode(final int index) {
+		return purgedNodes.add(index);
+	}
+
+	/**
+	 * Deleted node as returned by the v0 archive web script. Archived dates go a day back per node.
+	 *
+	 * @param index the index
+	 * @return the deleted node
+	 */
+	public Map<String, Object> getArchivedNode(final int index) {
+		final Map<String, Object> deletedNode = new LinkedHashMap<String, Object>();
+		deletedNode.put(AlfScriptConstants.NODE_REF, AlfScriptConstants.ARCHIVE_STOREREF + getArchivedNodeId(index));
+		deletedNode.put(AlfScriptConstants.NAME, "deleted-" + index + ".txt");
+		deletedNode.put("nodeType", AlfScriptConstants.DEFAULT_TYPE);
+		deletedNode.put(AlfScriptConstants.ARCHIEVED_DATE, Instant.now().minus(index, ChronoUnit.DAYS).toString());
+		deletedNode.put("archivedBy", getUserName(index % peopleCount));
+		return deletedNode;
+	}
+
+	/**
+	 * Gets the tag name.
+	 *
+	 * @param index the index
+	 * @return the tag name
+	 */
+	public String getTagName(final int index) {
+		return "tag-" + index;
+	}
+
+	/**
+	 * Checks if the tag is deleted.
+	 *
+	 * @param index the index
+	 * @return true, if is deleted
+	 */
+	public boolean isTagDeleted(final int index) {
+		return deletedTags.contains(index);
+	}
+
+	/**
+	 * Delete tag.
+	 *
+	 * @param tagName the tag name
+	 * @return true, if deleted now
+	 */
+	public boolean deleteTag(final String tagName) {
+		if (tagName != null && tagName.startsWith("tag-")) {
+			try {
+				final int index = Integer.parseInt(tagName.substring(4));
+				return index >= 0 && index < tagCount && deletedTags.add(index);
+			} catch (NumberFormatException nfe) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the properties of the node.
+	 *
+	 * @param index the index
+	 * @return the properties
+	 */
+	private Map<String, Object> getProperties(final int index) {
+		final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+		properties.put("cm:title", "Document " + index);
+		properties.put("cm:description", "Stub document number " + index);
+		properties.put("cm:author", getUserName(index % peopleCount));
+		properties.put("cm:versionLabel", "1.0");
+		properties.put("cm:versionType", "MAJOR");
+		properties.put("cm:taggable", Arrays.asList(getTagName(index % tagCount), getTagName((index + 1) % tagCount)));
+		return properties;
+	}
+
+	/**
+	 * Gets the aspects of the node.
+	 *
+	 * @param index the index
+	 * @return the aspects
+	 */
+	private List<String> getAspects(final int index) {
+		return Arrays.asList("cm:titled", "cm:auditable", "cm:versionable", "cm:taggable", "cm:author");
+	}
+
+	/**
+	 * Gets the user reference used in node entries.
+	 *
+	 * @param index the index
+	 * @return the user ref
+	 */
+	private Map<String, Object> getUserRef(final int index) {
+		final Map<String, Object> user = new LinkedHashMap<String, Object>();
+		user.put(AlfScriptConstants.ID_NODE, getUserName(index));
+		user.put("displayName", "First" + index + " Last" + index);
+		return user;
+	}
+
+	/**
+	 * Gets the group.
+	 *
+	 * @param itemName the item name
+	 * @param displayName the display name
+	 * @return the group
+	 */
+	private static Map<String, Object> getGroup(final String itemName, final String displayName) {
+		final Map<String, Object> group = new LinkedHashMap<String, Object>();
+		group.put("itemName", itemName);
+		group.put("displayName", displayName);
+		return group;
+	}
+
+	/**
+	 * Decode the index from an id generated by this dataset.
+	 *
+	 * @param nodeId the node id
+	 * @param msb the expected high bits
+	 * @param count the number of ids of this kind
+	 * @return the index, -1 if the id is not one of ours
+	 */
+	private static int indexOf(final String nodeId, final long msb, final int count) {
+		try {
+			final UUID uuid = UUID.fromString(nodeId);
+			final long index = uuid.getLeastSignificantBits();
+			return uuid.getMostSignificantBits() == msb && index >= 0 && index < count ? (int) index : -1;
+		} catch (IllegalArgumentException iae) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Creates the content pattern.
+	 *
+	 * @return the bytes
+	 */
+	private static byte[] createPattern() {
+		final byte[] pattern = new byte[PATTERN_SIZE];
+		final Random random = new Random(PATTERN_SIZE);
+		for (int each = 0; each < PATTERN_SIZE; each++) {
+			pattern[each] = (byte) (each % 64 == 63 ? '\n' : 'a' + random.nextInt(26));
+		}
+		return pattern;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import com.github.abhinavmishra14.alfscript.utils.TaskTimer;
+import com.github.abhinavmishra14.http.utils.HTTPUtils;
+import com.github.abhinavmishra14.http.utils.HttpClientManager;
+import com.github.abhinavmishra14.http.utils.TLSConnectionSocketFactory;
+
+/**
+ * The Class TLSHandshakeBenchmark.<br>
+ * Sends the given number of GET requests to an https url and reports how many TLS handshakes
+ * were needed. Mode <code>pooled</code> goes through {@link HTTPUtils}, mode <code>perRequest</code>
+ * builds and closes a client for each request the way the old *TLS helpers did (still sharing the
+ * SSLContext, so it shows the effect of session resumption alone).<br>
+ * e.g. java com.github.abhinavmishra14.http.test.TLSHandshakeBenchmark https://localhost:8443/alfresco/ 10000 16 pooled
+ */
+public class TLSHandshakeBenchmark {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(TLSHandshakeBenchmark.class);
+
+	/** The Constant DEFAULT_REQUESTS. */
+	private static final int DEFAULT_REQUESTS = 10000;
+
+	/** The Constant DEFAULT_THREADS. */
+	private static final int DEFAULT_THREADS = 16;
+
+	/** The Constant MODE_PER_REQUEST. */
+	private static final String MODE_PER_REQUEST = "perRequest";
+
+	/**
+	 * The main method.
+	 *
+	 * @param args the args
+	 * @throws InterruptedException the interrupted exception
+	 * @throws ExecutionException the execution exception
+	 */
+	public static void main(final String[] args) throws InterruptedException, ExecutionException {
+		if (args.length < 1 || StringUtils.isBlank(args[0])) {
+			throw new IllegalArgumentException(
+					"Please provide the url. \n TLSHandshakeBenchmark invocation command: java com.github.abhinavmishra14.http.test.TLSHandshakeBenchmark <httpsUrl> [requests] [threads] [pooled|perRequest]");
+		}
+		final String url = args[0].trim();
+		int requests = DEFAULT_REQUESTS;
+		if (args.length >= 2 && StringUtils.isNotBlank(args[1])) {
+			requests = Integer.parseInt(args[1].trim());
+		}
+		int threads = DEFAULT_THREADS;
+		if (args.length >= 3 && StringUtils.isNotBlank(args[2])) {
+			threads = Integer.parseInt(args[2].trim());
+		}
+		final boolean perRequest = args.length >= 4 && MODE_PER_REQUEST.equalsIgnoreCase(StringUtils.trim(args[3]));
+
+		final AtomicInteger failures = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final TaskTimer timer = new TaskTimer();
+		timer.startTimer();
+		try {
+			final List<Future<?>> results = new ArrayList<Future<?>>(requests);
+			for (int each = 0; each < requests; each++) {
+				results.add(executor.submit(() -> {
+					try {
+						if (perRequest) {
+							sendWithNewClient(url);
+						} else {
+							HTTPUtils.httpGet(url, httpResp -> httpResp.getStatusLine().getStatusCode());
+						}
+					} catch (IOException excp) {
+						failures.incrementAndGet();
+						LOG.debug("Request failed", excp);
+					}
+				}));
+			}
+			for (final Future<?> eachResult : results) {
+				eachResult.get();
+			}
+		} finally {
+			executor.shutdown();
+			timer.endTimer();
+		}
+		final long handshakes = TLSConnectionSocketFactory.getHandshakeCount();
+		LOG.info("Mode: " + (perRequest ? MODE_PER_REQUEST : "pooled") + " | requests: " + requests + " | threads: "
+				+ threads + " | failures: " + failures.get() + " | time: " + timer.getFormattedTotalTime());
+		LOG.info("TLS handshakes: " + handshakes + " (resumed: " + TLSConnectionSocketFactory.getResumedHandshakeCount()
+				+ ") | handshakes per 10k requests: " + (requests == 0 ? 0 : handshakes * 10000 / requests));
+		HttpClientManager.shutdown();
+	}
+
+	/**
+	 * Send the request with a client created just for it.
+	 *
+	 * @param url the url
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void sendWithNewClient(final String url) throws IOException {
+		try (final CloseableHttpClient client = HttpClients.custom()
+				.setSSLSocketFactory(new TLSConnectionSocketFactory()).build()) {
+			client.execute(new HttpGet(url), httpResp -> {
+				EntityUtils.consume(httpResp.getEntity());
+				return httpResp.getStatusLine().getStatusCode();
+			});
+		}
+	}
+}
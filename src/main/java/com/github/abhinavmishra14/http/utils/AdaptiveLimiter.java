@@ -0,0 +1,278 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * The Class AdaptiveLimiter.<br>
+ * Client side concurrency limiter, one per {@link EndpointFamily}. Concurrency follows AIMD:
+ * completions are evaluated in windows, a healthy window raises the limit (doubling until the first
+ * back off, by one afterwards), a window whose p99 latency exceeds the tolerated multiple of the
+ * healthy baseline or whose 5xx/429/connection failure rate is too high cuts the limit.<br>
+ * A permit is held until the response status is received, so it bounds the requests the repository
+ * is working on, not the time spent streaming content to disk.<br>
+ * Optionally a fixed request rate can be enforced as well via
+ * <code>-Dalfscript.http.limiter.ratePerSecond</code>, each family gets its own token bucket.
+ */
+public final class AdaptiveLimiter {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(AdaptiveLimiter.class);
+
+	/** The Constant PROP_ENABLED. */
+	public static final String PROP_ENABLED = "alfscript.http.limiter";
+
+	/** The Constant PROP_INITIAL_LIMIT. */
+	public static final String PROP_INITIAL_LIMIT = "alfscript.http.limiter.initialLimit";
+
+	/** The Constant PROP_MIN_LIMIT. */
+	public static final String PROP_MIN_LIMIT = "alfscript.http.limiter.minLimit";
+
+	/** The Constant PROP_MAX_LIMIT. */
+	public static final String PROP_MAX_LIMIT = "alfscript.http.limiter.maxLimit";
+
+	/** The Constant PROP_LATENCY_TOLERANCE. */
+	public static final String PROP_LATENCY_TOLERANCE = "alfscript.http.limiter.latencyTolerance";
+
+	/** The Constant PROP_RATE_PER_SECOND. */
+	public static final String PROP_RATE_PER_SECOND = "alfscript.http.limiter.ratePerSecond";
+
+	/** The Constant ENABLED. */
+	private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(PROP_ENABLED, "true"));
+
+	/** The Constant MIN_LIMIT. */
+	private static final int MIN_LIMIT = Math.max(1, Integer.getInteger(PROP_MIN_LIMIT, 1));
+
+	/** The Constant MAX_LIMIT. Defaults to the connections per host, beyond that requests would just queue in the pool. */
+	private static final int MAX_LIMIT = Math.max(MIN_LIMIT, Integer.getInteger(PROP_MAX_LIMIT, Integer
+			.getInteger(HttpClientManager.PROP_MAX_PER_ROUTE, HttpClientManager.DEFAULT_MAX_PER_ROUTE)));
+
+	/** The Constant INITIAL_LIMIT. */
+	private static final int INITIAL_LIMIT = Math.min(MAX_LIMIT,
+			Math.max(MIN_LIMIT, Integer.getInteger(PROP_INITIAL_LIMIT, 8)));
+
+	/** The Constant LATENCY_TOLERANCE. */
+	private static final double LATENCY_TOLERANCE = Double
+			.parseDouble(System.getProperty(PROP_LATENCY_TOLERANCE, "2.0"));
+
+	/** The Constant RATE_PER_SECOND. */
+	private static final double RATE_PER_SECOND = Double.parseDouble(System.getProperty(PROP_RATE_PER_SECOND, "0"));
+
+	/** The Constant MIN_WINDOW_SIZE. */
+	private static final int MIN_WINDOW_SIZE = 20;
+
+	/** The Constant MAX_ERROR_RATE. */
+	private static final double MAX_ERROR_RATE = 0.05;
+
+	/** The Constant BACKOFF_RATIO. */
+	private static final double BACKOFF_RATIO = 0.75;
+
+	/** The Constant BASELINE_WEIGHT. */
+	private static final double BASELINE_WEIGHT = 0.1;
+
+	/** The Constant LIMITERS. */
+	private static final Map<EndpointFamily, AdaptiveLimiter> LIMITERS;
+
+	static {
+		final Map<EndpointFamily, AdaptiveLimiter> limiters = new EnumMap<EndpointFamily, AdaptiveLimiter>(
+				EndpointFamily.class);
+		for (final EndpointFamily eachFamily : EndpointFamily.values()) {
+			limiters.put(eachFamily, new AdaptiveLimiter(eachFamily));
+		}
+		LIMITERS = Collections.unmodifiableMap(limiters);
+	}
+
+	/** The family. */
+	private final EndpointFamily family;
+
+	/** The lock. */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** The permit available. */
+	private final Condition permitAvailable = lock.newCondition();
+
+	/** The rate limiter, null when no fixed rate is configured. */
+	private final RateLimiter rateLimiter;
+
+	/** The latencies of the current window in nanos. */
+	private long[] window = new long[MIN_WINDOW_SIZE];
+
+	/** The number of samples in the current window. */
+	private int samples;
+
+	/** The number of failures in the current window. */
+	private int failures;
+
+	/** The in flight. */
+	private int inFlight;
+
+	/** The limit. */
+	private double limit = INITIAL_LIMIT;
+
+	/** The slow start. */
+	private boolean slowStart = true;
+
+	/** The p99 latency of healthy windows in nanos, 0 until first window completes. */
+	private double baselineP99;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param family the family
+	 */
+	private AdaptiveLimiter(final EndpointFamily family) {
+		super();
+		this.family = family;
+		this.rateLimiter = RATE_PER_SECOND > 0 ? RateLimiter.create(RATE_PER_SECOND) : null;
+	}
+
+	/**
+	 * Gets the limiter of the given family.
+	 *
+	 * @param family the family
+	 * @return the adaptive limiter
+	 */
+	public static AdaptiveLimiter get(final EndpointFamily family) {
+		return LIMITERS.get(family);
+	}
+
+	/**
+	 * Gets the limiter of the given request.
+	 *
+	 * @param method the http method
+	 * @param path the url path
+	 * @return the adaptive limiter
+	 */
+	public static AdaptiveLimiter get(final String method, final String path) {
+		return LIMITERS.get(EndpointFamily.of(method, path));
+	}
+
+	/**
+	 * Wait until a request can be sent to the family.
+	 *
+	 * @return the start time to pass to {@link #release(long, boolean)}
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public long acquire() throws InterruptedException {
+		if (rateLimiter != null) {
+			rateLimiter.acquire();
+		}
+		lock.lockInterruptibly();
+		try {
+			while (ENABLED && inFlight >= (int) limit) {
+				permitAvailable.await();
+			}
+			inFlight++;
+		} finally {
+			lock.unlock();
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Release the permit and feed the outcome of the request to the limit.
+	 *
+	 * @param startNanos the value returned by {@link #acquire()}
+	 * @param failed true if the request failed with 5xx, 429 or a connection error
+	 */
+	public void release(final long startNanos, final boolean failed) {
+		final long latency = System.nanoTime() - startNanos;
+		lock.lock();
+		try {
+			inFlight--;
+			if (samples == window.length) {
+				window = Arrays.copyOf(window, window.length * 2);
+			}
+			window[samples++] = latency;
+			if (failed) {
+				failures++;
+			}
+			if (samples >= Math.max(MIN_WINDOW_SIZE, (int) limit)) {
+				adjustLimit();
+			}
+			permitAvailable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the current limit.
+	 *
+	 * @return the limit
+	 */
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of requests in flight.
+	 *
+	 * @return the in flight
+	 */
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Adjust the limit based on the completed window. Caller must hold the lock.
+	 */
+	private void adjustLimit() {
+		Arrays.sort(window, 0, samples);
+		final long p99 = window[Math.min(samples - 1, (int) Math.ceil(samples * 0.99) - 1)];
+		final double errorRate = (double) failures / samples;
+		final int previous = (int) limit;
+		if (errorRate > MAX_ERROR_RATE || (baselineP99 > 0 && p99 > baselineP99 * LATENCY_TOLERANCE)) {
+			slowStart = false;
+			limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+			LOG.info("Backing off " + family + " requests, limit: " + previous + " -> " + (int) limit + " | p99: "
+					+ TimeUnit.NANOSECONDS.toMillis(p99) + "ms | error rate: " + Math.round(errorRate * 100) + "%");
+		} else {
+			baselineP99 = baselineP99 == 0 ? p99 : baselineP99 * (1 - BASELINE_WEIGHT) + p99 * BASELINE_WEIGHT;
+			limit = Math.min(MAX_LIMIT, slowStart ? limit * 2 : limit + 1);
+			if (LOG.isDebugEnabled() && (int) limit != previous) {
+				LOG.debug("Raising " + family + " limit: " + previous + " -> " + (int) limit + " | p99: "
+						+ TimeUnit.NANOSECONDS.toMillis(p99) + "ms");
+			}
+		}
+		samples = 0;
+		failures = 0;
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.utils;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.StringEntity;
+
+/**
+ * The Class AsyncHTTPUtils.<br>
+ * Non-blocking counterpart of {@link HTTPUtils} for bulk operations. Requests are executed over
+ * the shared NIO client, and the number of requests in flight is bound by a window which can be
+ * tuned via <code>-Dalfscript.http.async.window=512</code>. When the window is full, the calling
+ * thread blocks until a request completes, so producers can't run ahead of the repository.<br>
+ * Responses are fully buffered in memory, hence use it for small payloads (deletes, json calls)
+ * and not for content downloads.<br>
+ * Returned futures are completed on the I/O reactor threads, use the *Async variants of
+ * {@link CompletableFuture} for any blocking follow up work.<br>
+ * Requests also go through the {@link AdaptiveLimiter} of their endpoint family, so the effective
+ * concurrency is the lower of the window and the adaptive limit.<br>
+ * Requests carry the current ticket of their user, and a request rejected with 401 is replayed
+ * once with a renewed ticket, the renewal runs off the reactor threads. Idempotent requests (e.g. deletes) failing with a transient error are sent
+ * again after the {@link RetryPolicy} backoff, without holding a window slot while waiting.
+ */
+public final class AsyncHTTPUtils {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(AsyncHTTPUtils.class);
+
+	/** The Constant PROP_WINDOW. */
+	public static final String PROP_WINDOW = "alfscript.http.async.window";
+
+	/** The Constant DEFAULT_WINDOW. */
+	private static final int DEFAULT_WINDOW = 512;
+
+	/** The Constant IN_FLIGHT. */
+	private static final Semaphore IN_FLIGHT = new Semaphore(Integer.getInteger(PROP_WINDOW, DEFAULT_WINDOW));
+
+	/**
+	 * The Constructor.
+	 */
+	private AsyncHTTPUtils() {
+		super();
+	}
+
+	/**
+	 * Http get.
+	 *
+	 * @param url the url
+	 * @return the completable future of http response
+	 */
+	public static CompletableFuture<HttpResponse> httpGetAsync(final String url) {
+		LOG.info("Sending async http get with url: " + url);
+		return execute(new HttpGet(url));
+	}
+
+	/**
+	 * Http post.
+	 *
+	 * @param url the url
+	 * @param jsonReqData the json req data
+	 * @return the completable future of http response
+	 */
+	public static CompletableFuture<HttpResponse> httpPostAsync(final String url, final String jsonReqData) {
+		LOG.info("Sending async http post with url: " + url);
+		final HttpPost httpPost = new HttpPost(url);
+		try {
+			final StringEntity httpEntity = new StringEntity(jsonReqData);
+			httpEntity.setContentType(HTTPUtils.MIME_JSON);
+			httpPost.setEntity(httpEntity);
+		} catch (UnsupportedEncodingException excp) {
+			final CompletableFuture<HttpResponse> failed = new CompletableFuture<HttpResponse>();
+			failed.completeExceptionally(excp);
+			return failed;
+		}
+		return execute(httpPost);
+	}
+
+	/**
+	 * Http delete.
+	 *
+	 * @param url the url
+	 * @return the completable future of http response
+	 */
+	public static CompletableFuture<HttpResponse> httpDeleteAsync(final String url) {
+		LOG.info("Sending async http delete with url: " + url);
+		return execute(new HttpDelete(url));
+	}
+
+	/**
+	 * Gets the number of requests currently in flight.
+	 *
+	 * @return the in flight count
+	 */
+	public static int getInFlightCount() {
+		return Integer.getInteger(PROP_WINDOW, DEFAULT_WINDOW) - IN_FLIGHT.availablePermits();
+	}
+
+	/**
+	 * Execute the request, replaying it once if its ticket was rejected.
+	 *
+	 * @param request the request
+	 * @return the completable future of http response
+	 */
+	private static CompletableFuture<HttpResponse> execute(final HttpUriRequest request) {
+		return execute(request, 1, false);
+	}
+
+	/**
+	 * Execute the request, retrying it as per {@link RetryPolicy} if it is idempotent and failed
+	 * with a transient error. Retries draw from the same budget as the blocking requests.
+	 *
+	 * @param request the request
+	 * @param attempt the attempt, starting from 1
+	 * @param ticketRenewed whether the ticket was already renewed
+	 * @return the completable future of http response
+	 */
+	private static CompletableFuture<HttpResponse> execute(final HttpUriRequest request, final int attempt,
+			final boolean ticketRenewed) {
+		final boolean idempotent = RetryPolicy.isIdempotent(request, null);
+		return send(request).handle((response, failure) -> {
+			if (failure != null) {
+				final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+						? failure.getCause() : failure;
+				if (idempotent && cause instanceof IOException && RetryPolicy.isRetryableException((IOException) cause)
+						&& RetryPolicy.acquireRetry(attempt)) {
+					return retry(request, attempt, ticketRenewed, null, cause.toString());
+				}
+				final CompletableFuture<HttpResponse> failed = new CompletableFuture<HttpResponse>();
+				failed.completeExceptionally(cause);
+				return failed;
+			}
+			final int statusCode = response.getStatusLine().getStatusCode();
+			if (statusCode == HTTPUtils.HTTP_CODE_401 && !ticketRenewed) {
+				return CompletableFuture.supplyAsync(() -> HTTPUtils.renewTicket(request))
+						.thenCompose(renewed -> renewed ? execute(request, attempt + 1, true)
+								: CompletableFuture.completedFuture(response));
+			}
+			if (idempotent && RetryPolicy.isRetryableStatus(statusCode) && RetryPolicy.acquireRetry(attempt)) {
+				return retry(request, attempt, ticketRenewed, response, response.getStatusLine().toString());
+			}
+			return CompletableFuture.completedFuture(response);
+		}).thenCompose(Function.identity());
+	}
+
+	/**
+	 * Send the request again once its backoff has elapsed, off the reactor threads.
+	 *
+	 * @param request the request
+	 * @param attempt the attempt which failed
+	 * @param ticketRenewed whether the ticket was already renewed
+	 * @param response the failed response, can be null
+	 * @param reason the reason
+	 * @return the completable future of http response
+	 */
+	private static CompletableFuture<HttpResponse> retry(final HttpUriRequest request, final int attempt,
+			final boolean ticketRenewed, final HttpResponse response, final String reason) {
+		final long delay = RetryPolicy.getBackoffMillis(attempt, response);
+		LOG.warn("Attempt " + attempt + " of " + request.getMethod() + " " + request.getURI().getPath()
+				+ " failed due to: " + reason + ", retrying in " + delay + "ms");
+		return CompletableFuture.supplyAsync(() -> {
+			if (request instanceof HttpRequestBase) {
+				((HttpRequestBase) request).reset();
+			}
+			return execute(request, attempt + 1, ticketRenewed);
+		}, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)).thenCompose(Function.identity());
+	}
+
+	/**
+	 * Send the request using the shared non-blocking client.<br>
+	 * Blocks the caller while the in-flight window is full.
+	 *
+	 * @param request the request
+	 * @return the completable future of http response
+	 */
+	private static CompletableFuture<HttpResponse> send(final HttpUriRequest request) {
+		final CompletableFuture<HttpResponse> future = new CompletableFuture<HttpResponse>();
+		HTTPUtils.updateTicket(request);
+		try {
+			IN_FLIGHT.acquire();
+		} catch (InterruptedException excp) {
+			Thread.currentThread().interrupt();
+			future.completeExceptionally(excp);
+			return future;
+		}
+		final AdaptiveLimiter limiter = AdaptiveLimiter.get(request.getMethod(), request.getURI().getPath());
+		final HttpMetrics.Endpoint endpoint = HttpMetrics.getEndpoint(request.getMethod(), request.getURI().getPath());
+		final long started;
+		try {
+			started = limiter.acquire();
+		} catch (InterruptedException excp) {
+			IN_FLIGHT.release();
+			Thread.currentThread().interrupt();
+			future.completeExceptionally(excp);
+			return future;
+		}
+		try {
+			HttpClientManager.getHttpAsyncClient().execute(request, new FutureCallback<HttpResponse>() {
+				@Override
+				public void completed(final HttpResponse response) {
+					// Response is buffered by the time it completes, so first byte and total are the same
+					final long elapsed = System.nanoTime() - started;
+					final HttpEntity entity = response.getEntity();
+					endpoint.recordResponse(response.getStatusLine().getStatusCode(), -1, -1, 0, elapsed);
+					endpoint.recordCompletion(entity == null ? 0 : Math.max(0, entity.getContentLength()), elapsed);
+					limiter.release(started, HTTPUtils.isOverloaded(response.getStatusLine().getStatusCode()));
+					IN_FLIGHT.release();
+					future.complete(response);
+				}
+
+				@Override
+				public void failed(final Exception excp) {
+					endpoint.recordError(System.nanoTime() - started);
+					limiter.release(started, true);
+					IN_FLIGHT.release();
+					future.completeExceptionally(excp);
+				}
+
+				@Override
+				public void cancelled() {
+					limiter.release(started, false);
+					IN_FLIGHT.release();
+					future.cancel(false);
+				}
+			});
+		} catch (RuntimeException excp) {
+			limiter.release(started, true);
+			IN_FLIGHT.release();
+			future.completeExceptionally(excp);
+		}
+		return future;
+	}
+}
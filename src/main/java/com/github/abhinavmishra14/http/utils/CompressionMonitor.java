@@ -0,0 +1,126 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.utils;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * The Class CompressionMonitor.<br>
+ * Response interceptor which runs before the client decompresses the entity, and keeps count of
+ * JSON responses received compressed vs. as identity. Large JSON responses sent without
+ * compression are reported once per endpoint family, it usually means compression is not
+ * enabled on the Tomcat connector or the proxy in front of the repository.
+ */
+public class CompressionMonitor implements HttpResponseInterceptor {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(CompressionMonitor.class);
+
+	/** The Constant UNCOMPRESSED_WARN_BYTES. */
+	private static final long UNCOMPRESSED_WARN_BYTES = 64 * 1024;
+
+	/** The compressed responses. */
+	private final AtomicLong compressed = new AtomicLong();
+
+	/** The compressed bytes received. */
+	private final AtomicLong compressedBytes = new AtomicLong();
+
+	/** The identity responses. */
+	private final AtomicLong identity = new AtomicLong();
+
+	/** The identity bytes received. */
+	private final AtomicLong identityBytes = new AtomicLong();
+
+	/** The families already reported. */
+	private final Set<EndpointFamily> reported = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Process.
+	 *
+	 * @param response the response
+	 * @param context the context
+	 */
+	@Override
+	public void process(final HttpResponse response, final HttpContext context) {
+		final HttpEntity entity = response.getEntity();
+		if (entity == null || entity.getContentType() == null
+				|| !StringUtils.containsIgnoreCase(entity.getContentType().getValue(), "json")) {
+			return;
+		}
+		final long length = Math.max(0, entity.getContentLength());
+		final Header encoding = entity.getContentEncoding();
+		if (encoding != null && !"identity".equalsIgnoreCase(encoding.getValue())) {
+			compressed.incrementAndGet();
+			compressedBytes.addAndGet(length);
+			return;
+		}
+		identity.incrementAndGet();
+		identityBytes.addAndGet(length);
+		if (length >= UNCOMPRESSED_WARN_BYTES) {
+			final HttpRequest request = HttpClientContext.adapt(context).getRequest();
+			final String method = request == null ? null : request.getRequestLine().getMethod();
+			final String path = request == null ? null : StringUtils.substringBefore(request.getRequestLine().getUri(), "?");
+			if (reported.add(EndpointFamily.of(method, path))) {
+				LOG.warn("Received " + length + " bytes of uncompressed json from: " + path
+						+ ", enable gzip for application/json on the repository to cut transfer time");
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of compressed json responses.
+	 *
+	 * @return the compressed count
+	 */
+	public long getCompressedCount() {
+		return compressed.get();
+	}
+
+	/**
+	 * Gets the number of uncompressed json responses.
+	 *
+	 * @return the identity count
+	 */
+	public long getIdentityCount() {
+		return identity.get();
+	}
+
+	/**
+	 * Summary of the json responses seen so far. Sizes are as received on the wire, chunked
+	 * responses without a content length are not counted in bytes.
+	 *
+	 * @return the summary
+	 */
+	public String getSummary() {
+		return "json responses compressed: " + compressed.get() + " (" + compressedBytes.get()
+				+ " bytes), uncompressed: " + identity.get() + " (" + identityBytes.get() + " bytes)";
+	}
+}
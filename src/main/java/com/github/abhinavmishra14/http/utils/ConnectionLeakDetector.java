@@ -0,0 +1,273 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * The Class ConnectionLeakDetector.<br>
+ * Wraps the pooled connection manager and remembers the call site of every leased connection
+ * until it is released back to the pool. Leases held longer than the threshold are reported
+ * periodically by {@link HttpClientManager} and all outstanding leases are reported at shutdown.<br>
+ * Capturing call sites costs a stack walk per request, so it is enabled only with
+ * <code>-Dalfscript.http.leakDetection=true</code>
+ */
+public class ConnectionLeakDetector implements HttpClientConnectionManager {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(ConnectionLeakDetector.class);
+
+	/** The Constant INTERNAL_PACKAGES. */
+	private static final String[] INTERNAL_PACKAGES = { "org.apache.http.", "java.", "jdk.", "sun.",
+			ConnectionLeakDetector.class.getPackage().getName() + "." };
+
+	/** The delegate. */
+	private final HttpClientConnectionManager delegate;
+
+	/** The leases. */
+	private final Map<HttpClientConnection, Lease> leases = Collections
+			.synchronizedMap(new IdentityHashMap<HttpClientConnection, Lease>());
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param delegate the delegate
+	 */
+	public ConnectionLeakDetector(final HttpClientConnectionManager delegate) {
+		super();
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Request connection.
+	 *
+	 * @param route the route
+	 * @param state the state
+	 * @return the connection request
+	 */
+	@Override
+	public ConnectionRequest requestConnection(final HttpRoute route, final Object state) {
+		final String callSite = findCallSite();
+		final ConnectionRequest request = delegate.requestConnection(route, state);
+		return new ConnectionRequest() {
+			@Override
+			public boolean cancel() {
+				return request.cancel();
+			}
+
+			@Override
+			public HttpClientConnection get(final long timeout, final TimeUnit tunit)
+					throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+				final HttpClientConnection conn = request.get(timeout, tunit);
+				leases.put(conn, new Lease(callSite, Thread.currentThread().getName()));
+				return conn;
+			}
+		};
+	}
+
+	/**
+	 * Release connection.
+	 *
+	 * @param conn the conn
+	 * @param newState the new state
+	 * @param validDuration the valid duration
+	 * @param timeUnit the time unit
+	 */
+	@Override
+	public void releaseConnection(final HttpClientConnection conn, final Object newState,
+			final long validDuration, final TimeUnit timeUnit) {
+		leases.remove(conn);
+		delegate.releaseConnection(conn, newState, validDuration, timeUnit);
+	}
+
+	/**
+	 * Connect.
+	 *
+	 * @param conn the conn
+	 * @param route the route
+	 * @param connectTimeout the connect timeout
+	 * @param context the context
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void connect(final HttpClientConnection conn, final HttpRoute route, final int connectTimeout,
+			final HttpContext context) throws IOException {
+		delegate.connect(conn, route, connectTimeout, context);
+	}
+
+	/**
+	 * Upgrade.
+	 *
+	 * @param conn the conn
+	 * @param route the route
+	 * @param context the context
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void upgrade(final HttpClientConnection conn, final HttpRoute route, final HttpContext context)
+			throws IOException {
+		delegate.upgrade(conn, route, context);
+	}
+
+	/**
+	 * Route complete.
+	 *
+	 * @param conn the conn
+	 * @param route the route
+	 * @param context the context
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void routeComplete(final HttpClientConnection conn, final HttpRoute route, final HttpContext context)
+			throws IOException {
+		delegate.routeComplete(conn, route, context);
+	}
+
+	/**
+	 * Close idle connections.
+	 *
+	 * @param idletime the idletime
+	 * @param tunit the tunit
+	 */
+	@Override
+	public void closeIdleConnections(final long idletime, final TimeUnit tunit) {
+		delegate.closeIdleConnections(idletime, tunit);
+	}
+
+	/**
+	 * Close expired connections.
+	 */
+	@Override
+	public void closeExpiredConnections() {
+		delegate.closeExpiredConnections();
+	}
+
+	/**
+	 * Shutdown.
+	 */
+	@Override
+	public void shutdown() {
+		reportLeaks(0);
+		delegate.shutdown();
+	}
+
+	/**
+	 * Gets the number of connections currently leased.
+	 *
+	 * @return the leased count
+	 */
+	public int getLeasedCount() {
+		return leases.size();
+	}
+
+	/**
+	 * Report the leases held longer than the given threshold.
+	 *
+	 * @param thresholdMillis the threshold millis
+	 * @return the number of leases reported
+	 */
+	public int reportLeaks(final long thresholdMillis) {
+		final long now = System.currentTimeMillis();
+		final List<Lease> suspects = new ArrayList<Lease>();
+		synchronized (leases) {
+			for (final Lease eachLease : leases.values()) {
+				if (now - eachLease.leasedAt >= thresholdMillis) {
+					suspects.add(eachLease);
+				}
+			}
+		}
+		for (final Lease eachLease : suspects) {
+			LOG.warn("Possible connection leak, connection leased " + (now - eachLease.leasedAt) + "ms ago by thread: "
+					+ eachLease.threadName + " at: " + eachLease.callSite);
+		}
+		return suspects.size();
+	}
+
+	/**
+	 * Find the first stack frame outside of http client and this package.
+	 *
+	 * @return the call site
+	 */
+	private static String findCallSite() {
+		final StackTraceElement[] stack = new Throwable().getStackTrace();
+		for (final StackTraceElement eachFrame : stack) {
+			if (!isInternal(eachFrame.getClassName())) {
+				return eachFrame.toString();
+			}
+		}
+		return stack.length > 0 ? stack[stack.length - 1].toString() : "unknown";
+	}
+
+	/**
+	 * Checks if class belongs to http client internals.
+	 *
+	 * @param className the class name
+	 * @return true, if is internal
+	 */
+	private static boolean isInternal(final String className) {
+		for (final String eachPackage : INTERNAL_PACKAGES) {
+			if (className.startsWith(eachPackage)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The Class Lease.
+	 */
+	private static class Lease {
+
+		/** The call site. */
+		private final String callSite;
+
+		/** The thread name. */
+		private final String threadName;
+
+		/** The leased at. */
+		private final long leasedAt;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param callSite the call site
+		 * @param threadName the thread name
+		 */
+		Lease(final String callSite, final String threadName) {
+			this.callSite = callSite;
+			this.threadName = threadName;
+			this.leasedAt = System.currentTimeMillis();
+		}
+	}
+}
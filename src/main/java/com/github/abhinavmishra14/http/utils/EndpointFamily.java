@@ -0,0 +1,75 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.utils;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The Enum EndpointFamily.<br>
+ * Groups the repository REST endpoints which share the same server side resources, so that
+ * they can be throttled independently. e.g. slow searches shouldn't hold back content downloads.
+ */
+public enum EndpointFamily {
+
+	/** The search. */
+	SEARCH,
+
+	/** The content download and upload. */
+	CONTENT,
+
+	/** The archive store (trashcan). */
+	ARCHIVE,
+
+	/** The people. */
+	PEOPLE,
+
+	/** The sites. */
+	SITES,
+
+	/** Anything else. */
+	OTHER;
+
+	/**
+	 * Resolve the family of the given request.
+	 *
+	 * @param method the http method
+	 * @param path the url path
+	 * @return the endpoint family
+	 */
+	public static EndpointFamily of(final String method, final String path) {
+		if (StringUtils.isBlank(path)) {
+			return OTHER;
+		}
+		if (path.contains("/search/") || path.endsWith("/search")) {
+			return SEARCH;
+		}
+		if (path.contains("/archive/")) {
+			return ARCHIVE;
+		}
+		if (path.contains("/content") || ("POST".equals(method) && path.endsWith("/children"))) {
+			return CONTENT;
+		}
+		if (path.contains("/people")) {
+			return PEOPLE;
+		}
+		if (path.contains("/sites")) {
+			return SITES;
+		}
+		return OTHER;
+	}
+}
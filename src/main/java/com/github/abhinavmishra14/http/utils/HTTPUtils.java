@@ -21,37 +21,50 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.Reader;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
-
-import javax.net.ssl.SSLContext;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+
+import com.github.abhinavmishra14.auth.utils.TicketManager;
 
 /**
- * The Class HTTPUtils.
+ * The Class HTTPUtils.<br>
+ * Prefer the {@link ResponseHandler} variants, they always consume the response entity so the
+ * connection goes back to the pool. Callers of the variants returning {@link CloseableHttpResponse}
+ * must close the response.<br>
+ * The pooled client handles https with a shared TLS configuration, the *TLS variants are kept only
+ * for compatibility and delegate to their plain counterparts.
  */
 public final class HTTPUtils {
 	
@@ -78,7 +91,10 @@ public final class HTTPUtils {
 	
 	/** The Constant HTTP_CODE_201. */
     public static final int HTTP_CODE_201 = 201;
-
+	
+	/** The Constant HTTP_CODE_204. */
+	public static final int HTTP_CODE_204 = 204;
+	
 	/** The Constant MIME_JSON. */
 	public static final String MIME_JSON = "application/json";
 	
@@ -87,6 +103,12 @@ public final class HTTPUtils {
 
 	/** The Constant LOG. */
 	private final static Log LOG = LogFactory.getLog(HTTPUtils.class);
+
+	/** The Constant TICKET_PARAM. */
+	private static final Pattern TICKET_PARAM = Pattern.compile("(?<=[?&]alf_ticket=)[^&#]+");
+
+	/** The Constant MAX_DRAIN_BYTES. Rest of a body rejected by its handler read to reuse the connection, larger ones are aborted. */
+	private static final long MAX_DRAIN_BYTES = 64 * 1024;
 	
 	/**
 	 * The Constructor.
@@ -106,9 +128,8 @@ public final class HTTPUtils {
 	public static CloseableHttpResponse httpGet(final String url)
 			throws ClientProtocolException, IOException {
 		LOG.info("Sending http get with url: "+ url);
-		final CloseableHttpClient httpclient = HttpClientBuilder.create().build();
 		final HttpGet request = new HttpGet(url);
-		return httpclient.execute(request);
+		return executeRequest(request, null);
 	}
 	
 	/**
@@ -121,13 +142,11 @@ public final class HTTPUtils {
 	 * @throws KeyManagementException the key management exception
 	 * @throws NoSuchAlgorithmException the no such algorithm exception
 	 */
+	@Deprecated
 	public static CloseableHttpResponse httpGetTLS(final String url)
 			throws ClientProtocolException, IOException,
 			KeyManagementException, NoSuchAlgorithmException {
-		LOG.info("Sending http get with url: "+ url);
-		final CloseableHttpClient httpclient = createNewClientWithTLS();
-		final HttpGet request = new HttpGet(url);
-		return httpclient.execute(request);
+		return httpGet(url);
 	}
 	
 	/**
@@ -144,13 +163,9 @@ public final class HTTPUtils {
 			final String userName, final String password)
 			throws ClientProtocolException, IOException {
 		LOG.info("Sending http get with url: "+ url);
-		final CredentialsProvider provider = new BasicCredentialsProvider();
-		final UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(
-				userName, password);
-		provider.setCredentials(AuthScope.ANY, credentials);
-		final CloseableHttpClient httpclient = HttpClientBuilder.create().setDefaultCredentialsProvider(provider).build();
+		final HttpClientContext context = createContext(userName, password);
 		final HttpGet request = new HttpGet(url);
-		return httpclient.execute(request);
+		return executeRequest(request, context);
 	}
 	
 	/**
@@ -170,14 +185,7 @@ public final class HTTPUtils {
 			final String userName, final String password)
 			throws ClientProtocolException, IOException,
 			KeyManagementException, NoSuchAlgorithmException {
-		LOG.info("Sending http get with url: "+ url);
-		final CredentialsProvider provider = new BasicCredentialsProvider();
-		final UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(
-				userName, password);
-		provider.setCredentials(AuthScope.ANY, credentials);
-		final CloseableHttpClient httpclient = createNewClientWithCredentialsAndTLS(provider);
-		final HttpGet request = new HttpGet(url);
-		return httpclient.execute(request);
+		return httpGet(url, userName, password);
 	}
 
 	/**
@@ -195,16 +203,12 @@ public final class HTTPUtils {
 			final String jsonReqData, final String userName,
 			final String password) throws ClientProtocolException, IOException {
 		LOG.info("Sending http post with url: "+ url);
-		final CredentialsProvider provider = new BasicCredentialsProvider();
-		final UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(
-				userName, password);
-		provider.setCredentials(AuthScope.ANY, credentials);
-		final CloseableHttpClient httpclient = HttpClientBuilder.create().setDefaultCredentialsProvider(provider).build();
+		final HttpClientContext context = createContext(userName, password);
 		final HttpPost httpPost = new HttpPost(url);
 		final StringEntity httpEntity = new StringEntity(jsonReqData);
 		httpEntity.setContentType(MIME_JSON);
 		httpPost.setEntity(httpEntity);		
-		return httpclient.execute(httpPost);
+		return executeRequest(httpPost, context);
 	}
 	
 	/**
@@ -225,17 +229,7 @@ public final class HTTPUtils {
 			final String jsonReqData, final String userName,
 			final String password) throws ClientProtocolException, IOException,
 			KeyManagementException, NoSuchAlgorithmException {
-		LOG.info("Sending http post with url: "+ url);
-		final CredentialsProvider provider = new BasicCredentialsProvider();
-		final UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(
-				userName, password);
-		provider.setCredentials(AuthScope.ANY, credentials);
-		final CloseableHttpClient httpclient = createNewClientWithCredentialsAndTLS(provider);
-		final HttpPost httpPost = new HttpPost(url);
-		final StringEntity httpEntity = new StringEntity(jsonReqData);
-		httpEntity.setContentType(MIME_JSON);
-		httpPost.setEntity(httpEntity);		
-		return httpclient.execute(httpPost);
+		return httpPost(url, jsonReqData, userName, password);
 	}
 			
 	/**
@@ -251,12 +245,11 @@ public final class HTTPUtils {
 			final String jsonReqData) throws ClientProtocolException,
 			IOException {
 		LOG.info("Sending http post with url: "+ url);
-		final CloseableHttpClient httpclient = HttpClientBuilder.create().build();
 		final HttpPost httpPost = new HttpPost(url);
 		final StringEntity httpEntity = new StringEntity(jsonReqData);
 		httpEntity.setContentType(MIME_JSON);
 		httpPost.setEntity(httpEntity);		
-		return httpclient.execute(httpPost);
+		return executeRequest(httpPost, null);
 	}
 	
 	/**
@@ -274,13 +267,7 @@ public final class HTTPUtils {
 	public static CloseableHttpResponse httpPostTLS(final String url,
 			final String jsonReqData) throws ClientProtocolException,
 			IOException, KeyManagementException, NoSuchAlgorithmException {
-		LOG.info("Sending http post with url: "+ url);
-		final CloseableHttpClient httpclient = createNewClientWithTLS();
-		final HttpPost httpPost = new HttpPost(url);
-		final StringEntity httpEntity = new StringEntity(jsonReqData);
-		httpEntity.setContentType(MIME_JSON);
-		httpPost.setEntity(httpEntity);		
-		return httpclient.execute(httpPost);
+		return httpPost(url, jsonReqData);
 	}
 	
 	/**
@@ -296,10 +283,9 @@ public final class HTTPUtils {
 			final List<NameValuePair> params) throws ClientProtocolException,
 			IOException {
 		LOG.info("Sending http post with url: "+ url+ " params: "+params);
-		final CloseableHttpClient httpclient = HttpClientBuilder.create().build();
 		final HttpPost httpPost = new HttpPost(url);
 		httpPost.setEntity(new UrlEncodedFormEntity(params, UTF8));	
-		return httpclient.execute(httpPost);
+		return executeRequest(httpPost, null);
 	}
 	
 	/**
@@ -317,11 +303,25 @@ public final class HTTPUtils {
 	public static CloseableHttpResponse httpPostTLS(final String url,
 			final List<NameValuePair> params) throws ClientProtocolException,
 			IOException, KeyManagementException, NoSuchAlgorithmException {
-		LOG.info("Sending http post with url: "+ url+ " params: "+params);
-		final CloseableHttpClient httpclient = createNewClientWithTLS();
+		return httpPost(url, params);
+	}
+	
+	/**
+	 * Http post.
+	 *
+	 * @param url the url
+	 * @param httpEntity the http entity, e.g. a multipart entity
+	 * @return the http response
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException the IO exception
+	 */
+	public static CloseableHttpResponse httpPost(final String url,
+			final HttpEntity httpEntity) throws ClientProtocolException,
+			IOException {
+		LOG.info("Sending http post with url: "+ url);
 		final HttpPost httpPost = new HttpPost(url);
-		httpPost.setEntity(new UrlEncodedFormEntity(params, UTF8));	
-		return httpclient.execute(httpPost);
+		httpPost.setEntity(httpEntity);
+		return executeRequest(httpPost, null);
 	}
 	
 	/**
@@ -336,12 +336,11 @@ public final class HTTPUtils {
 	public static CloseableHttpResponse httpPut(final String url,
 			final String jsonReqData) throws ClientProtocolException, IOException {
 		LOG.info("Sending http put with url: "+ url);
-		final CloseableHttpClient httpclient = HttpClientBuilder.create().build();
 		final HttpPut httpPut = new HttpPut(url);
 		final StringEntity httpEntity = new StringEntity(jsonReqData);
 		httpEntity.setContentType(MIME_JSON);
 		httpPut.setEntity(httpEntity);
-		return httpclient.execute(httpPut);
+		return executeRequest(httpPut, null);
 	}
 	
 	/**
@@ -359,13 +358,7 @@ public final class HTTPUtils {
 	public static CloseableHttpResponse httpPutTLS(final String url,
 			final String jsonReqData) throws ClientProtocolException,
 			IOException, KeyManagementException, NoSuchAlgorithmException {
-		LOG.info("Sending http put with url: "+ url);
-		final CloseableHttpClient httpclient = createNewClientWithTLS();
-		final HttpPut httpPut = new HttpPut(url);
-		final StringEntity httpEntity = new StringEntity(jsonReqData);
-		httpEntity.setContentType(MIME_JSON);
-		httpPut.setEntity(httpEntity);
-		return httpclient.execute(httpPut);
+		return httpPut(url, jsonReqData);
 	}
 		
 	/**
@@ -383,16 +376,12 @@ public final class HTTPUtils {
 			final String jsonReqData, final String userName,
 			final String password) throws ClientProtocolException, IOException {
 		LOG.info("Sending http put with url: "+ url);
-		final CredentialsProvider provider = new BasicCredentialsProvider();
-		final UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(
-				userName, password);
-		provider.setCredentials(AuthScope.ANY, credentials);
-		final CloseableHttpClient httpclient = HttpClientBuilder.create().setDefaultCredentialsProvider(provider).build();
+		final HttpClientContext context = createContext(userName, password);
 		final HttpPut httpPut = new HttpPut(url);
 		final StringEntity httpEntity = new StringEntity(jsonReqData);
 		httpEntity.setContentType(MIME_JSON);
 		httpPut.setEntity(httpEntity);
-		return httpclient.execute(httpPut);
+		return executeRequest(httpPut, context);
 	}
 	
 	/**
@@ -413,17 +402,7 @@ public final class HTTPUtils {
 			final String jsonReqData, final String userName,
 			final String password) throws ClientProtocolException, IOException,
 			KeyManagementException, NoSuchAlgorithmException {
-		LOG.info("Sending http put with url: "+ url);
-		final CredentialsProvider provider = new BasicCredentialsProvider();
-		final UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(
-				userName, password);
-		provider.setCredentials(AuthScope.ANY, credentials);
-		final CloseableHttpClient httpclient = createNewClientWithCredentialsAndTLS(provider);
-		final HttpPut httpPut = new HttpPut(url);
-		final StringEntity httpEntity = new StringEntity(jsonReqData);
-		httpEntity.setContentType(MIME_JSON);
-		httpPut.setEntity(httpEntity);
-		return httpclient.execute(httpPut);
+		return httpPut(url, jsonReqData, userName, password);
 	}
 		
 	/**
@@ -437,9 +416,8 @@ public final class HTTPUtils {
 	public static CloseableHttpResponse httpDelete(final String url)
 			throws ClientProtocolException, IOException {
 		LOG.info("Sending http delete with url: "+ url);
-		final CloseableHttpClient httpclient = HttpClientBuilder.create().build();
 		final HttpDelete httpDelete = new HttpDelete(url);	
-		return httpclient.execute(httpDelete);
+		return executeRequest(httpDelete, null);
 	}
 	
 	/**
@@ -456,10 +434,7 @@ public final class HTTPUtils {
 	public static CloseableHttpResponse httpDeleteTLS(final String url)
 			throws ClientProtocolException, IOException,
 			KeyManagementException, NoSuchAlgorithmException {
-		LOG.info("Sending http delete with url: "+ url);
-		final CloseableHttpClient httpclient = createNewClientWithTLS();
-		final HttpDelete httpDelete = new HttpDelete(url);	
-		return httpclient.execute(httpDelete);
+		return httpDelete(url);
 	}
 	
 	/**
@@ -475,13 +450,9 @@ public final class HTTPUtils {
 	public static CloseableHttpResponse httpDelete(final String url, final String userName,
 			final String password) throws ClientProtocolException, IOException {
 		LOG.info("Sending http delete with url: "+ url);
-		final CredentialsProvider provider = new BasicCredentialsProvider();
-		final UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(
-				userName, password);
-		provider.setCredentials(AuthScope.ANY, credentials);
-		final CloseableHttpClient httpclient = HttpClientBuilder.create().setDefaultCredentialsProvider(provider).build();
+		final HttpClientContext context = createContext(userName, password);
 		final HttpDelete httpDelete = new HttpDelete(url);	
-		return httpclient.execute(httpDelete);
+		return executeRequest(httpDelete, context);
 	}
 	
 	/**
@@ -500,16 +471,385 @@ public final class HTTPUtils {
 	public static CloseableHttpResponse httpDeleteTLS(final String url, final String userName,
 			final String password) throws ClientProtocolException, IOException,
 			KeyManagementException, NoSuchAlgorithmException {
+		return httpDelete(url, userName, password);
+	}
+	
+	/**
+	 * Http get.<br>
+	 * Response is handed to the given handler, entity is always consumed and the connection is
+	 * released back to the pool once the handler returns, even if the handler fails.
+	 *
+	 * @param <T> the generic type
+	 * @param url the url
+	 * @param handler the response handler
+	 * @return the value returned by handler
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException the IO exception
+	 */
+	public static <T> T httpGet(final String url, final ResponseHandler<? extends T> handler)
+			throws ClientProtocolException, IOException {
+		LOG.info("Sending http get with url: "+ url);
+		return execute(new HttpGet(url), handler);
+	}
+	
+	/**
+	 * Http post.<br>
+	 * Response is handed to the given handler, entity is always consumed and the connection is
+	 * released back to the pool once the handler returns, even if the handler fails.
+	 *
+	 * @param <T> the generic type
+	 * @param url the url
+	 * @param jsonReqData the json req data
+	 * @param handler the response handler
+	 * @return the value returned by handler
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException the IO exception
+	 */
+	public static <T> T httpPost(final String url, final String jsonReqData,
+			final ResponseHandler<? extends T> handler) throws ClientProtocolException, IOException {
+		LOG.info("Sending http post with url: "+ url);
+		final HttpPost httpPost = new HttpPost(url);
+		final StringEntity httpEntity = new StringEntity(jsonReqData);
+		httpEntity.setContentType(MIME_JSON);
+		httpPost.setEntity(httpEntity);
+		return execute(httpPost, handler);
+	}
+	
+	/**
+	 * Http post for read only calls such as search.<br>
+	 * Same as {@link #httpPost(String, String, ResponseHandler)} except that the request is treated
+	 * as idempotent and hence retried on transient failures.
+	 *
+	 * @param <T> the generic type
+	 * @param url the url
+	 * @param jsonReqData the json req data
+	 * @param handler the response handler
+	 * @return the value returned by handler
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException the IO exception
+	 */
+	public static <T> T httpPostReadOnly(final String url, final String jsonReqData,
+			final ResponseHandler<? extends T> handler) throws ClientProtocolException, IOException {
+		LOG.info("Sending read only http post with url: "+ url);
+		final HttpPost httpPost = new HttpPost(url);
+		final StringEntity httpEntity = new StringEntity(jsonReqData);
+		httpEntity.setContentType(MIME_JSON);
+		httpPost.setEntity(httpEntity);
+		final HttpClientContext context = HttpClientContext.create();
+		context.setAttribute(RetryPolicy.ATTR_IDEMPOTENT, Boolean.TRUE);
+		return execute(httpPost, context, handler);
+	}
+	
+	/**
+	 * Http post.<br>
+	 * Response is handed to the given handler, entity is always consumed and the connection is
+	 * released back to the pool once the handler returns, even if the handler fails.
+	 *
+	 * @param <T> the generic type
+	 * @param url the url
+	 * @param httpEntity the http entity, e.g. a multipart entity
+	 * @param handler the response handler
+	 * @return the value returned by handler
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException the IO exception
+	 */
+	public static <T> T httpPost(final String url, final HttpEntity httpEntity,
+			final ResponseHandler<? extends T> handler) throws ClientProtocolException, IOException {
+		LOG.info("Sending http post with url: "+ url);
+		final HttpPost httpPost = new HttpPost(url);
+		httpPost.setEntity(httpEntity);
+		return execute(httpPost, handler);
+	}
+	
+	/**
+	 * Http delete.<br>
+	 * Response is handed to the given handler, entity is always consumed and the connection is
+	 * released back to the pool once the handler returns, even if the handler fails.
+	 *
+	 * @param <T> the generic type
+	 * @param url the url
+	 * @param handler the response handler
+	 * @return the value returned by handler
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException the IO exception
+	 */
+	public static <T> T httpDelete(final String url, final ResponseHandler<? extends T> handler)
+			throws ClientProtocolException, IOException {
 		LOG.info("Sending http delete with url: "+ url);
+		return execute(new HttpDelete(url), handler);
+	}
+	
+	/**
+	 * Execute the request and hand the response to the given handler.<br>
+	 * Unlike closing an unread response, which aborts the connection, consuming the entity
+	 * lets the pool reuse the connection for the next request. A handler not needing the rest of
+	 * a large body can abort the request instead, the body is then not read. The request is aborted
+	 * as well when the handler fails, unless the body is known to be small.
+	 *
+	 * @param <T> the generic type
+	 * @param request the request
+	 * @param handler the response handler
+	 * @return the value returned by handler
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException the IO exception
+	 */
+	public static <T> T execute(final HttpUriRequest request, final ResponseHandler<? extends T> handler)
+			throws ClientProtocolException, IOException {
+		return execute(request, null, handler);
+	}
+	
+	/**
+	 * Execute the request with the given context and hand the response to the given handler.
+	 *
+	 * @param <T> the generic type
+	 * @param request the request
+	 * @param context the context, can be null
+	 * @param handler the response handler
+	 * @return the value returned by handler
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException the IO exception
+	 */
+	private static <T> T execute(final HttpUriRequest request, final HttpClientContext context,
+			final ResponseHandler<? extends T> handler) throws ClientProtocolException, IOException {
+		try (final CloseableHttpResponse httpResp = executeRequest(request, context)) {
+			try {
+				final T result = handler.handleResponse(httpResp);
+				if (!request.isAborted()) {
+					// An aborted request's connection is dropped, the rest of the body is not read
+					EntityUtils.consume(httpResp.getEntity());
+				}
+				return result;
+			} catch (IOException | RuntimeException excp) {
+				final HttpEntity entity = httpResp.getEntity();
+				if (entity != null && entity.getContentLength() >= 0 && entity.getContentLength() <= MAX_DRAIN_BYTES) {
+					EntityUtils.consumeQuietly(entity);
+				} else if (entity != null) {
+					// e.g. a full content sent instead of the range asked for, dropping the connection is cheaper
+					request.abort();
+				}
+				throw excp;
+			}
+		}
+	}
+	
+	/**
+	 * Execute the request using the shared pooled client.<br>
+	 * Idempotent requests failing with a transient error are retried as per {@link RetryPolicy}.
+	 * Each attempt is recorded in {@link HttpMetrics}, the total latency once the entity is read.
+	 * The alf_ticket of the request is swapped for the current one before each attempt, and a request
+	 * rejected with 401 is still replayed once with the ticket renewed by {@link TicketManager}.
+	 * Caller must close the returned response (or fully consume its entity) so that the
+	 * underlying connection is released back to the pool.
+	 *
+	 * @param request the request
+	 * @param context the context, can be null
+	 * @return the closeable http response
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException the IO exception
+	 */
+	private static CloseableHttpResponse executeRequest(final HttpUriRequest request,
+			final HttpClientContext context) throws ClientProtocolException, IOException {
+		final boolean idempotent = RetryPolicy.isIdempotent(request, context);
+		final AdaptiveLimiter limiter = AdaptiveLimiter.get(request.getMethod(), request.getURI().getPath());
+		final HttpMetrics.Endpoint endpoint = HttpMetrics.getEndpoint(request.getMethod(), request.getURI().getPath());
+		int attempt = 0;
+		boolean ticketRenewed = false;
+		while (true) {
+			attempt++;
+			updateTicket(request);
+			final long started = acquire(limiter, request);
+			HttpMetrics.beginRequest();
+			final CloseableHttpResponse httpResp;
+			try {
+				httpResp = HttpClientManager.getHttpClient().execute(request, context);
+			} catch (IOException excp) {
+				endpoint.recordError(System.nanoTime() - started);
+				limiter.release(started, true);
+				if (!idempotent || !RetryPolicy.isRetryableException(excp) || !RetryPolicy.acquireRetry(attempt)) {
+					throw excp;
+				}
+				backoff(request, attempt, null, excp.toString());
+				continue;
+			} catch (RuntimeException excp) {
+				endpoint.recordError(System.nanoTime() - started);
+				limiter.release(started, true);
+				throw excp;
+			}
+			final int statusCode = httpResp.getStatusLine().getStatusCode();
+			limiter.release(started, isOverloaded(statusCode));
+			endpoint.recordResponse(statusCode, getContentLength(request), HttpMetrics.getLeaseTime(),
+					HttpMetrics.getConnectTime(), System.nanoTime() - started);
+			if (httpResp.getEntity() == null) {
+				endpoint.recordCompletion(0, System.nanoTime() - started);
+			} else {
+				httpResp.setEntity(new MeteredEntity(httpResp.getEntity(), endpoint, started));
+			}
+			if (statusCode == HTTP_CODE_401 && !ticketRenewed && renewTicket(request)) {
+				ticketRenewed = true;
+				EntityUtils.consumeQuietly(httpResp.getEntity());
+				httpResp.close();
+				((HttpRequestBase) request).reset();
+				continue;
+			}
+			if (!idempotent || !RetryPolicy.isRetryableStatus(statusCode) || !RetryPolicy.acquireRetry(attempt)) {
+				return httpResp;
+			}
+			EntityUtils.consumeQuietly(httpResp.getEntity());
+			httpResp.close();
+			backoff(request, attempt, httpResp, httpResp.getStatusLine().toString());
+		}
+	}
+	
+	/**
+	 * Replace the expired alf_ticket of the request with a renewed one.
+	 *
+	 * @param request the request
+	 * @return true, if the request can be replayed with the renewed ticket
+	 */
+	static boolean renewTicket(final HttpUriRequest request) {
+		if (!(request instanceof HttpRequestBase)) {
+			return false;
+		}
+		if (request instanceof HttpEntityEnclosingRequest) {
+			final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+			if (entity != null && !entity.isRepeatable()) {
+				return false;
+			}
+		}
+		final String uri = request.getURI().toString();
+		final Matcher matcher = TICKET_PARAM.matcher(uri);
+		if (!matcher.find()) {
+			return false;
+		}
+		try {
+			final String ticket = TicketManager.renewTicket(matcher.group());
+			if (ticket == null) {
+				return false;
+			}
+			((HttpRequestBase) request).setURI(URI.create(matcher.replaceFirst(ticket)));
+			return true;
+		} catch (IOException | RuntimeException excp) {
+			LOG.warn("Could not renew the ticket of " + request.getMethod() + " " + request.getURI().getPath(), excp);
+			return false;
+		}
+	}
+
+	/**
+	 * Replace the alf_ticket of the request with the current one, if it was superseded by a renewal.
+	 *
+	 * @param request the request
+	 */
+	static void updateTicket(final HttpUriRequest request) {
+		if (!(request instanceof HttpRequestBase)) {
+			return;
+		}
+		final String uri = request.getURI().toString();
+		final Matcher matcher = TICKET_PARAM.matcher(uri);
+		if (!matcher.find()) {
+			return;
+		}
+		final String ticket = TicketManager.getCurrentTicket(matcher.group());
+		if (!matcher.group().equals(ticket)) {
+			((HttpRequestBase) request).setURI(URI.create(matcher.replaceFirst(Matcher.quoteReplacement(ticket))));
+		}
+	}
+
+	/**
+	 * Wait for a permit of the endpoint family of the given request.
+	 *
+	 * @param limiter the limiter
+	 * @param request the request
+	 * @return the start time of the request
+	 * @throws InterruptedIOException if interrupted while waiting
+	 */
+	private static long acquire(final AdaptiveLimiter limiter, final HttpUriRequest request)
+			throws InterruptedIOException {
+		try {
+			return limiter.acquire();
+		} catch (InterruptedException excp) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to send " + request.getURI().getPath());
+		}
+	}
+	
+	/**
+	 * Gets the content length of the request body.
+	 *
+	 * @param request the request
+	 * @return the content length, negative if unknown or there is no body
+	 */
+	private static long getContentLength(final HttpUriRequest request) {
+		if (request instanceof HttpEntityEnclosingRequest) {
+			final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+			return entity == null ? -1 : entity.getContentLength();
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks if the status of a delete request means the node is gone, deleted now or before.
+	 *
+	 * @param statusCode the status code, can be null
+	 * @return true, if is deleted
+	 */
+	public static boolean isDeleted(final Integer statusCode) {
+		return statusCode != null && (statusCode == HTTP_CODE_200 || statusCode == HTTP_CODE_204
+				|| statusCode == HTTP_CODE_404);
+	}
+
+	/**
+	 * Checks if the status indicates that the repository is overloaded.
+	 *
+	 * @param statusCode the status code
+	 * @return true, if is overloaded
+	 */
+	static boolean isOverloaded(final int statusCode) {
+		return statusCode >= HTTP_CODE_500 || statusCode == RetryPolicy.HTTP_CODE_429;
+	}
+	
+	/**
+	 * Wait before the next attempt of the given request.
+	 *
+	 * @param request the request
+	 * @param attempt the attempt
+	 * @param httpResp the failed response, can be null
+	 * @param reason the reason
+	 * @throws InterruptedIOException if interrupted while waiting
+	 */
+	private static void backoff(final HttpUriRequest request, final int attempt,
+			final HttpResponse httpResp, final String reason) throws InterruptedIOException {
+		final long delay = RetryPolicy.getBackoffMillis(attempt, httpResp);
+		LOG.warn("Attempt " + attempt + " of " + request.getMethod() + " " + request.getURI().getPath()
+				+ " failed due to: " + reason + ", retrying in " + delay + "ms");
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException excp) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to retry " + request.getURI().getPath());
+		}
+		if (request instanceof HttpRequestBase) {
+			((HttpRequestBase) request).reset();
+		}
+	}
+
+	/**
+	 * Creates the request context with basic credentials.<br>
+	 * Credentials are set per request so that the pooled client can be shared across users.
+	 *
+	 * @param userName the user name
+	 * @param password the password
+	 * @return the http client context
+	 */
+	private static HttpClientContext createContext(final String userName, final String password) {
 		final CredentialsProvider provider = new BasicCredentialsProvider();
 		final UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(
 				userName, password);
 		provider.setCredentials(AuthScope.ANY, credentials);
-		final CloseableHttpClient httpclient = createNewClientWithCredentialsAndTLS(provider);
-		final HttpDelete httpDelete = new HttpDelete(url);	
-		return httpclient.execute(httpDelete);
+		final HttpClientContext context = HttpClientContext.create();
+		context.setCredentialsProvider(provider);
+		return context;
 	}
-	
+
 	/**
 	 * Convert stream to string.
 	 *
@@ -545,41 +885,4 @@ public final class HTTPUtils {
 			return convertStreamToString(responseStream);
 		}
 	}
-	
-	/**
-     * Creates the new client.
-     *
-     * @return the http client
-     * @throws KeyManagementException the key management exception
-     * @throws NoSuchAlgorithmException the no such algorithm exception
-     */
-	@Deprecated
-	private static CloseableHttpClient createNewClientWithTLS() throws KeyManagementException,
-			NoSuchAlgorithmException {
-    	final SSLContext sslContext = SSLContexts.custom().useTLS().build();
-		final SSLConnectionSocketFactory sslConnFactory = new SSLConnectionSocketFactory(
-			    sslContext,  new String[]{"TLSv1", "TLSv1.1", "TLSv1.2"},   
-			    null, SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-		//Returns the CloseableHttpClient
-        return HttpClientBuilder.create().setSSLSocketFactory(sslConnFactory).build();
-    }
-	
-	/**
-	 * Creates the new client with credentials and tls.
-	 *
-	 * @param provider the provider
-	 * @return the http client
-	 * @throws KeyManagementException the key management exception
-	 * @throws NoSuchAlgorithmException the no such algorithm exception
-	 */
-	@Deprecated
-	private static CloseableHttpClient createNewClientWithCredentialsAndTLS(final CredentialsProvider provider)
-			throws KeyManagementException, NoSuchAlgorithmException {
-		final SSLContext sslContext = SSLContexts.custom().useTLS().build();
-		final SSLConnectionSocketFactory sslConnFactory = new SSLConnectionSocketFactory(
-				sslContext,  new String[]{"TLSv1", "TLSv1.1", "TLSv1.2"},   
-				null, SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-		//Returns the CloseableHttpClient
-		return HttpClientBuilder.create().setDefaultCredentialsProvider(provider).setSSLSocketFactory(sslConnFactory).build();
-	}
 }
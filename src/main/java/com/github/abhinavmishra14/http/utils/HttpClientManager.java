@@ -0,0 +1,494 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.utils;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * The Class HttpClientManager.<br>
+ * Holds a single long-lived, pooled {@link CloseableHttpClient} which is shared by all the
+ * services via {@link HTTPUtils}, and a non-blocking {@link CloseableHttpAsyncClient} used by
+ * {@link AsyncHTTPUtils}. Pool limits and timeouts can be tuned using system properties,
+ * e.g. <code>-Dalfscript.http.maxTotal=200 -Dalfscript.http.maxPerRoute=50</code>
+ */
+public final class HttpClientManager {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(HttpClientManager.class);
+
+	/** The Constant PROP_MAX_TOTAL. */
+	public static final String PROP_MAX_TOTAL = "alfscript.http.maxTotal";
+
+	/** The Constant PROP_MAX_PER_ROUTE. */
+	public static final String PROP_MAX_PER_ROUTE = "alfscript.http.maxPerRoute";
+
+	/** The Constant PROP_KEEP_ALIVE_MILLIS. */
+	public static final String PROP_KEEP_ALIVE_MILLIS = "alfscript.http.keepAliveMillis";
+
+	/** The Constant PROP_IDLE_EVICT_MILLIS. */
+	public static final String PROP_IDLE_EVICT_MILLIS = "alfscript.http.idleEvictMillis";
+
+	/** The Constant PROP_CONNECT_TIMEOUT_MILLIS. */
+	public static final String PROP_CONNECT_TIMEOUT_MILLIS = "alfscript.http.connectTimeoutMillis";
+
+	/** The Constant PROP_SOCKET_TIMEOUT_MILLIS. */
+	public static final String PROP_SOCKET_TIMEOUT_MILLIS = "alfscript.http.socketTimeoutMillis";
+
+	/** The Constant PROP_LEASE_TIMEOUT_MILLIS. */
+	public static final String PROP_LEASE_TIMEOUT_MILLIS = "alfscript.http.leaseTimeoutMillis";
+
+	/** The Constant PROP_IO_THREADS. */
+	public static final String PROP_IO_THREADS = "alfscript.http.async.ioThreads";
+
+	/** The Constant PROP_LEAK_DETECTION. */
+	public static final String PROP_LEAK_DETECTION = "alfscript.http.leakDetection";
+
+	/** The Constant PROP_LEAK_THRESHOLD_MILLIS. */
+	public static final String PROP_LEAK_THRESHOLD_MILLIS = "alfscript.http.leakThresholdMillis";
+
+	/** The Constant DEFAULT_MAX_TOTAL. */
+	private static final int DEFAULT_MAX_TOTAL = 200;
+
+	/** The Constant DEFAULT_MAX_PER_ROUTE. */
+	static final int DEFAULT_MAX_PER_ROUTE = 50;
+
+	/** The Constant DEFAULT_KEEP_ALIVE_MILLIS. */
+	private static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+
+	/** The Constant DEFAULT_IDLE_EVICT_MILLIS. */
+	private static final long DEFAULT_IDLE_EVICT_MILLIS = 60000;
+
+	/** The Constant DEFAULT_CONNECT_TIMEOUT_MILLIS. */
+	private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 30000;
+
+	/** The Constant DEFAULT_SOCKET_TIMEOUT_MILLIS. */
+	private static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 600000;
+
+	/** The Constant DEFAULT_LEASE_TIMEOUT_MILLIS. */
+	private static final int DEFAULT_LEASE_TIMEOUT_MILLIS = 120000;
+
+	/** The Constant DEFAULT_LEAK_THRESHOLD_MILLIS. */
+	private static final long DEFAULT_LEAK_THRESHOLD_MILLIS = 300000;
+
+	/** The Constant PROP_COMPRESSION. */
+	public static final String PROP_COMPRESSION = "alfscript.http.compression";
+
+	/** The Constant PROP_METRICS_REPORT_INTERVAL_SECONDS. */
+	public static final String PROP_METRICS_REPORT_INTERVAL_SECONDS = "alfscript.http.metrics.reportIntervalSeconds";
+
+	/** The Constant DEFAULT_METRICS_REPORT_INTERVAL_SECONDS. */
+	private static final long DEFAULT_METRICS_REPORT_INTERVAL_SECONDS = 60;
+
+	/** The Constant VALIDATE_AFTER_INACTIVITY_MILLIS. */
+	private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+	/** The connection manager. */
+	private static PoolingHttpClientConnectionManager connManager;
+
+	/** The leak detector, null unless leak detection is enabled. */
+	private static ConnectionLeakDetector leakDetector;
+
+	/** The compression monitor. */
+	private static final CompressionMonitor COMPRESSION_MONITOR = new CompressionMonitor();
+
+	/** The leak reporter. */
+	private static ScheduledExecutorService leakReporter;
+
+	/** The metrics reporter. */
+	private static ScheduledExecutorService metricsReporter;
+
+	/** The http client. */
+	private static volatile CloseableHttpClient httpClient;
+
+	/** The http async client. */
+	private static volatile CloseableHttpAsyncClient httpAsyncClient;
+
+	/** The shutdown hook registered. */
+	private static boolean shutdownHookRegistered;
+
+	/**
+	 * The Constructor.
+	 */
+	private HttpClientManager() {
+		super();
+	}
+
+	/**
+	 * Gets the shared http client. Client is created lazily on first use.
+	 *
+	 * @return the http client
+	 */
+	public static CloseableHttpClient getHttpClient() {
+		CloseableHttpClient client = httpClient;
+		if (client == null) {
+			synchronized (HttpClientManager.class) {
+				client = httpClient;
+				if (client == null) {
+					client = initialize();
+					httpClient = client;
+				}
+			}
+		}
+		return client;
+	}
+
+	/**
+	 * Gets the shared non-blocking http client. Client is created and started lazily on first use.
+	 *
+	 * @return the http async client
+	 */
+	public static CloseableHttpAsyncClient getHttpAsyncClient() {
+		CloseableHttpAsyncClient client = httpAsyncClient;
+		if (client == null) {
+			synchronized (HttpClientManager.class) {
+				client = httpAsyncClient;
+				if (client == null) {
+					client = initializeAsync();
+					httpAsyncClient = client;
+				}
+			}
+		}
+		return client;
+	}
+
+	/**
+	 * Gets the pool stats.
+	 *
+	 * @return the pool stats, null if the client is not initialized yet
+	 */
+	public static synchronized PoolStats getPoolStats() {
+		return connManager == null ? null : connManager.getTotalStats();
+	}
+
+	/**
+	 * Gets the leak detector.
+	 *
+	 * @return the leak detector, null if leak detection is not enabled
+	 */
+	public static synchronized ConnectionLeakDetector getLeakDetector() {
+		return leakDetector;
+	}
+
+	/**
+	 * Gets the compression monitor.
+	 *
+	 * @return the compression monitor
+	 */
+	public static CompressionMonitor getCompressionMonitor() {
+		return COMPRESSION_MONITOR;
+	}
+
+	/**
+	 * Shutdown the shared client and release all pooled connections.<br>
+	 * Outstanding leases are reported before shutdown when leak detection is enabled, and the
+	 * per endpoint metrics recorded so far are logged and cleared.
+	 */
+	public static synchronized void shutdown() {
+		if (leakReporter != null) {
+			leakReporter.shutdownNow();
+			leakReporter = null;
+		}
+		if (metricsReporter != null) {
+			metricsReporter.shutdownNow();
+			metricsReporter = null;
+		}
+		logMetrics();
+		HttpMetrics.reset();
+		if (httpClient != null) {
+			LOG.info("Shutting down http client, pool stats: " + connManager.getTotalStats() + ", "
+					+ COMPRESSION_MONITOR.getSummary() + ", tls handshakes: "
+					+ TLSConnectionSocketFactory.getHandshakeCount());
+			try {
+				httpClient.close();
+			} catch (IOException ioexIgnore) {
+				LOG.warn("[Ignore] Failed to close the http client", ioexIgnore);
+			}
+			httpClient = null;
+			connManager = null;
+			leakDetector = null;
+		}
+		if (httpAsyncClient != null) {
+			LOG.info("Shutting down http async client");
+			try {
+				httpAsyncClient.close();
+			} catch (IOException ioexIgnore) {
+				LOG.warn("[Ignore] Failed to close the http async client", ioexIgnore);
+			}
+			httpAsyncClient = null;
+		}
+	}
+
+	/**
+	 * Initialize the pooled client.
+	 *
+	 * @return the closeable http client
+	 */
+	private static CloseableHttpClient initialize() {
+		final int maxTotal = Integer.getInteger(PROP_MAX_TOTAL, DEFAULT_MAX_TOTAL);
+		final int maxPerRoute = Integer.getInteger(PROP_MAX_PER_ROUTE, DEFAULT_MAX_PER_ROUTE);
+		final long keepAliveMillis = Long.getLong(PROP_KEEP_ALIVE_MILLIS, DEFAULT_KEEP_ALIVE_MILLIS);
+		final long idleEvictMillis = Long.getLong(PROP_IDLE_EVICT_MILLIS, DEFAULT_IDLE_EVICT_MILLIS);
+		LOG.info("Initializing pooled http client with maxTotal: " + maxTotal + ", maxPerRoute: " + maxPerRoute
+				+ ", keepAlive: " + keepAliveMillis + "ms, idleEviction: " + idleEvictMillis + "ms");
+
+		// https connections share one SSLContext, so pooled and new connections both benefit from session resumption
+		final Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory())
+				.register("https", new TLSConnectionSocketFactory())
+				.build();
+		connManager = new MeteredConnectionManager(socketFactoryRegistry);
+		connManager.setMaxTotal(maxTotal);
+		connManager.setDefaultMaxPerRoute(maxPerRoute);
+		connManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+
+		final RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(Integer.getInteger(PROP_CONNECT_TIMEOUT_MILLIS, DEFAULT_CONNECT_TIMEOUT_MILLIS))
+				.setSocketTimeout(Integer.getInteger(PROP_SOCKET_TIMEOUT_MILLIS, DEFAULT_SOCKET_TIMEOUT_MILLIS))
+				.setConnectionRequestTimeout(Integer.getInteger(PROP_LEASE_TIMEOUT_MILLIS, DEFAULT_LEASE_TIMEOUT_MILLIS))
+				.build();
+
+		HttpClientConnectionManager clientConnManager = connManager;
+		if (Boolean.getBoolean(PROP_LEAK_DETECTION)) {
+			leakDetector = new ConnectionLeakDetector(connManager);
+			clientConnManager = leakDetector;
+			startLeakReporter(leakDetector);
+		}
+
+		final HttpClientBuilder builder = HttpClientBuilder.create()
+				.setConnectionManager(clientConnManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(new KeepAliveStrategy(keepAliveMillis))
+				.evictExpiredConnections()
+				.evictIdleConnections(idleEvictMillis, TimeUnit.MILLISECONDS)
+				// Retries are made by RetryPolicy alone, so they are bounded by its attempts and budget
+				.disableAutomaticRetries()
+				// Runs before the entity is decompressed, so it sees what came over the wire
+				.addInterceptorFirst(COMPRESSION_MONITOR);
+		// When enabled (default) the client sends Accept-Encoding: gzip,deflate and wraps compressed
+		// entities in a streaming decoder, so callers read plain json without buffering the payload.
+		if (!Boolean.parseBoolean(System.getProperty(PROP_COMPRESSION, "true"))) {
+			LOG.info("Response compression disabled");
+			builder.disableContentCompression();
+		}
+		final CloseableHttpClient client = builder.build();
+
+		startMetricsReporter();
+		registerShutdownHook();
+		return client;
+	}
+
+	/**
+	 * Initialize the non-blocking client.<br>
+	 * A handful of I/O reactor threads multiplex all the connections, so the number of requests
+	 * in flight is bound by the pool limits rather than by the number of threads.
+	 *
+	 * @return the closeable http async client
+	 */
+	private static CloseableHttpAsyncClient initializeAsync() {
+		final int maxTotal = Integer.getInteger(PROP_MAX_TOTAL, DEFAULT_MAX_TOTAL);
+		final int maxPerRoute = Integer.getInteger(PROP_MAX_PER_ROUTE, DEFAULT_MAX_PER_ROUTE);
+		final int ioThreads = Integer.getInteger(PROP_IO_THREADS, Runtime.getRuntime().availableProcessors());
+		LOG.info("Initializing http async client with maxTotal: " + maxTotal + ", maxPerRoute: " + maxPerRoute
+				+ ", ioThreads: " + ioThreads);
+		final IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+				.setIoThreadCount(ioThreads)
+				.setConnectTimeout(Integer.getInteger(PROP_CONNECT_TIMEOUT_MILLIS, DEFAULT_CONNECT_TIMEOUT_MILLIS))
+				.setSoTimeout(Integer.getInteger(PROP_SOCKET_TIMEOUT_MILLIS, DEFAULT_SOCKET_TIMEOUT_MILLIS))
+				.build();
+		final Registry<SchemeIOSessionStrategy> sessionStrategyRegistry = RegistryBuilder.<SchemeIOSessionStrategy> create()
+				.register("http", NoopIOSessionStrategy.INSTANCE)
+				.register("https", new SSLIOSessionStrategy(TLSConnectionSocketFactory.getSSLContext(),
+						TLSConnectionSocketFactory.getProtocols(), null, TLSConnectionSocketFactory.getHostnameVerifier()))
+				.build();
+		final PoolingNHttpClientConnectionManager asyncConnManager;
+		try {
+			asyncConnManager = new PoolingNHttpClientConnectionManager(
+					new DefaultConnectingIOReactor(ioReactorConfig, new DaemonThreadFactory("http-async-io")),
+					sessionStrategyRegistry);
+		} catch (IOReactorException ioex) {
+			throw new IllegalStateException("Failed to start the I/O reactor for http async client", ioex);
+		}
+		asyncConnManager.setMaxTotal(maxTotal);
+		asyncConnManager.setDefaultMaxPerRoute(maxPerRoute);
+
+		final RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(Integer.getInteger(PROP_CONNECT_TIMEOUT_MILLIS, DEFAULT_CONNECT_TIMEOUT_MILLIS))
+				.setSocketTimeout(Integer.getInteger(PROP_SOCKET_TIMEOUT_MILLIS, DEFAULT_SOCKET_TIMEOUT_MILLIS))
+				.setConnectionRequestTimeout(Integer.getInteger(PROP_LEASE_TIMEOUT_MILLIS, DEFAULT_LEASE_TIMEOUT_MILLIS))
+				.build();
+
+		final CloseableHttpAsyncClient client = HttpAsyncClientBuilder.create()
+				.setConnectionManager(asyncConnManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(new KeepAliveStrategy(Long.getLong(PROP_KEEP_ALIVE_MILLIS, DEFAULT_KEEP_ALIVE_MILLIS)))
+				.setThreadFactory(new DaemonThreadFactory("http-async-dispatcher"))
+				.build();
+		client.start();
+		startMetricsReporter();
+		registerShutdownHook();
+		return client;
+	}
+
+	/**
+	 * Start leak reporter which periodically logs the connections held longer than the threshold.
+	 *
+	 * @param detector the detector
+	 */
+	private static void startLeakReporter(final ConnectionLeakDetector detector) {
+		final long thresholdMillis = Long.getLong(PROP_LEAK_THRESHOLD_MILLIS, DEFAULT_LEAK_THRESHOLD_MILLIS);
+		LOG.info("Connection leak detection enabled, leases older than " + thresholdMillis + "ms will be reported");
+		leakReporter = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("http-leak-reporter"));
+		final long period = Math.max(thresholdMillis / 2, 1000);
+		leakReporter.scheduleAtFixedRate(() -> detector.reportLeaks(thresholdMillis), period, period,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Start metrics reporter which periodically logs the per endpoint metrics, unless already
+	 * started or disabled by setting the interval to 0.
+	 */
+	private static void startMetricsReporter() {
+		final long intervalSeconds = Long.getLong(PROP_METRICS_REPORT_INTERVAL_SECONDS,
+				DEFAULT_METRICS_REPORT_INTERVAL_SECONDS);
+		if (metricsReporter != null || intervalSeconds <= 0) {
+			return;
+		}
+		metricsReporter = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("http-metrics-reporter"));
+		metricsReporter.scheduleAtFixedRate(HttpClientManager::logMetrics, intervalSeconds, intervalSeconds,
+				TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Log the per endpoint metrics, if any request was sent.
+	 */
+	private static void logMetrics() {
+		final String report = HttpMetrics.report();
+		if (!report.isEmpty()) {
+			LOG.info("Http metrics (times in ms):" + report);
+		}
+	}
+
+	/**
+	 * Register shutdown hook once, so that pooled connections are closed when the script exits.
+	 */
+	private static void registerShutdownHook() {
+		if (!shutdownHookRegistered) {
+			Runtime.getRuntime().addShutdownHook(new Thread(HttpClientManager::shutdown, "http-client-shutdown"));
+			shutdownHookRegistered = true;
+		}
+	}
+
+	/**
+	 * The Class DaemonThreadFactory.<br>
+	 * I/O reactor threads must not keep the JVM alive once the script's main thread is done.
+	 */
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		/** The name prefix. */
+		private final String namePrefix;
+
+		/** The counter. */
+		private final AtomicInteger counter = new AtomicInteger();
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param namePrefix the name prefix
+		 */
+		DaemonThreadFactory(final String namePrefix) {
+			this.namePrefix = namePrefix;
+		}
+
+		/**
+		 * New thread.
+		 *
+		 * @param runnable the runnable
+		 * @return the thread
+		 */
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, namePrefix + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * The Class KeepAliveStrategy.<br>
+	 * Honors the Keep-Alive header sent by server, falls back to the configured duration otherwise.
+	 * Without this, connections would be kept alive indefinitely and fail after server closes them.
+	 */
+	private static class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+		/** The default keep alive millis. */
+		private final long defaultKeepAliveMillis;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param defaultKeepAliveMillis the default keep alive millis
+		 */
+		KeepAliveStrategy(final long defaultKeepAliveMillis) {
+			this.defaultKeepAliveMillis = defaultKeepAliveMillis;
+		}
+
+		/**
+		 * Gets the keep alive duration.
+		 *
+		 * @param response the response
+		 * @param context the context
+		 * @return the keep alive duration
+		 */
+		@Override
+		public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+			final long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return serverKeepAlive > 0 ? serverKeepAlive : defaultKeepAliveMillis;
+		}
+	}
+}
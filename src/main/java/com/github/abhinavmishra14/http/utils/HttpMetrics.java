@@ -0,0 +1,344 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The Class HttpMetrics.<br>
+ * Per endpoint request metrics. Urls are reduced to an endpoint template (node ids, user names,
+ * site names etc. replaced by <code>{id}</code>, query string dropped), and for each template
+ * the status classes, bytes sent and received, connection lease time, connect time (dns, tcp and
+ * tls), time to first byte and total latency are recorded into {@link LatencyHistogram}s.<br>
+ * Report is logged periodically and at shutdown by {@link HttpClientManager}.
+ */
+public final class HttpMetrics {
+
+	/** The Constant UUID. */
+	private static final Pattern UUID = Pattern
+			.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}(;[0-9.]+)?");
+
+	/** The Constant NUMBER. */
+	private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+	/** The Constant ID_PARENTS. Path segments which are followed by a user supplied name. */
+	private static final String[] ID_PARENTS = { "people", "sites", "SpacesStore", "content", "groups" };
+
+	/** The Constant ID. */
+	private static final String ID = "{id}";
+
+	/** The Constant ENDPOINTS. */
+	private static final Map<String, Endpoint> ENDPOINTS = new ConcurrentHashMap<String, Endpoint>();
+
+	/** The Constant TIMINGS. Lease and connect time of the request running on the current thread. */
+	private static final ThreadLocal<long[]> TIMINGS = ThreadLocal.withInitial(() -> new long[2]);
+
+	/** The Constant LEASE. */
+	private static final int LEASE = 0;
+
+	/** The Constant CONNECT. */
+	private static final int CONNECT = 1;
+
+	/**
+	 * The Constructor.
+	 */
+	private HttpMetrics() {
+		super();
+	}
+
+	/**
+	 * Gets the metrics of the endpoint serving the given request.
+	 *
+	 * @param method the method
+	 * @param path the url path
+	 * @return the endpoint
+	 */
+	public static Endpoint getEndpoint(final String method, final String path) {
+		return ENDPOINTS.computeIfAbsent(method + " " + getEndpointTemplate(path), Endpoint::new);
+	}
+
+	/**
+	 * Gets the endpoint template of the url path.<br>
+	 * e.g. /alfresco/service/api/people/admin/sites becomes /alfresco/service/api/people/{id}/sites
+	 *
+	 * @param path the url path
+	 * @return the endpoint template
+	 */
+	public static String getEndpointTemplate(final String path) {
+		if (StringUtils.isBlank(path)) {
+			return "/";
+		}
+		final String[] segments = StringUtils.substringBefore(path, "?").split("/", -1);
+		for (int index = 0; index < segments.length; index++) {
+			final String segment = segments[index];
+			if (UUID.matcher(segment).matches() || NUMBER.matcher(segment).matches()) {
+				segments[index] = ID;
+			} else if (index > 0 && StringUtils.isNotEmpty(segment) && isIdParent(segments[index - 1])) {
+				segments[index] = ID;
+			}
+		}
+		return StringUtils.join(segments, '/');
+	}
+
+	/**
+	 * Clear the lease and connect time of the current thread, called before sending a request.
+	 */
+	static void beginRequest() {
+		final long[] timings = TIMINGS.get();
+		timings[LEASE] = 0;
+		timings[CONNECT] = 0;
+	}
+
+	/**
+	 * Adds the lease time of the request running on the current thread.
+	 *
+	 * @param nanos the nanos
+	 */
+	static void addLeaseTime(final long nanos) {
+		TIMINGS.get()[LEASE] += nanos;
+	}
+
+	/**
+	 * Adds the connect time of the request running on the current thread.
+	 *
+	 * @param nanos the nanos
+	 */
+	static void addConnectTime(final long nanos) {
+		TIMINGS.get()[CONNECT] += nanos;
+	}
+
+	/**
+	 * Gets the lease time of the request running on the current thread.
+	 *
+	 * @return the lease nanos
+	 */
+	static long getLeaseTime() {
+		return TIMINGS.get()[LEASE];
+	}
+
+	/**
+	 * Gets the connect time of the request running on the current thread.
+	 *
+	 * @return the connect nanos
+	 */
+	static long getConnectTime() {
+		return TIMINGS.get()[CONNECT];
+	}
+
+	/**
+	 * Report of all the endpoints, times are in milliseconds.
+	 *
+	 * @return the report, empty if no request was sent yet
+	 */
+	public static String report() {
+		final StringBuilder report = new StringBuilder();
+		for (final Endpoint eachEndpoint : new TreeMap<String, Endpoint>(ENDPOINTS).values()) {
+			report.append(System.lineSeparator()).append(eachEndpoint);
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Reset all the recorded metrics.
+	 */
+	public static void reset() {
+		ENDPOINTS.clear();
+	}
+
+	/**
+	 * Checks if the segment is followed by a name rather than a fixed path.
+	 *
+	 * @param segment the segment
+	 * @return true, if is id parent
+	 */
+	private static boolean isIdParent(final String segment) {
+		for (final String eachParent : ID_PARENTS) {
+			if (eachParent.equals(segment)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The Class Endpoint.
+	 */
+	public static class Endpoint {
+
+		/** The name. */
+		private final String name;
+
+		/** The status 2xx. */
+		private final LongAdder status2xx = new LongAdder();
+
+		/** The status 3xx. */
+		private final LongAdder status3xx = new LongAdder();
+
+		/** The status 4xx. */
+		private final LongAdder status4xx = new LongAdder();
+
+		/** The status 5xx. */
+		private final LongAdder status5xx = new LongAdder();
+
+		/** The requests failed without a response. */
+		private final LongAdder errors = new LongAdder();
+
+		/** The bytes sent. */
+		private final LongAdder bytesOut = new LongAdder();
+
+		/** The bytes received, after decompression. */
+		private final LongAdder bytesIn = new LongAdder();
+
+		/** The lease time in micros. */
+		private final LatencyHistogram leaseTime = new LatencyHistogram();
+
+		/** The connect time in micros, recorded only for requests which opened a connection. */
+		private final LatencyHistogram connectTime = new LatencyHistogram();
+
+		/** The time to first byte in micros. */
+		private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+
+		/** The total latency in micros, till the response body is read. */
+		private final LatencyHistogram totalTime = new LatencyHistogram();
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param name the name
+		 */
+		Endpoint(final String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Record the response headers being received.
+		 *
+		 * @param statusCode the status code
+		 * @param requestBytes the request bytes, negative if unknown
+		 * @param leaseNanos the lease nanos, negative if unknown
+		 * @param connectNanos the connect nanos, 0 if a pooled connection was reused
+		 * @param firstByteNanos the time to first byte in nanos
+		 */
+		public void recordResponse(final int statusCode, final long requestBytes, final long leaseNanos,
+				final long connectNanos, final long firstByteNanos) {
+			if (statusCode >= 500) {
+				status5xx.increment();
+			} else if (statusCode >= 400) {
+				status4xx.increment();
+			} else if (statusCode >= 300) {
+				status3xx.increment();
+			} else {
+				status2xx.increment();
+			}
+			if (requestBytes > 0) {
+				bytesOut.add(requestBytes);
+			}
+			if (leaseNanos >= 0) {
+				leaseTime.record(TimeUnit.NANOSECONDS.toMicros(leaseNanos));
+			}
+			if (connectNanos > 0) {
+				connectTime.record(TimeUnit.NANOSECONDS.toMicros(connectNanos));
+			}
+			timeToFirstByte.record(TimeUnit.NANOSECONDS.toMicros(firstByteNanos));
+		}
+
+		/**
+		 * Record the response body being read completely.
+		 *
+		 * @param responseBytes the response bytes
+		 * @param totalNanos the total nanos since the request was sent
+		 */
+		public void recordCompletion(final long responseBytes, final long totalNanos) {
+			bytesIn.add(responseBytes);
+			totalTime.record(TimeUnit.NANOSECONDS.toMicros(totalNanos));
+		}
+
+		/**
+		 * Record a request which failed without response.
+		 *
+		 * @param totalNanos the total nanos
+		 */
+		public void recordError(final long totalNanos) {
+			errors.increment();
+			totalTime.record(TimeUnit.NANOSECONDS.toMicros(totalNanos));
+		}
+
+		/**
+		 * Gets the total latency histogram.
+		 *
+		 * @return the total time
+		 */
+		public LatencyHistogram getTotalTime() {
+			return totalTime;
+		}
+
+		/**
+		 * Gets the time to first byte histogram.
+		 *
+		 * @return the time to first byte
+		 */
+		public LatencyHistogram getTimeToFirstByte() {
+			return timeToFirstByte;
+		}
+
+		/**
+		 * To string.
+		 *
+		 * @return the string
+		 */
+		@Override
+		public String toString() {
+			return name + " | 2xx: " + status2xx.sum() + ", 3xx: " + status3xx.sum() + ", 4xx: " + status4xx.sum()
+					+ ", 5xx: " + status5xx.sum() + ", errors: " + errors.sum() + " | out: " + bytesOut.sum()
+					+ "B, in: " + bytesIn.sum() + "B | lease " + format(leaseTime) + " | connect "
+					+ format(connectTime) + " | ttfb " + format(timeToFirstByte) + " | total " + format(totalTime);
+		}
+
+		/**
+		 * Format the histogram percentiles in millis.
+		 *
+		 * @param histogram the histogram
+		 * @return the string
+		 */
+		private static String format(final LatencyHistogram histogram) {
+			if (histogram.getCount() == 0) {
+				return "-";
+			}
+			return "p50: " + toMillis(histogram.getValueAtPercentile(50)) + ", p95: "
+					+ toMillis(histogram.getValueAtPercentile(95)) + ", p99: "
+					+ toMillis(histogram.getValueAtPercentile(99)) + ", max: " + toMillis(histogram.getMax());
+		}
+
+		/**
+		 * Micros to millis with one decimal.
+		 *
+		 * @param micros the micros
+		 * @return the string
+		 */
+		private static String toMillis(final long micros) {
+			return String.format("%.1f", micros / 1000.0);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The Class LatencyHistogram.<br>
+ * Lock free histogram with log-linear buckets in the spirit of HdrHistogram: every power of two
+ * range is split in 16 linear sub-buckets, so any recorded value is reported within ~6% of its
+ * actual value, from microseconds up to hours, using a fixed array of counters.<br>
+ * Recording is a single atomic increment, which keeps it cheap on the request path. Percentiles
+ * are computed from a racy but consistent enough snapshot of the counters.
+ */
+public class LatencyHistogram {
+
+	/** The Constant SUB_BUCKET_BITS. */
+	private static final int SUB_BUCKET_BITS = 4;
+
+	/** The Constant SUB_BUCKETS. */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/** The Constant BUCKETS. Enough to hold any positive long. */
+	private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	/** The counts. */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/** The total count. */
+	private final AtomicLong totalCount = new AtomicLong();
+
+	/** The sum. */
+	private final AtomicLong sum = new AtomicLong();
+
+	/** The max. */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a value, negative values are recorded as zero.
+	 *
+	 * @param value the value
+	 */
+	public void record(final long value) {
+		final long positive = Math.max(0, value);
+		counts.incrementAndGet(indexOf(positive));
+		totalCount.incrementAndGet();
+		sum.addAndGet(positive);
+		long currentMax = max.get();
+		while (positive > currentMax && !max.compareAndSet(currentMax, positive)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Gets the count.
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * Gets the mean.
+	 *
+	 * @return the mean
+	 */
+	public long getMean() {
+		final long count = totalCount.get();
+		return count == 0 ? 0 : sum.get() / count;
+	}
+
+	/**
+	 * Gets the max.
+	 *
+	 * @return the max
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Gets the value at the given percentile.
+	 *
+	 * @param percentile the percentile, e.g. 99.0
+	 * @return the value, upper bound of the bucket holding the percentile and never above max
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		final long[] snapshot = new long[BUCKETS];
+		long count = 0;
+		for (int index = 0; index < BUCKETS; index++) {
+			snapshot[index] = counts.get(index);
+			count += snapshot[index];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100.0) / 100.0));
+		long seen = 0;
+		for (int index = 0; index < BUCKETS; index++) {
+			seen += snapshot[index];
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(index), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Gets the bucket index of the value.
+	 *
+	 * @param value the value
+	 * @return the index
+	 */
+	static int indexOf(final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	/**
+	 * Gets the highest value which falls in the bucket.
+	 *
+	 * @param index the index
+	 * @return the upper bound
+	 */
+	static long upperBoundOf(final int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		final int shift = index / SUB_BUCKETS - 1;
+		final long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		final long upperBound = lowerBound + (1L << shift) - 1;
+		return upperBound < 0 ? Long.MAX_VALUE : upperBound;
+	}
+}
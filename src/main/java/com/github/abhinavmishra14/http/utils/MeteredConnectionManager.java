@@ -0,0 +1,117 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.utils;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * The Class MeteredConnectionManager.<br>
+ * Pooling connection manager which records how long the calling thread waited for a connection
+ * and how long it took to open a new one (dns lookup, tcp connect and tls handshake), so that
+ * {@link HttpMetrics} can tell pool starvation and connection setup apart from server time.
+ */
+class MeteredConnectionManager extends PoolingHttpClientConnectionManager {
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param socketFactoryRegistry the socket factory registry
+	 */
+	MeteredConnectionManager(final Registry<ConnectionSocketFactory> socketFactoryRegistry) {
+		super(socketFactoryRegistry);
+	}
+
+	/**
+	 * Request connection.
+	 *
+	 * @param route the route
+	 * @param state the state
+	 * @return the connection request
+	 */
+	@Override
+	public ConnectionRequest requestConnection(final HttpRoute route, final Object state) {
+		final ConnectionRequest request = super.requestConnection(route, state);
+		return new ConnectionRequest() {
+			@Override
+			public boolean cancel() {
+				return request.cancel();
+			}
+
+			@Override
+			public HttpClientConnection get(final long timeout, final TimeUnit tunit)
+					throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+				final long started = System.nanoTime();
+				try {
+					return request.get(timeout, tunit);
+				} finally {
+					HttpMetrics.addLeaseTime(System.nanoTime() - started);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Connect.
+	 *
+	 * @param managedConn the managed conn
+	 * @param route the route
+	 * @param connectTimeout the connect timeout
+	 * @param context the context
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void connect(final HttpClientConnection managedConn, final HttpRoute route, final int connectTimeout,
+			final HttpContext context) throws IOException {
+		final long started = System.nanoTime();
+		try {
+			super.connect(managedConn, route, connectTimeout, context);
+		} finally {
+			HttpMetrics.addConnectTime(System.nanoTime() - started);
+		}
+	}
+
+	/**
+	 * Upgrade, i.e. tls handshake over a proxy tunnel.
+	 *
+	 * @param managedConn the managed conn
+	 * @param route the route
+	 * @param context the context
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void upgrade(final HttpClientConnection managedConn, final HttpRoute route, final HttpContext context)
+			throws IOException {
+		final long started = System.nanoTime();
+		try {
+			super.upgrade(managedConn, route, context);
+		} finally {
+			HttpMetrics.addConnectTime(System.nanoTime() - started);
+		}
+	}
+}
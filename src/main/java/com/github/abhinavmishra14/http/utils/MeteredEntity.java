@@ -0,0 +1,159 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * The Class MeteredEntity.<br>
+ * Response entity wrapper which counts the bytes read and records the total latency of the
+ * request once the content is read till the end or closed, whichever happens first.
+ */
+class MeteredEntity extends HttpEntityWrapper {
+
+	/** The Constant BUFFER_SIZE. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** The endpoint. */
+	private final HttpMetrics.Endpoint endpoint;
+
+	/** The start nanos. */
+	private final long startNanos;
+
+	/** The completed. */
+	private final AtomicBoolean completed = new AtomicBoolean();
+
+	/** The content, shared so that repeated calls don't lose the count. */
+	private InputStream content;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param wrappedEntity the wrapped entity
+	 * @param endpoint the endpoint
+	 * @param startNanos the start nanos
+	 */
+	MeteredEntity(final HttpEntity wrappedEntity, final HttpMetrics.Endpoint endpoint, final long startNanos) {
+		super(wrappedEntity);
+		this.endpoint = endpoint;
+		this.startNanos = startNanos;
+	}
+
+	/**
+	 * Gets the content.
+	 *
+	 * @return the content
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public synchronized InputStream getContent() throws IOException {
+		if (content == null || !isStreaming() && isRepeatable()) {
+			content = new CountingInputStream(super.getContent());
+		}
+		return content;
+	}
+
+	/**
+	 * Write to.
+	 *
+	 * @param outStream the out stream
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void writeTo(final OutputStream outStream) throws IOException {
+		try (final InputStream inStream = getContent()) {
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = inStream.read(buffer)) != -1) {
+				outStream.write(buffer, 0, read);
+			}
+		}
+	}
+
+	/**
+	 * Record completion once.
+	 *
+	 * @param bytes the bytes read
+	 */
+	private void complete(final long bytes) {
+		if (completed.compareAndSet(false, true)) {
+			endpoint.recordCompletion(bytes, System.nanoTime() - startNanos);
+		}
+	}
+
+	/**
+	 * The Class CountingInputStream.
+	 */
+	private class CountingInputStream extends FilterInputStream {
+
+		/** The bytes read. */
+		private long bytesRead;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param inStream the in stream
+		 */
+		CountingInputStream(final InputStream inStream) {
+			super(inStream);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int value = super.read();
+			if (value == -1) {
+				complete(bytesRead);
+			} else {
+				bytesRead++;
+			}
+			return value;
+		}
+
+		@Override
+		public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+			final int read = super.read(buffer, offset, length);
+			if (read == -1) {
+				complete(bytesRead);
+			} else {
+				bytesRead += read;
+			}
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				// The connection drains the rest of the body on close anyway, count it on the way
+				final byte[] skipBuffer = new byte[BUFFER_SIZE];
+				while (!completed.get() && read(skipBuffer, 0, BUFFER_SIZE) != -1) {
+					// drain
+				}
+				super.close();
+			} finally {
+				complete(bytesRead);
+			}
+		}
+	}
+}
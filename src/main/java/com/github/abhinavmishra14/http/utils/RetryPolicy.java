@@ -0,0 +1,211 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.utils;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.HttpHostConnectException;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * The Class RetryPolicy.<br>
+ * Decides whether a failed request is retried and how long to wait before the next attempt.
+ * Only idempotent requests (GET, HEAD, PUT, DELETE, OPTIONS, or requests explicitly marked via
+ * {@link #ATTR_IDEMPOTENT}) are retried, on connect failures and on 429/502/503/504 responses.<br>
+ * Wait time grows exponentially with full jitter and is capped, a Retry-After header sent by
+ * the server takes precedence. All retries of the running job draw from a shared budget, so a
+ * repository which is down doesn't keep the script retrying forever.
+ */
+public final class RetryPolicy {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(RetryPolicy.class);
+
+	/** The Constant PROP_MAX_ATTEMPTS. */
+	public static final String PROP_MAX_ATTEMPTS = "alfscript.http.retry.maxAttempts";
+
+	/** The Constant PROP_BASE_DELAY_MILLIS. */
+	public static final String PROP_BASE_DELAY_MILLIS = "alfscript.http.retry.baseDelayMillis";
+
+	/** The Constant PROP_MAX_DELAY_MILLIS. */
+	public static final String PROP_MAX_DELAY_MILLIS = "alfscript.http.retry.maxDelayMillis";
+
+	/** The Constant PROP_BUDGET. */
+	public static final String PROP_BUDGET = "alfscript.http.retry.budget";
+
+	/** The Constant ATTR_IDEMPOTENT. Set it to {@link Boolean#TRUE} on the context to retry a read only POST. */
+	public static final String ATTR_IDEMPOTENT = "alfscript.idempotent";
+
+	/** The Constant HTTP_CODE_429. */
+	public static final int HTTP_CODE_429 = 429;
+
+	/** The Constant HTTP_CODE_502. */
+	public static final int HTTP_CODE_502 = 502;
+
+	/** The Constant HTTP_CODE_503. */
+	public static final int HTTP_CODE_503 = 503;
+
+	/** The Constant HTTP_CODE_504. */
+	public static final int HTTP_CODE_504 = 504;
+
+	/** The Constant MAX_ATTEMPTS. */
+	private static final int MAX_ATTEMPTS = Integer.getInteger(PROP_MAX_ATTEMPTS, 5);
+
+	/** The Constant BASE_DELAY_MILLIS. */
+	private static final long BASE_DELAY_MILLIS = Long.getLong(PROP_BASE_DELAY_MILLIS, 500L);
+
+	/** The Constant MAX_DELAY_MILLIS. */
+	private static final long MAX_DELAY_MILLIS = Long.getLong(PROP_MAX_DELAY_MILLIS, 30000L);
+
+	/** The Constant BUDGET. */
+	private static final AtomicInteger BUDGET = new AtomicInteger(Integer.getInteger(PROP_BUDGET, 1000));
+
+	/** The Constant BUDGET_EXHAUSTED. */
+	private static final AtomicBoolean BUDGET_EXHAUSTED = new AtomicBoolean();
+
+	/**
+	 * The Constructor.
+	 */
+	private RetryPolicy() {
+		super();
+	}
+
+	/**
+	 * Checks if the request can be sent again without side effects.
+	 *
+	 * @param request the request
+	 * @param context the context, can be null
+	 * @return true, if is idempotent
+	 */
+	public static boolean isIdempotent(final HttpRequest request, final HttpContext context) {
+		if (request instanceof HttpEntityEnclosingRequest) {
+			final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+			if (entity != null && !entity.isRepeatable()) {
+				return false;
+			}
+		}
+		if (context != null && Boolean.TRUE.equals(context.getAttribute(ATTR_IDEMPOTENT))) {
+			return true;
+		}
+		final String method = request.getRequestLine().getMethod();
+		return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method)
+				|| "DELETE".equals(method) || "OPTIONS".equals(method);
+	}
+
+	/**
+	 * Checks if the response status is a transient failure.
+	 *
+	 * @param statusCode the status code
+	 * @return true, if is retryable status
+	 */
+	public static boolean isRetryableStatus(final int statusCode) {
+		return statusCode == HTTP_CODE_429 || statusCode == HTTP_CODE_502 || statusCode == HTTP_CODE_503
+				|| statusCode == HTTP_CODE_504;
+	}
+
+	/**
+	 * Checks if the failure happened before the server could have processed the request. The non-blocking
+	 * client reports a connection closed by the server without a response as a {@link ConnectionClosedException}.
+	 *
+	 * @param excp the excp
+	 * @return true, if is retryable exception
+	 */
+	public static boolean isRetryableException(final IOException excp) {
+		return excp instanceof ConnectTimeoutException || excp instanceof HttpHostConnectException
+				|| excp instanceof NoHttpResponseException || excp instanceof ConnectionClosedException;
+	}
+
+	/**
+	 * Checks whether another attempt should be made and takes one retry from the budget if so.
+	 *
+	 * @param attempt the number of attempts made so far
+	 * @return true, if retry is allowed
+	 */
+	public static boolean acquireRetry(final int attempt) {
+		if (attempt >= MAX_ATTEMPTS) {
+			return false;
+		}
+		if (BUDGET.getAndDecrement() <= 0) {
+			if (BUDGET_EXHAUSTED.compareAndSet(false, true)) {
+				LOG.warn("Retry budget exhausted, failures will no longer be retried. Increase it via -D"
+						+ PROP_BUDGET + " if needed.");
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the time to wait before the next attempt.
+	 *
+	 * @param attempt the number of attempts made so far, starting from 1
+	 * @param response the failed response, can be null
+	 * @return the backoff millis
+	 */
+	public static long getBackoffMillis(final int attempt, final HttpResponse response) {
+		final long retryAfter = getRetryAfterMillis(response);
+		if (retryAfter >= 0) {
+			return Math.min(retryAfter, MAX_DELAY_MILLIS);
+		}
+		final long ceiling = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempt - 1, 20));
+		return ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+
+	/**
+	 * Gets the remaining retry budget.
+	 *
+	 * @return the remaining budget
+	 */
+	public static int getRemainingBudget() {
+		return Math.max(0, BUDGET.get());
+	}
+
+	/**
+	 * Gets the Retry-After header value in millis, either delta seconds or an http date.
+	 *
+	 * @param response the response
+	 * @return the retry after millis, -1 if header is absent or malformed
+	 */
+	private static long getRetryAfterMillis(final HttpResponse response) {
+		if (response == null || !response.containsHeader(HttpHeaders.RETRY_AFTER)) {
+			return -1;
+		}
+		final String retryAfter = StringUtils.trim(response.getFirstHeader(HttpHeaders.RETRY_AFTER).getValue());
+		if (StringUtils.isNumeric(retryAfter) && StringUtils.isNotEmpty(retryAfter)) {
+			return Long.parseLong(retryAfter) * 1000L;
+		}
+		final Date retryAt = DateUtils.parseDate(retryAfter);
+		return retryAt == null ? -1 : Math.max(0, retryAt.getTime() - System.currentTimeMillis());
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra.
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.http.utils;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.conn.ssl.DefaultHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.util.PublicSuffixMatcherLoader;
+import org.apache.http.protocol.HttpContext;
+
+import com.github.abhinavmishra14.exception.AlfScriptException;
+
+/**
+ * The Class TLSConnectionSocketFactory.<br>
+ * TLS socket factory used by the pooled clients. A single {@link SSLContext} is created for the
+ * life of the script, so its client session cache lets new connections resume earlier sessions
+ * instead of doing a full handshake. Only TLSv1.3 and TLSv1.2 are enabled by default and server
+ * host names are verified.<br>
+ * Handshakes are counted so that the effect of pooling and resumption can be measured.
+ */
+public class TLSConnectionSocketFactory extends SSLConnectionSocketFactory {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(TLSConnectionSocketFactory.class);
+
+	/** The Constant PROP_PROTOCOLS. */
+	public static final String PROP_PROTOCOLS = "alfscript.http.tls.protocols";
+
+	/** The Constant PROP_SESSION_CACHE_SIZE. */
+	public static final String PROP_SESSION_CACHE_SIZE = "alfscript.http.tls.sessionCacheSize";
+
+	/** The Constant PROP_SESSION_TIMEOUT_SECONDS. */
+	public static final String PROP_SESSION_TIMEOUT_SECONDS = "alfscript.http.tls.sessionTimeoutSeconds";
+
+	/** The Constant DEFAULT_PROTOCOLS. */
+	private static final String DEFAULT_PROTOCOLS = "TLSv1.3,TLSv1.2";
+
+	/** The Constant SSL_CONTEXT. */
+	private static final SSLContext SSL_CONTEXT = createSSLContext();
+
+	/** The Constant PROTOCOLS. */
+	private static final String[] PROTOCOLS = resolveProtocols(SSL_CONTEXT);
+
+	/** The Constant HOSTNAME_VERIFIER. */
+	private static final HostnameVerifier HOSTNAME_VERIFIER = new DefaultHostnameVerifier(
+			PublicSuffixMatcherLoader.getDefault());
+
+	/** The Constant HANDSHAKES. */
+	private static final AtomicLong HANDSHAKES = new AtomicLong();
+
+	/** The Constant RESUMED_HANDSHAKES. */
+	private static final AtomicLong RESUMED_HANDSHAKES = new AtomicLong();
+
+	/**
+	 * The Constructor.
+	 */
+	public TLSConnectionSocketFactory() {
+		super(SSL_CONTEXT, PROTOCOLS, null, HOSTNAME_VERIFIER);
+	}
+
+	/**
+	 * Gets the shared SSL context.
+	 *
+	 * @return the SSL context
+	 */
+	public static SSLContext getSSLContext() {
+		return SSL_CONTEXT;
+	}
+
+	/**
+	 * Gets the enabled protocols.
+	 *
+	 * @return the protocols
+	 */
+	public static String[] getProtocols() {
+		return PROTOCOLS.clone();
+	}
+
+	/**
+	 * Gets the hostname verifier.
+	 *
+	 * @return the hostname verifier
+	 */
+	public static HostnameVerifier getHostnameVerifier() {
+		return HOSTNAME_VERIFIER;
+	}
+
+	/**
+	 * Gets the number of TLS handshakes completed.
+	 *
+	 * @return the handshake count
+	 */
+	public static long getHandshakeCount() {
+		return HANDSHAKES.get();
+	}
+
+	/**
+	 * Gets the number of handshakes which resumed a session created earlier, i.e. before the connect.
+	 * TLSv1.3 resumes sessions as new sessions, such resumptions are counted as full handshakes.
+	 *
+	 * @return the resumed handshake count
+	 */
+	public static long getResumedHandshakeCount() {
+		return RESUMED_HANDSHAKES.get();
+	}
+
+	/**
+	 * Creates the layered socket and records the completed handshake.
+	 *
+	 * @param socket the socket
+	 * @param target the target
+	 * @param port the port
+	 * @param context the context
+	 * @return the socket
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public Socket createLayeredSocket(final Socket socket, final String target, final int port,
+			final HttpContext context) throws IOException {
+		final long connectedAt = System.currentTimeMillis();
+		final Socket layered = super.createLayeredSocket(socket, target, port, context);
+		if (layered instanceof SSLSocket) {
+			recordHandshake(((SSLSocket) layered).getSession(), connectedAt);
+		}
+		return layered;
+	}
+
+	/**
+	 * Record handshake. A session created before the connect was resumed, so nothing has to be kept
+	 * per session to tell it from a full handshake.
+	 *
+	 * @param session the session
+	 * @param connectedAt the connect time in epoch millis
+	 */
+	private static void recordHandshake(final SSLSession session, final long connectedAt) {
+		HANDSHAKES.incrementAndGet();
+		if (session != null && session.isValid() && session.getCreationTime() < connectedAt) {
+			RESUMED_HANDSHAKES.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Creates the SSL context with a bounded client session cache.
+	 *
+	 * @return the SSL context
+	 */
+	private static SSLContext createSSLContext() {
+		try {
+			final SSLContext sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(null, null, null);
+			sslContext.getClientSessionContext().setSessionCacheSize(Integer.getInteger(PROP_SESSION_CACHE_SIZE, 1000));
+			sslContext.getClientSessionContext().setSessionTimeout(Integer.getInteger(PROP_SESSION_TIMEOUT_SECONDS, 86400));
+			return sslContext;
+		} catch (NoSuchAlgorithmException | KeyManagementException excp) {
+			throw new AlfScriptException("Failed to initialize the TLS context", excp);
+		}
+	}
+
+	/**
+	 * Resolve the configured protocols which are supported by the JVM.
+	 *
+	 * @param sslContext the ssl context
+	 * @return the enabled protocols
+	 */
+	private static String[] resolveProtocols(final SSLContext sslContext) {
+		final List<String> supported = Arrays.asList(sslContext.getSupportedSSLParameters().getProtocols());
+		final List<String> enabled = new ArrayList<String>();
+		for (final String eachProtocol : StringUtils.split(System.getProperty(PROP_PROTOCOLS, DEFAULT_PROTOCOLS), ',')) {
+			final String protocol = eachProtocol.trim();
+			if (supported.contains(protocol)) {
+				enabled.add(protocol);
+			} else {
+				LOG.warn("TLS protocol " + protocol + " is not supported by this JVM, ignoring it");
+			}
+		}
+		if (enabled.isEmpty()) {
+			throw new AlfScriptException("None of the TLS protocols " + System.getProperty(PROP_PROTOCOLS, DEFAULT_PROTOCOLS)
+					+ " are supported, supported protocols: " + supported);
+		}
+		LOG.info("Enabled TLS protocols: " + enabled);
+		return enabled.toArray(new String[enabled.size()]);
+	}
+}
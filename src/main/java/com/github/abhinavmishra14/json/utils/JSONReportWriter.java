@@ -0,0 +1,265 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2023. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.json.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+
+/**
+ * The Class JSONReportWriter.<br>
+ * Writes the records of a report to a file as they are produced, either as one json array or as
+ * newline delimited json (one record per line), gzip compressed when the file name ends with
+ * <code>.gz</code>. Only the record being written is held in memory, so the memory stays the same
+ * whatever the size of the report. The report is written as <code>&lt;file&gt;.part</code> and
+ * renamed once complete, a report not completed is deleted on close.<br>
+ * Records can be written from several threads, they are written one at a time.
+ */
+public final class JSONReportWriter implements JSONVisitor<JSONObject>, Closeable {
+
+	/** The Constant LOG. */
+	private final static Log LOG = LogFactory.getLog(JSONReportWriter.class);
+
+	/** The Constant GZIP_EXTN. */
+	public static final String GZIP_EXTN = ".gz";
+
+	/** The Constant NDJSON_EXTN. */
+	public static final String NDJSON_EXTN = ".ndjson";
+
+	/** The Constant JSONL_EXTN. */
+	private static final String JSONL_EXTN = ".jsonl";
+
+	/** The Constant WRITE_BUFFER_SIZE. */
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	/** The Constant LINE_SEPARATOR. */
+	private static final char LINE_SEPARATOR = '\n';
+
+	/**
+	 * The Enum Format.
+	 */
+	public enum Format {
+
+		/** The json array, pretty printed. */
+		JSON_ARRAY,
+
+		/** The newline delimited json. */
+		NDJSON;
+
+		/**
+		 * Gets the format of the report file by its extension, .ndjson or .jsonl for NDJSON and
+		 * JSON_ARRAY otherwise, ignoring a trailing .gz.
+		 *
+		 * @param reportFile the report file
+		 * @return the format
+		 */
+		public static Format of(final File reportFile) {
+			String name = reportFile.getName().toLowerCase();
+			if (name.endsWith(GZIP_EXTN)) {
+				name = name.substring(0, name.length() - GZIP_EXTN.length());
+			}
+			return name.endsWith(NDJSON_EXTN) || name.endsWith(JSONL_EXTN) ? NDJSON : JSON_ARRAY;
+		}
+	}
+
+	/** The report file. */
+	private final Path reportFile;
+
+	/** The part file, the report while being written. */
+	private final Path partFile;
+
+	/** The format. */
+	private final Format format;
+
+	/** The generator. */
+	private final JsonGenerator generator;
+
+	/** The records written. */
+	private long records;
+
+	/** The completed. */
+	private boolean completed;
+
+	/**
+	 * The Constructor, the format and compression are chosen by the file name, see {@link Format#of(File)}.
+	 *
+	 * @param reportFile the report file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public JSONReportWriter(final File reportFile) throws IOException {
+		this(reportFile, Format.of(reportFile), reportFile.getName().toLowerCase().endsWith(GZIP_EXTN));
+	}
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param reportFile the report file
+	 * @param format the format
+	 * @param gzip whether to gzip compress the report
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public JSONReportWriter(final File reportFile, final Format format, final boolean gzip) throws IOException {
+		super();
+		this.format = format;
+		this.reportFile = reportFile.toPath().toAbsolutePath();
+		this.partFile = this.reportFile.resolveSibling(this.reportFile.getFileName() + AlfScriptUtils.PART_EXTN);
+		Files.createDirectories(this.partFile.getParent());
+		OutputStream outStream = new BufferedOutputStream(Files.newOutputStream(partFile), WRITE_BUFFER_SIZE);
+		if (gzip) {
+			outStream = new GZIPOutputStream(outStream, WRITE_BUFFER_SIZE);
+		}
+		this.generator = JSONUtils.getJsonObjectMapper().getFactory().createGenerator(outStream, JsonEncoding.UTF8);
+		if (format == Format.JSON_ARRAY) {
+			generator.useDefaultPrettyPrinter();
+			generator.writeStartArray();
+		} else {
+			// Each record ends its own line, nothing is written between the records
+			generator.setRootValueSeparator(null);
+		}
+		LOG.info("Writing report to: " + this.reportFile + ", format: " + format + ", gzip: " + gzip);
+	}
+
+	/**
+	 * Write the record to the report.
+	 *
+	 * @param record the record
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void visit(final JSONObject record) throws IOException {
+		write(reportGenerator -> writeValue(record));
+	}
+
+	/**
+	 * Write one record to the report with the given writer, e.g. a record transformed token by token
+	 * from a parser. The writer must write exactly one json value.
+	 *
+	 * @param recordWriter the record writer, given the generator of the report
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void write(final JSONVisitor<JsonGenerator> recordWriter) throws IOException {
+		if (completed) {
+			throw new IllegalStateException("Report is already completed: " + reportFile);
+		}
+		recordWriter.visit(generator);
+		if (format == Format.NDJSON) {
+			generator.writeRaw(LINE_SEPARATOR);
+		}
+		records++;
+	}
+
+	/**
+	 * Write the value, walking json objects and arrays without converting them to maps and lists.
+	 *
+	 * @param value the value
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeValue(final Object value) throws IOException {
+		if (value == null || JSONObject.NULL.equals(value)) {
+			generator.writeNull();
+		} else if (value instanceof JSONObject) {
+			final JSONObject jsonObj = (JSONObject) value;
+			generator.writeStartObject();
+			for (final String key : jsonObj.keySet()) {
+				generator.writeFieldName(key);
+				writeValue(jsonObj.opt(key));
+			}
+			generator.writeEndObject();
+		} else if (value instanceof JSONArray) {
+			final JSONArray jsonArray = (JSONArray) value;
+			generator.writeStartArray();
+			for (int index = 0; index < jsonArray.length(); index++) {
+				writeValue(jsonArray.opt(index));
+			}
+			generator.writeEndArray();
+		} else if (value instanceof String) {
+			generator.writeString((String) value);
+		} else if (value instanceof Boolean) {
+			generator.writeBoolean((Boolean) value);
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			generator.writeNumber(((Number) value).longValue());
+		} else if (value instanceof Double || value instanceof Float) {
+			generator.writeNumber(((Number) value).doubleValue());
+		} else if (value instanceof BigDecimal) {
+			generator.writeNumber((BigDecimal) value);
+		} else if (value instanceof BigInteger) {
+			generator.writeNumber((BigInteger) value);
+		} else {
+			generator.writeString(value.toString());
+		}
+	}
+
+	/**
+	 * Gets the records written.
+	 *
+	 * @return the records
+	 */
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	/**
+	 * Finish the report and rename it in place.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void finish() throws IOException {
+		if (format == Format.JSON_ARRAY) {
+			generator.writeEndArray();
+		}
+		// Flushes and closes the streams, the gzip trailer included
+		generator.close();
+		AlfScriptUtils.moveAtomically(partFile, reportFile);
+		completed = true;
+		LOG.info("Report completed: " + reportFile + ", records: " + records + ", size: "
+				+ FileUtils.byteCountToDisplaySize(Files.size(reportFile)));
+	}
+
+	/**
+	 * Close, deleting the report if it was not finished.
+	 */
+	@Override
+	public synchronized void close() {
+		if (!completed) {
+			try {
+				generator.close();
+			} catch (IOException | RuntimeException excp) {
+				LOG.debug("Failed to close the incomplete report: " + partFile, excp);
+			}
+			FileUtils.deleteQuietly(partFile.toFile());
+			LOG.warn("Report did not complete, deleted: " + partFile + ", records written: " + records);
+		}
+	}
+}
@@ -21,7 +21,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -37,8 +39,11 @@ import org.apache.commons.logging.LogFactory;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -61,6 +66,9 @@ public final class JSONUtils {
 	/** The Constant JSON_EXTN. */
 	public static final String JSON_EXTN = ".json";
 	
+	/** The Constant STREAMING_MAPPER. Shared, it is thread safe once configured. */
+	private static final ObjectMapper STREAMING_MAPPER = getJsonObjectMapper();
+	
 	/**
 	 * The Constructor.
 	 */
@@ -319,6 +327,158 @@ public final class JSONUtils {
 		return jsonObject;
 	}
 	
+	/**
+	 * Read json object directly from the utf-8 input stream, without buffering it into a string first.<br>
+	 * Unlike {@link #getJSONObjectFromInputStream(InputStream)} parse failures are not swallowed.
+	 *
+	 * @param inStream the input stream
+	 * @return the JSON object
+	 * @throws JSONException the JSON exception
+	 */
+	public static JSONObject readJSONObject(final InputStream inStream) throws JSONException {
+		return new JSONObject(new JSONTokener(new InputStreamReader(inStream, StandardCharsets.UTF_8)));
+	}
+	
+	/**
+	 * Read json array directly from the utf-8 input stream, without buffering it into a string first.
+	 *
+	 * @param inStream the input stream
+	 * @return the JSON array
+	 * @throws JSONException the JSON exception
+	 */
+	public static JSONArray readJSONArray(final InputStream inStream) throws JSONException {
+		return new JSONArray(new JSONTokener(new InputStreamReader(inStream, StandardCharsets.UTF_8)));
+	}
+	
+	/**
+	 * Stream the elements of a json array from the utf-8 input stream, binding and visiting one
+	 * element at a time. Neither the response string nor the whole tree is held in memory, so
+	 * listings of any size are processed in memory bound by the largest single element.<br>
+	 * e.g. streamArray(inStream, "list.entries", JSONObject.class, visitor) visits the entries of a
+	 * v1 REST API listing.
+	 *
+	 * @param <T> the element type
+	 * @param inStream the input stream
+	 * @param arrayPath dot separated field names leading to the array, empty if the root is the array
+	 * @param elementType the element type, a POJO, Map, JsonNode or {@link JSONObject}
+	 * @param visitor the visitor
+	 * @return the number of elements visited, 0 if the array is not present
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> long streamArray(final InputStream inStream, final String arrayPath,
+			final Class<T> elementType, final JSONVisitor<? super T> visitor) throws IOException {
+		try (final JsonParser parser = STREAMING_MAPPER.getFactory().createParser(inStream)) {
+			if (!moveToArray(parser, StringUtils.split(StringUtils.defaultString(arrayPath), '.'))) {
+				return 0;
+			}
+			final boolean jsonObject = JSONObject.class.equals(elementType);
+			long count = 0;
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				if (jsonObject) {
+					visitor.visit((T) new JSONObject(parser.readValueAs(Map.class)));
+				} else {
+					visitor.visit(parser.readValueAs(elementType));
+				}
+				count++;
+			}
+			return count;
+		}
+	}
+	
+	/**
+	 * Stream the fields of the root json object one by one, e.g. a file name to node ref mapping,
+	 * without reading the whole document in memory.
+	 *
+	 * @param <T> the value type
+	 * @param inStream the input stream, closed once done
+	 * @param valueType the value type
+	 * @param visitor the visitor, invoked with each field name and value
+	 * @return the number of fields visited
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static <T> long streamFields(final InputStream inStream, final Class<T> valueType,
+			final JSONVisitor<? super Map.Entry<String, T>> visitor) throws IOException {
+		try (final JsonParser parser = STREAMING_MAPPER.getFactory().createParser(inStream)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return 0;
+			}
+			long count = 0;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				final String fieldName = parser.getCurrentName();
+				parser.nextToken();
+				visitor.visit(new AbstractMap.SimpleImmutableEntry<String, T>(fieldName, parser.readValueAs(valueType)));
+				count++;
+			}
+			return count;
+		}
+	}
+	
+	/**
+	 * Create a parser reading the utf-8 input stream with the shared streaming mapper, so trees
+	 * and values can be read from it as well.
+	 *
+	 * @param inStream the input stream
+	 * @return the parser, to be closed once done
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static JsonParser createParser(final InputStream inStream) throws IOException {
+		return STREAMING_MAPPER.getFactory().createParser(inStream);
+	}
+	
+	/**
+	 * Move a new parser to the start of the object found at the given path.
+	 *
+	 * @param parser the parser, not yet advanced
+	 * @param objectPath dot separated field names leading to the object, empty if the root is the object
+	 * @return true, if the object is found; the parser is then at its START_OBJECT token
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static boolean moveToObject(final JsonParser parser, final String objectPath) throws IOException {
+		return moveTo(parser, StringUtils.split(StringUtils.defaultString(objectPath), '.')) == JsonToken.START_OBJECT;
+	}
+	
+	/**
+	 * Move the parser to the start of the array found at the given path.
+	 *
+	 * @param parser the parser
+	 * @param path the path
+	 * @return true, if the array is found
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static boolean moveToArray(final JsonParser parser, final String[] path) throws IOException {
+		return moveTo(parser, path) == JsonToken.START_ARRAY;
+	}
+	
+	/**
+	 * Move the parser to the value found at the given path.
+	 *
+	 * @param parser the parser
+	 * @param path the path
+	 * @return the first token of the value, null if not found
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static JsonToken moveTo(final JsonParser parser, final String[] path) throws IOException {
+		JsonToken token = parser.nextToken();
+		for (final String eachField : path) {
+			if (token != JsonToken.START_OBJECT) {
+				return null;
+			}
+			boolean found = false;
+			while (!found && parser.nextToken() == JsonToken.FIELD_NAME) {
+				found = eachField.equals(parser.getCurrentName());
+				token = parser.nextToken();
+				if (!found) {
+					parser.skipChildren();
+				}
+			}
+			if (!found) {
+				return null;
+			}
+		}
+		return token;
+	}
+	
 	/**
 	 * Gets the map from json file.
 	 *
@@ -0,0 +1,41 @@
+/*
+ * Created By: Abhinav Kumar Mishra
+ * Copyright &copy; 2017. Abhinav Kumar Mishra. 
+ * All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.abhinavmishra14.json.utils;
+
+import java.io.IOException;
+
+/**
+ * The Interface JSONVisitor.<br>
+ * Callback invoked for each element of a json array while the array is being parsed from a
+ * stream, see {@link JSONUtils#streamArray(java.io.InputStream, String, Class, JSONVisitor)}.
+ * Visitors run while the response is still being read, so they should not make other calls
+ * to the repository; collect what is needed and make follow up calls after parsing completes.
+ *
+ * @param <T> the element type
+ */
+@FunctionalInterface
+public interface JSONVisitor<T> {
+
+	/**
+	 * Visit.
+	 *
+	 * @param element the element
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void visit(final T element) throws IOException;
+}
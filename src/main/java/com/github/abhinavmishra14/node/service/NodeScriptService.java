@@ -24,6 +24,8 @@ import java.sql.SQLException;
 import org.apache.http.client.ClientProtocolException;
 import org.json.JSONArray;
 
+import com.github.abhinavmishra14.alfscript.utils.JobJournal;
+
 
 /**
  * The Interface NodeScriptService.
@@ -56,4 +58,17 @@ public interface NodeScriptService {
 	 */
 	void deleteNode(final String authTicket, final JSONArray nodeJson)
 			throws ClientProtocolException, IOException, URISyntaxException;
+	
+	/**
+	 * Delete node, skipping the nodes the journal records as deleted and recording the outcome of each delete.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param nodeJson the node json
+	 * @param journal the journal
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws URISyntaxException the URI syntax exception
+	 */
+	void deleteNode(final String authTicket, final JSONArray nodeJson, final JobJournal journal)
+			throws ClientProtocolException, IOException, URISyntaxException;
 }
@@ -56,13 +56,13 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.methods.CloseableHttpResponse;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
 import com.github.abhinavmishra14.alfscript.utils.ConnectionManager;
+import com.github.abhinavmishra14.alfscript.utils.JobJournal;
 import com.github.abhinavmishra14.http.utils.HTTPUtils;
 import com.github.abhinavmishra14.node.service.NodeScriptService;
 import com.github.abhinavmishra14.trashcan.service.ArchiveStoreService;
@@ -231,28 +231,58 @@ public class NodeScriptServiceImpl implements NodeScriptService {
 	@Override
 	public void deleteNode(final String authTicket, final JSONArray nodeJson)
 			throws ClientProtocolException, IOException, URISyntaxException {
+		deleteNode(authTicket, nodeJson, new JobJournal(null));
+	}
+	
+	/**
+	 * Delete node, skipping the nodes the journal records as deleted and recording the outcome of each delete.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param nodeJson the node json
+	 * @param journal the journal
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws URISyntaxException the URI syntax exception
+	 */
+	@Override
+	public void deleteNode(final String authTicket, final JSONArray nodeJson, final JobJournal journal)
+			throws ClientProtocolException, IOException, URISyntaxException {
 		final ArchiveStoreService arcStoreServ = new ArchiveStoreServiceImpl(serverEndpoint);
 		for (final Object eachNode : nodeJson) {
 			final JSONObject jsonForEachNode = (JSONObject) eachNode;
 			final String storeId = jsonForEachNode.getString(STORE_ID);
 			final String nodeId = jsonForEachNode.getString(NODE_ID);
+			final String journalKey = storeId + "/" + nodeId;
+			if (journal.skip(journalKey)) {
+				continue;
+			}
 			String nodeDelUrl = StringUtils.EMPTY;
+			Integer statusCode = null;
 			if (ARCHIVESTORE_ID.equals(storeId)) {
 				//delete the node from archive://SpaceStore
-				arcStoreServ.deleteArchivedNode(nodeId, authTicket);
+				try {
+					statusCode = arcStoreServ.deleteArchivedNode(nodeId, authTicket);
+				} catch (IOException excp) {
+					journal.mark(journalKey, false, excp.toString());
+					throw excp;
+				}
 			} else {
 				//delete the node from workspace://SpaceStore
 				nodeDelUrl = serverEndpoint + String.format(DELETE_NODE_API, nodeId, authTicket);
 				LOG.info("Workspace NodeDelete URL: "+nodeDelUrl);
-				try (final CloseableHttpResponse httpDelResp = HTTPUtils.httpDelete(nodeDelUrl)) {
-					final StatusLine delStatus = httpDelResp.getStatusLine();
-					final int delStatusCode = delStatus.getStatusCode();
-					final String delStatusMsg = delStatus.getReasonPhrase();
-					LOG.info("Status: "+delStatusCode +" | "+ delStatusMsg);
+				try {
+					statusCode = HTTPUtils.httpDelete(nodeDelUrl, httpDelResp -> {
+						final StatusLine delStatus = httpDelResp.getStatusLine();
+						final int delStatusCode = delStatus.getStatusCode();
+						final String delStatusMsg = delStatus.getReasonPhrase();
+						LOG.info("Status: "+delStatusCode +" | "+ delStatusMsg);
+						return delStatusCode;
+					});
 				} catch (IOException excp) {
 					LOG.error("Error occurred while deleting the node", excp);
 				}
 			}
+			journal.mark(journalKey, HTTPUtils.isDeleted(statusCode), "Status: " + statusCode);
 		}
 	}
 }
@@ -41,6 +41,7 @@ import org.apache.http.client.ClientProtocolException;
 import org.json.JSONArray;
 
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.alfscript.utils.JobJournal;
 import com.github.abhinavmishra14.exception.AlfScriptException;
 import com.github.abhinavmishra14.node.service.NodeScriptService;
 import com.github.abhinavmishra14.node.service.impl.NodeScriptServiceImpl;
@@ -53,6 +54,9 @@ public class DeleteNodesBasedOnContentUrl {
 	
 	/** The Constant LOG. */
 	private final static Log LOG = LogFactory.getLog(DeleteNodesBasedOnContentUrl.class);
+	
+	/** The Constant JOB_NAME. */
+	private static final String JOB_NAME = "DeleteNodesBasedOnContentUrl";
 
 	/**
 	 * The main method.
@@ -129,7 +133,11 @@ public class DeleteNodesBasedOnContentUrl {
 			FileUtils.writeStringToFile(reportsFile, nodesInfo.toString(), StandardCharsets.UTF_8);
 
 			final String authTicket = AlfScriptUtils.getTicket(host, userName, password);
-			nodeScriptService.deleteNode(authTicket, nodesInfo);
+			//Nodes deleted by a previous run are skipped when the journal is kept
+			try (final JobJournal journal = JobJournal.open(JOB_NAME)) {
+				nodeScriptService.deleteNode(authTicket, nodesInfo, journal);
+				LOG.info("Completed deletion of nodes, " + journal);
+			}
 		} else {
 			LOG.warn("Unable to extract node info using the content urls. Please try different content urls!");
 		}
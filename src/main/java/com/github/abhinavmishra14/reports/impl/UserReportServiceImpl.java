@@ -21,12 +21,12 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.utils.URIBuilder;
@@ -35,6 +35,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
 import com.github.abhinavmishra14.http.utils.HTTPUtils;
 import com.github.abhinavmishra14.json.utils.JSONUtils;
+import com.github.abhinavmishra14.json.utils.JSONVisitor;
 import com.github.abhinavmishra14.reports.exception.UserReportException;
 import com.github.abhinavmishra14.reports.pojo.Person;
 import com.github.abhinavmishra14.reports.pojo.Users;
@@ -53,6 +54,9 @@ public class UserReportServiceImpl implements UserReportService {
 	/** The Constant PEOPLE_URI. */
 	private static final String PEOPLE_URI = "/alfresco/service/api/people";
 	
+	/** The Constant PEOPLE. */
+	private static final String PEOPLE = "people";
+	
 	/** The Constant PERSON_URI. */
 	private static final String PERSON_URI = PEOPLE_URI+"/{0}?groups=true";
 
@@ -89,24 +93,23 @@ public class UserReportServiceImpl implements UserReportService {
 		final MessageFormat msgFormat = new MessageFormat(PERSON_URI);
 		final URIBuilder uriBuilder = new URIBuilder(serverEndpoint+msgFormat.format(uriArgs));
 		uriBuilder.addParameter(AlfScriptConstants.PARAM_AUTH_TICKET, authTicket);
-		final HttpResponse httpResp = HTTPUtils.httpGet(uriBuilder.toString());
-		final StatusLine status = httpResp.getStatusLine();
-		final int statusCode = status.getStatusCode();
-		final String statusMsg = status.getReasonPhrase();
-		LOG.info("Status: "+statusCode +" | "+ statusMsg);
-		Person person = null;
-		if (statusCode == HTTPUtils.HTTP_CODE_200) {
-			final String resonseStr = IOUtils.toString(httpResp.getEntity().getContent(),
-					StandardCharsets.UTF_8);
-			final ObjectMapper mapper = JSONUtils.getJsonObjectMapper();
-			person = mapper.readValue(resonseStr, Person.class);
-			//Set the user's sites which user has access
-			final SiteService siteService = new SiteServiceImpl (serverEndpoint);
-			final String sites = siteService.getAllSitesAsString(authTicket, userName);
-			person.setSiteInfo(mapper.readValue(sites, List.class));
-		} else {
-			throw new UserReportException(statusMsg);
-		}
+		final ObjectMapper mapper = JSONUtils.getJsonObjectMapper();
+		final Person person = HTTPUtils.httpGet(uriBuilder.toString(), httpResp -> {
+			final StatusLine status = httpResp.getStatusLine();
+			final int statusCode = status.getStatusCode();
+			final String statusMsg = status.getReasonPhrase();
+			LOG.info("Status: "+statusCode +" | "+ statusMsg);
+			if (statusCode == HTTPUtils.HTTP_CODE_200) {
+				return mapper.readValue(httpResp.getEntity().getContent(), Person.class);
+			} else {
+				throw new UserReportException(statusMsg);
+			}
+		});
+		// Connection is back in the pool at this point, follow up calls won't hold it.
+		//Set the user's sites which user has access
+		final SiteService siteService = new SiteServiceImpl (serverEndpoint);
+		final String sites = siteService.getAllSitesAsString(authTicket, userName);
+		person.setSiteInfo(mapper.readValue(sites, List.class));
 		return person;
 	}
 	
@@ -122,29 +125,48 @@ public class UserReportServiceImpl implements UserReportService {
 	@Override
 	public Users getAllUsers(final String authTicket) throws URISyntaxException, IllegalStateException, IOException {
 		LOG.info("Getting all users..");
+		final List<Person> people = new ArrayList<Person>();
+		visitAllUsers(authTicket, people::add);
+		final Users users = new Users();
+		users.setPeople(people);
+		return users;
+	}
+	
+	/**
+	 * Visit all users.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param visitor the visitor
+	 * @return the number of users visited
+	 * @throws URISyntaxException the URI syntax exception
+	 * @throws IllegalStateException the illegal state exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public long visitAllUsers(final String authTicket, final JSONVisitor<Person> visitor)
+			throws URISyntaxException, IllegalStateException, IOException {
 		final URIBuilder uriBuilder = new URIBuilder(serverEndpoint+PEOPLE_URI);
 		uriBuilder.addParameter(AlfScriptConstants.PARAM_AUTH_TICKET, authTicket);
-		final HttpResponse httpResp = HTTPUtils.httpGet(uriBuilder.toString());
-		final StatusLine status = httpResp.getStatusLine();
-		final int statusCode = status.getStatusCode();
-		final String statusMsg = status.getReasonPhrase();
-		LOG.info("Status: "+statusCode +" | "+ statusMsg);
-		Users users = null;
-		if (statusCode == HTTPUtils.HTTP_CODE_200) {
-			final String resonseStr = IOUtils.toString(httpResp.getEntity().getContent(),
-					StandardCharsets.UTF_8);
-			final ObjectMapper mapper = JSONUtils.getJsonObjectMapper();
-			users = mapper.readValue(resonseStr, Users.class);
-			final List<Person> people = users.getPeople();
-			for (int each = 0; each < people.size(); each++) {
-				final Person eachPerson = people.get(each);
-				final Person personWithGrp = getPerson(eachPerson.getUserName(), authTicket);
-				people.set(each, personWithGrp);
+		// People listing is large, stream it and keep only the user names
+		final List<String> userNames = new ArrayList<String>();
+		HTTPUtils.httpGet(uriBuilder.toString(), httpResp -> {
+			final StatusLine status = httpResp.getStatusLine();
+			final int statusCode = status.getStatusCode();
+			final String statusMsg = status.getReasonPhrase();
+			LOG.info("Status: "+statusCode +" | "+ statusMsg);
+			if (statusCode == HTTPUtils.HTTP_CODE_200) {
+				return JSONUtils.streamArray(httpResp.getEntity().getContent(), PEOPLE, Person.class,
+						eachPerson -> userNames.add(eachPerson.getUserName()));
+			} else {
+				throw new UserReportException(statusMsg);
 			}
-		} else {
-			throw new UserReportException(statusMsg);
+		});
+		LOG.info("Found "+userNames.size()+" users");
+		// Connection is back in the pool at this point, follow up calls won't hold it.
+		for (final String eachUserName : userNames) {
+			visitor.visit(getPerson(eachUserName, authTicket));
 		}
-		return users;
+		return userNames.size();
 	}
 
 	/**
@@ -160,22 +182,21 @@ public class UserReportServiceImpl implements UserReportService {
 	@Override
 	public String getPersonAsJson(final String userName, final String authTicket)
 			throws URISyntaxException, ClientProtocolException, IOException {
-		String personJson = JSONUtils.EMPTY_JSONOBJECT;
 		final Object[] uriArgs = {userName};
 		final MessageFormat msgFormat = new MessageFormat(PERSON_URI);
 		final URIBuilder uriBuilder = new URIBuilder(serverEndpoint+msgFormat.format(uriArgs));
 		uriBuilder.addParameter(AlfScriptConstants.PARAM_AUTH_TICKET, authTicket);
-		final HttpResponse httpResp = HTTPUtils.httpGet(uriBuilder.toString());
-		final StatusLine status = httpResp.getStatusLine();
-		final int statusCode = status.getStatusCode();
-		final String statusMsg = status.getReasonPhrase();
-		LOG.info("Status: "+statusCode +" | "+ statusMsg);
-		if (statusCode == HTTPUtils.HTTP_CODE_200) {
-			personJson = IOUtils.toString(httpResp.getEntity().getContent(), StandardCharsets.UTF_8);
-		} else {
-			throw new UserReportException(statusMsg);
-		}
-		return personJson;
+		return HTTPUtils.httpGet(uriBuilder.toString(), httpResp -> {
+			final StatusLine status = httpResp.getStatusLine();
+			final int statusCode = status.getStatusCode();
+			final String statusMsg = status.getReasonPhrase();
+			LOG.info("Status: "+statusCode +" | "+ statusMsg);
+			if (statusCode == HTTPUtils.HTTP_CODE_200) {
+				return IOUtils.toString(httpResp.getEntity().getContent(), StandardCharsets.UTF_8);
+			} else {
+				throw new UserReportException(statusMsg);
+			}
+		});
 	}
 
 	/**
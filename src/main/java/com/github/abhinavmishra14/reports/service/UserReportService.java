@@ -22,6 +22,7 @@ import java.net.URISyntaxException;
 
 import org.apache.http.client.ClientProtocolException;
 
+import com.github.abhinavmishra14.json.utils.JSONVisitor;
 import com.github.abhinavmishra14.reports.pojo.Person;
 import com.github.abhinavmishra14.reports.pojo.Users;
 
@@ -55,6 +56,20 @@ public interface UserReportService {
 	 */
 	Users getAllUsers(final String authTicket) throws URISyntaxException, IllegalStateException, IOException;	
 	
+	/**
+	 * Visit all the users one by one, each with its groups and sites, without holding the whole
+	 * people listing in memory.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param visitor the visitor
+	 * @return the number of users visited
+	 * @throws URISyntaxException the URI syntax exception
+	 * @throws IllegalStateException the illegal state exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	long visitAllUsers(final String authTicket, final JSONVisitor<Person> visitor)
+			throws URISyntaxException, IllegalStateException, IOException;
+	
 	/**
 	 * Gets the person as json.
 	 *
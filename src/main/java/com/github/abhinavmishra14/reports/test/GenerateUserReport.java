@@ -24,15 +24,17 @@ import static com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants.DEFA
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.client.ClientProtocolException;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.json.utils.JSONUtils;
 import com.github.abhinavmishra14.reports.exception.UserReportException;
 import com.github.abhinavmishra14.reports.impl.UserReportServiceImpl;
 import com.github.abhinavmishra14.reports.service.UserReportService;
@@ -78,9 +80,17 @@ public class GenerateUserReport {
 		LOG.info("Generating user report at host: "+host);	
 		final String authTicket = AlfScriptUtils.getTicket(host, userName, password);
 		final UserReportService userRpServ = new UserReportServiceImpl(host);
-		final String allUsers = userRpServ.getAllUsersAsJson(authTicket);
 		final File reportsFile = new File("userReports.json");
-		FileUtils.writeStringToFile(reportsFile, allUsers, StandardCharsets.UTF_8); 
-		LOG.info("Report generated successfully.");
+		// Users are written as they are fetched, so the report is never held in memory as a whole
+		final ObjectMapper mapper = JSONUtils.getJsonObjectMapper();
+		try (final JsonGenerator generator = mapper.getFactory().createGenerator(reportsFile, JsonEncoding.UTF8)) {
+			generator.useDefaultPrettyPrinter();
+			generator.writeStartObject();
+			generator.writeArrayFieldStart("people");
+			final long users = userRpServ.visitAllUsers(authTicket, generator::writeObject);
+			generator.writeEndArray();
+			generator.writeEndObject();
+			LOG.info("Report generated successfully for "+users+" users.");
+		}
 	}
 }
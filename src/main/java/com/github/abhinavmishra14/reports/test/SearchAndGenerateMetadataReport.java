@@ -17,7 +17,7 @@
  */
 package com.github.abhinavmishra14.reports.test;
 
-import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
 
 import org.apache.commons.io.FilenameUtils;
@@ -25,15 +25,15 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.client.ClientProtocolException;
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
 import com.github.abhinavmishra14.download.service.SNDService;
+import com.github.abhinavmishra14.download.service.SearchCursor;
 import com.github.abhinavmishra14.download.service.impl.SNDServiceImpl;
 import com.github.abhinavmishra14.exception.AlfScriptException;
+import com.github.abhinavmishra14.json.utils.JSONReportWriter;
 import com.github.abhinavmishra14.json.utils.JSONUtils;
 
 /**
@@ -45,6 +45,18 @@ public class SearchAndGenerateMetadataReport {
 	/** The Constant LOG. */
 	private final static Log LOG = LogFactory.getLog(SearchAndGenerateMetadataReport.class);
 	
+	/** The Constant PROP_FORMAT. */
+	public static final String PROP_FORMAT = "alfscript.report.format";
+	
+	/** The Constant PROP_GZIP. */
+	public static final String PROP_GZIP = "alfscript.report.gzip";
+	
+	/** The Constant REPORT_NAME. */
+	private static final String REPORT_NAME = "metadataReport";
+	
+	/** The Constant NDJSON. */
+	private static final String NDJSON = "ndjson";
+	
 	/**
 	 * The main method.
 	 *
@@ -112,6 +124,18 @@ public class SearchAndGenerateMetadataReport {
 			skipCount = args[6].trim();
 		}
 		
+		// CREATED, pages by the created date instead of skip count for large results
+		SearchCursor.Keyset pageBy = null;
+		if (args.length >= 8 && StringUtils.isNotBlank(args[7])) {
+			pageBy = SearchCursor.Keyset.valueOf(args[7].trim().toUpperCase());
+		}
+		
+		// More than one shard searches ranges of the PAGE_BY key (CREATED by default) concurrently
+		int shards = 1;
+		if (args.length >= 9 && StringUtils.isNotBlank(args[8])) {
+			shards = Integer.parseInt(args[8].trim());
+		}
+		
 		if (StringUtils.isNotBlank(host) && StringUtils.isNotBlank(userName)
 				&& StringUtils.isNotBlank(password)
 				&& StringUtils.isNotBlank(downloadLocation)
@@ -119,24 +143,17 @@ public class SearchAndGenerateMetadataReport {
 			LOG.info("Searching and downloading metadata report using searchQuery: "+searchQuery +" from host: "+host+" at: "+downloadLocation);
 			final String alfTicket = AlfScriptUtils.getTicket(host, userName, password);
 			final SNDService sndServ = new SNDServiceImpl(host);
-			final JSONObject searchResult = sndServ.getSearchResult(alfTicket, searchQuery, maxItems, skipCount);
-			
-			final JSONObject listResult = searchResult.getJSONObject(AlfScriptConstants.LIST);
-			final JSONObject page = listResult.getJSONObject(AlfScriptConstants.PAGINATION);
-			LOG.info("Search result details: "+ page);
-			final JSONArray entries = listResult.getJSONArray(AlfScriptConstants.ENTRIES);
-			final JSONArray metadataArray = new JSONArray();
-			for (final Object eachEntry : entries) {
-				final JSONObject entryJson = (JSONObject) eachEntry;
-				final JSONObject entry = entryJson.getJSONObject(AlfScriptConstants.ENTRY);
-				final String nodeId = entry.getString(AlfScriptConstants.ID_NODE);
-				metadataArray.put(sndServ.getMetadata(nodeId, alfTicket));
-			}
-			final String downloadFilePath = AlfScriptUtils.getFileName("metadataReport.json", downloadLocation);
-			LOG.info("DownloadMetadataReportFilePath: "+downloadFilePath);
-			JSONUtils.convertFromJsonObjectToFile(metadataArray.toList(), downloadFilePath);
-			try(final FileWriter fwriter = new FileWriter(downloadFilePath)) {
-				metadataArray.write(fwriter, 1, 1);
+			final String reportFilePath = AlfScriptUtils.getFileName(REPORT_NAME
+					+ (NDJSON.equalsIgnoreCase(System.getProperty(PROP_FORMAT)) ? JSONReportWriter.NDJSON_EXTN : JSONUtils.JSON_EXTN)
+					+ (Boolean.getBoolean(PROP_GZIP) ? JSONReportWriter.GZIP_EXTN : StringUtils.EMPTY), downloadLocation);
+			LOG.info("DownloadMetadataReportFilePath: "+reportFilePath);
+			// Each node's metadata is written as it is read, the report is never held in memory as a whole
+			try (final JSONReportWriter reportWriter = new JSONReportWriter(new File(reportFilePath))) {
+				// Metadata is read from the search result itself, no request per hit
+				final long found = sndServ.visitMetadata(alfTicket, searchQuery, Integer.parseInt(maxItems),
+						Long.parseLong(skipCount), pageBy, shards, reportWriter);
+				LOG.info("Search result entries: "+ found);
+				reportWriter.finish();
 			}
 		} else {
 			throw new IllegalArgumentException(
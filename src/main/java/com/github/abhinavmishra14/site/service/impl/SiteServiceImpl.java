@@ -25,12 +25,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.utils.URIBuilder;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -88,11 +87,13 @@ public class SiteServiceImpl implements SiteService {
 			ClientProtocolException, IOException {
 		final URIBuilder uriBuilder = new URIBuilder(serverEndpoint + SITES_URL + AlfScriptConstants.PATH_SEPERATOR + shortName);
 		uriBuilder.addParameter(AlfScriptConstants.PARAM_AUTH_TICKET, authTicket);
-		final HttpResponse httpResp = HTTPUtils.httpDelete(uriBuilder.toString());
-		final StatusLine status = httpResp.getStatusLine();
-		final int statusCode = status.getStatusCode();
-		final String statusMsg = status.getReasonPhrase();
-		LOG.info("Status: "+statusCode +" | "+ statusMsg);
+		HTTPUtils.httpDelete(uriBuilder.toString(), httpResp -> {
+			final StatusLine status = httpResp.getStatusLine();
+			final int statusCode = status.getStatusCode();
+			final String statusMsg = status.getReasonPhrase();
+			LOG.info("Status: "+statusCode +" | "+ statusMsg);
+			return statusCode;
+		});
 	}
 	
 	/**
@@ -132,7 +133,9 @@ public class SiteServiceImpl implements SiteService {
 	@Override
 	public JSONArray getAllSites(final String authTicket)
 			throws URISyntaxException, ClientProtocolException, AlfScriptException, IOException {
-		return new JSONArray(getAllSitesAsString(authTicket));
+		LOG.info("Getting all sites..");
+		return getSites(prepareSitesUrl(authTicket),
+				httpResp -> JSONUtils.readJSONArray(httpResp.getEntity().getContent()));
 	}
 
 	/**
@@ -149,7 +152,9 @@ public class SiteServiceImpl implements SiteService {
 	@Override
 	public JSONArray getAllSites(final String authTicket, final String userName)
 			throws URISyntaxException, ClientProtocolException, AlfScriptException, IOException {
-		return new JSONArray(getAllSitesAsString(authTicket, userName));
+		LOG.info("Getting all sites for user: "+userName);
+		return getSites(prepareSitesUrl(authTicket, userName),
+				httpResp -> JSONUtils.readJSONArray(httpResp.getEntity().getContent()));
 	}
 
 	/**
@@ -167,20 +172,8 @@ public class SiteServiceImpl implements SiteService {
 			throws URISyntaxException,
 			ClientProtocolException, AlfScriptException, IOException {
 		LOG.info("Getting all sites..");
-		final URIBuilder uriBuilder = new URIBuilder(serverEndpoint + SITES_URL);
-		uriBuilder.addParameter(AlfScriptConstants.PARAM_AUTH_TICKET, authTicket);
-		final HttpResponse httpResp = HTTPUtils.httpGet(uriBuilder.toString());
-		final StatusLine status = httpResp.getStatusLine();
-		final int statusCode = status.getStatusCode();
-		final String statusMsg = status.getReasonPhrase();
-		LOG.info("Status: "+statusCode +" | "+ statusMsg);
-		String sites = StringUtils.EMPTY;
-		if (statusCode == HTTPUtils.HTTP_CODE_200) {
-			sites = IOUtils.toString(httpResp.getEntity().getContent(), StandardCharsets.UTF_8);
-		} else {
-			throw new AlfScriptException(statusMsg);
-		}
-		return sites;
+		return getSites(prepareSitesUrl(authTicket),
+				httpResp -> IOUtils.toString(httpResp.getEntity().getContent(), StandardCharsets.UTF_8));
 	}
 
 	/**
@@ -198,22 +191,63 @@ public class SiteServiceImpl implements SiteService {
 	public String getAllSitesAsString(final String authTicket, final String userName)
 			throws URISyntaxException, ClientProtocolException, AlfScriptException, IOException {
 		LOG.info("Getting all sites for user: "+userName);
+		return getSites(prepareSitesUrl(authTicket, userName),
+				httpResp -> IOUtils.toString(httpResp.getEntity().getContent(), StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Gets the sites and hands the successful response to the given reader.
+	 *
+	 * @param <T> the generic type
+	 * @param sitesUrl the sites url
+	 * @param sitesReader the sites reader
+	 * @return the value returned by sites reader
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws AlfScriptException the alf script exception
+	 * @throws IOException the IO exception
+	 */
+	private <T> T getSites(final String sitesUrl, final ResponseHandler<? extends T> sitesReader)
+			throws ClientProtocolException, AlfScriptException, IOException {
+		return HTTPUtils.httpGet(sitesUrl, httpResp -> {
+			final StatusLine status = httpResp.getStatusLine();
+			final int statusCode = status.getStatusCode();
+			final String statusMsg = status.getReasonPhrase();
+			LOG.info("Status: "+statusCode +" | "+ statusMsg);
+			if (statusCode == HTTPUtils.HTTP_CODE_200) {
+				return sitesReader.handleResponse(httpResp);
+			} else {
+				throw new AlfScriptException(statusMsg);
+			}
+		});
+	}
+	
+	/**
+	 * Prepare sites url.
+	 *
+	 * @param authTicket the auth ticket
+	 * @return the string
+	 * @throws URISyntaxException the URI syntax exception
+	 */
+	private String prepareSitesUrl(final String authTicket) throws URISyntaxException {
+		final URIBuilder uriBuilder = new URIBuilder(serverEndpoint + SITES_URL);
+		uriBuilder.addParameter(AlfScriptConstants.PARAM_AUTH_TICKET, authTicket);
+		return uriBuilder.toString();
+	}
+	
+	/**
+	 * Prepare sites url for the given user.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param userName the user name
+	 * @return the string
+	 * @throws URISyntaxException the URI syntax exception
+	 */
+	private String prepareSitesUrl(final String authTicket, final String userName) throws URISyntaxException {
 		final Object[] uriArgs = {userName};
 		final MessageFormat msgFormat = new MessageFormat(SITES_BY_PERSON_URL);
 		final URIBuilder uriBuilder = new URIBuilder(serverEndpoint+msgFormat.format(uriArgs));
 		uriBuilder.addParameter(AlfScriptConstants.PARAM_AUTH_TICKET, authTicket);
-		final HttpResponse httpResp = HTTPUtils.httpGet(uriBuilder.toString());
-		final StatusLine status = httpResp.getStatusLine();
-		final int statusCode = status.getStatusCode();
-		final String statusMsg = status.getReasonPhrase();
-		LOG.info("Status: "+statusCode +" | "+ statusMsg);
-		String sites = StringUtils.EMPTY;
-		if (statusCode == HTTPUtils.HTTP_CODE_200) {
-			sites = IOUtils.toString(httpResp.getEntity().getContent(), StandardCharsets.UTF_8);
-		} else {
-			throw new AlfScriptException(statusMsg);
-		}
-		return sites;
+		return uriBuilder.toString();
 	}
 	
 	/**
@@ -231,36 +265,34 @@ public class SiteServiceImpl implements SiteService {
 	public String getSiteMembershipPersonInfo(final String siteShortName, final String authTicket)
 			throws ClientProtocolException, AlfScriptException, IOException, URISyntaxException {
 		LOG.info("Getting site membership info for site: "+siteShortName);
-		final HttpResponse httpResp = HTTPUtils
-				.httpGet(String.format(SITE_MEMBERSHIP_URI, serverEndpoint, siteShortName, authTicket));
-		final StatusLine status = httpResp.getStatusLine();
-		final int statusCode = status.getStatusCode();
-		final String statusMsg = status.getReasonPhrase();
-		LOG.info("Status: "+statusCode +" | "+ statusMsg);
-		String memberShipInfo = JSONUtils.EMPTY_JSONARRAY;
-		if (statusCode == HTTPUtils.HTTP_CODE_200) {
-			final String resonseStr = IOUtils.toString(httpResp.getEntity().getContent(),
-					StandardCharsets.UTF_8);
-			final JSONArray siteMembershipArray = new JSONArray(resonseStr);
-			final UserReportService userRpServ = new UserReportServiceImpl(serverEndpoint);
-			for (Object eachMembershipJson : siteMembershipArray) {
-				final JSONObject membershipJson = (JSONObject) eachMembershipJson;
-				///// Remove duplicate props as they are populated through person info already [Start] /////
-				membershipJson.remove(AlfScriptConstants.FIRST_NAME); 
-				membershipJson.remove(AlfScriptConstants.LAST_NAME);
-				membershipJson.remove(AlfScriptConstants.FULL_NAME);
-				///// Remove duplicate props as they are populated through person info already [End] /////
-				final JSONObject authority = membershipJson.getJSONObject(AlfScriptConstants.AUTHORITY);
-				final String userName = authority.getString(AlfScriptConstants.USERNAME);
-				final JSONObject person = new JSONObject(userRpServ.getPersonAsJson(userName, authTicket));
-				person.put(AlfScriptConstants.FULL_NAME, person.getString(AlfScriptConstants.FIRST_NAME)
-						+ AlfScriptConstants.BLANK + person.getString(AlfScriptConstants.LAST_NAME));
-				authority.put(AlfScriptConstants.PERSON_INFO, person);
+		final JSONArray siteMembershipArray = HTTPUtils.httpGet(
+				String.format(SITE_MEMBERSHIP_URI, serverEndpoint, siteShortName, authTicket), httpResp -> {
+			final StatusLine status = httpResp.getStatusLine();
+			final int statusCode = status.getStatusCode();
+			final String statusMsg = status.getReasonPhrase();
+			LOG.info("Status: "+statusCode +" | "+ statusMsg);
+			if (statusCode == HTTPUtils.HTTP_CODE_200) {
+				return JSONUtils.readJSONArray(httpResp.getEntity().getContent());
+			} else {
+				throw new AlfScriptException(statusMsg);
 			}
-			memberShipInfo = siteMembershipArray.toString();
-		} else {
-			throw new AlfScriptException(statusMsg);
+		});
+		//Connection is already released here, person lookups below don't hold it
+		final UserReportService userRpServ = new UserReportServiceImpl(serverEndpoint);
+		for (Object eachMembershipJson : siteMembershipArray) {
+			final JSONObject membershipJson = (JSONObject) eachMembershipJson;
+			///// Remove duplicate props as they are populated through person info already [Start] /////
+			membershipJson.remove(AlfScriptConstants.FIRST_NAME); 
+			membershipJson.remove(AlfScriptConstants.LAST_NAME);
+			membershipJson.remove(AlfScriptConstants.FULL_NAME);
+			///// Remove duplicate props as they are populated through person info already [End] /////
+			final JSONObject authority = membershipJson.getJSONObject(AlfScriptConstants.AUTHORITY);
+			final String userName = authority.getString(AlfScriptConstants.USERNAME);
+			final JSONObject person = new JSONObject(userRpServ.getPersonAsJson(userName, authTicket));
+			person.put(AlfScriptConstants.FULL_NAME, person.getString(AlfScriptConstants.FIRST_NAME)
+					+ AlfScriptConstants.BLANK + person.getString(AlfScriptConstants.LAST_NAME));
+			authority.put(AlfScriptConstants.PERSON_INFO, person);
 		}
-		return memberShipInfo;
+		return siteMembershipArray.toString();
 	}
 }
\ No newline at end of file
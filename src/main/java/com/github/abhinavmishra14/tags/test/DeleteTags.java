@@ -24,14 +24,15 @@ import static com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants.DEFA
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -40,6 +41,7 @@ import org.json.JSONObject;
 
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
 import com.github.abhinavmishra14.exception.AlfScriptException;
+import com.github.abhinavmishra14.http.utils.AsyncHTTPUtils;
 import com.github.abhinavmishra14.http.utils.HTTPUtils;
 import com.google.common.net.UrlEscapers;
 
@@ -95,31 +97,22 @@ public class DeleteTags {
 				final JSONObject jsonObj = new JSONObject(resonseStr);
 				final JSONObject data = jsonObj.getJSONObject("data");
 				final JSONArray dataArry = data.getJSONArray("items");
-				final ExecutorService exec = Executors.newFixedThreadPool(dataArry.length()+1);
+				//Deletes are issued over the non-blocking client, AsyncHTTPUtils bounds how many are in flight.
+				final List<CompletableFuture<HttpResponse>> deletes = new ArrayList<CompletableFuture<HttpResponse>>(dataArry.length());
 				for (int each = 0; each < dataArry.length(); each++) {
 					final JSONObject eachTagObj = dataArry.getJSONObject(each);
 					final String eachTagName = eachTagObj.getString("name");
 					final String deleteTagURL = host+"/alfresco/service/api/tags/workspace/SpacesStore/"+UrlEscapers.urlFragmentEscaper().escape(eachTagName)+"?alf_ticket="+authTicket;
-					exec.submit(new Runnable() {
-						public void run() {
-							try (final CloseableHttpResponse httpDelResp = HTTPUtils.httpDelete(deleteTagURL)) {
-								final StatusLine delStatus = httpResp.getStatusLine();
-								final int delStatusCode = delStatus.getStatusCode();
-								final String delStatusMsg = delStatus.getReasonPhrase();
-								LOG.info("Status: "+delStatusCode +" | "+ delStatusMsg);
-							} catch (IOException excp) {
-								LOG.error("Error occurred while deleting the tag", excp);
-							}
+					deletes.add(AsyncHTTPUtils.httpDeleteAsync(deleteTagURL).whenComplete((httpDelResp, excp) -> {
+						if (excp == null) {
+							final StatusLine delStatus = httpDelResp.getStatusLine();
+							LOG.info("Status: "+delStatus.getStatusCode() +" | "+ delStatus.getReasonPhrase()+" | tag: "+eachTagName);
+						} else {
+							LOG.error("Error occurred while deleting the tag: "+eachTagName, excp);
 						}
-					});				
-				}
-				
-				exec.shutdown();
-				try {
-					exec.awaitTermination(1, TimeUnit.HOURS);
-				} catch (InterruptedException excp) {
-					LOG.debug("Thread interrupted: "+excp.getMessage());
+					}));
 				}
+				CompletableFuture.allOf(deletes.toArray(new CompletableFuture<?>[0])).exceptionally(excp -> null).join();
 			}
 		}
 	}
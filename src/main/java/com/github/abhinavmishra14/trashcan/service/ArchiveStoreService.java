@@ -20,10 +20,13 @@ package com.github.abhinavmishra14.trashcan.service;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.http.client.ClientProtocolException;
 import org.json.JSONObject;
 
+import com.github.abhinavmishra14.json.utils.JSONVisitor;
+
 /**
  * The Interface ArchiveStoreService.
  */
@@ -72,15 +75,43 @@ public interface ArchiveStoreService {
 			final int batchSize) throws URISyntaxException,
 			ClientProtocolException, IOException;
 	
+	/**
+	 * Visit the deleted nodes of the archive space store one by one while the listing is streamed,
+	 * so that large trash cans are processed without holding the listing in memory.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param batchSize the batch size
+	 * @param visitor the visitor, invoked with each deleted node json
+	 * @return the number of deleted nodes visited
+	 * @throws URISyntaxException the URI syntax exception
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException the IO exception
+	 */
+	long visitArchivedNodes(final String authTicket, final int batchSize, final JSONVisitor<JSONObject> visitor)
+			throws URISyntaxException, ClientProtocolException, IOException;
+	
 	/**
 	 * Delete archived node.
 	 *
 	 * @param archivedNode the archived node
 	 * @param authTicket the auth ticket
+	 * @return the response status code
 	 * @throws URISyntaxException the URI syntax exception
 	 * @throws ClientProtocolException the client protocol exception
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	void deleteArchivedNode(final String archivedNode, final String authTicket)
+	int deleteArchivedNode(final String archivedNode, final String authTicket)
 			throws URISyntaxException, ClientProtocolException, IOException;
+	
+	/**
+	 * Delete archived node without blocking the caller.<br>
+	 * Useful for bulk purges where thousands of deletes can be kept in flight using a few threads.
+	 *
+	 * @param archivedNode the archived node
+	 * @param authTicket the auth ticket
+	 * @return the completable future of the response status code
+	 * @throws URISyntaxException the URI syntax exception
+	 */
+	CompletableFuture<Integer> deleteArchivedNodeAsync(final String archivedNode, final String authTicket)
+			throws URISyntaxException;
 }
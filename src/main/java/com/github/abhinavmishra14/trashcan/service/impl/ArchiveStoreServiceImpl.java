@@ -19,26 +19,26 @@ package com.github.abhinavmishra14.trashcan.service.impl;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.utils.URIBuilder;
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
 import com.github.abhinavmishra14.exception.AlfScriptException;
+import com.github.abhinavmishra14.http.utils.AsyncHTTPUtils;
 import com.github.abhinavmishra14.http.utils.HTTPUtils;
+import com.github.abhinavmishra14.json.utils.JSONUtils;
+import com.github.abhinavmishra14.json.utils.JSONVisitor;
 import com.github.abhinavmishra14.trashcan.service.ArchiveStoreService;
 
 /**
@@ -83,25 +83,19 @@ public class ArchiveStoreServiceImpl implements ArchiveStoreService {
 	public List<String> getArchievedNodesAfterDays(final String authTicket,
 			final int batchSize, final int olderThanDays)
 			throws ClientProtocolException, URISyntaxException, IOException {
-		final JSONObject archiveData = getArchiveSpaceStoreData(authTicket, batchSize);
-		final JSONObject data = archiveData.getJSONObject(AlfScriptConstants.DATA);
 		final List<String> nodeList = new ArrayList<String>(batchSize);
-		if (data.has(AlfScriptConstants.DELETED_NODES)) {
-			final JSONArray deletedNodes = data.getJSONArray(AlfScriptConstants.DELETED_NODES);
-			for (int each = 0; each <deletedNodes.length(); each++) {
-				final JSONObject eachNodeObj = deletedNodes.getJSONObject(each);
-				if (eachNodeObj.has(AlfScriptConstants.ARCHIEVED_DATE)) {
-					final String archivedDate = eachNodeObj.getString(AlfScriptConstants.ARCHIEVED_DATE);
-					if (eachNodeObj.has(AlfScriptConstants.NODE_REF) && olderThanDays > 0) {
-						if (AlfScriptUtils.olderThanDays(archivedDate, olderThanDays)) {
-							nodeList.add(eachNodeObj.getString(AlfScriptConstants.NODE_REF));
-						}
-					} else {
+		visitArchivedNodes(authTicket, batchSize, eachNodeObj -> {
+			if (eachNodeObj.has(AlfScriptConstants.ARCHIEVED_DATE)) {
+				final String archivedDate = eachNodeObj.getString(AlfScriptConstants.ARCHIEVED_DATE);
+				if (eachNodeObj.has(AlfScriptConstants.NODE_REF) && olderThanDays > 0) {
+					if (AlfScriptUtils.olderThanDays(archivedDate, olderThanDays)) {
 						nodeList.add(eachNodeObj.getString(AlfScriptConstants.NODE_REF));
 					}
+				} else {
+					nodeList.add(eachNodeObj.getString(AlfScriptConstants.NODE_REF));
 				}
 			}
-		}
+		});
 		return nodeList;
 	}
 	
@@ -119,18 +113,12 @@ public class ArchiveStoreServiceImpl implements ArchiveStoreService {
 	public List<String> getArchievedNodes(final String authTicket,
 			final int batchSize) throws ClientProtocolException,
 			URISyntaxException, IOException {
-		final JSONObject archiveData = getArchiveSpaceStoreData(authTicket, batchSize);
-		final JSONObject data = archiveData.getJSONObject(AlfScriptConstants.DATA);
 		final List<String> nodeList = new ArrayList<String>(batchSize);
-		if (data.has(AlfScriptConstants.DELETED_NODES)) {
-			final JSONArray deletedNodes = data.getJSONArray(AlfScriptConstants.DELETED_NODES);
-			for (int each = 0; each <deletedNodes.length(); each++) {
-				final JSONObject eachNodeObj = deletedNodes.getJSONObject(each);
-				if(eachNodeObj.has(AlfScriptConstants.NODE_REF)) {
-					nodeList.add(eachNodeObj.getString(AlfScriptConstants.NODE_REF));
-				}
+		visitArchivedNodes(authTicket, batchSize, eachNodeObj -> {
+			if(eachNodeObj.has(AlfScriptConstants.NODE_REF)) {
+				nodeList.add(eachNodeObj.getString(AlfScriptConstants.NODE_REF));
 			}
-		}
+		});
 		return nodeList;
 	}
 	
@@ -148,27 +136,48 @@ public class ArchiveStoreServiceImpl implements ArchiveStoreService {
 	public JSONObject getArchiveSpaceStoreData(final String authTicket, final int batchSize)
 			throws URISyntaxException, ClientProtocolException, IOException {
 		LOG.info("Getting archived data from archive space store @ batchSize: "+batchSize);
-		final Object[] uriArgs = {serverEndpoint};
-		final MessageFormat msgFormat = new MessageFormat(ALL_ARCHIEVES_URI);
-		final String archivesUrl = msgFormat.format(uriArgs);
-		final URIBuilder uriBuilder = new URIBuilder(archivesUrl);
-		uriBuilder.addParameter(AlfScriptConstants.PARAM_MAX_ITEMS, Integer.toString(batchSize));
-		uriBuilder.addParameter(AlfScriptConstants.PARAM_SKIP_COUNT, AlfScriptConstants.DEFAULT_SKIP_COUNT);
-		uriBuilder.addParameter(AlfScriptConstants.PARAM_AUTH_TICKET, authTicket);
-		final HttpResponse httpResp = HTTPUtils.httpGet(uriBuilder.toString());
-		final StatusLine status = httpResp.getStatusLine();
-		final int statusCode = status.getStatusCode();
-		final String statusMsg = status.getReasonPhrase();
-		LOG.info("Status: "+statusCode +" | "+ statusMsg);
-		JSONObject archiveData = null;
-		if (statusCode == HTTPUtils.HTTP_CODE_200) {
-			final String resonseStr = IOUtils.toString(httpResp.getEntity().getContent(),
-					StandardCharsets.UTF_8);
-			archiveData = new JSONObject(resonseStr);
-		} else {
-			throw new AlfScriptException(statusMsg);
-		}
-		return archiveData;
+		return HTTPUtils.httpGet(prepareArchivesUrl(authTicket, batchSize), httpResp -> {
+			final StatusLine status = httpResp.getStatusLine();
+			final int statusCode = status.getStatusCode();
+			final String statusMsg = status.getReasonPhrase();
+			LOG.info("Status: "+statusCode +" | "+ statusMsg);
+			if (statusCode == HTTPUtils.HTTP_CODE_200) {
+				return JSONUtils.readJSONObject(httpResp.getEntity().getContent());
+			} else {
+				throw new AlfScriptException(statusMsg);
+			}
+		});
+	}
+	
+	/**
+	 * Visit the deleted nodes of the archive space store one by one, while the listing is being
+	 * read, instead of materializing the whole listing.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param batchSize the batch size
+	 * @param visitor the visitor
+	 * @return the number of deleted nodes visited
+	 * @throws URISyntaxException the URI syntax exception
+	 * @throws ClientProtocolException the client protocol exception
+	 * @throws IOException the IO exception
+	 */
+	@Override
+	public long visitArchivedNodes(final String authTicket, final int batchSize,
+			final JSONVisitor<JSONObject> visitor) throws URISyntaxException, ClientProtocolException, IOException {
+		LOG.info("Streaming archived nodes from archive space store @ batchSize: "+batchSize);
+		return HTTPUtils.httpGet(prepareArchivesUrl(authTicket, batchSize), httpResp -> {
+			final StatusLine status = httpResp.getStatusLine();
+			final int statusCode = status.getStatusCode();
+			final String statusMsg = status.getReasonPhrase();
+			LOG.info("Status: "+statusCode +" | "+ statusMsg);
+			if (statusCode == HTTPUtils.HTTP_CODE_200) {
+				return JSONUtils.streamArray(httpResp.getEntity().getContent(),
+						AlfScriptConstants.DATA + AlfScriptConstants.DOT + AlfScriptConstants.DELETED_NODES,
+						JSONObject.class, visitor);
+			} else {
+				throw new AlfScriptException(statusMsg);
+			}
+		});
 	}
 	
 	/**
@@ -176,15 +185,74 @@ public class ArchiveStoreServiceImpl implements ArchiveStoreService {
 	 *
 	 * @param archivedNode the archived node
 	 * @param authTicket the auth ticket
+	 * @return the response status code
 	 * @throws URISyntaxException the URI syntax exception
 	 * @throws ClientProtocolException the client protocol exception
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	@Override
-	public void deleteArchivedNode(final String archivedNode,
+	public int deleteArchivedNode(final String archivedNode,
 			final String authTicket) throws URISyntaxException,
 			ClientProtocolException, IOException {
 		LOG.info("Deleting archived node: "+archivedNode);
+		return HTTPUtils.httpDelete(prepareDeleteArchivedNodeUrl(archivedNode, authTicket), httpResp -> {
+			final StatusLine status = httpResp.getStatusLine();
+			final int statusCode = status.getStatusCode();
+			final String statusMsg = status.getReasonPhrase();
+			LOG.info("Status: "+statusCode +" | "+ statusMsg);
+			return statusCode;
+		});
+	}
+	
+	/**
+	 * Delete archived node async.
+	 *
+	 * @param archivedNode the archived node
+	 * @param authTicket the auth ticket
+	 * @return the completable future of the response status code
+	 * @throws URISyntaxException the URI syntax exception
+	 */
+	@Override
+	public CompletableFuture<Integer> deleteArchivedNodeAsync(final String archivedNode,
+			final String authTicket) throws URISyntaxException {
+		LOG.info("Deleting archived node async: "+archivedNode);
+		return AsyncHTTPUtils.httpDeleteAsync(prepareDeleteArchivedNodeUrl(archivedNode, authTicket))
+				.thenApply(httpResp -> {
+					final StatusLine status = httpResp.getStatusLine();
+					LOG.info("Status: "+status.getStatusCode() +" | "+ status.getReasonPhrase()+" | node: "+archivedNode);
+					return status.getStatusCode();
+				});
+	}
+	
+	/**
+	 * Prepare archives url.
+	 *
+	 * @param authTicket the auth ticket
+	 * @param batchSize the batch size
+	 * @return the string
+	 * @throws URISyntaxException the URI syntax exception
+	 */
+	private String prepareArchivesUrl(final String authTicket, final int batchSize) throws URISyntaxException {
+		final Object[] uriArgs = {serverEndpoint};
+		final MessageFormat msgFormat = new MessageFormat(ALL_ARCHIEVES_URI);
+		final String archivesUrl = msgFormat.format(uriArgs);
+		final URIBuilder uriBuilder = new URIBuilder(archivesUrl);
+		uriBuilder.addParameter(AlfScriptConstants.PARAM_MAX_ITEMS, Integer.toString(batchSize));
+		uriBuilder.addParameter(AlfScriptConstants.PARAM_SKIP_COUNT, AlfScriptConstants.DEFAULT_SKIP_COUNT);
+		uriBuilder.addParameter(AlfScriptConstants.PARAM_AUTH_TICKET, authTicket);
+		return uriBuilder.toString();
+	}
+	
+	/**
+	 * Prepare delete archived node url.
+	 *
+	 * @param archivedNode the archived node
+	 * @param authTicket the auth ticket
+	 * @return the string
+	 * @throws URISyntaxException the URI syntax exception
+	 */
+	private String prepareDeleteArchivedNodeUrl(final String archivedNode, final String authTicket)
+			throws URISyntaxException {
 		final String archiveNodeToDelete = StringUtils.contains(archivedNode, AlfScriptConstants.ARCHIVE_STOREREF)
 				? StringUtils.substringAfter(archivedNode, AlfScriptConstants.ARCHIVE_STOREREF)
 				: archivedNode;
@@ -193,10 +261,6 @@ public class ArchiveStoreServiceImpl implements ArchiveStoreService {
 		final String deleteArcUrl = msgFormat.format(uriArgs);
 		final URIBuilder uriBuilder = new URIBuilder(deleteArcUrl);
 		uriBuilder.addParameter(AlfScriptConstants.PARAM_AUTH_TICKET, authTicket);
-		final HttpResponse httpResp = HTTPUtils.httpDelete(uriBuilder.toString());
-		final StatusLine status = httpResp.getStatusLine();
-		final int statusCode = status.getStatusCode();
-		final String statusMsg = status.getReasonPhrase();
-		LOG.info("Status: "+statusCode +" | "+ statusMsg);
+		return uriBuilder.toString();
 	}
 }
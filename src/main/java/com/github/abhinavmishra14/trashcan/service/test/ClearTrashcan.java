@@ -25,11 +25,9 @@ import static com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants.DEFA
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -37,7 +35,9 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.http.client.ClientProtocolException;
 
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
+import com.github.abhinavmishra14.alfscript.utils.JobJournal;
 import com.github.abhinavmishra14.exception.AlfScriptException;
+import com.github.abhinavmishra14.http.utils.HTTPUtils;
 import com.github.abhinavmishra14.trashcan.service.ArchiveStoreService;
 import com.github.abhinavmishra14.trashcan.service.impl.ArchiveStoreServiceImpl;
 
@@ -49,6 +49,9 @@ public class ClearTrashcan {
 	/** The Constant LOG. */
 	private final static Log LOG = LogFactory.getLog(ClearTrashcan.class);
 	
+	/** The Constant JOB_NAME. */
+	private static final String JOB_NAME = "ClearTrashcan";
+	
 	/**
 	 * The main method.
 	 *
@@ -92,25 +95,25 @@ public class ClearTrashcan {
 		final ArchiveStoreService arcStoreServ = new ArchiveStoreServiceImpl(host);
 		final List<String> archivedNodes = arcStoreServ.getArchievedNodesAfterDays(authTicket, batchSize, olderThanDays);
 		LOG.info("Total number of nodes found: " +archivedNodes.size()+" older than days: "+olderThanDays);
-		final ExecutorService exec = Executors.newFixedThreadPool(archivedNodes.size()+1);
-		for (final Iterator<String> iterator = archivedNodes.iterator(); iterator.hasNext();) {
-			final String eachNode = iterator.next();
-			exec.submit(new Runnable() {
-				public void run() {
-					try {
-						arcStoreServ.deleteArchivedNode(eachNode, authTicket);
-					} catch (URISyntaxException | IOException excp) {
-						LOG.error("Error occurred while deleting the node", excp);
-					}
+		//Deletes are issued over the non-blocking client, AsyncHTTPUtils bounds how many are in flight.
+		final List<CompletableFuture<Integer>> deletes = new ArrayList<CompletableFuture<Integer>>(archivedNodes.size());
+		try (final JobJournal journal = JobJournal.open(JOB_NAME)) {
+			for (final String eachNode : archivedNodes) {
+				//Nodes deleted by a previous run are skipped when the journal is kept
+				if (journal.skip(eachNode)) {
+					continue;
 				}
-			});
-		}
-		
-		exec.shutdown();
-		try {
-			exec.awaitTermination(1, TimeUnit.HOURS);
-		} catch (InterruptedException excp) {
-			LOG.debug("Thread interrupted: "+excp.getMessage());
+				deletes.add(arcStoreServ.deleteArchivedNodeAsync(eachNode, authTicket).handle((statusCode, excp) -> {
+					if (excp != null) {
+						LOG.error("Error occurred while deleting the node: " + eachNode, excp);
+					}
+					journal.mark(eachNode, excp == null && HTTPUtils.isDeleted(statusCode),
+							excp == null ? "Status: " + statusCode : excp.toString());
+					return statusCode;
+				}));
+			}
+			CompletableFuture.allOf(deletes.toArray(new CompletableFuture<?>[0])).join();
+			LOG.info("Completed deletion of " + deletes.size() + " nodes, " + journal);
 		}
 	}
 }
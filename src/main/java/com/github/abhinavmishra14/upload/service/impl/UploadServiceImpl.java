@@ -26,16 +26,13 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.HttpEntity;
 import org.apache.http.StatusLine;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.entity.mime.content.FileBody;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.util.EntityUtils;
 import org.json.JSONObject;
 
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
+import com.github.abhinavmishra14.http.utils.HTTPUtils;
 import com.github.abhinavmishra14.upload.service.UploadService;
 
 /**
@@ -77,34 +74,28 @@ public class UploadServiceImpl implements UploadService {
 	@Override
 	public JSONObject uploadFile(final File fileToUpload, final List<String> metadata, final String accessToken,
 			final String parentNode) throws IOException {
-		JSONObject uploadResp = null;
 		final String uploadUrl = String.format(UPLOAD_URL, this.serverEndpoint, parentNode, accessToken);
 		LOG.info("Upload URL: " + uploadUrl);
-		try (final CloseableHttpClient httpclient = HttpClientBuilder.create().build();) {
-			final HttpPost httpPost = new HttpPost(uploadUrl);
-			final MultipartEntityBuilder mimeEntity = MultipartEntityBuilder.create();
-			if (metadata != null && !metadata.isEmpty()) {
-				for (final Iterator<String> iterator = metadata.iterator(); iterator.hasNext();) {
-					final String[] eachMetadata = iterator.next().split(AlfScriptConstants.EQUALS);
-					mimeEntity.addTextBody(eachMetadata[0], eachMetadata[1]);
-				}
-			}
-			final FileBody filedata = new FileBody(fileToUpload);
-			mimeEntity.addPart(AlfScriptConstants.FILEDATA, filedata);
-			final HttpEntity reqEntity = mimeEntity.build();
-			httpPost.setEntity(reqEntity);
-			LOG.info("Executing upload request:" + httpPost.getRequestLine());
-			try (final CloseableHttpResponse httpResp = httpclient.execute(httpPost)) {
-				final StatusLine status = httpResp.getStatusLine();
-				final int statusCode = status.getStatusCode();
-				final String statusMsg = status.getReasonPhrase();
-				LOG.info("Status: " + statusCode + " | " + statusMsg);
-				final HttpEntity resEntity = httpResp.getEntity();
-				if (resEntity != null) {
-					uploadResp = new JSONObject(EntityUtils.toString(resEntity));
-				}
+		final MultipartEntityBuilder mimeEntity = MultipartEntityBuilder.create();
+		if (metadata != null && !metadata.isEmpty()) {
+			for (final Iterator<String> iterator = metadata.iterator(); iterator.hasNext();) {
+				final String[] eachMetadata = iterator.next().split(AlfScriptConstants.EQUALS);
+				mimeEntity.addTextBody(eachMetadata[0], eachMetadata[1]);
 			}
 		}
-		return uploadResp;
+		final FileBody filedata = new FileBody(fileToUpload);
+		mimeEntity.addPart(AlfScriptConstants.FILEDATA, filedata);
+		final HttpEntity reqEntity = mimeEntity.build();
+		return HTTPUtils.httpPost(uploadUrl, reqEntity, httpResp -> {
+			final StatusLine status = httpResp.getStatusLine();
+			final int statusCode = status.getStatusCode();
+			final String statusMsg = status.getReasonPhrase();
+			LOG.info("Status: " + statusCode + " | " + statusMsg);
+			final HttpEntity resEntity = httpResp.getEntity();
+			if (resEntity != null) {
+				return new JSONObject(EntityUtils.toString(resEntity));
+			}
+			return null;
+		});
 	}
 }
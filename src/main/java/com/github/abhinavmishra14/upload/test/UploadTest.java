@@ -36,6 +36,7 @@ import org.json.JSONObject;
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptConstants;
 import com.github.abhinavmishra14.alfscript.utils.AlfScriptUtils;
 import com.github.abhinavmishra14.alfscript.utils.DirectoryTraverser;
+import com.github.abhinavmishra14.alfscript.utils.JobJournal;
 import com.github.abhinavmishra14.alfscript.utils.TaskTimer;
 import com.github.abhinavmishra14.exception.AlfScriptException;
 import com.github.abhinavmishra14.upload.service.UploadService;
@@ -48,6 +49,9 @@ public class UploadTest {
 
 	/** The Constant LOG. */
 	private final static Log LOG = LogFactory.getLog(UploadTest.class);
+	
+	/** The Constant JOB_NAME. */
+	private static final String JOB_NAME = "UploadTest";
 
 	/**
 	 * The main method.
@@ -120,28 +124,31 @@ public class UploadTest {
 		final UploadService uploadServ = new UploadServiceImpl(host);
 		final TaskTimer timer = new TaskTimer();
 		timer.startTimer();
-		if (inputPath.isDirectory()) {
-			LOG.info("Input is a directory: " + inputPath.getAbsolutePath());
-			final Set<File> setOfFiles = DirectoryTraverser.getFileUris(inputPath);
-			final ExecutorService executer = Executors.newFixedThreadPool(setOfFiles.size() + 1);
-			for (final File eachFile : setOfFiles) {
-				if (eachFile.getName().contains("desktop.ini")) {// Ignore hidden file found usually on windows platform
-					continue;
-				} else {
-					// Process in parallel
-					submitUploadRequests(uploadServ, authTicket, eachFile, parentNodeId, metadataList, executer);
+		try (final JobJournal journal = JobJournal.open(JOB_NAME)) {
+			if (inputPath.isDirectory()) {
+				LOG.info("Input is a directory: " + inputPath.getAbsolutePath());
+				final Set<File> setOfFiles = DirectoryTraverser.getFileUris(inputPath);
+				final ExecutorService executer = Executors.newFixedThreadPool(setOfFiles.size() + 1);
+				for (final File eachFile : setOfFiles) {
+					if (eachFile.getName().contains("desktop.ini")) {// Ignore hidden file found usually on windows platform
+						continue;
+					} else {
+						// Process in parallel
+						submitUploadRequests(uploadServ, authTicket, eachFile, parentNodeId, metadataList, executer, journal);
+					}
 				}
-			}
 
-			executer.shutdown();
-			try {
-				executer.awaitTermination(1, TimeUnit.HOURS);
-			} catch (InterruptedException excp) {
-				LOG.debug("Thread interrupted: " + excp.getMessage(), excp);
+				executer.shutdown();
+				try {
+					executer.awaitTermination(1, TimeUnit.HOURS);
+				} catch (InterruptedException excp) {
+					LOG.debug("Thread interrupted: " + excp.getMessage(), excp);
+				}
+			} else {
+				LOG.info("Input is a file: " + inputPath.getAbsolutePath());
+				processUpload(uploadServ, authTicket, inputPath, parentNodeId, metadataList, journal);
 			}
-		} else {
-			LOG.info("Input is a file: " + inputPath.getAbsolutePath());
-			processUpload(uploadServ, authTicket, inputPath, parentNodeId, metadataList);
+			LOG.info("Uploads completed: " + journal);
 		}
 		
 		timer.endTimer();
@@ -157,33 +164,43 @@ public class UploadTest {
 	 * @param parentNode the parent node
 	 * @param metadata the metadata
 	 * @param exec the exec
+	 * @param journal the journal
 	 */
 	private static void submitUploadRequests(final UploadService uploadServ, final String accessToken,
-			final File fileToUpload, final String parentNode, final List<String> metadata, final ExecutorService exec) {
+			final File fileToUpload, final String parentNode, final List<String> metadata, final ExecutorService exec,
+			final JobJournal journal) {
 		exec.submit(new Runnable() {
 			public void run() {
 				//upload file
-				processUpload(uploadServ, accessToken, fileToUpload, parentNode, metadata);
+				processUpload(uploadServ, accessToken, fileToUpload, parentNode, metadata, journal);
 			}
 		});
 	}
 	
 	/**
-	 * Process upload.
+	 * Process upload.<br>
+	 * Files uploaded by a previous run are skipped when the journal is kept.
 	 *
 	 * @param uploadServ the upload serv
 	 * @param accessToken the access token
 	 * @param fileToUpload the file to upload
 	 * @param parentNode the parent node
 	 * @param metadata the metadata
+	 * @param journal the journal
 	 */
 	private static void processUpload(final UploadService uploadServ, final String accessToken,
-			final File fileToUpload, final String parentNode, final List<String> metadata) {
+			final File fileToUpload, final String parentNode, final List<String> metadata, final JobJournal journal) {
+		final String journalKey = fileToUpload.getAbsolutePath() + "=" + parentNode;
+		if (journal.skip(journalKey)) {
+			return;
+		}
 		try {
 			final JSONObject uploadResp = uploadServ.uploadFile(fileToUpload, metadata, accessToken,
 					parentNode);
 			LOG.info("Upload Resonse: "+uploadResp);
+			journal.mark(journalKey, true, null);
 		} catch (IOException ioex) {
+			journal.mark(journalKey, false, ioex.toString());
 			final String errMsg = String.format("Failed to complete upload due to %s", ioex.getMessage());
 			LOG.error(errMsg, ioex);
 			throw new AlfScriptException(errMsg, ioex);